@@ -19,24 +19,43 @@
 
 package org.apache.hadoop.yarn.server.resourcemanager.recovery;
 
+import java.io.EOFException;
 import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.commons.lang3.ArrayUtils;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
 import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IOUtils;
 import org.apache.myriad.state.MyriadStateStore;
+import org.apache.myriad.state.utils.JournalEntry;
 import org.apache.myriad.state.utils.StoreContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 /**
  * StateStore that stores Myriad state in addition to RM state to DFS.
+ * <p/>
+ * The Myriad state is kept as a snapshot file plus a journal directory. Each batch of mutations
+ * is appended as length prefixed records to the current journal segment, and storing a new
+ * snapshot deletes the segments it supersedes. A segment is only ever appended to by the
+ * store instance that created it, so after a restart a new segment is started.
  */
 public class MyriadFileSystemRMStateStore extends FileSystemRMStateStore implements MyriadStateStore {
 
@@ -45,9 +64,15 @@ public class MyriadFileSystemRMStateStore extends FileSystemRMStateStore impleme
   protected static final String ROOT_NAME = "FSRMStateRoot";
   private static final String RM_MYRIAD_ROOT = "RMMyriadRoot";
   private static final String MYRIAD_STATE_FILE = "MyriadState";
+  private static final String MYRIAD_JOURNAL_DIR = "MyriadStateJournal";
+  private static final String JOURNAL_SEGMENT_PREFIX = "segment_";
 
   private Path myriadPathRoot = null;
-  private byte[] myriadStateBytes = null;
+  private Path myriadJournalRoot = null;
+  private Future<StoreContext> myriadSnapshot = null;
+  private Future<List<JournalEntry>> myriadJournalEntries = null;
+  private FSDataOutputStream journalOut = null;
+  private long nextJournalSegment = 0;
 
   private Method updateFileMethod = null; //This is a cache Method so we do fewer reflection calls
 
@@ -56,6 +81,7 @@ public class MyriadFileSystemRMStateStore extends FileSystemRMStateStore impleme
     super.initInternal(conf);
     Path rootPath = new Path(fsWorkingPath, ROOT_NAME);
     myriadPathRoot = new Path(rootPath, RM_MYRIAD_ROOT);
+    myriadJournalRoot = new Path(myriadPathRoot, MYRIAD_JOURNAL_DIR);
     updateFileMethod = getUpdateFileMethod();
     if (updateFileMethod == null) {
       //something is broken
@@ -78,35 +104,143 @@ public class MyriadFileSystemRMStateStore extends FileSystemRMStateStore impleme
   protected synchronized void startInternal() throws Exception {
     super.startInternal();
     fs.mkdirs(myriadPathRoot);
+    fs.mkdirs(myriadJournalRoot);
+  }
+
+  @Override
+  protected synchronized void closeInternal() throws Exception {
+    closeJournalSegment();
+    super.closeInternal();
   }
 
+  /**
+   * Loads the RM state. The Myriad snapshot and journal are read and decoded in the background
+   * meanwhile, as neither depends on the other or on the RM state, and are picked up by
+   * {@link #loadMyriadState()}.
+   */
   @Override
   public synchronized RMState loadState() throws Exception {
-    RMState rmState = super.loadState();
+    FileStatus[] segments = new FileStatus[0];
+    try {
+      segments = listJournalSegments();
+    } catch (IOException e) {
+      LOGGER.error("Journal for Myriad could not be loaded from: " + myriadJournalRoot, e);
+    }
+    for (FileStatus segment : segments) {
+      nextJournalSegment = Math.max(nextJournalSegment, getSegmentNumber(segment.getPath()) + 1);
+    }
+    ExecutorService loader = Executors.newFixedThreadPool(2,
+        new ThreadFactoryBuilder().setNameFormat("myriad-state-loader-%d").setDaemon(true).build());
+    myriadSnapshot = loader.submit(new Callable<StoreContext>() {
+      @Override
+      public StoreContext call() throws Exception {
+        return loadSnapshot();
+      }
+    });
+    final FileStatus[] journalSegments = segments;
+    myriadJournalEntries = loader.submit(new Callable<List<JournalEntry>>() {
+      @Override
+      public List<JournalEntry> call() throws Exception {
+        return loadJournal(journalSegments);
+      }
+    });
+    loader.shutdown();
+    return super.loadState();
+  }
+
+  private StoreContext loadSnapshot() {
     Path myriadStatePath = new Path(myriadPathRoot, MYRIAD_STATE_FILE);
     LOGGER.info("Loading state information for Myriad from: " + myriadStatePath);
-
+    byte[] bytes;
     try {
       // Throws IOException if file is not present.
       FileStatus fileStatus = fs.listStatus(myriadStatePath)[0];
       FSDataInputStream in = fs.open(myriadStatePath);
-      myriadStateBytes = new byte[(int) fileStatus.getLen()];
-      in.readFully(myriadStateBytes);
+      bytes = new byte[(int) fileStatus.getLen()];
+      in.readFully(bytes);
       in.close();
     } catch (IOException e) {
       LOGGER.error("State information for Myriad could not be loaded from: " + myriadStatePath);
+      return null;
     }
-    return rmState;
+    // Decoded from the array it was read into, the tasks keep referring to it until parsed
+    return ArrayUtils.isNotEmpty(bytes) ? StoreContext.fromSerializedBytes(bytes) : null;
+  }
+
+  private List<JournalEntry> loadJournal(FileStatus[] segments) {
+    List<JournalEntry> entries = new ArrayList<>();
+    try {
+      for (FileStatus segment : segments) {
+        readJournalSegment(segment.getPath(), entries);
+      }
+      LOGGER.info("Loaded {} Myriad journal entries from {} segments", entries.size(), segments.length);
+    } catch (IOException e) {
+      LOGGER.error("Journal for Myriad could not be loaded from: " + myriadJournalRoot, e);
+    }
+    return entries;
+  }
+
+  private void readJournalSegment(Path segment, List<JournalEntry> entries) throws IOException {
+    FSDataInputStream in = fs.open(segment);
+    try {
+      while (true) {
+        int size;
+        try {
+          size = in.readInt();
+        } catch (EOFException e) {
+          return;
+        }
+        byte[] bytes = new byte[size];
+        try {
+          in.readFully(bytes);
+        } catch (EOFException e) {
+          // The RM went down in the middle of an append, the record was never acknowledged
+          LOGGER.warn("Ignoring truncated journal entry at the end of {}", segment);
+          return;
+        }
+        entries.add(JournalEntry.fromBytes(bytes));
+      }
+    } finally {
+      IOUtils.closeStream(in);
+    }
+  }
+
+  private FileStatus[] listJournalSegments() throws IOException {
+    if (!fs.exists(myriadJournalRoot)) {
+      return new FileStatus[0];
+    }
+    FileStatus[] segments = fs.listStatus(myriadJournalRoot);
+    Arrays.sort(segments, new Comparator<FileStatus>() {
+      @Override
+      public int compare(FileStatus s1, FileStatus s2) {
+        return Long.compare(getSegmentNumber(s1.getPath()), getSegmentNumber(s2.getPath()));
+      }
+    });
+    return segments;
+  }
+
+  private long getSegmentNumber(Path segment) {
+    return Long.parseLong(segment.getName().substring(JOURNAL_SEGMENT_PREFIX.length()));
   }
 
   @Override
   public synchronized StoreContext loadMyriadState() throws Exception {
-    StoreContext sc = null;
-    if (ArrayUtils.isNotEmpty(myriadStateBytes)) {
-      sc = StoreContext.fromSerializedBytes(myriadStateBytes);
-      myriadStateBytes = null;
+    if (myriadSnapshot == null) {
+      return null;
+    }
+    try {
+      StoreContext sc = myriadSnapshot.get();
+      List<JournalEntry> entries = myriadJournalEntries.get();
+      if (!entries.isEmpty()) {
+        sc = (sc == null ? new StoreContext() : sc).applyJournal(entries);
+      }
+      return sc;
+    } catch (ExecutionException e) {
+      throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+    } finally {
+      myriadSnapshot = null;
+      myriadJournalEntries = null;
     }
-    return sc;
   }
 
   @Override
@@ -118,9 +252,40 @@ public class MyriadFileSystemRMStateStore extends FileSystemRMStateStore impleme
       reflectedUpdateFile(myriadStatePath, sc.toSerializedContext().toByteArray());
     } catch (Exception e) {
       LOGGER.error("State information for Myriad could not be stored at: " + myriadStatePath, e);
+      throw e;
+    }
+    // The snapshot covers everything journaled so far
+    closeJournalSegment();
+    for (FileStatus segment : listJournalSegments()) {
+      fs.delete(segment.getPath(), false);
+    }
+  }
+
+  @Override
+  public synchronized void storeMyriadStateEntries(List<JournalEntry> entries) throws Exception {
+    try {
+      if (journalOut == null) {
+        Path segment = new Path(myriadJournalRoot, JOURNAL_SEGMENT_PREFIX + nextJournalSegment++);
+        LOGGER.debug("Starting Myriad journal segment: " + segment);
+        journalOut = fs.create(segment, false);
+      }
+      for (JournalEntry entry : entries) {
+        byte[] bytes = entry.toBytes();
+        journalOut.writeInt(bytes.length);
+        journalOut.write(bytes);
+      }
+      journalOut.hflush();
+    } catch (IOException e) {
+      // Start a new segment with the next batch rather than appending after a partial record
+      closeJournalSegment();
+      throw e;
     }
   }
 
+  private void closeJournalSegment() {
+    IOUtils.closeStream(journalOut);
+    journalOut = null;
+  }
 
 
   protected void reflectedUpdateFile(Path outputPath, byte[] data) throws InvocationTargetException, IllegalAccessException {
@@ -137,6 +302,7 @@ public class MyriadFileSystemRMStateStore extends FileSystemRMStateStore impleme
 
   @Override
   public synchronized void removeMyriadState() throws Exception {
+    closeJournalSegment();
     if (fs.exists(myriadPathRoot)) {
       if (!fs.delete(myriadPathRoot, true)) {
         LOGGER.error("Failed to delete MyriadStateStore path " + myriadPathRoot);
@@ -75,7 +75,10 @@ public class DisruptorManager {
 
     this.resourceOffersEventDisruptor = new Disruptor<>(new ResourceOffersEventFactory(), DEFAULT_LARGE_RINGBUFFER_SIZE,
         disruptorExecutors);
-    this.resourceOffersEventDisruptor.handleEventsWith(injector.getInstance(ResourceOffersEventHandler.class));
+    ResourceOffersEventHandler resourceOffersEventHandler = injector.getInstance(ResourceOffersEventHandler.class);
+    this.resourceOffersEventDisruptor.handleEventsWith(resourceOffersEventHandler.getClassificationStage())
+        .then(resourceOffersEventHandler.getMatchingStage())
+        .then(resourceOffersEventHandler.getDispatchStage());
     this.resourceOffersEventDisruptor.start();
 
     this.offerRescindedEventDisruptor = new Disruptor<>(new OfferRescindedEventFactory(), DEFAULT_LARGE_RINGBUFFER_SIZE,
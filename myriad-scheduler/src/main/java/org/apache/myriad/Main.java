@@ -18,6 +18,7 @@
  */
 package org.apache.myriad;
 
+import com.codahale.metrics.Gauge;
 import com.codahale.metrics.JmxReporter;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.health.HealthCheckRegistry;
@@ -49,6 +50,7 @@ import org.apache.myriad.scheduler.ServiceProfileManager;
 import org.apache.myriad.scheduler.ServiceResourceProfile;
 import org.apache.myriad.scheduler.TaskTerminator;
 import org.apache.myriad.scheduler.TaskUtils;
+import org.apache.myriad.scheduler.fgs.ContainerTaskLauncher;
 import org.apache.myriad.scheduler.yarn.interceptor.InterceptorRegistry;
 import org.apache.myriad.state.SchedulerState;
 import org.apache.myriad.webapp.MyriadWebServer;
@@ -105,7 +107,9 @@ public class Main {
       LOGGER.debug("Bindings: " + injector.getAllBindings());
     }
 
-    JmxReporter.forRegistry(new MetricRegistry()).build().start();
+    MetricRegistry metricRegistry = injector.getInstance(MetricRegistry.class);
+    initMetrics(injector, metricRegistry);
+    JmxReporter.forRegistry(metricRegistry).build().start();
 
     initWebApp(injector);
     initHealthChecks(injector);
@@ -116,6 +120,7 @@ public class Main {
 
     initRebalancerService(cfg, injector);
     initTerminatorService(injector);
+    initContainerTaskLauncher(injector);
     startMesosDriver(injector);
     startNMInstances(injector);
     startJavaBasedTaskInstance(injector);
@@ -138,6 +143,22 @@ public class Main {
     webServer.start();
   }
 
+  /**
+   * Registers the Myriad metrics.
+   *
+   * @param injector
+   * @param metricRegistry
+   */
+  private void initMetrics(Injector injector, MetricRegistry metricRegistry) {
+    final SchedulerState schedulerState = injector.getInstance(SchedulerState.class);
+    metricRegistry.register(MetricRegistry.name(SchedulerState.class, "recoveryTimeMs"), new Gauge<Long>() {
+      @Override
+      public Long getValue() {
+        return schedulerState.getRecoveryTimeMs();
+      }
+    });
+  }
+
   /**
    * Initializes health checks.
    *
@@ -271,6 +292,11 @@ public class Main {
     }
   }
 
+  private void initContainerTaskLauncher(Injector injector) {
+    LOGGER.info("Initializing ContainerTaskLauncher");
+    injector.getInstance(ContainerTaskLauncher.class).start();
+  }
+
   private void initDisruptors(Injector injector) {
     LOGGER.info("Initializing Disruptors");
     DisruptorManager disruptorManager = injector.getInstance(DisruptorManager.class);
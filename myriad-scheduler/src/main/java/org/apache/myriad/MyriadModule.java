@@ -18,6 +18,7 @@
  */
 package org.apache.myriad;
 
+import com.codahale.metrics.MetricRegistry;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
 import com.google.inject.AbstractModule;
@@ -26,8 +27,12 @@ import com.google.inject.Scopes;
 import com.google.inject.Singleton;
 import com.google.inject.multibindings.MapBinder;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.Map;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.CuratorFrameworkFactory;
+import org.apache.curator.retry.ExponentialBackoffRetry;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.yarn.server.resourcemanager.RMContext;
 import org.apache.hadoop.yarn.server.resourcemanager.scheduler.AbstractYarnScheduler;
@@ -40,6 +45,8 @@ import org.apache.myriad.scheduler.ExecutorCommandLineGenerator;
 import org.apache.myriad.scheduler.MyriadDriverManager;
 import org.apache.myriad.scheduler.NMExecutorCommandLineGenerator;
 import org.apache.myriad.scheduler.NMTaskFactoryAnnotation;
+import org.apache.myriad.scheduler.OfferDemandController;
+import org.apache.myriad.scheduler.OfferPool;
 import org.apache.myriad.scheduler.ReconcileService;
 import org.apache.myriad.scheduler.ServiceProfileManager;
 import org.apache.myriad.scheduler.ServiceTaskFactory;
@@ -47,11 +54,14 @@ import org.apache.myriad.scheduler.TaskFactory;
 import org.apache.myriad.scheduler.NMTaskFactory;
 import org.apache.myriad.scheduler.fgs.NMHeartBeatHandler;
 import org.apache.myriad.scheduler.fgs.NodeStore;
+import org.apache.myriad.scheduler.fgs.ContainerTaskLauncher;
 import org.apache.myriad.scheduler.fgs.OfferLifecycleManager;
 import org.apache.myriad.scheduler.fgs.YarnNodeCapacityManager;
 import org.apache.myriad.scheduler.yarn.interceptor.InterceptorRegistry;
+import org.apache.myriad.state.LeveldbMyriadStateStore;
 import org.apache.myriad.state.MyriadStateStore;
 import org.apache.myriad.state.SchedulerState;
+import org.apache.myriad.state.ZooKeeperMyriadStateStore;
 import org.apache.myriad.webapp.HttpConnectorProvider;
 import org.apache.myriad.webapp.MyriadWebServer;
 import org.slf4j.Logger;
@@ -62,6 +72,10 @@ import org.slf4j.LoggerFactory;
  */
 public class MyriadModule extends AbstractModule {
   private static final Logger LOGGER = LoggerFactory.getLogger(MyriadModule.class);
+  private static final String STATE_STORE_ZOOKEEPER = "zookeeper";
+  private static final String STATE_STORE_LEVELDB = "leveldb";
+  private static final int ZK_RETRY_BASE_SLEEP_MS = 1000;
+  private static final int ZK_MAX_RETRIES = 3;
 
   private MyriadConfiguration cfg;
   private Configuration hadoopConf;
@@ -86,11 +100,14 @@ public class MyriadModule extends AbstractModule {
     bind(RMContext.class).toInstance(rmContext);
     bind(AbstractYarnScheduler.class).toInstance(yarnScheduler);
     bind(InterceptorRegistry.class).toInstance(interceptorRegistry);
+    bind(MetricRegistry.class).in(Scopes.SINGLETON);
     bind(MyriadDriverManager.class).in(Scopes.SINGLETON);
     bind(org.apache.myriad.scheduler.MyriadScheduler.class).in(Scopes.SINGLETON);
     bind(ServiceProfileManager.class).in(Scopes.SINGLETON);
     bind(DisruptorManager.class).in(Scopes.SINGLETON);
     bind(ReconcileService.class).in(Scopes.SINGLETON);
+    bind(OfferPool.class).in(Scopes.SINGLETON);
+    bind(OfferDemandController.class).in(Scopes.SINGLETON);
     bind(HttpConnectorProvider.class).in(Scopes.SINGLETON);
     bind(MyriadWebServer.class).in(Scopes.SINGLETON);
     // add special binding between TaskFactory and NMTaskFactory to ease up
@@ -99,6 +116,7 @@ public class MyriadModule extends AbstractModule {
     bind(YarnNodeCapacityManager.class).in(Scopes.SINGLETON);
     bind(NodeStore.class).in(Scopes.SINGLETON);
     bind(OfferLifecycleManager.class).in(Scopes.SINGLETON);
+    bind(ContainerTaskLauncher.class).in(Scopes.SINGLETON);
     bind(NMHeartBeatHandler.class).asEagerSingleton();
 
     MapBinder<String, TaskFactory> mapBinder = MapBinder.newMapBinder(binder(), String.class, TaskFactory.class);
@@ -138,18 +156,35 @@ public class MyriadModule extends AbstractModule {
       myriadStateStore = providesMyriadStateStore();
       if (myriadStateStore == null) {
         throw new RuntimeException("Could not find a state store" +
-            " implementation for Myriad. The 'yarn.resourcemanager.store.class'" +
-            " property should be set to a class implementing the" +
+            " implementation for Myriad. Either set 'stateStore' to 'zookeeper' or 'leveldb' or set the" +
+            " 'yarn.resourcemanager.store.class'" +
+            " property to a class implementing the" +
             " MyriadStateStore interface. For e.g." +
             " org.apache.hadoop.yarn.server.resourcemanager.recovery.MyriadFileSystemRMStateStore");
       }
     }
-    return new SchedulerState(myriadStateStore);
+    return new SchedulerState(myriadStateStore, cfg.getStateStoreFlushIntervalMs(), cfg.getStateStoreFlushMaxPending(),
+        cfg.getStateStoreSnapshotInterval());
   }
 
   private MyriadStateStore providesMyriadStateStore() {
-    // TODO (sdaingade) Read the implementation class from yml
-    // once multiple implementations are available.
+    String stateStore = cfg.getStateStore();
+    LOGGER.info("Using the {} state store", stateStore);
+    if (STATE_STORE_ZOOKEEPER.equals(stateStore)) {
+      CuratorFramework client = CuratorFrameworkFactory.newClient(cfg.getZkServers(), cfg.getZkTimeout(), cfg.getZkTimeout(),
+          new ExponentialBackoffRetry(ZK_RETRY_BASE_SLEEP_MS, ZK_MAX_RETRIES));
+      client.start();
+      // The store closes the client when it is closed on shutdown
+      return new ZooKeeperMyriadStateStore(client, "/myriad/" + cfg.getFrameworkName() + "/schedulerState",
+          ZooKeeperMyriadStateStore.DEFAULT_MAX_TRANSACTION_BYTES, cfg.getZkTimeout());
+    } else if (STATE_STORE_LEVELDB.equals(stateStore)) {
+      if (!cfg.getStateStorePath().isPresent()) {
+        throw new RuntimeException("The 'stateStorePath' has to be set to use the " + stateStore + " state store");
+      }
+      return new LeveldbMyriadStateStore(new File(cfg.getStateStorePath().get()));
+    } else if (!MyriadConfiguration.DEFAULT_STATE_STORE.equals(stateStore)) {
+      throw new RuntimeException("Unknown state store '" + stateStore + "'");
+    }
     if (rmContext.getStateStore() instanceof MyriadStateStore) {
       return (MyriadStateStore) rmContext.getStateStore();
     }
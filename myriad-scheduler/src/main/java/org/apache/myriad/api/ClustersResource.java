@@ -40,9 +40,10 @@ import org.apache.myriad.configuration.MyriadBadConfigurationException;
 import org.apache.myriad.configuration.MyriadConfiguration;
 import org.apache.myriad.scheduler.MyriadOperations;
 import org.apache.myriad.scheduler.ServiceProfileManager;
-import org.apache.myriad.scheduler.ServiceResourceProfile;
 import org.apache.myriad.scheduler.constraints.ConstraintFactory;
 import org.apache.myriad.state.SchedulerState;
+import org.apache.myriad.state.SchedulerState.TaskState;
+import org.apache.myriad.state.SchedulerStateSnapshot;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -246,9 +247,10 @@ public class ClustersResource {
 
 
   private Integer getNumFlexedupNMs(String profile) {
-    ServiceResourceProfile serviceProfile = profileManager.get(profile);
-    return this.schedulerState.getActiveTaskIDsForProfile(serviceProfile).size() + this.schedulerState.getStagingTaskIDsForProfile(
-        serviceProfile).size() + this.schedulerState.getPendingTaskIDsForProfile(serviceProfile).size();
+    String profileName = profileManager.get(profile).getName();
+    SchedulerStateSnapshot snapshot = this.schedulerState.getSnapshot();
+    return snapshot.getTaskCountForProfile(TaskState.ACTIVE, profileName) + snapshot.getTaskCountForProfile(TaskState.STAGING,
+        profileName) + snapshot.getTaskCountForProfile(TaskState.PENDING, profileName);
   }
 
   @Timed
@@ -31,6 +31,8 @@ import org.apache.commons.collections.CollectionUtils;
 import org.apache.mesos.Protos;
 import org.apache.myriad.api.model.GetSchedulerStateResponse;
 import org.apache.myriad.configuration.MyriadConfiguration;
+import org.apache.myriad.state.SchedulerState.TaskState;
+import org.apache.myriad.state.SchedulerStateSnapshot;
 
 /**
  * Defines the REST API for the current state of Myriad
@@ -50,8 +52,10 @@ public class SchedulerStateResource {
   @Timed
   @GET
   public GetSchedulerStateResponse getState() {
-    return new GetSchedulerStateResponse(toStringCollection(state.getPendingTaskIds()), toStringCollection(
-        state.getStagingTaskIds()), toStringCollection(state.getActiveTaskIds()), toStringCollection(state.getKillableTaskIds()));
+    SchedulerStateSnapshot snapshot = state.getSnapshot();
+    return new GetSchedulerStateResponse(toStringCollection(snapshot.getTaskIds(TaskState.PENDING)), toStringCollection(
+        snapshot.getTaskIds(TaskState.STAGING)), toStringCollection(snapshot.getTaskIds(TaskState.ACTIVE)),
+        toStringCollection(snapshot.getTaskIds(TaskState.KILLABLE)));
   }
 
   private Collection<String> toStringCollection(Collection<Protos.TaskID> collection) {
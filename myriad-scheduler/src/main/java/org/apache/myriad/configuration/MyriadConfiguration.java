@@ -118,6 +118,78 @@ public class MyriadConfiguration {
    */
   public static final Boolean DEFAULT_CGROUPS_ENABLED = false;
 
+  /**
+   * By default scheduler state changes are persisted at most 500 ms after they are made.
+   */
+  public static final Long DEFAULT_STATE_STORE_FLUSH_INTERVAL_MS = 500L;
+
+  /**
+   * By default 1000 queued scheduler state changes are persisted without waiting for the flush interval.
+   */
+  public static final Integer DEFAULT_STATE_STORE_FLUSH_MAX_PENDING = 1000;
+
+  /**
+   * By default a full snapshot of the scheduler state is stored every 1000 journaled changes.
+   */
+  public static final Integer DEFAULT_STATE_STORE_SNAPSHOT_INTERVAL = 1000;
+
+  /**
+   * By default the scheduler state is persisted in the ResourceManager's state store, which has
+   * to implement MyriadStateStore.
+   */
+  public static final String DEFAULT_STATE_STORE = "rm";
+
+  /**
+   * By default at most 1000 tasks are reconciled with one request to the Mesos master.
+   */
+  public static final Integer DEFAULT_RECONCILE_CHUNK_SIZE = 1000;
+
+  /**
+   * By default the reconciliation of a task is requested again 10 seconds times the number of
+   * attempts so far after the last request.
+   */
+  public static final Long DEFAULT_RECONCILE_DELAY_MS = 10000L;
+
+  /**
+   * By default an implicit reconciliation is requested every 10 minutes.
+   */
+  public static final Long DEFAULT_IMPLICIT_RECONCILE_INTERVAL_MS = 600000L;
+
+  /**
+   * By default a task is placed on the first offer that can hold it.
+   */
+  public static final String DEFAULT_PLACEMENT_STRATEGY = "first-fit";
+
+  /**
+   * By default the spread placement strategy spreads tasks across the values of the "rack" agent attribute.
+   */
+  public static final String DEFAULT_PLACEMENT_SPREAD_ATTRIBUTE = "rack";
+
+  /**
+   * By default an offer that cannot be used right away is held for 5 seconds before it is declined.
+   */
+  public static final Long DEFAULT_OFFER_HOLD_TIME_MS = 5000L;
+
+  /**
+   * By default at most 100 offers are held.
+   */
+  public static final Integer DEFAULT_OFFER_POOL_SIZE = 100;
+
+  /**
+   * By default an unused offer is declined with a 5 second filter, as Mesos does without one.
+   */
+  public static final Double DEFAULT_DECLINE_REFUSE_SECONDS = 5.0;
+
+  /**
+   * By default the filter for a host whose offers keep being declined grows up to 5 minutes.
+   */
+  public static final Double DEFAULT_MAX_DECLINE_REFUSE_SECONDS = 300.0;
+
+  /**
+   * By default the tasks of containers allocated with fine grained scaling are launched in batches every 20 milliseconds.
+   */
+  public static final Long DEFAULT_FGS_LAUNCH_BATCH_WINDOW_MS = 20L;
+
   public static final Map<String, ServiceConfiguration> EMPTY_SERVICE_CONFIGURATION = Collections.emptyMap();
 
   @JsonProperty
@@ -159,6 +231,54 @@ public class MyriadConfiguration {
   @JsonProperty
   private Boolean haEnabled;
 
+  @JsonProperty
+  private String stateStore;
+
+  @JsonProperty
+  private String stateStorePath;
+
+  @JsonProperty
+  private Long stateStoreFlushIntervalMs;
+
+  @JsonProperty
+  private Integer stateStoreFlushMaxPending;
+
+  @JsonProperty
+  private Integer stateStoreSnapshotInterval;
+
+  @JsonProperty
+  private Integer reconcileChunkSize;
+
+  @JsonProperty
+  private Long reconcileDelayMs;
+
+  @JsonProperty
+  private Long implicitReconcileIntervalMs;
+
+  @JsonProperty
+  private String placementStrategy;
+
+  @JsonProperty
+  private Map<String, String> placementStrategies;
+
+  @JsonProperty
+  private String placementSpreadAttribute;
+
+  @JsonProperty
+  private Long offerHoldTimeMs;
+
+  @JsonProperty
+  private Integer offerPoolSize;
+
+  @JsonProperty
+  private Double declineRefuseSeconds;
+
+  @JsonProperty
+  private Double maxDeclineRefuseSeconds;
+
+  @JsonProperty
+  private Long fgsLaunchBatchWindowMs;
+
   @JsonProperty
   private NodeManagerConfiguration nodemanager;
 
@@ -255,6 +375,81 @@ public class MyriadConfiguration {
     return Optional.fromNullable(haEnabled).or(DEFAULT_HA_ENABLED);
   }
 
+  public String getStateStore() {
+    return Optional.fromNullable(stateStore).or(DEFAULT_STATE_STORE);
+  }
+
+  public Optional<String> getStateStorePath() {
+    return Optional.fromNullable(stateStorePath);
+  }
+
+  public Long getStateStoreFlushIntervalMs() {
+    return Optional.fromNullable(stateStoreFlushIntervalMs).or(DEFAULT_STATE_STORE_FLUSH_INTERVAL_MS);
+  }
+
+  public Integer getStateStoreFlushMaxPending() {
+    return Optional.fromNullable(stateStoreFlushMaxPending).or(DEFAULT_STATE_STORE_FLUSH_MAX_PENDING);
+  }
+
+  public Integer getStateStoreSnapshotInterval() {
+    return Optional.fromNullable(stateStoreSnapshotInterval).or(DEFAULT_STATE_STORE_SNAPSHOT_INTERVAL);
+  }
+
+  public Integer getReconcileChunkSize() {
+    return Optional.fromNullable(reconcileChunkSize).or(DEFAULT_RECONCILE_CHUNK_SIZE);
+  }
+
+  public Long getReconcileDelayMs() {
+    return Optional.fromNullable(reconcileDelayMs).or(DEFAULT_RECONCILE_DELAY_MS);
+  }
+
+  public Long getImplicitReconcileIntervalMs() {
+    return Optional.fromNullable(implicitReconcileIntervalMs).or(DEFAULT_IMPLICIT_RECONCILE_INTERVAL_MS);
+  }
+
+  public String getPlacementStrategy() {
+    return Optional.fromNullable(placementStrategy).or(DEFAULT_PLACEMENT_STRATEGY);
+  }
+
+  /**
+   * @return placement strategies keyed by the name of the profile they are used for
+   */
+  public Map<String, String> getPlacementStrategies() {
+    return placementStrategies == null ? Collections.<String, String>emptyMap() : placementStrategies;
+  }
+
+  /**
+   * @param profileName
+   * @return the placement strategy for tasks of the given profile
+   */
+  public String getPlacementStrategy(String profileName) {
+    return Optional.fromNullable(getPlacementStrategies().get(profileName)).or(getPlacementStrategy());
+  }
+
+  public String getPlacementSpreadAttribute() {
+    return Optional.fromNullable(placementSpreadAttribute).or(DEFAULT_PLACEMENT_SPREAD_ATTRIBUTE);
+  }
+
+  public Long getOfferHoldTimeMs() {
+    return Optional.fromNullable(offerHoldTimeMs).or(DEFAULT_OFFER_HOLD_TIME_MS);
+  }
+
+  public Integer getOfferPoolSize() {
+    return Optional.fromNullable(offerPoolSize).or(DEFAULT_OFFER_POOL_SIZE);
+  }
+
+  public Double getDeclineRefuseSeconds() {
+    return Optional.fromNullable(declineRefuseSeconds).or(DEFAULT_DECLINE_REFUSE_SECONDS);
+  }
+
+  public Double getMaxDeclineRefuseSeconds() {
+    return Optional.fromNullable(maxDeclineRefuseSeconds).or(DEFAULT_MAX_DECLINE_REFUSE_SECONDS);
+  }
+
+  public Long getFgsLaunchBatchWindowMs() {
+    return Optional.fromNullable(fgsLaunchBatchWindowMs).or(DEFAULT_FGS_LAUNCH_BATCH_WINDOW_MS);
+  }
+
   public NodeManagerConfiguration getNodeManagerConfiguration() {
     return nodemanager;
   }
@@ -0,0 +1,53 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.myriad.scheduler;
+
+import java.util.Collection;
+import java.util.List;
+
+import org.apache.myriad.scheduler.resource.ResourceOfferContainer;
+import org.apache.myriad.state.NodeTask;
+
+/**
+ * Places a task on the offer it leaves the least cpu and memory of, so large offers stay available
+ * for large tasks. The leftover of each resource is measured in multiples of the task's demand, which
+ * makes cpus and memory comparable across agents of different sizes.
+ */
+public class BestFitPlacementStrategy implements OfferPlacementStrategy {
+  @Override
+  public ResourceOfferContainer select(ServiceResourceProfile profile, List<ResourceOfferContainer> offers,
+                                       Collection<NodeTask> tasks) {
+    ResourceOfferContainer best = null;
+    double bestLeftover = Double.MAX_VALUE;
+    for (ResourceOfferContainer offer : offers) {
+      double leftover = getLeftover(offer.getCpus(), profile.getAggregateCpu())
+          + getLeftover(offer.getMem(), profile.getAggregateMemory());
+      if (leftover < bestLeftover) {
+        best = offer;
+        bestLeftover = leftover;
+      }
+    }
+    return best;
+  }
+
+  private static double getLeftover(double offered, double requested) {
+    double leftover = offered - requested;
+    return requested > 0 ? leftover / requested : leftover;
+  }
+}
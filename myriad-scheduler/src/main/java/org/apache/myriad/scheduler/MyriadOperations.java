@@ -18,6 +18,7 @@
  */
 package org.apache.myriad.scheduler;
 
+import java.io.Closeable;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
@@ -33,9 +34,12 @@ import org.apache.myriad.configuration.ServiceConfiguration;
 import org.apache.myriad.policy.NodeScaleDownPolicy;
 import org.apache.myriad.scheduler.constraints.Constraint;
 import org.apache.myriad.scheduler.constraints.LikeConstraint;
+import org.apache.myriad.scheduler.fgs.ContainerTaskLauncher;
 import org.apache.myriad.state.MyriadStateStore;
 import org.apache.myriad.state.NodeTask;
 import org.apache.myriad.state.SchedulerState;
+import org.apache.myriad.state.SchedulerState.TaskState;
+import org.apache.myriad.state.SchedulerStateSnapshot;
 import org.apache.myriad.webapp.MyriadWebServer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -55,17 +59,29 @@ public class MyriadOperations {
   private MyriadDriverManager driverManager;
   private MyriadWebServer myriadWebServer;
   private MyriadStateStore myriadStateStore;
+  // Whether the state store was created by Myriad rather than being the RM's store
+  private boolean ownsStateStore;
+  private OfferPool offerPool;
+  private ContainerTaskLauncher containerTaskLauncher;
+  private ReconcileService reconcileService;
 
   @Inject
   public MyriadOperations(MyriadConfiguration cfg, SchedulerState schedulerState,
       NodeScaleDownPolicy nodeScaleDownPolicy, MyriadDriverManager driverManager,
-      MyriadWebServer myriadWebServer, RMContext rmContext) {
+      MyriadWebServer myriadWebServer, RMContext rmContext, OfferPool offerPool,
+      ContainerTaskLauncher containerTaskLauncher, ReconcileService reconcileService) {
     this.cfg = cfg;
+    this.offerPool = offerPool;
+    this.containerTaskLauncher = containerTaskLauncher;
+    this.reconcileService = reconcileService;
     this.schedulerState = schedulerState;
     this.nodeScaleDownPolicy = nodeScaleDownPolicy;
     this.driverManager = driverManager;
     this.myriadWebServer = myriadWebServer;
-    if (rmContext.getStateStore() instanceof MyriadStateStore) {
+    if (schedulerState.getStateStore() != null) {
+      myriadStateStore = schedulerState.getStateStore();
+      ownsStateStore = myriadStateStore != rmContext.getStateStore();
+    } else if (rmContext.getStateStore() instanceof MyriadStateStore) {
       myriadStateStore = (MyriadStateStore) rmContext.getStateStore();
     }
   }
@@ -85,6 +101,8 @@ public class MyriadOperations {
 
     LOGGER.info("Adding {} NM instances to cluster", nodes.size());
     this.schedulerState.addNodes(nodes);
+    // Launch the new tasks with the offers at hand rather than waiting for new ones
+    offerPool.release();
   }
 
   public void flexDownCluster(ServiceResourceProfile serviceResourceProfile, Constraint constraint, int numInstancesToScaleDown) {
@@ -148,6 +166,7 @@ public class MyriadOperations {
 
     LOGGER.info("Adding {} {} instances to cluster", nodes.size(), serviceName);
     this.schedulerState.addNodes(nodes);
+    offerPool.release();
   }
 
   /**
@@ -265,9 +284,10 @@ public class MyriadOperations {
   }
 
   public Integer getFlexibleInstances(String taskPrefix) {
-    return this.schedulerState.getActiveTaskIds(taskPrefix).size() +
-           this.schedulerState.getStagingTaskIds(taskPrefix).size() +
-           this.schedulerState.getPendingTaskIds(taskPrefix).size();
+    SchedulerStateSnapshot snapshot = this.schedulerState.getSnapshot();
+    return snapshot.getTaskCount(TaskState.ACTIVE, taskPrefix) +
+           snapshot.getTaskCount(TaskState.STAGING, taskPrefix) +
+           snapshot.getTaskCount(TaskState.PENDING, taskPrefix);
   }
 
   /**
@@ -275,6 +295,12 @@ public class MyriadOperations {
    */
   public void shutdownFramework() {
     LOGGER.info("Received request to shutdown Myriad Framework..");
+    // Issue the queued container task launches while the driver is still up
+    containerTaskLauncher.stop();
+    reconcileService.stop();
+    // Decline the held offers while the driver can still do so
+    offerPool.stop();
+
     Status driverStatus = driverManager.getDriverStatus();
 
     if (Status.DRIVER_RUNNING != driverStatus) {
@@ -292,6 +318,8 @@ public class MyriadOperations {
       LOGGER.info("Failed to shutdown Myriad webserver: " + e.getMessage());
     }
 
+    schedulerState.stop();
+
     if (myriadStateStore != null) {
       try {
         myriadStateStore.removeMyriadState();
@@ -300,5 +328,14 @@ public class MyriadOperations {
         LOGGER.info("Failed to remove Myriad state store: " + e.getMessage());
       }
     }
+
+    if (ownsStateStore && myriadStateStore instanceof Closeable) {
+      try {
+        ((Closeable) myriadStateStore).close();
+        LOGGER.info("Myriad State store was closed successfully.");
+      } catch (Exception e) {
+        LOGGER.info("Failed to close Myriad state store: " + e.getMessage());
+      }
+    }
   }
 }
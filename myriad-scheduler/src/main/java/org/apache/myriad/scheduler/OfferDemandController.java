@@ -0,0 +1,170 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.myriad.scheduler;
+
+import java.util.HashMap;
+import java.util.Map;
+import javax.inject.Inject;
+import org.apache.mesos.Protos;
+import org.apache.mesos.SchedulerDriver;
+import org.apache.myriad.configuration.MyriadConfiguration;
+import org.apache.myriad.state.SchedulerState;
+import org.apache.myriad.state.SchedulerState.TaskState;
+import org.apache.myriad.state.SchedulerStateSnapshot;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.annotations.VisibleForTesting;
+
+/**
+ * Keeps the offers Myriad receives in line with its demand for resources.
+ * <p/>
+ * Myriad has demand while tasks are pending or NMs eligible for fine grained scaling are running.
+ * Without demand offers are suppressed after a batch of offers was handled, and they are revived
+ * as soon as a task becomes pending. Offers that cannot be used are declined with a refuse_seconds
+ * filter that starts at declineRefuseSeconds and doubles with every further offer of the same host
+ * that has to be declined, up to maxDeclineRefuseSeconds, so hosts that never fit any task are
+ * offered ever less often. The backoff of a host ends once one of its offers is used or offers are
+ * revived.
+ */
+public class OfferDemandController {
+  private static final Logger LOGGER = LoggerFactory.getLogger(OfferDemandController.class);
+
+  private final SchedulerState schedulerState;
+  private final double refuseSeconds;
+  private final double maxRefuseSeconds;
+  private volatile SchedulerDriver driver;
+  private boolean suppressed;
+  private final Map<String, Integer> declinesByHost = new HashMap<>();
+
+  private final Meter offersReceived;
+  private final Meter offersUsed;
+  private final Meter offersDeclined;
+  private final Meter suppressCalls;
+  private final Meter reviveCalls;
+
+  @Inject
+  public OfferDemandController(SchedulerState schedulerState, MyriadConfiguration cfg, MetricRegistry metricRegistry) {
+    this.schedulerState = schedulerState;
+    this.refuseSeconds = cfg.getDeclineRefuseSeconds();
+    this.maxRefuseSeconds = cfg.getMaxDeclineRefuseSeconds();
+    this.offersReceived = metricRegistry.meter(MetricRegistry.name(OfferDemandController.class, "offersReceived"));
+    this.offersUsed = metricRegistry.meter(MetricRegistry.name(OfferDemandController.class, "offersUsed"));
+    this.offersDeclined = metricRegistry.meter(MetricRegistry.name(OfferDemandController.class, "offersDeclined"));
+    this.suppressCalls = metricRegistry.meter(MetricRegistry.name(OfferDemandController.class, "suppressCalls"));
+    this.reviveCalls = metricRegistry.meter(MetricRegistry.name(OfferDemandController.class, "reviveCalls"));
+    String suppressedName = MetricRegistry.name(OfferDemandController.class, "suppressed");
+    metricRegistry.remove(suppressedName);
+    metricRegistry.register(suppressedName, new Gauge<Boolean>() {
+      @Override
+      public Boolean getValue() {
+        return isSuppressed();
+      }
+    });
+    schedulerState.addPendingTaskListener(new Runnable() {
+      @Override
+      public void run() {
+        revive();
+      }
+    });
+  }
+
+  /**
+   * Records a batch of offers received from Mesos.
+   *
+   * @param driver
+   * @param count
+   */
+  public synchronized void offersReceived(SchedulerDriver driver, int count) {
+    this.driver = driver;
+    offersReceived.mark(count);
+    // Offers only arrive while they are not suppressed, e.g. after the framework re-registered
+    suppressed = false;
+  }
+
+  /**
+   * Records that an offer of the host was used to launch tasks.
+   *
+   * @param offer
+   */
+  public synchronized void offerUsed(Protos.Offer offer) {
+    offersUsed.mark();
+    declinesByHost.remove(offer.getHostname());
+  }
+
+  /**
+   * Declines the offer with a refuse_seconds filter that grows with the number of offers of its
+   * host declined in a row.
+   *
+   * @param driver
+   * @param offer
+   */
+  public void decline(SchedulerDriver driver, Protos.Offer offer) {
+    driver.declineOffer(offer.getId(), getDeclineFilters(offer.getHostname()));
+  }
+
+  @VisibleForTesting
+  synchronized Protos.Filters getDeclineFilters(String hostname) {
+    offersDeclined.mark();
+    Integer declines = declinesByHost.get(hostname);
+    declines = declines == null ? 0 : declines;
+    declinesByHost.put(hostname, declines + 1);
+    double seconds = Math.min(refuseSeconds * Math.pow(2, Math.min(declines, 30)), maxRefuseSeconds);
+    return Protos.Filters.newBuilder().setRefuseSeconds(seconds).build();
+  }
+
+  /**
+   * Suppresses offers if there is no demand for them, called after a batch of offers was handled.
+   */
+  public synchronized void offersHandled() {
+    if (suppressed || driver == null || hasDemand(schedulerState.getSnapshot())) {
+      return;
+    }
+    LOGGER.info("No pending tasks and no NMs for fine grained scaling, suppressing offers");
+    driver.suppressOffers();
+    suppressCalls.mark();
+    suppressed = true;
+  }
+
+  /**
+   * Revives offers if they are suppressed.
+   */
+  public synchronized void revive() {
+    if (!suppressed || driver == null) {
+      return;
+    }
+    LOGGER.info("Tasks are pending, reviving offers");
+    driver.reviveOffers();
+    reviveCalls.mark();
+    suppressed = false;
+    // Reviving clears all filters on the master
+    declinesByHost.clear();
+  }
+
+  public synchronized boolean isSuppressed() {
+    return suppressed;
+  }
+
+  private boolean hasDemand(SchedulerStateSnapshot snapshot) {
+    return snapshot.getTaskCount(TaskState.PENDING) > 0 || schedulerState.hasFineGrainedScalingHosts();
+  }
+}
@@ -0,0 +1,256 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.myriad.scheduler;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import org.apache.mesos.Protos;
+import org.apache.myriad.scheduler.constraints.Constraint;
+import org.apache.myriad.scheduler.resource.ResourceOfferContainer;
+import org.apache.myriad.state.NodeTask;
+import org.apache.myriad.state.SchedulerState.TaskState;
+import org.apache.myriad.state.SchedulerStateSnapshot;
+
+/**
+ * Matches resource offers against the pending tasks of a {@link SchedulerStateSnapshot}.
+ * <p/>
+ * Pending tasks are grouped into buckets of tasks with the same task prefix, profile and constraint,
+ * so an offer is evaluated once per distinct demand rather than once per pending task. The hostnames
+ * already running or staging a task of each prefix are kept in a set, replacing the linear scan of
+ * {@link SchedulerUtils#isUniqueHostname}.
+ * <p/>
+ * A matcher is meant to be used for a single batch of offers and is not thread safe.
+ */
+public class OfferMatcher {
+  private final SchedulerStateSnapshot snapshot;
+  private final Map<Demand, Bucket> buckets = new LinkedHashMap<>();
+  private final Map<String, Placements> placements = new HashMap<>();
+  private final Set<Protos.TaskID> missingTaskIds = new HashSet<>();
+
+  public OfferMatcher(SchedulerStateSnapshot snapshot) {
+    this.snapshot = snapshot;
+    for (Protos.TaskID taskId : snapshot.getTaskIds(TaskState.PENDING)) {
+      NodeTask task = snapshot.getTask(taskId);
+      if (task == null) {
+        missingTaskIds.add(taskId);
+        continue;
+      }
+      Demand demand = new Demand(task.getTaskPrefix(), task.getProfile(), task.getConstraint());
+      Bucket bucket = buckets.get(demand);
+      if (bucket == null) {
+        bucket = new Bucket(demand);
+        buckets.put(demand, bucket);
+      }
+      bucket.taskIds.add(taskId);
+    }
+  }
+
+  /**
+   * @return pending TaskIDs the snapshot has no NodeTask for
+   */
+  public Set<Protos.TaskID> getMissingTaskIds() {
+    return Collections.unmodifiableSet(missingTaskIds);
+  }
+
+  public boolean hasPendingTasks() {
+    return !buckets.isEmpty();
+  }
+
+  /**
+   * Returns the buckets with pending tasks. The pending tasks are not kept in the order they became
+   * pending, so neither the buckets nor the tasks within a bucket are in any particular order.
+   *
+   * @return List<Bucket>
+   */
+  public List<Bucket> getBuckets() {
+    return new ArrayList<>(buckets.values());
+  }
+
+  /**
+   * @param taskPrefix
+   * @return the tasks of the given type that are active, staging or were launched with this matcher
+   */
+  public Collection<NodeTask> getTasks(String taskPrefix) {
+    return Collections.unmodifiableList(getPlacements(taskPrefix).tasks);
+  }
+
+  /**
+   * Returns the buckets whose demand the offer satisfies, in the order of {@link #getBuckets()}.
+   *
+   * @param offer
+   * @return List<Bucket>
+   */
+  public List<Bucket> match(ResourceOfferContainer offer) {
+    List<Bucket> matches = new ArrayList<>();
+    for (Bucket bucket : buckets.values()) {
+      if (accepts(bucket, offer)) {
+        matches.add(bucket);
+      }
+    }
+    return matches;
+  }
+
+  /**
+   * @param bucket
+   * @param offer
+   * @return true if the offer is on a host without a task of the bucket's prefix and meets its demand
+   */
+  public boolean accepts(Bucket bucket, ResourceOfferContainer offer) {
+    Demand demand = bucket.demand;
+    return !getPlacements(demand.taskPrefix).hostnames.contains(normalize(offer.getHostName()))
+        && offer.satisfies(demand.profile, demand.constraint);
+  }
+
+  /**
+   * Records that the next task of the bucket was launched on the host the task was assigned.
+   *
+   * @param bucket
+   * @param task
+   */
+  public void launched(Bucket bucket, NodeTask task) {
+    getPlacements(bucket.demand.taskPrefix).add(task);
+    remove(bucket);
+  }
+
+  /**
+   * Drops the next task of the bucket without launching it, e.g. because it is no longer pending.
+   *
+   * @param bucket
+   */
+  public void remove(Bucket bucket) {
+    bucket.taskIds.poll();
+    if (bucket.taskIds.isEmpty()) {
+      buckets.remove(bucket.demand);
+    }
+  }
+
+  private Placements getPlacements(String taskPrefix) {
+    Placements forPrefix = placements.get(taskPrefix);
+    if (forPrefix == null) {
+      forPrefix = new Placements();
+      forPrefix.addAll(snapshot.getTaskIds(TaskState.ACTIVE, taskPrefix));
+      forPrefix.addAll(snapshot.getTaskIds(TaskState.STAGING, taskPrefix));
+      placements.put(taskPrefix, forPrefix);
+    }
+    return forPrefix;
+  }
+
+  private static String normalize(String hostname) {
+    return hostname.toLowerCase(Locale.ENGLISH);
+  }
+
+  /**
+   * Pending tasks sharing a task prefix, profile and constraint
+   */
+  public static class Bucket {
+    private final Demand demand;
+    private final Deque<Protos.TaskID> taskIds = new ArrayDeque<>();
+
+    private Bucket(Demand demand) {
+      this.demand = demand;
+    }
+
+    public String getTaskPrefix() {
+      return demand.taskPrefix;
+    }
+
+    public ServiceResourceProfile getProfile() {
+      return demand.profile;
+    }
+
+    public Constraint getConstraint() {
+      return demand.constraint;
+    }
+
+    /**
+     * @return the TaskID to launch next
+     */
+    public Protos.TaskID peek() {
+      return taskIds.peek();
+    }
+
+    public int size() {
+      return taskIds.size();
+    }
+  }
+
+  /**
+   * Tasks of one type that occupy a host
+   */
+  private final class Placements {
+    private final Set<String> hostnames = new HashSet<>();
+    private final List<NodeTask> tasks = new ArrayList<>();
+
+    private void addAll(Set<Protos.TaskID> taskIds) {
+      for (Protos.TaskID taskId : taskIds) {
+        NodeTask task = snapshot.getTask(taskId);
+        if (task != null && task.getHostname() != null) {
+          add(task);
+        }
+      }
+    }
+
+    private void add(NodeTask task) {
+      hostnames.add(normalize(task.getHostname()));
+      tasks.add(task);
+    }
+  }
+
+  private static final class Demand {
+    private final String taskPrefix;
+    private final ServiceResourceProfile profile;
+    private final Constraint constraint;
+
+    private Demand(String taskPrefix, ServiceResourceProfile profile, Constraint constraint) {
+      this.taskPrefix = taskPrefix;
+      this.profile = profile;
+      this.constraint = constraint;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof Demand)) {
+        return false;
+      }
+      Demand that = (Demand) o;
+      return Objects.equals(taskPrefix, that.taskPrefix) && Objects.equals(profile, that.profile)
+          && Objects.equals(constraint, that.constraint);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(taskPrefix, profile, constraint);
+    }
+  }
+}
@@ -0,0 +1,47 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.myriad.scheduler;
+
+import java.util.Collection;
+import java.util.List;
+
+import org.apache.myriad.scheduler.resource.ResourceOfferContainer;
+import org.apache.myriad.state.NodeTask;
+
+/**
+ * Decides which of the offers that can hold a pending task the task is placed on. The strategy for
+ * a profile is configured with placementStrategies in the MyriadConfiguration.
+ */
+public interface OfferPlacementStrategy {
+  String FIRST_FIT = "first-fit";
+  String BEST_FIT = "best-fit";
+  String SPREAD = "spread";
+
+  /**
+   * Chooses the offer the next task of the given profile is placed on.
+   *
+   * @param profile profile of the task to place
+   * @param offers  offers that satisfy the task and are on hosts without a task of the same type, never empty.
+   *                Offers with reserved resources come first.
+   * @param tasks   tasks of the same type that are already placed, i.e. active, staging or placed in this round
+   * @return one of the offers
+   */
+  ResourceOfferContainer select(ServiceResourceProfile profile, List<ResourceOfferContainer> offers,
+                                Collection<NodeTask> tasks);
+}
@@ -0,0 +1,250 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.myriad.scheduler;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.inject.Inject;
+import org.apache.mesos.Protos;
+import org.apache.mesos.SchedulerDriver;
+import org.apache.myriad.DisruptorManager;
+import org.apache.myriad.configuration.MyriadConfiguration;
+import org.apache.myriad.scheduler.event.ResourceOffersEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.lmax.disruptor.EventTranslator;
+
+/**
+ * Holds on to offers that could not be used right away for offerHoldTimeMs instead of declining
+ * them, so tasks that become pending in the meantime can be launched without waiting for Mesos
+ * to offer the resources again. At most offerPoolSize offers are held, an offer that is rescinded
+ * is dropped and one that is held for too long is declined.
+ * <p/>
+ * Held offers are handed back to the {@link org.apache.myriad.scheduler.event.handlers.ResourceOffersEventHandler}
+ * with the next batch of offers, or with {@link #release()} when new tasks are pending. An offer that is
+ * still unused is held again with the expiry it was first held with, so it is declined after offerHoldTimeMs
+ * no matter how many batches it was matched with.
+ */
+public class OfferPool {
+  private static final Logger LOGGER = LoggerFactory.getLogger(OfferPool.class);
+
+  private static final long MAX_EXPIRY_INTERVAL_MS = 1000;
+
+  private final DisruptorManager disruptorManager;
+  private final OfferDemandController demandController;
+  private final long holdTimeMs;
+  private final int size;
+  private ScheduledExecutorService executor;
+  private boolean stopped;
+
+  private final Map<Protos.OfferID, HeldOffer> offers = new LinkedHashMap<>();
+
+  @Inject
+  public OfferPool(MyriadConfiguration cfg, DisruptorManager disruptorManager, OfferDemandController demandController) {
+    this.disruptorManager = disruptorManager;
+    this.demandController = demandController;
+    this.holdTimeMs = cfg.getOfferHoldTimeMs();
+    this.size = cfg.getOfferPoolSize();
+  }
+
+  /**
+   * Holds the offer unless holding offers is disabled or the pool is full.
+   *
+   * @param driver
+   * @param offer
+   * @return false if the offer was not held and has to be declined by the caller
+   */
+  public boolean hold(SchedulerDriver driver, Protos.Offer offer) {
+    long now = System.currentTimeMillis();
+    return holdUntil(driver, offer, now + holdTimeMs, now);
+  }
+
+  /**
+   * Holds an offer drained from the pool again, until the expiry it was first held with.
+   *
+   * @param driver
+   * @param offer
+   * @param expiry
+   * @return false if the offer was not held and has to be declined by the caller
+   */
+  public boolean holdUntil(SchedulerDriver driver, Protos.Offer offer, long expiry) {
+    return holdUntil(driver, offer, expiry, System.currentTimeMillis());
+  }
+
+  @VisibleForTesting
+  synchronized boolean holdUntil(SchedulerDriver driver, Protos.Offer offer, long expiry, long now) {
+    if (stopped || holdTimeMs <= 0 || offers.size() >= size || expiry <= now) {
+      return false;
+    }
+    offers.put(offer.getId(), new HeldOffer(driver, offer, expiry));
+    start();
+    return true;
+  }
+
+  /**
+   * Removes all held offers from the pool.
+   *
+   * @return the held offers
+   */
+  public synchronized List<HeldOffer> drain() {
+    List<HeldOffer> drained = new ArrayList<>(offers.values());
+    offers.clear();
+    return drained;
+  }
+
+  /**
+   * Has the held offers handed back to the ResourceOffersEventHandler, e.g. after tasks became pending.
+   * The offers stay in the pool until the handler drains them, the event published carries no offers
+   * so they aren't counted as received again.
+   */
+  public void release() {
+    Set<SchedulerDriver> drivers = new LinkedHashSet<>();
+    synchronized (this) {
+      for (HeldOffer held : offers.values()) {
+        drivers.add(held.driver);
+      }
+    }
+    for (final SchedulerDriver driver : drivers) {
+      LOGGER.debug("Releasing held offers");
+      disruptorManager.getResourceOffersEventDisruptor().publishEvent(new EventTranslator<ResourceOffersEvent>() {
+        @Override
+        public void translateTo(ResourceOffersEvent event, long sequence) {
+          event.setDriver(driver);
+          event.setOffers(Collections.<Protos.Offer>emptyList());
+        }
+      });
+    }
+  }
+
+  /**
+   * Drops a rescinded offer.
+   *
+   * @param offerId
+   * @return true if the offer was held
+   */
+  public synchronized boolean rescind(Protos.OfferID offerId) {
+    return offers.remove(offerId) != null;
+  }
+
+  public synchronized int getHeldCount() {
+    return offers.size();
+  }
+
+  /**
+   * Declines the offers held for longer than offerHoldTimeMs.
+   *
+   * @param now
+   * @return number of offers declined
+   */
+  @VisibleForTesting
+  int declineExpired(long now) {
+    List<HeldOffer> expired = new ArrayList<>();
+    synchronized (this) {
+      for (Iterator<HeldOffer> iterator = offers.values().iterator(); iterator.hasNext(); ) {
+        // Offers held again keep their expiry, so the pool isn't ordered by it
+        HeldOffer held = iterator.next();
+        if (held.expiry > now) {
+          continue;
+        }
+        expired.add(held);
+        iterator.remove();
+      }
+    }
+    for (HeldOffer held : expired) {
+      LOGGER.debug("Declining offer {} held for {} ms", held.offer.getId().getValue(), holdTimeMs);
+      demandController.decline(held.driver, held.offer);
+    }
+    return expired.size();
+  }
+
+  /**
+   * Stops holding offers and declines the offers still held, so they are offered to other
+   * frameworks instead of waiting for the driver to go away. Must be called while the driver
+   * is still running.
+   */
+  public void stop() {
+    List<HeldOffer> held;
+    synchronized (this) {
+      stopped = true;
+      if (executor != null) {
+        executor.shutdownNow();
+        executor = null;
+      }
+      held = drain();
+    }
+    for (HeldOffer offer : held) {
+      LOGGER.debug("Declining held offer {} on shutdown", offer.offer.getId().getValue());
+      demandController.decline(offer.driver, offer.offer);
+    }
+  }
+
+  private synchronized void start() {
+    if (executor != null) {
+      return;
+    }
+    executor = Executors.newSingleThreadScheduledExecutor(
+        new ThreadFactoryBuilder().setNameFormat("myriad-offer-pool").setDaemon(true).build());
+    long interval = Math.min(holdTimeMs, MAX_EXPIRY_INTERVAL_MS);
+    executor.scheduleWithFixedDelay(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          declineExpired(System.currentTimeMillis());
+        } catch (Exception e) {
+          LOGGER.error("Failed to decline expired offers", e);
+        }
+      }
+    }, interval, interval, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * An offer in the pool and when it expires
+   */
+  public static class HeldOffer {
+    private final SchedulerDriver driver;
+    private final Protos.Offer offer;
+    private final long expiry;
+
+    private HeldOffer(SchedulerDriver driver, Protos.Offer offer, long expiry) {
+      this.driver = driver;
+      this.offer = offer;
+      this.expiry = expiry;
+    }
+
+    public Protos.Offer getOffer() {
+      return offer;
+    }
+
+    public long getExpiry() {
+      return expiry;
+    }
+  }
+}
@@ -18,11 +18,11 @@
  */
 package org.apache.myriad.scheduler;
 
-import java.util.Set;
 import javax.inject.Inject;
-import org.apache.mesos.Protos;
 import org.apache.myriad.configuration.NodeManagerConfiguration;
 import org.apache.myriad.state.SchedulerState;
+import org.apache.myriad.state.SchedulerState.TaskState;
+import org.apache.myriad.state.SchedulerStateSnapshot;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -46,10 +46,11 @@ public class Rebalancer implements Runnable {
 
   @Override
   public void run() {
-    final Set<Protos.TaskID> activeIds = schedulerState.getActiveTaskIds(NodeManagerConfiguration.DEFAULT_NM_TASK_PREFIX);
-    final Set<Protos.TaskID> pendingIds = schedulerState.getPendingTaskIds(NodeManagerConfiguration.DEFAULT_NM_TASK_PREFIX);
-    LOGGER.info("Active {}, Pending {}", activeIds.size(), pendingIds.size());
-    if (activeIds.size() < 1 && pendingIds.size() < 1) {
+    final SchedulerStateSnapshot snapshot = schedulerState.getSnapshot();
+    final int activeCount = snapshot.getTaskCount(TaskState.ACTIVE, NodeManagerConfiguration.DEFAULT_NM_TASK_PREFIX);
+    final int pendingCount = snapshot.getTaskCount(TaskState.PENDING, NodeManagerConfiguration.DEFAULT_NM_TASK_PREFIX);
+    LOGGER.info("Active {}, Pending {}", activeCount, pendingCount);
+    if (activeCount < 1 && pendingCount < 1) {
       myriadOperations.flexUpCluster(profileManager.get("small"), 1, null);
     }
     //            RestAdapter restAdapter = new RestAdapter.Builder()
@@ -19,27 +19,52 @@
 package org.apache.myriad.scheduler;
 
 import java.util.ArrayList;
-import java.util.Collection;
-import java.util.Date;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import javax.inject.Inject;
 import org.apache.mesos.Protos;
 import org.apache.mesos.SchedulerDriver;
 import org.apache.myriad.configuration.MyriadConfiguration;
+import org.apache.myriad.state.NodeTask;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
 /**
  * {@link ReconcileService} is responsible for reconciling tasks with the mesos master
+ * <p/>
+ * {@link #reconcile(SchedulerDriver)} only queues an explicit reconciliation of all known tasks
+ * and returns, the reconciliation itself runs on the service's own thread. Every task that is
+ * being reconciled has a deadline in a queue ordered by deadline. Once a task's deadline passes
+ * without a status update for it having arrived, its reconciliation is requested again, with a
+ * linearly growing delay, for up to {@link #MAX_RECONCILE_ATTEMPTS} attempts. Requests are sent
+ * in chunks of at most reconcileChunkSize tasks, so each round only looks at the tasks that
+ * are due. In addition an implicit reconciliation is requested every
+ * implicitReconcileIntervalMs.
  */
 public class ReconcileService {
   private static final Logger LOGGER = LoggerFactory.getLogger(ReconcileService.class);
 
   public static final long DEFAULT_RECONCILATION_DELAY_MS = 10000;
   public static final long MAX_RECONCILE_ATTEMPTS = 10;
+  private static final long ROUND_INTERVAL_MS = 1000;
 
   private org.apache.myriad.state.SchedulerState state;
   private MyriadConfiguration cfg;
-  private Date lastReconcileTime;
+  private volatile SchedulerDriver driver;
+  private ScheduledExecutorService executor;
+
+  // The queue may hold outdated entries of a task, only the one in pending is current
+  private final Map<Protos.TaskID, Reconciliation> pending = new HashMap<>();
+  private final PriorityQueue<Reconciliation> deadlines = new PriorityQueue<>();
 
   @Inject
   public ReconcileService(org.apache.myriad.state.SchedulerState state, MyriadConfiguration cfg) {
@@ -47,37 +72,162 @@ public class ReconcileService {
     this.cfg = cfg;
   }
 
+  /**
+   * Queues the reconciliation of all known tasks, starts the service if it is not running yet
+   * and returns without waiting for the reconciliation.
+   *
+   * @param driver
+   */
   public void reconcile(SchedulerDriver driver) {
-    Collection<Protos.TaskStatus> taskStatuses = state.getTaskStatuses();
+    int queued = queueAll(driver, System.currentTimeMillis());
+    LOGGER.info("Reconciling {} tasks.", queued);
+    start();
+  }
 
-    if (taskStatuses.size() == 0) {
-      return;
+  /**
+   * Makes all tasks with a status due for reconciliation.
+   *
+   * @param driver
+   * @param now
+   * @return number of tasks queued
+   */
+  @VisibleForTesting
+  synchronized int queueAll(SchedulerDriver driver, long now) {
+    this.driver = driver;
+    int queued = 0;
+    for (NodeTask task : state.getSnapshot().getTasks().values()) {
+      Protos.TaskStatus taskStatus = task.getTaskStatus();
+      if (taskStatus != null) {
+        schedule(new Reconciliation(taskStatus.getTaskId(), 0, now));
+        queued++;
+      }
     }
-    LOGGER.info("Reconciling {} tasks.", taskStatuses.size());
-
-    driver.reconcileTasks(taskStatuses);
+    return queued;
+  }
 
-    lastReconcileTime = new Date();
+  /**
+   * Marks the task as reconciled, called for every status update received.
+   *
+   * @param taskId
+   */
+  public synchronized void statusReceived(Protos.TaskID taskId) {
+    // The entry in the deadline queue is skipped once it is due
+    pending.remove(taskId);
+  }
 
-    int attempt = 1;
+  /**
+   * Stops reconciling.
+   */
+  public synchronized void stop() {
+    if (executor != null) {
+      executor.shutdownNow();
+      executor = null;
+    }
+  }
 
-    while (attempt <= MAX_RECONCILE_ATTEMPTS) {
-      try {
-        // TODO(mohit): Using exponential backoff here, maybe backoff strategy should be configurable.
-        Thread.sleep(DEFAULT_RECONCILATION_DELAY_MS * attempt);
-      } catch (InterruptedException e) {
-        LOGGER.error("Interrupted", e);
+  private synchronized void start() {
+    if (executor != null) {
+      return;
+    }
+    executor = Executors.newSingleThreadScheduledExecutor(
+        new ThreadFactoryBuilder().setNameFormat("myriad-reconcile").setDaemon(true).build());
+    executor.scheduleWithFixedDelay(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          reconcileDueTasks(System.currentTimeMillis());
+        } catch (RuntimeException e) {
+          LOGGER.error("Failed to reconcile tasks", e);
+        }
       }
-      Collection<Protos.TaskStatus> notYetReconciled = new ArrayList<>();
-      for (Protos.TaskStatus status : state.getTaskStatuses()) {
-        if (status.getTimestamp() < lastReconcileTime.getTime()) {
-          notYetReconciled.add(status);
+    }, 0, ROUND_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    long implicitInterval = cfg.getImplicitReconcileIntervalMs();
+    if (implicitInterval > 0) {
+      executor.scheduleAtFixedRate(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            LOGGER.debug("Requesting implicit reconciliation");
+            driver.reconcileTasks(Collections.<Protos.TaskStatus>emptyList());
+          } catch (RuntimeException e) {
+            // An exception would cancel the periodic implicit reconciliation
+            LOGGER.error("Failed to request implicit reconciliation", e);
+          }
         }
+      }, implicitInterval, implicitInterval, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  /**
+   * Requests the reconciliation of the tasks whose deadline has passed, at most one chunk per
+   * call, and schedules their next attempt.
+   *
+   * @param now
+   * @return number of tasks whose reconciliation was requested
+   */
+  @VisibleForTesting
+  int reconcileDueTasks(long now) {
+    List<Protos.TaskStatus> due = new ArrayList<>();
+    int chunkSize = cfg.getReconcileChunkSize();
+    synchronized (this) {
+      while (due.size() < chunkSize && !deadlines.isEmpty() && deadlines.peek().deadline <= now) {
+        Reconciliation reconciliation = deadlines.poll();
+        if (pending.get(reconciliation.taskId) != reconciliation) {
+          continue;
+        }
+        NodeTask task = state.getTask(reconciliation.taskId);
+        if (task == null || task.getTaskStatus() == null) {
+          pending.remove(reconciliation.taskId);
+          continue;
+        }
+        if (reconciliation.attempt > MAX_RECONCILE_ATTEMPTS) {
+          LOGGER.warn("Task {} was not reconciled after {} attempts", reconciliation.taskId.getValue(),
+              MAX_RECONCILE_ATTEMPTS);
+          pending.remove(reconciliation.taskId);
+          continue;
+        }
+        due.add(task.getTaskStatus());
+        int attempt = reconciliation.attempt + 1;
+        // Each attempt waits reconcileDelayMs longer than the one before
+        schedule(new Reconciliation(reconciliation.taskId, attempt, now + cfg.getReconcileDelayMs() * attempt));
       }
-      LOGGER.info("Reconcile attempt {} for {} tasks", attempt, notYetReconciled.size());
-      driver.reconcileTasks(notYetReconciled);
-      lastReconcileTime = new Date();
-      attempt++;
+    }
+    if (!due.isEmpty()) {
+      LOGGER.info("Requesting reconciliation of {} tasks, {} tasks not yet reconciled", due.size(), getPendingCount());
+      driver.reconcileTasks(due);
+    }
+    return due.size();
+  }
+
+  /**
+   * @return number of tasks that are being reconciled
+   */
+  public synchronized int getPendingCount() {
+    return pending.size();
+  }
+
+  private void schedule(Reconciliation reconciliation) {
+    pending.put(reconciliation.taskId, reconciliation);
+    deadlines.add(reconciliation);
+  }
+
+  /**
+   * Next reconciliation attempt of a task
+   */
+  private static class Reconciliation implements Comparable<Reconciliation> {
+    private final Protos.TaskID taskId;
+    private final int attempt;
+    private final long deadline;
+
+    Reconciliation(Protos.TaskID taskId, int attempt, long deadline) {
+      this.taskId = taskId;
+      this.attempt = attempt;
+      this.deadline = deadline;
+    }
+
+    @Override
+    public int compareTo(Reconciliation other) {
+      return Long.compare(deadline, other.deadline);
     }
   }
 }
@@ -22,7 +22,6 @@ import com.google.common.base.Preconditions;
 import java.util.Collection;
 import org.apache.commons.collections.CollectionUtils;
 import org.apache.mesos.Protos;
-import org.apache.myriad.configuration.NodeManagerConfiguration;
 import org.apache.myriad.state.NodeTask;
 import org.apache.myriad.state.SchedulerState;
 import org.slf4j.Logger;
@@ -59,13 +58,6 @@ public class SchedulerUtils {
    * @return
    */
   public static boolean isEligibleForFineGrainedScaling(String hostName, SchedulerState state) {
-    for (NodeTask activeNMTask : state.getActiveTasksByType(NodeManagerConfiguration.DEFAULT_NM_TASK_PREFIX)) {
-      if (activeNMTask.getProfile().getCpus() == 0 &&
-          activeNMTask.getProfile().getMemory() == 0 &&
-          activeNMTask.getHostname().equals(hostName)) {
-        return true;
-      }
-    }
-    return false;
+    return state.isEligibleForFineGrainedScaling(hostName);
   }
 }
@@ -26,6 +26,7 @@ import com.google.gson.JsonParseException;
 import java.lang.reflect.Type;
 import java.util.Map;
 
+import org.apache.myriad.scheduler.resource.ResourceVector;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -54,6 +55,8 @@ public class ServiceResourceProfile {
 
   protected Map<String, Long> ports;
 
+  private transient ResourceVector resourceVector;
+
   public ServiceResourceProfile(String name, Double cpus, Double mem, Map<String, Long> ports) {
     this.name = name;
     this.cpus = cpus;
@@ -86,6 +89,16 @@ public class ServiceResourceProfile {
     return ports;
   }
 
+  /**
+   * @return the aggregate cpus and memory as a ResourceVector, computed once. It must not be modified.
+   */
+  public ResourceVector getResourceVector() {
+    if (resourceVector == null) {
+      resourceVector = ResourceVector.fromProfile(this);
+    }
+    return resourceVector;
+  }
+
   @Override
   public String toString() {
     Gson gson = new Gson();
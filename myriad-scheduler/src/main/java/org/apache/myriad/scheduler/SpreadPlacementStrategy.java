@@ -0,0 +1,87 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.myriad.scheduler;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.mesos.Protos;
+import org.apache.myriad.scheduler.resource.ResourceOfferContainer;
+import org.apache.myriad.state.NodeTask;
+
+/**
+ * Places a task on the offer whose failure domain holds the fewest tasks of the same type. The
+ * failure domain of an agent is the value of a Mesos agent attribute such as "rack", agents without
+ * the attribute are a domain of their own.
+ */
+public class SpreadPlacementStrategy implements OfferPlacementStrategy {
+  private final String attributeName;
+
+  public SpreadPlacementStrategy(String attributeName) {
+    this.attributeName = attributeName;
+  }
+
+  @Override
+  public ResourceOfferContainer select(ServiceResourceProfile profile, List<ResourceOfferContainer> offers,
+                                       Collection<NodeTask> tasks) {
+    Map<String, Integer> tasksPerDomain = new HashMap<>();
+    for (NodeTask task : tasks) {
+      String domain = getDomain(task.getSlaveAttributes(), task.getHostname());
+      Integer count = tasksPerDomain.get(domain);
+      tasksPerDomain.put(domain, count == null ? 1 : count + 1);
+    }
+    ResourceOfferContainer best = null;
+    int bestCount = Integer.MAX_VALUE;
+    for (ResourceOfferContainer offer : offers) {
+      Integer count = tasksPerDomain.get(getDomain(offer.getOffer().getAttributesList(), offer.getHostName()));
+      if (count == null) {
+        return offer;
+      }
+      if (count < bestCount) {
+        best = offer;
+        bestCount = count;
+      }
+    }
+    return best;
+  }
+
+  private String getDomain(List<Protos.Attribute> attributes, String hostname) {
+    if (attributes != null) {
+      for (Protos.Attribute attribute : attributes) {
+        if (attribute.getName().equalsIgnoreCase(attributeName)) {
+          return attributeName + "=" + getValue(attribute);
+        }
+      }
+    }
+    return "host=" + hostname;
+  }
+
+  private static String getValue(Protos.Attribute attribute) {
+    switch (attribute.getType()) {
+      case TEXT:
+        return attribute.getText().getValue();
+      case SCALAR:
+        return String.valueOf(attribute.getScalar().getValue());
+      default:
+        return attribute.toString();
+    }
+  }
+}
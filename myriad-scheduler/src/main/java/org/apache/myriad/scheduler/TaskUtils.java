@@ -21,10 +21,12 @@ package org.apache.myriad.scheduler;
 import org.apache.mesos.Protos;
 import org.apache.myriad.configuration.MyriadConfiguration;
 import org.apache.myriad.executor.MyriadExecutorDefaults;
+import org.apache.myriad.scheduler.resource.ResourceVector;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import javax.inject.Inject;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
@@ -83,25 +85,29 @@ public class TaskUtils {
    * @return An Iterable containing one or two scalar resources of a given name in an offer up to a given value.
    */
   public Iterable<Protos.Resource> getScalarResource(Protos.Offer offer, String name, Double value, Double used) {
+    return getScalarResource(getResources(offer), name, value, used);
+  }
+
+  /**
+   * Same as {@link #getScalarResource(Protos.Offer, String, Double, Double)} for an offer already
+   * summed up with {@link #getResources(Protos.Offer)}, so the offer is walked once for all names.
+   *
+   * @param offerResources - The resources of an offer by Mesos, assumed to have enough resources.
+   * @param name  - The name of the SCALAR resource, i.e. cpus or mem
+   * @param value - The amount of SCALAR resources needed.
+   * @param used  - The amount of SCALAR resources already removed from this offer.
+   * @return An Iterable containing one or two scalar resources of a given name in an offer up to a given value.
+   */
+  public Iterable<Protos.Resource> getScalarResource(ResourceVector offerResources, String name, double value, double used) {
     String role = cfg.getFrameworkRole();
     List<Protos.Resource> resources = new ArrayList<Protos.Resource>();
 
-    double resourceDifference = 0; //used to determine the resource difference of value and the resources requested from role *
-    //Find role by name, must loop through resources
-    for (Protos.Resource r : offer.getResourcesList()) {
-      if (r.getName().equals(name) && r.hasRole() && r.getRole().equals(role) && r.hasScalar()) {
-        //Use Math.max in case used>resourceValue
-        resourceDifference = Math.max(r.getScalar().getValue() - used, 0.0);
-        if (resourceDifference > 0) {
-          resources.add(Protos.Resource.newBuilder().setName(name).setType(Protos.Value.Type.SCALAR)
-              .setScalar(Protos.Value.Scalar.newBuilder().setValue(Math.min(value, resourceDifference)).build())
-              .setRole(role).build());
-        }
-        break;
-      } else if (r.getName().equals(name) && r.hasRole() && r.getRole().equals(role)) {
-        //Should never get here, there must be a miss configured slave
-        LOGGER.warn("Resource with name: " + name + "expected type to be SCALAR check configuration on: " + offer.getHostname());
-      }
+    //Use Math.max in case used>resourceValue
+    double resourceDifference = Math.max(offerResources.getReserved(name) - used, 0.0);
+    if (resourceDifference > 0) {
+      resources.add(Protos.Resource.newBuilder().setName(name).setType(Protos.Value.Type.SCALAR)
+          .setScalar(Protos.Value.Scalar.newBuilder().setValue(Math.min(value, resourceDifference)).build())
+          .setRole(role).build());
     }
     //Assume enough resources are present in default value, if not we shouldn't have gotten to this function.
     if (value - resourceDifference > 0) {
@@ -111,4 +117,40 @@ public class TaskUtils {
     }
     return resources;
   }
+
+  /**
+   * @param offer
+   * @return the scalar resources of the offer, split by whether they are reserved for the framework role
+   */
+  public ResourceVector getResources(Protos.Offer offer) {
+    return ResourceVector.fromOffer(offer, cfg.getFrameworkRole());
+  }
+
+  /**
+   * @param offers
+   * @return the scalar resources of the offers, split by whether they are reserved for the framework role
+   */
+  public ResourceVector getResources(Collection<Protos.Offer> offers) {
+    ResourceVector resources = new ResourceVector();
+    for (Protos.Offer offer : offers) {
+      resources.addOffer(offer, cfg.getFrameworkRole());
+    }
+    return resources;
+  }
+
+  /**
+   * Like {@link #getScalarResource(ResourceVector, String, double, double)}, but takes the resources
+   * out of remainingResources, so tasks sharing the same offers don't claim the same reserved resources.
+   *
+   * @param remainingResources - The resources left of the offers, assumed to have enough resources.
+   * @param name  - The name of the SCALAR resource, i.e. cpus or mem
+   * @param value - The amount of SCALAR resources needed.
+   * @return An Iterable containing one or two scalar resources of a given name up to a given value.
+   */
+  public Iterable<Protos.Resource> consumeScalarResource(ResourceVector remainingResources, String name, double value) {
+    double reserved = Math.min(value, Math.max(remainingResources.getReserved(name), 0.0));
+    Iterable<Protos.Resource> resources = getScalarResource(remainingResources, name, value, 0.0);
+    remainingResources.add(name, -reserved, true).add(name, reserved - value, false);
+    return resources;
+  }
 }
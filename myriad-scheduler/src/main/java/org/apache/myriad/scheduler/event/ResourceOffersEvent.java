@@ -18,17 +18,27 @@
  */
 package org.apache.myriad.scheduler.event;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import org.apache.mesos.Protos;
 import org.apache.mesos.SchedulerDriver;
+import org.apache.myriad.scheduler.resource.ResourceOfferContainer;
 
 /**
  * resource offer event
+ * <p/>
+ * Besides the offers received, the event carries what the offer processing stages of
+ * {@link org.apache.myriad.scheduler.event.handlers.ResourceOffersEventHandler} pass on to each other.
  */
 public class ResourceOffersEvent {
   private SchedulerDriver driver;
   private List<Protos.Offer> offers;
 
+  private boolean frameworkRegistered;
+  private List<ClassifiedOffer> classifiedOffers;
+  private Map<Protos.OfferID, Collection<Protos.TaskInfo>> launches;
+
   public SchedulerDriver getDriver() {
     return driver;
   }
@@ -44,4 +54,86 @@ public class ResourceOffersEvent {
   public void setOffers(List<Protos.Offer> offers) {
     this.offers = offers;
   }
+
+  public boolean isFrameworkRegistered() {
+    return frameworkRegistered;
+  }
+
+  public void setFrameworkRegistered(boolean frameworkRegistered) {
+    this.frameworkRegistered = frameworkRegistered;
+  }
+
+  /**
+   * @return the offers received together with the offers held back from earlier batches, reserved ones first
+   */
+  public List<ClassifiedOffer> getClassifiedOffers() {
+    return classifiedOffers;
+  }
+
+  public void setClassifiedOffers(List<ClassifiedOffer> classifiedOffers) {
+    this.classifiedOffers = classifiedOffers;
+  }
+
+  /**
+   * @return the tasks to launch per offer
+   */
+  public Map<Protos.OfferID, Collection<Protos.TaskInfo>> getLaunches() {
+    return launches;
+  }
+
+  public void setLaunches(Map<Protos.OfferID, Collection<Protos.TaskInfo>> launches) {
+    this.launches = launches;
+  }
+
+  /**
+   * An offer with what is needed to match and dispatch it, worked out once
+   */
+  public static class ClassifiedOffer {
+    private final Protos.Offer offer;
+    private final boolean reserved;
+    private final boolean fineGrainedScaling;
+    private final ResourceOfferContainer resources;
+    private final long heldUntil;
+
+    public ClassifiedOffer(Protos.Offer offer, boolean reserved, boolean fineGrainedScaling,
+                           ResourceOfferContainer resources, long heldUntil) {
+      this.offer = offer;
+      this.reserved = reserved;
+      this.fineGrainedScaling = fineGrainedScaling;
+      this.resources = resources;
+      this.heldUntil = heldUntil;
+    }
+
+    public Protos.Offer getOffer() {
+      return offer;
+    }
+
+    /**
+     * @return true if the offer has resources reserved for a role
+     */
+    public boolean isReserved() {
+      return reserved;
+    }
+
+    /**
+     * @return true if the offer is from a host eligible for fine grained scaling
+     */
+    public boolean isFineGrainedScaling() {
+      return fineGrainedScaling;
+    }
+
+    /**
+     * @return the resources parsed from the offer, to be forked before consuming from them
+     */
+    public ResourceOfferContainer getResources() {
+      return resources;
+    }
+
+    /**
+     * @return when the offer held back from an earlier batch expires, 0 for an offer just received
+     */
+    public long getHeldUntil() {
+      return heldUntil;
+    }
+  }
 }
@@ -0,0 +1,132 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.myriad.scheduler.event.handlers;
+
+import com.lmax.disruptor.EventHandler;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Objects;
+import org.apache.mesos.Protos;
+import org.apache.mesos.Protos.Offer;
+import org.apache.mesos.SchedulerDriver;
+import org.apache.myriad.scheduler.OfferDemandController;
+import org.apache.myriad.scheduler.OfferPool;
+import org.apache.myriad.scheduler.SchedulerUtils;
+import org.apache.myriad.scheduler.event.ResourceOffersEvent;
+import org.apache.myriad.scheduler.event.ResourceOffersEvent.ClassifiedOffer;
+import org.apache.myriad.scheduler.resource.ResourceOfferContainer;
+import org.apache.myriad.state.SchedulerState;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static org.apache.myriad.configuration.MyriadConfiguration.DEFAULT_ROLE;
+
+/**
+ * First stage of offer processing: adds the held back offers to the batch, records the attributes
+ * of the offering slaves and works out for every offer whether it has reserved resources, whether
+ * its host is eligible for fine grained scaling and which resources it holds.
+ */
+public class OfferClassificationHandler implements EventHandler<ResourceOffersEvent> {
+  private static final Logger LOGGER = LoggerFactory.getLogger(OfferClassificationHandler.class);
+
+  private static final Comparator<ClassifiedOffer> RESERVED_FIRST = new Comparator<ClassifiedOffer>() {
+    @Override
+    public int compare(ClassifiedOffer o1, ClassifiedOffer o2) {
+      if (o1.isReserved() == o2.isReserved()) {
+        return 0;
+      }
+      return o1.isReserved() ? -1 : 1;
+    }
+  };
+
+  private final SchedulerState schedulerState;
+  private final OfferPool offerPool;
+  private final OfferDemandController demandController;
+  private final String role;
+
+  public OfferClassificationHandler(SchedulerState schedulerState, OfferPool offerPool,
+                                    OfferDemandController demandController, String role) {
+    this.schedulerState = schedulerState;
+    this.offerPool = offerPool;
+    this.demandController = demandController;
+    this.role = role;
+  }
+
+  @Override
+  public void onEvent(ResourceOffersEvent event, long sequence, boolean endOfBatch) throws Exception {
+    SchedulerDriver driver = event.getDriver();
+    // Offers held back from earlier batches are matched again together with the new ones
+    List<Offer> offers = event.getOffers();
+    if (!offers.isEmpty()) {
+      demandController.offersReceived(driver, offers.size());
+    }
+    List<OfferPool.HeldOffer> heldOffers = offerPool.drain();
+
+    List<ClassifiedOffer> classifiedOffers = new ArrayList<>(offers.size() + heldOffers.size());
+    event.setClassifiedOffers(classifiedOffers);
+    event.setLaunches(new LinkedHashMap<Protos.OfferID, Collection<Protos.TaskInfo>>());
+
+    // Sometimes, we see that mesos sends resource offers before Myriad receives
+    // a notification for "framework registration". This is a simple defensive code
+    // to not process any offers unless Myriad receives a "framework registered" notification.
+    event.setFrameworkRegistered(schedulerState.getFrameworkID() != null);
+    if (!event.isFrameworkRegistered()) {
+      LOGGER.warn("Received {} offers, but declining them since Framework ID is not yet set",
+          offers.size() + heldOffers.size());
+      for (Offer offer : offers) {
+        classifiedOffers.add(new ClassifiedOffer(offer, false, false, null, 0));
+      }
+      for (OfferPool.HeldOffer held : heldOffers) {
+        classifiedOffers.add(new ClassifiedOffer(held.getOffer(), false, false, null, held.getExpiry()));
+      }
+      return;
+    }
+    LOGGER.debug("Received offers {}, held offers {}", offers.size(), heldOffers.size());
+
+    for (Offer offer : offers) {
+      classifiedOffers.add(classify(offer, 0));
+    }
+    for (OfferPool.HeldOffer held : heldOffers) {
+      classifiedOffers.add(classify(held.getOffer(), held.getExpiry()));
+    }
+    // Let Myriad use reserved resources firstly.
+    Collections.sort(classifiedOffers, RESERVED_FIRST);
+  }
+
+  private ClassifiedOffer classify(Offer offer, long heldUntil) {
+    schedulerState.updateSlaveAttributes(offer.getSlaveId(), offer.getAttributesList());
+    return new ClassifiedOffer(offer, isReserved(offer),
+        SchedulerUtils.isEligibleForFineGrainedScaling(offer.getHostname(), schedulerState),
+        new ResourceOfferContainer(offer, null, role), heldUntil);
+  }
+
+  private static boolean isReserved(Offer offer) {
+    for (Protos.Resource resource : offer.getResourcesList()) {
+      if (resource.hasRole() && !Objects.equals(resource.getRole(), DEFAULT_ROLE)) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
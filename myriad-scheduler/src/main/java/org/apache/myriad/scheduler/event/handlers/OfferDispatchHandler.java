@@ -0,0 +1,145 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.myriad.scheduler.event.handlers;
+
+import com.lmax.disruptor.EventHandler;
+
+import java.util.Collection;
+import java.util.Collections;
+import org.apache.mesos.Protos;
+import org.apache.mesos.Protos.Offer;
+import org.apache.mesos.Protos.Status;
+import org.apache.mesos.SchedulerDriver;
+import org.apache.myriad.scheduler.OfferDemandController;
+import org.apache.myriad.scheduler.OfferPool;
+import org.apache.myriad.scheduler.event.ResourceOffersEvent;
+import org.apache.myriad.scheduler.event.ResourceOffersEvent.ClassifiedOffer;
+import org.apache.myriad.scheduler.fgs.OfferLifecycleManager;
+import org.apache.myriad.state.SchedulerState;
+import org.apache.myriad.state.SchedulerState.TaskState;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Last stage of offer processing: launches the tasks placed on an offer, feeds offers of hosts
+ * eligible for fine grained scaling to the {@link OfferLifecycleManager}, and holds or declines
+ * the rest.
+ * <p/>
+ * The tasks of a launch that fails are made pending again and the offer is declined. A failure
+ * while dispatching one offer does not keep the later offers of the batch from being dispatched.
+ */
+public class OfferDispatchHandler implements EventHandler<ResourceOffersEvent> {
+  private static final Logger LOGGER = LoggerFactory.getLogger(OfferDispatchHandler.class);
+
+  private final OfferLifecycleManager offerLifecycleMgr;
+  private final OfferPool offerPool;
+  private final OfferDemandController demandController;
+  private final SchedulerState schedulerState;
+
+  public OfferDispatchHandler(SchedulerState schedulerState, OfferLifecycleManager offerLifecycleManager,
+                              OfferPool offerPool, OfferDemandController demandController) {
+    this.schedulerState = schedulerState;
+    this.offerLifecycleMgr = offerLifecycleManager;
+    this.offerPool = offerPool;
+    this.demandController = demandController;
+  }
+
+  @Override
+  public void onEvent(ResourceOffersEvent event, long sequence, boolean endOfBatch) throws Exception {
+    SchedulerDriver driver = event.getDriver();
+    try {
+      if (!event.isFrameworkRegistered()) {
+        for (ClassifiedOffer classifiedOffer : event.getClassifiedOffers()) {
+          driver.declineOffer(classifiedOffer.getOffer().getId());
+        }
+        return;
+      }
+      for (ClassifiedOffer classifiedOffer : event.getClassifiedOffers()) {
+        try {
+          dispatch(driver, classifiedOffer, event.getLaunches().get(classifiedOffer.getOffer().getId()));
+        } catch (Throwable t) {
+          LOGGER.error("Exception thrown while dispatching offer {}", classifiedOffer.getOffer().getId().getValue(), t);
+          decline(driver, classifiedOffer.getOffer());
+        }
+      }
+      demandController.offersHandled();
+    } finally {
+      // The event stays in the ring buffer until its slot is reused
+      event.setClassifiedOffers(null);
+      event.setLaunches(null);
+    }
+  }
+
+  private void dispatch(SchedulerDriver driver, ClassifiedOffer classifiedOffer, Collection<Protos.TaskInfo> tasks) {
+    Offer offer = classifiedOffer.getOffer();
+    if (tasks != null) {
+      launch(driver, offer, tasks);
+    } else if (classifiedOffer.isFineGrainedScaling()) {
+      if (LOGGER.isDebugEnabled()) {
+        LOGGER.debug("Picking an offer from slave with hostname {} for fine grained scaling.", offer.getHostname());
+      }
+      offerLifecycleMgr.addOffers(offer);
+    } else if (hold(driver, classifiedOffer)) {
+      LOGGER.debug("Holding offer {} from slave {}.", offer.getId().getValue(), offer.getHostname());
+    } else {
+      if (LOGGER.isDebugEnabled()) {
+        LOGGER.debug("Declining offer {} from slave {}.", offer, offer.getHostname());
+      }
+      demandController.decline(driver, offer);
+    }
+  }
+
+  private void launch(SchedulerDriver driver, Offer offer, Collection<Protos.TaskInfo> tasks) {
+    Status status = null;
+    try {
+      status = driver.launchTasks(Collections.singleton(offer.getId()), tasks);
+    } catch (Throwable t) {
+      LOGGER.error("Exception thrown while launching tasks on offer {}", offer.getId().getValue(), t);
+    }
+    if (status == Status.DRIVER_RUNNING) {
+      demandController.offerUsed(offer);
+      return;
+    }
+    LOGGER.error("Failed to launch {} tasks on offer {} with driver status {}, making them pending again",
+        tasks.size(), offer.getId().getValue(), status);
+    // The matching stage made the tasks staging, without a status no reconciliation would ever reset them
+    for (Protos.TaskInfo task : tasks) {
+      if (schedulerState.getSnapshot().getTaskState(task.getTaskId()) == TaskState.STAGING) {
+        schedulerState.makeTaskPending(task.getTaskId());
+      }
+    }
+    decline(driver, offer);
+  }
+
+  private void decline(SchedulerDriver driver, Offer offer) {
+    try {
+      driver.declineOffer(offer.getId());
+    } catch (Throwable t) {
+      LOGGER.error("Exception thrown while declining offer {}", offer.getId().getValue(), t);
+    }
+  }
+
+  private boolean hold(SchedulerDriver driver, ClassifiedOffer classifiedOffer) {
+    // An offer held back before keeps its expiry, so it isn't held for ever while offers keep coming
+    if (classifiedOffer.getHeldUntil() > 0) {
+      return offerPool.holdUntil(driver, classifiedOffer.getOffer(), classifiedOffer.getHeldUntil());
+    }
+    return offerPool.hold(driver, classifiedOffer.getOffer());
+  }
+}
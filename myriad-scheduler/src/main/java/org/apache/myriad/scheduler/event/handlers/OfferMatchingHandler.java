@@ -0,0 +1,207 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.myriad.scheduler.event.handlers;
+
+import com.lmax.disruptor.EventHandler;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.apache.mesos.Protos;
+import org.apache.mesos.Protos.Offer;
+import org.apache.mesos.Protos.TaskInfo;
+import org.apache.myriad.configuration.MyriadConfiguration;
+import org.apache.myriad.scheduler.BestFitPlacementStrategy;
+import org.apache.myriad.scheduler.FirstFitPlacementStrategy;
+import org.apache.myriad.scheduler.OfferMatcher;
+import org.apache.myriad.scheduler.OfferPlacementStrategy;
+import org.apache.myriad.scheduler.ServiceResourceProfile;
+import org.apache.myriad.scheduler.SpreadPlacementStrategy;
+import org.apache.myriad.scheduler.TaskFactory;
+import org.apache.myriad.scheduler.event.ResourceOffersEvent;
+import org.apache.myriad.scheduler.event.ResourceOffersEvent.ClassifiedOffer;
+import org.apache.myriad.scheduler.resource.ResourceOfferContainer;
+import org.apache.myriad.state.NodeTask;
+import org.apache.myriad.state.SchedulerState;
+import org.apache.myriad.state.SchedulerState.TaskState;
+import org.apache.myriad.state.SchedulerStateSnapshot;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Second stage of offer processing: places the pending tasks on the classified offers and records
+ * the tasks to launch per offer.
+ * <p/>
+ * Placed tasks are made staging right away, so matching the next batch while this one is still
+ * being dispatched neither places them again nor puts a second task of their type on their host.
+ */
+public class OfferMatchingHandler implements EventHandler<ResourceOffersEvent> {
+  private static final Logger LOGGER = LoggerFactory.getLogger(OfferMatchingHandler.class);
+
+  private final SchedulerState schedulerState;
+  private final MyriadConfiguration cfg;
+  private final Map<String, TaskFactory> taskFactoryMap;
+  private final Map<String, OfferPlacementStrategy> placementStrategies = new HashMap<>();
+
+  public OfferMatchingHandler(SchedulerState schedulerState, MyriadConfiguration cfg, Map<String, TaskFactory> taskFactoryMap) {
+    this.schedulerState = schedulerState;
+    this.cfg = cfg;
+    this.taskFactoryMap = taskFactoryMap;
+    placementStrategies.put(OfferPlacementStrategy.FIRST_FIT, new FirstFitPlacementStrategy());
+    placementStrategies.put(OfferPlacementStrategy.BEST_FIT, new BestFitPlacementStrategy());
+    placementStrategies.put(OfferPlacementStrategy.SPREAD, new SpreadPlacementStrategy(cfg.getPlacementSpreadAttribute()));
+    Set<String> configured = new HashSet<>(cfg.getPlacementStrategies().values());
+    configured.add(cfg.getPlacementStrategy());
+    for (String strategy : configured) {
+      if (!placementStrategies.containsKey(strategy)) {
+        throw new IllegalArgumentException("Unknown placement strategy '" + strategy + "'");
+      }
+    }
+  }
+
+  @Override
+  public void onEvent(ResourceOffersEvent event, long sequence, boolean endOfBatch) throws Exception {
+    if (!event.isFrameworkRegistered()) {
+      return;
+    }
+    LOGGER.debug("Pending tasks: {}", this.schedulerState.getPendingTaskIds());
+    OfferMatcher matcher = new OfferMatcher(schedulerState.getSnapshot());
+    // keep this in case SchedulerState gets out of sync. This should not happen with
+    // synchronizing addNodes method in SchedulerState
+    // but to keep it safe
+    for (Protos.TaskID taskId : matcher.getMissingTaskIds()) {
+      LOGGER.warn("Node task for TaskID: {} does not exist", taskId);
+      schedulerState.removeTask(taskId);
+    }
+    if (matcher.hasPendingTasks()) {
+      placeTasks(event, matcher);
+    }
+  }
+
+  /**
+   * Places the pending tasks on the offers with the placement strategy of their profile, so the
+   * tasks placed on an offer can be launched with a single launchTasks call. Host uniqueness allows
+   * at most one task per task prefix on a host, and every further task on an offer has to fit into
+   * what the previous ones left of it.
+   */
+  private void placeTasks(ResourceOffersEvent event, OfferMatcher matcher) {
+    Map<Protos.OfferID, ResourceOfferContainer> parsedOffers = new HashMap<>();
+    List<ResourceOfferContainer> containers = new ArrayList<>(event.getClassifiedOffers().size());
+    for (ClassifiedOffer classifiedOffer : event.getClassifiedOffers()) {
+      parsedOffers.put(classifiedOffer.getOffer().getId(), classifiedOffer.getResources());
+      containers.add(classifiedOffer.getResources().fork());
+    }
+    // ResourceOfferContainers are compared by identity
+    Map<ResourceOfferContainer, Map<Protos.TaskID, TaskInfo>> launches = new LinkedHashMap<>();
+    // Copies of the placed tasks, the tasks held by the SchedulerState are not modified
+    Map<Protos.TaskID, NodeTask> placedTasks = new HashMap<>();
+    for (OfferMatcher.Bucket bucket : matcher.getBuckets()) {
+      OfferPlacementStrategy strategy = getPlacementStrategy(bucket.getProfile());
+      List<ResourceOfferContainer> candidates = getAcceptingOffers(matcher, bucket, containers);
+      while (!candidates.isEmpty()) {
+        Protos.TaskID pendingTaskId = nextPendingTaskId(matcher, bucket);
+        if (pendingTaskId == null) {
+          break;
+        }
+        NodeTask taskToLaunch = schedulerState.getTask(pendingTaskId);
+        ResourceOfferContainer container = strategy.select(bucket.getProfile(), candidates,
+            matcher.getTasks(bucket.getTaskPrefix()));
+        Offer offer = container.getOffer();
+        String taskPrefix = bucket.getTaskPrefix();
+        try {
+          final TaskInfo task = taskFactoryMap.get(taskPrefix).createTask(container,
+              schedulerState.getFrameworkID().get(), pendingTaskId, taskToLaunch);
+          LOGGER.info("Launching task: {} using offer: {}", task.getTaskId().getValue(), offer.getId());
+          LOGGER.debug("Launching task: {} with profile: {} using offer: {}", task, bucket.getProfile(), offer);
+          Map<Protos.TaskID, TaskInfo> tasks = launches.get(container);
+          if (tasks == null) {
+            tasks = new LinkedHashMap<>();
+            launches.put(container, tasks);
+          }
+          tasks.put(pendingTaskId, task);
+          NodeTask placedTask = taskToLaunch.copy();
+          placedTask.setHostname(offer.getHostname());
+          placedTask.setSlaveId(offer.getSlaveId());
+          placedTask.setSlaveAttributes(offer.getAttributesList());
+          placedTasks.put(pendingTaskId, placedTask);
+          matcher.launched(bucket, placedTask);
+        } catch (Throwable t) {
+          LOGGER.error("Exception thrown while trying to create a task for {}", taskPrefix, t);
+          // The failed task may have consumed part of the offer, so the offer only keeps the tasks
+          // placed on it so far. The bucket's other tasks would fail the same way.
+          int index = containers.indexOf(container);
+          if (launches.containsKey(container)) {
+            containers.remove(index);
+          } else {
+            containers.set(index, parsedOffers.get(offer.getId()).fork());
+          }
+          break;
+        }
+        candidates = getAcceptingOffers(matcher, bucket, candidates);
+      }
+    }
+
+    for (Map.Entry<ResourceOfferContainer, Map<Protos.TaskID, TaskInfo>> launch : launches.entrySet()) {
+      for (Map.Entry<Protos.TaskID, TaskInfo> entry : launch.getValue().entrySet()) {
+        Protos.TaskID taskId = entry.getKey();
+        NodeTask taskToLaunch = placedTasks.get(taskId);
+        schedulerState.makeTaskStaging(taskId);
+        // For every NM Task that we launch, we currently
+        // need to backup the ExecutorInfo for that NM Task in the State Store.
+        // Without this, we will not be able to launch tasks corresponding to yarn
+        // containers. This is specially important in case the RM restarts.
+        taskToLaunch.setExecutorInfo(entry.getValue().getExecutor());
+        schedulerState.addTask(taskId, taskToLaunch);
+      }
+      event.getLaunches().put(launch.getKey().getOffer().getId(), launch.getValue().values());
+    }
+  }
+
+  private List<ResourceOfferContainer> getAcceptingOffers(OfferMatcher matcher, OfferMatcher.Bucket bucket,
+                                                          List<ResourceOfferContainer> containers) {
+    List<ResourceOfferContainer> accepting = new ArrayList<>();
+    for (ResourceOfferContainer container : containers) {
+      if (matcher.accepts(bucket, container)) {
+        accepting.add(container);
+      }
+    }
+    return accepting;
+  }
+
+  private OfferPlacementStrategy getPlacementStrategy(ServiceResourceProfile profile) {
+    return placementStrategies.get(cfg.getPlacementStrategy(profile.getName()));
+  }
+
+  /**
+   * Skips the tasks of the bucket that were removed or flexed down since the matcher was built.
+   */
+  private Protos.TaskID nextPendingTaskId(OfferMatcher matcher, OfferMatcher.Bucket bucket) {
+    SchedulerStateSnapshot snapshot = schedulerState.getSnapshot();
+    Protos.TaskID taskId = bucket.peek();
+    while (taskId != null && (snapshot.getTask(taskId) == null || snapshot.getTaskState(taskId) != TaskState.PENDING)) {
+      matcher.remove(bucket);
+      taskId = bucket.peek();
+    }
+    return taskId;
+  }
+}
@@ -19,6 +19,8 @@
 package org.apache.myriad.scheduler.event.handlers;
 
 import com.lmax.disruptor.EventHandler;
+import javax.inject.Inject;
+import org.apache.myriad.scheduler.OfferPool;
 import org.apache.myriad.scheduler.event.OfferRescindedEvent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -29,8 +31,18 @@ import org.slf4j.LoggerFactory;
 public class OfferRescindedEventHandler implements EventHandler<OfferRescindedEvent> {
   private static final Logger LOGGER = LoggerFactory.getLogger(OfferRescindedEventHandler.class);
 
+  private OfferPool offerPool;
+
+  @Inject
+  public OfferRescindedEventHandler(OfferPool offerPool) {
+    this.offerPool = offerPool;
+  }
+
   @Override
   public void onEvent(OfferRescindedEvent event, long sequence, boolean endOfBatch) throws Exception {
     LOGGER.info("OfferRescindedEvent for offer id: {} for scheuler {}", event.getOfferId().toString(), event.getDriver().getClass().getName());
+    if (offerPool.rescind(event.getOfferId())) {
+      LOGGER.debug("Dropped rescinded offer {} from the offer pool", event.getOfferId().getValue());
+    }
   }
 }
\ No newline at end of file
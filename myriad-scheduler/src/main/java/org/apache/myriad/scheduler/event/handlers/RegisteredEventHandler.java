@@ -19,6 +19,9 @@
 package org.apache.myriad.scheduler.event.handlers;
 
 import com.lmax.disruptor.EventHandler;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import javax.inject.Inject;
 import org.apache.myriad.scheduler.event.RegisteredEvent;
 import org.slf4j.Logger;
@@ -30,6 +33,8 @@ import org.slf4j.LoggerFactory;
 public class RegisteredEventHandler implements EventHandler<RegisteredEvent> {
   private static final Logger LOGGER = LoggerFactory.getLogger(RegisteredEventHandler.class);
 
+  private static final long FRAMEWORK_ID_COMMIT_TIMEOUT_MS = 30000;
+
   @Inject
   private org.apache.myriad.state.SchedulerState schedulerState;
 
@@ -40,6 +45,12 @@ public class RegisteredEventHandler implements EventHandler<RegisteredEvent> {
   public void onEvent(RegisteredEvent event, long sequence, boolean endOfBatch) throws Exception {
     LOGGER.info("Received event: {} with frameworkId: {}", event, event.getFrameworkId());
     schedulerState.setFrameworkId(event.getFrameworkId());
+    // The framework id must survive an RM failover, otherwise a new framework gets registered
+    try {
+      schedulerState.commit().get(FRAMEWORK_ID_COMMIT_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+    } catch (ExecutionException | TimeoutException e) {
+      LOGGER.error("Failed to persist frameworkId: {}", event.getFrameworkId(), e);
+    }
     reconcileService.reconcile(event.getDriver());
   }
 
@@ -23,6 +23,7 @@ import javax.inject.Inject;
 import org.apache.mesos.Protos.TaskID;
 import org.apache.mesos.Protos.TaskState;
 import org.apache.mesos.Protos.TaskStatus;
+import org.apache.myriad.scheduler.ReconcileService;
 import org.apache.myriad.scheduler.event.StatusUpdateEvent;
 import org.apache.myriad.scheduler.fgs.OfferLifecycleManager;
 import org.apache.myriad.state.NodeTask;
@@ -40,11 +41,14 @@ public class StatusUpdateEventHandler implements EventHandler<StatusUpdateEvent>
 
   private final SchedulerState schedulerState;
   private final OfferLifecycleManager offerLifecycleManager;
+  private final ReconcileService reconcileService;
 
   @Inject
-  public StatusUpdateEventHandler(SchedulerState schedulerState, OfferLifecycleManager offerLifecycleManager) {
+  public StatusUpdateEventHandler(SchedulerState schedulerState, OfferLifecycleManager offerLifecycleManager,
+                                  ReconcileService reconcileService) {
     this.schedulerState = schedulerState;
     this.offerLifecycleManager = offerLifecycleManager;
+    this.reconcileService = reconcileService;
   }
   
   /**
@@ -66,6 +70,7 @@ public class StatusUpdateEventHandler implements EventHandler<StatusUpdateEvent>
     TaskStatus status = event.getStatus();
     this.schedulerState.updateTask(status);
     TaskID taskId = status.getTaskId();
+    reconcileService.statusReceived(taskId);
     NodeTask task = schedulerState.getTask(taskId);
     if (task == null) {
       LOGGER.warn("Task: {} not found, status: {}", taskId.getValue(), status.getState());
@@ -23,12 +23,14 @@ import java.util.Collection;
 import java.util.LinkedList;
 import java.util.List;
 import org.apache.mesos.Protos;
+import org.apache.myriad.scheduler.resource.ResourceVector;
 
 /**
  * Represents offers from a slave that have been consumed by Myriad.
  */
 public class ConsumedOffer {
   private List<Protos.Offer> offers;
+  private final ResourceVector resources = new ResourceVector();
 
   public ConsumedOffer() {
     this.offers = new LinkedList<>();
@@ -36,6 +38,14 @@ public class ConsumedOffer {
 
   public void add(Protos.Offer offer) {
     offers.add(offer);
+    resources.addOffer(offer, null);
+  }
+
+  /**
+   * @return the sum of the scalar resources of the offers, must not be modified
+   */
+  public ResourceVector getResources() {
+    return resources;
   }
 
   public List<Protos.Offer> getOffers() {
@@ -0,0 +1,183 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.myriad.scheduler.fgs;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.inject.Inject;
+
+import org.apache.mesos.Protos;
+import org.apache.myriad.configuration.MyriadConfiguration;
+import org.apache.myriad.scheduler.MyriadDriver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Launches the Mesos tasks that stand in for YARN containers allocated with fine grained scaling.
+ * <p/>
+ * Launches are queued and issued by a background thread once launchBatchWindowMs has passed since
+ * the oldest queued launch, so the YARN scheduler never waits on the driver. Mesos requires the
+ * offers of a launch to be from one agent, so a flush issues one launchTasks call per agent, with
+ * all the offers and tasks queued for that agent merged. A launchBatchWindowMs of zero or less,
+ * or a launcher that is not started, launches synchronously.
+ */
+public class ContainerTaskLauncher implements Runnable {
+  private static final Logger LOGGER = LoggerFactory.getLogger(ContainerTaskLauncher.class);
+
+  private final MyriadDriver myriadDriver;
+  private final long launchBatchWindowMs;
+
+  private final Object lock = new Object();
+  private Map<Protos.SlaveID, Launch> pending = new LinkedHashMap<>();
+  private long oldestPendingTime;
+  private volatile boolean running;
+  private Thread launcher;
+
+  @Inject
+  public ContainerTaskLauncher(MyriadDriver myriadDriver, MyriadConfiguration cfg) {
+    this(myriadDriver, cfg.getFgsLaunchBatchWindowMs());
+  }
+
+  public ContainerTaskLauncher(MyriadDriver myriadDriver, long launchBatchWindowMs) {
+    this.myriadDriver = myriadDriver;
+    this.launchBatchWindowMs = launchBatchWindowMs;
+  }
+
+  /**
+   * Starts the background launcher thread unless launches are synchronous.
+   */
+  public synchronized void start() {
+    if (launchBatchWindowMs > 0 && launcher == null) {
+      running = true;
+      launcher = new Thread(this, "myriad-fgs-launcher");
+      launcher.setDaemon(true);
+      launcher.start();
+    }
+  }
+
+  /**
+   * Stops the launcher thread and issues the launches still queued.
+   */
+  public synchronized void stop() {
+    running = false;
+    synchronized (lock) {
+      lock.notifyAll();
+    }
+    if (launcher != null) {
+      try {
+        launcher.join(launchBatchWindowMs);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      launcher = null;
+    }
+    flush();
+  }
+
+  /**
+   * Queues the tasks to be launched with the offers, which must all be from the agent.
+   *
+   * @param slaveId
+   * @param offerIds
+   * @param tasks
+   */
+  public void launch(Protos.SlaveID slaveId, Collection<Protos.OfferID> offerIds, Collection<Protos.TaskInfo> tasks) {
+    synchronized (lock) {
+      if (pending.isEmpty()) {
+        oldestPendingTime = System.currentTimeMillis();
+        lock.notifyAll();
+      }
+      Launch launch = pending.get(slaveId);
+      if (launch == null) {
+        launch = new Launch();
+        pending.put(slaveId, launch);
+      }
+      launch.offerIds.addAll(offerIds);
+      launch.tasks.addAll(tasks);
+    }
+    if (!running) {
+      flush();
+    }
+  }
+
+  @Override
+  public void run() {
+    while (running) {
+      try {
+        awaitFlush();
+        flush();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        running = false;
+      } catch (RuntimeException e) {
+        LOGGER.error("Failed to launch queued fine grained scaling tasks", e);
+      }
+    }
+  }
+
+  private void awaitFlush() throws InterruptedException {
+    synchronized (lock) {
+      while (running) {
+        if (pending.isEmpty()) {
+          lock.wait();
+          continue;
+        }
+        long remaining = oldestPendingTime + launchBatchWindowMs - System.currentTimeMillis();
+        if (remaining <= 0) {
+          return;
+        }
+        lock.wait(remaining);
+      }
+    }
+  }
+
+  /**
+   * Issues all queued launches. A failed launch is logged and does not keep the launches
+   * queued for other agents from being issued.
+   */
+  void flush() {
+    Map<Protos.SlaveID, Launch> batch;
+    synchronized (lock) {
+      if (pending.isEmpty()) {
+        return;
+      }
+      batch = pending;
+      pending = new LinkedHashMap<>();
+    }
+    for (Map.Entry<Protos.SlaveID, Launch> entry : batch.entrySet()) {
+      Launch launch = entry.getValue();
+      try {
+        myriadDriver.getDriver().launchTasks(launch.offerIds, launch.tasks);
+        LOGGER.debug("Launched {} tasks with {} offers on agent {}", launch.tasks.size(), launch.offerIds.size(),
+            entry.getKey().getValue());
+      } catch (RuntimeException e) {
+        LOGGER.error("Failed to launch " + launch.tasks.size() + " tasks on agent " + entry.getKey().getValue(), e);
+      }
+    }
+  }
+
+  private static final class Launch {
+    private final List<Protos.OfferID> offerIds = new ArrayList<>();
+    private final List<Protos.TaskInfo> tasks = new ArrayList<>();
+  }
+}
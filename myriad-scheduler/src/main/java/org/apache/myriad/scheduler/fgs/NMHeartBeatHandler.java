@@ -19,8 +19,6 @@
 package org.apache.myriad.scheduler.fgs;
 
 import com.google.common.annotations.VisibleForTesting;
-import java.util.ArrayList;
-import java.util.List;
 import javax.inject.Inject;
 import org.apache.hadoop.yarn.api.records.ContainerState;
 import org.apache.hadoop.yarn.api.records.ContainerStatus;
@@ -33,11 +31,10 @@ import org.apache.hadoop.yarn.server.resourcemanager.rmnode.RMNodeEvent;
 import org.apache.hadoop.yarn.server.resourcemanager.rmnode.RMNodeStatusEvent;
 import org.apache.hadoop.yarn.server.resourcemanager.scheduler.AbstractYarnScheduler;
 import org.apache.hadoop.yarn.util.resource.Resources;
-import org.apache.mesos.Protos;
-import org.apache.mesos.Protos.Offer;
 import org.apache.myriad.configuration.NodeManagerConfiguration;
 import org.apache.myriad.scheduler.MyriadDriver;
 import org.apache.myriad.scheduler.SchedulerUtils;
+import org.apache.myriad.scheduler.resource.ResourceVector;
 import org.apache.myriad.scheduler.yarn.interceptor.BaseInterceptor;
 import org.apache.myriad.scheduler.yarn.interceptor.InterceptorRegistry;
 import org.apache.myriad.state.SchedulerState;
@@ -130,11 +127,6 @@ public class NMHeartBeatHandler extends BaseInterceptor {
     RMNode rmNode = context.getRMNodes().get(event.getNodeId());
     String hostName = rmNode.getNodeID().getHost();
 
-    Node host = nodeStore.getNode(hostName);
-    if (host != null) {
-      host.snapshotRunningContainers();
-    }
-
     /*
      * Set the new node capacity which is the sum of the current node resources plus those offered by Mesos. 
      * If the sum is greater than the max capacity of the node, reject the offer.
@@ -162,16 +154,8 @@ public class NMHeartBeatHandler extends BaseInterceptor {
   
   @VisibleForTesting
   protected Resource getNewResourcesOfferedByMesos(String hostname) {
-    OfferFeed feed = offerLifecycleMgr.getOfferFeed(hostname);
-    List<Offer> offers = new ArrayList<>();
-    Protos.Offer offer;
-        
-    while ((offer = feed.poll()) != null) {
-      offers.add(offer);     
-      offerLifecycleMgr.markAsConsumed(offer);
-    }
-    
-    Resource fromMesosOffers = OfferUtils.getYarnResourcesFromMesosOffers(offers);
+    ResourceVector offered = offerLifecycleMgr.consumeOffers(hostname);
+    Resource fromMesosOffers = Resource.newInstance((int) offered.getMem(), (int) offered.getCpus());
 
     if (logger.isDebugEnabled()) {
       logger.debug("NM on host {} got {} CPUs and {} memory from mesos", hostname, fromMesosOffers.getVirtualCores(),
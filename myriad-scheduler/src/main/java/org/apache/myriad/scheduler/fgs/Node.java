@@ -18,8 +18,13 @@
  */
 package org.apache.myriad.scheduler.fgs;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
+import org.apache.hadoop.yarn.api.records.ContainerId;
 import org.apache.hadoop.yarn.server.resourcemanager.rmcontainer.RMContainer;
 import org.apache.hadoop.yarn.server.resourcemanager.scheduler.SchedulerNode;
 import org.apache.mesos.Protos;
@@ -44,14 +49,19 @@ public class Node {
   private SchedulerNode node;
 
   /**
-   * Snapshot of containers allocated by YARN scheduler.
-   * This need not reflect the current state. It is meant to be used by the
-   * Myriad scheduler.
+   * IDs of the containers allocated by YARN scheduler that have been accounted for.
+   * Completed containers are removed as the scheduler reports them, so as long as the node
+   * runs as many containers as are tracked here nothing was allocated since the last poll.
    */
-  private Set<RMContainer> containerSnapshot;
+  private final Set<ContainerId> knownContainerIds = new HashSet<>();
 
   public Node(SchedulerNode node) {
     this.node = node;
+    if (node != null) {
+      for (RMContainer container : node.getRunningContainers()) {
+        knownContainerIds.add(container.getContainerId());
+      }
+    }
   }
 
   public SchedulerNode getNode() {
@@ -74,15 +84,43 @@ public class Node {
     this.execInfo = execInfo;
   }
 
-  public void snapshotRunningContainers() {
-    this.containerSnapshot = new HashSet<>(node.getRunningContainers());
-  }
-
-  public void removeContainerSnapshot() {
-    this.containerSnapshot = null;
+  /**
+   * Returns the containers allocated by YARN scheduler since the last call, and marks them
+   * as accounted for. All Myriad schedulers report completed containers to
+   * {@link #containerCompleted}, so the running containers are only copied and diffed against
+   * the tracked ones when their count shows that some were allocated.
+   *
+   * @return the newly allocated containers
+   */
+  public synchronized List<RMContainer> pollAllocatedContainers() {
+    if (node.getNumContainers() == knownContainerIds.size()) {
+      return Collections.emptyList();
+    }
+    List<RMContainer> running = node.getRunningContainers();
+    List<RMContainer> allocated = new ArrayList<>();
+    for (RMContainer container : running) {
+      if (knownContainerIds.add(container.getContainerId())) {
+        allocated.add(container);
+      }
+    }
+    if (knownContainerIds.size() != running.size()) {
+      // Forget the containers that completed unreported, e.g. before the node was tracked
+      Iterator<ContainerId> ids = knownContainerIds.iterator();
+      while (ids.hasNext()) {
+        if (!node.isValidContainer(ids.next())) {
+          ids.remove();
+        }
+      }
+    }
+    return allocated;
   }
 
-  public Set<RMContainer> getContainerSnapshot() {
-    return this.containerSnapshot;
+  /**
+   * Records that a container of this node completed.
+   *
+   * @param containerId
+   */
+  public synchronized void containerCompleted(ContainerId containerId) {
+    knownContainerIds.remove(containerId);
   }
 }
@@ -0,0 +1,144 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.myriad.scheduler.fgs;
+
+import org.apache.mesos.Protos;
+import org.apache.myriad.scheduler.resource.ResourceVector;
+
+import com.google.common.annotations.VisibleForTesting;
+
+/**
+ * Keeps track of the offers of a single host used for fine grained scaling: the offers waiting to
+ * be consumed by the NM's next heartbeat, the offers consumed since the YARN scheduler last placed
+ * containers on the host, and the resources returned to Mesos.
+ * <p/>
+ * The methods of a ledger are synchronized on it, so heartbeats and scheduler events of different
+ * hosts never contend with each other.
+ */
+public class OfferLedger {
+  private final OfferFeed feed = new OfferFeed();
+  private ConsumedOffer consumed;
+
+  private final ResourceVector outstanding = new ResourceVector();
+  private final ResourceVector returned = new ResourceVector();
+
+  /**
+   * Adds an offer to be consumed.
+   *
+   * @param offer
+   */
+  public synchronized void add(Protos.Offer offer) {
+    feed.add(offer);
+    outstanding.addOffer(offer, null);
+  }
+
+  /**
+   * Retrieves and removes the oldest offer waiting to be consumed.
+   *
+   * @return the offer, or null if there is none
+   */
+  public synchronized Protos.Offer poll() {
+    Protos.Offer offer = feed.poll();
+    if (offer != null) {
+      outstanding.subtractOffer(offer, null);
+    }
+    return offer;
+  }
+
+  /**
+   * Records an offer as consumed.
+   *
+   * @param offer
+   */
+  public synchronized void consume(Protos.Offer offer) {
+    if (consumed == null) {
+      consumed = new ConsumedOffer();
+    }
+    consumed.add(offer);
+  }
+
+  /**
+   * Consumes all offers waiting to be consumed.
+   *
+   * @return the resources of the offers consumed
+   */
+  public synchronized ResourceVector consumeAll() {
+    ResourceVector resources = new ResourceVector();
+    Protos.Offer offer;
+    while ((offer = poll()) != null) {
+      consume(offer);
+      resources.addOffer(offer, null);
+    }
+    return resources;
+  }
+
+  /**
+   * Removes the offers consumed so far.
+   *
+   * @return the consumed offers, or null if no offer was consumed
+   */
+  public synchronized ConsumedOffer drainConsumed() {
+    ConsumedOffer drained = consumed;
+    consumed = null;
+    return drained;
+  }
+
+  /**
+   * Records an offer as returned to Mesos.
+   *
+   * @param offer
+   */
+  public synchronized void returned(Protos.Offer offer) {
+    returned.addOffer(offer, null);
+  }
+
+  /**
+   * @return the resources of the offers waiting to be consumed
+   */
+  public synchronized ResourceVector getOutstanding() {
+    return new ResourceVector(outstanding);
+  }
+
+  /**
+   * @return the resources of the offers consumed and not drained yet
+   */
+  public synchronized ResourceVector getConsumed() {
+    return consumed == null ? new ResourceVector() : new ResourceVector(consumed.getResources());
+  }
+
+  /**
+   * @return the resources of all offers returned to Mesos
+   */
+  public synchronized ResourceVector getReturned() {
+    return new ResourceVector(returned);
+  }
+
+  @VisibleForTesting
+  synchronized ConsumedOffer getConsumedOffer() {
+    if (consumed == null) {
+      consumed = new ConsumedOffer();
+    }
+    return consumed;
+  }
+
+  @VisibleForTesting
+  OfferFeed getFeed() {
+    return feed;
+  }
+}
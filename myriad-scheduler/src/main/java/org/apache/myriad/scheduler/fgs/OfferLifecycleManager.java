@@ -18,15 +18,14 @@
  */
 package org.apache.myriad.scheduler.fgs;
 
-import java.util.HashMap;
-import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.inject.Inject;
 
 import org.apache.mesos.Protos;
-import org.apache.mesos.Protos.Offer;
 import org.apache.myriad.scheduler.MyriadDriver;
+import org.apache.myriad.scheduler.resource.ResourceVector;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -35,56 +34,67 @@ import com.google.common.base.Optional;
 
 /**
  * Manages the Mesos offers tracked by Myriad.
+ * <p/>
+ * The offers of each host are kept in an {@link OfferLedger}, so the NM heartbeats and scheduler
+ * events of different hosts only ever synchronize on their own host's ledger.
  */
 public class OfferLifecycleManager {
   private static final Logger LOGGER = LoggerFactory.getLogger(OfferLifecycleManager.class);
 
-  private Map<String, OfferFeed> offerFeedMap;
-
-  /**
-   * !!! Not thread safe !!!
-   */
-  private final Map<String, ConsumedOffer> consumedOfferMap;
+  private final ConcurrentMap<String, OfferLedger> ledgers;
 
   private final NodeStore nodeStore;
   private final MyriadDriver myriadDriver;
 
   @Inject
   public OfferLifecycleManager(NodeStore nodeStore, MyriadDriver myriadDriver) {
-
-    this.offerFeedMap = new ConcurrentHashMap<>(200, 0.75f, 50);
-    this.consumedOfferMap = new HashMap<>(200, 0.75f);
+    this.ledgers = new ConcurrentHashMap<>(200, 0.75f, 50);
     this.nodeStore = nodeStore;
     this.myriadDriver = myriadDriver;
   }
 
   /**
-   * Retrieves the OfferFeed for a host and, if null, creates a new OfferFeed
+   * Retrieves the OfferLedger for a host and, if null, creates a new OfferLedger
    * for a host that has either been added to, or rejoined, the Mesos cluster.
-   * 
+   *
    * @param hostname
-   * @return feed
+   * @return ledger
+   */
+  public OfferLedger getLedger(String hostname) {
+    OfferLedger ledger = ledgers.get(hostname);
+    if (ledger == null) {
+      OfferLedger created = new OfferLedger();
+      ledger = ledgers.putIfAbsent(hostname, created);
+      if (ledger == null) {
+        ledger = created;
+      }
+    }
+    return ledger;
+  }
+
+  /**
+   * @return the resources of the offers waiting to be consumed, summed over all hosts
    */
+  public ResourceVector getOutstandingResources() {
+    ResourceVector outstanding = new ResourceVector();
+    for (OfferLedger ledger : ledgers.values()) {
+      outstanding.add(ledger.getOutstanding());
+    }
+    return outstanding;
+  }
+
   @VisibleForTesting
   protected OfferFeed getOfferFeed(String hostname) {
-    OfferFeed feed = offerFeedMap.get(hostname);
-    if (feed == null) {
-      feed = new OfferFeed();
-      offerFeedMap.put(hostname, feed);
-    }
-    return feed;
+    return getLedger(hostname).getFeed();
   }
   
   protected Optional<Node> getOfferNode(String host) {
     return Optional.fromNullable(nodeStore.getNode(host));
   }
-  
-  protected Optional<Offer> getOffer(OfferFeed feed) {
-    return Optional.fromNullable(feed.poll());
-  }
-  
+
   public void declineOffer(Protos.Offer offer) {
     myriadDriver.getDriver().declineOffer(offer.getId());
+    getLedger(offer.getHostname()).returned(offer);
     LOGGER.debug("Declined offer {}", offer.getId());
   }
 
@@ -94,8 +104,7 @@ public class OfferLifecycleManager {
    
       Optional<Node> optNode = getOfferNode(hostname);
       if (optNode.isPresent()) {
-        OfferFeed feed = getOfferFeed(hostname);
-        feed.add(offer);
+        getLedger(hostname).add(offer);
         optNode.get().setSlaveId(offer.getSlaveId());
 
         LOGGER.debug("addResourceOffers: caching offer for host {}, offer id {}", hostname, offer.getId().getValue());
@@ -107,41 +116,40 @@ public class OfferLifecycleManager {
   }
 
   public void markAsConsumed(Protos.Offer offer) {
-    ConsumedOffer consumedOffer = consumedOfferMap.get(offer.getHostname());
-    if (consumedOffer == null) {
-      consumedOffer = new ConsumedOffer();
-      consumedOfferMap.put(offer.getHostname(), consumedOffer);
-    }
+    getLedger(offer.getHostname()).consume(offer);
+  }
 
-    consumedOffer.add(offer);
+  /**
+   * Consumes all offers waiting for the host.
+   *
+   * @param hostname
+   * @return the resources of the offers consumed
+   */
+  public ResourceVector consumeOffers(String hostname) {
+    return getLedger(hostname).consumeAll();
   }
 
   @VisibleForTesting
   protected ConsumedOffer getConsumedOffer(String hostname) {
-    ConsumedOffer cOffer = consumedOfferMap.get(hostname);
-    if (cOffer == null) {
-      cOffer = new ConsumedOffer();
-      consumedOfferMap.put(hostname, cOffer);
-    }    
-    
-    return cOffer;
+    return getLedger(hostname).getConsumedOffer();
   }
   
   public ConsumedOffer drainConsumedOffer(String hostname) {
-    return consumedOfferMap.remove(hostname);
+    OfferLedger ledger = ledgers.get(hostname);
+    return ledger == null ? null : ledger.drainConsumed();
   }
 
   public void declineOutstandingOffers(String hostname) {
     int numOutStandingOffers = 0;
-    OfferFeed offerFeed = getOfferFeed(hostname);
-    Optional<Offer> optOffer;
+    OfferLedger ledger = getLedger(hostname);
+    Protos.Offer offer;
   
-    while ((optOffer = getOffer(offerFeed)).isPresent()) {
-      declineOffer(optOffer.get());
+    while ((offer = ledger.poll()) != null) {
+      declineOffer(offer);
       numOutStandingOffers++;
     }
     if (numOutStandingOffers > 0) {
       LOGGER.info("Declined {} outstanding offers for host {}", numOutStandingOffers, hostname);
     }
   }
-}
\ No newline at end of file
+}
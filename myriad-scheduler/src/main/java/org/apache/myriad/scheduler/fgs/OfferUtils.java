@@ -22,6 +22,7 @@ import java.util.Collection;
 import org.apache.hadoop.yarn.api.records.Resource;
 import org.apache.mesos.Protos;
 import org.apache.mesos.Protos.Offer;
+import org.apache.myriad.scheduler.resource.ResourceVector;
 
 /**
  * Utility class that provides useful methods that deal with Mesos offers.
@@ -35,19 +36,22 @@ public class OfferUtils {
    * @return a single resource object equivalent to the cumulative sum of mesos offers
    */
   public static Resource getYarnResourcesFromMesosOffers(Collection<Offer> offers) {
-    double cpus = 0.0;
-    double mem = 0.0;
+    ResourceVector resources = getResourcesFromMesosOffers(offers);
+    return Resource.newInstance((int) resources.getMem(), (int) resources.getCpus());
+  }
 
+  /**
+   * Sums up the scalar resources of a collection of mesos offers.
+   *
+   * @param offers collection of mesos offers
+   * @return a single resource vector equivalent to the cumulative sum of mesos offers
+   */
+  public static ResourceVector getResourcesFromMesosOffers(Collection<Offer> offers) {
+    ResourceVector resources = new ResourceVector();
     for (Protos.Offer offer : offers) {
-      for (Protos.Resource resource : offer.getResourcesList()) {
-        if (resource.getName().equalsIgnoreCase("cpus")) {
-          cpus += resource.getScalar().getValue();
-        } else if (resource.getName().equalsIgnoreCase("mem")) {
-          mem += resource.getScalar().getValue();
-        }
-      }
+      resources.addOffer(offer, null);
     }
-    return Resource.newInstance((int) mem, (int) cpus);
+    return resources;
   }
 
 }
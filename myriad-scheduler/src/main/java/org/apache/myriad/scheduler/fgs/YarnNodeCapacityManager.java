@@ -18,9 +18,10 @@
  */
 package org.apache.myriad.scheduler.fgs;
 
-import java.util.HashSet;
+import java.util.Collections;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -40,6 +41,7 @@ import org.apache.hadoop.yarn.server.resourcemanager.scheduler.AbstractYarnSched
 import org.apache.hadoop.yarn.server.resourcemanager.scheduler.SchedulerApplicationAttempt;
 import org.apache.hadoop.yarn.server.resourcemanager.scheduler.SchedulerNode;
 import org.apache.hadoop.yarn.server.resourcemanager.scheduler.event.NodeAddedSchedulerEvent;
+import org.apache.hadoop.yarn.server.resourcemanager.scheduler.event.NodeRemovedSchedulerEvent;
 import org.apache.hadoop.yarn.server.resourcemanager.scheduler.event.NodeResourceUpdateSchedulerEvent;
 import org.apache.hadoop.yarn.server.resourcemanager.scheduler.event.NodeUpdateSchedulerEvent;
 import org.apache.hadoop.yarn.server.resourcemanager.scheduler.event.SchedulerEvent;
@@ -47,10 +49,10 @@ import org.apache.hadoop.yarn.util.resource.Resources;
 import org.apache.mesos.Protos;
 import org.apache.myriad.configuration.NodeManagerConfiguration;
 import org.apache.myriad.executor.ContainerTaskStatusRequest;
-import org.apache.myriad.scheduler.MyriadDriver;
 import org.apache.myriad.scheduler.ResourceUtils;
 import org.apache.myriad.scheduler.SchedulerUtils;
 import org.apache.myriad.scheduler.TaskUtils;
+import org.apache.myriad.scheduler.resource.ResourceVector;
 import org.apache.myriad.scheduler.yarn.interceptor.BaseInterceptor;
 import org.apache.myriad.scheduler.yarn.interceptor.InterceptorRegistry;
 import org.apache.myriad.state.SchedulerState;
@@ -59,7 +61,6 @@ import org.slf4j.LoggerFactory;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.Lists;
-import com.google.common.collect.Sets;
 
 /**
  * Manages the capacity exposed by NodeManager. It uses the offers available
@@ -71,34 +72,46 @@ import com.google.common.collect.Sets;
  * 2. If ResourceManager ended up using the expanded capacity, then the node's
  * capacity is updated accordingly and any unused capacity is returned back to
  * Mesos.
+ * <p/>
+ * Capacity changes are applied to the {@link RMNode} right away, but the
+ * {@link NodeResourceUpdateSchedulerEvent} telling the YARN scheduler about them is
+ * only sent when the node's capacity is set by a heartbeat or when the scheduler is
+ * done with the node's update, so the decrements of one heartbeat are coalesced into
+ * a single event. Updates of a node are serialized by one of a fixed set of locks
+ * striped by NodeId, rather than across all nodes.
  */
 public class YarnNodeCapacityManager extends BaseInterceptor {
   private static final Logger LOGGER = LoggerFactory.getLogger(YarnNodeCapacityManager.class);
 
   private final AbstractYarnScheduler yarnScheduler;
   private final RMContext rmContext;
-  private final MyriadDriver myriadDriver;
+  private final ContainerTaskLauncher taskLauncher;
   private final OfferLifecycleManager offerLifecycleMgr;
   private final NodeStore nodeStore;
   private final SchedulerState state;
-  private static final Lock yarnSchedulerLock = new ReentrantLock();
+  private static final int NODE_LOCK_STRIPES = 64;
+  private final Lock[] nodeLocks = new Lock[NODE_LOCK_STRIPES];
+  private final Set<NodeId> pendingCapacityUpdates = Collections.newSetFromMap(new ConcurrentHashMap<NodeId, Boolean>());
   private static final Resource ZERO_RESOURCE = Resource.newInstance(0, 0);
   private TaskUtils taskUtils;
 
   @Inject
   public YarnNodeCapacityManager(InterceptorRegistry registry, AbstractYarnScheduler yarnScheduler, RMContext rmContext,
-                                 MyriadDriver myriadDriver, OfferLifecycleManager offerLifecycleMgr, NodeStore nodeStore,
+                                 ContainerTaskLauncher taskLauncher, OfferLifecycleManager offerLifecycleMgr, NodeStore nodeStore,
                                  SchedulerState state, TaskUtils taskUtils) {
     if (registry != null) {
       registry.register(this);
     }
     this.yarnScheduler = yarnScheduler;
     this.rmContext = rmContext;
-    this.myriadDriver = myriadDriver;
+    this.taskLauncher = taskLauncher;
     this.offerLifecycleMgr = offerLifecycleMgr;
     this.nodeStore = nodeStore;
     this.state = state;
     this.taskUtils = taskUtils;
+    for (int i = 0; i < NODE_LOCK_STRIPES; i++) {
+      nodeLocks[i] = new ReentrantLock();
+    }
   }
 
   @Override
@@ -122,6 +135,12 @@ public class YarnNodeCapacityManager extends BaseInterceptor {
 
   @Override
   public void beforeCompletedContainer(RMContainer rmContainer, ContainerStatus containerStatus, RMContainerEventType type) {
+    if (containersNotNull(rmContainer)) {
+      Node node = retrieveNode(rmContainer);
+      if (node != null) {
+        node.containerCompleted(rmContainer.getContainerId());
+      }
+    }
     if (type.equals(RMContainerEventType.KILL) || type.equals(RMContainerEventType.RELEASED)) {
       LOGGER.info("{} completed with exit status {}, killing cooresponding mesos task.", rmContainer.getContainerId().toString(), type);
       removeYarnTask(rmContainer);
@@ -185,9 +204,19 @@ public class YarnNodeCapacityManager extends BaseInterceptor {
 
         RMNode rmNode = ((NodeUpdateSchedulerEvent) event).getRMNode();
         handleContainerAllocation(rmNode);
+        flushNodeCapacity(rmNode);
 
         break;
 
+      case NODE_REMOVED:
+        if (!(event instanceof NodeRemovedSchedulerEvent)) {
+          LOGGER.error("{} not an instance of {}", event.getClass().getName(), NodeRemovedSchedulerEvent.class.getName());
+          return;
+        }
+
+        pendingCapacityUpdates.remove(((NodeRemovedSchedulerEvent) event).getRemovedRMNode().getNodeID());
+        break;
+
       default:
         break;
     }
@@ -203,117 +232,172 @@ public class YarnNodeCapacityManager extends BaseInterceptor {
   protected void handleContainerAllocation(RMNode rmNode) {
     String host = rmNode.getNodeID().getHost();
 
+    // Polled on every update, so containers allocated without offers aren't attributed to later ones
+    Node node = nodeStore.getNode(host);
+    List<RMContainer> containersAllocatedByMesosOffer = (node == null) ? Collections.<RMContainer>emptyList() :
+        node.pollAllocatedContainers();
+
     ConsumedOffer consumedOffer = offerLifecycleMgr.drainConsumedOffer(host);
     if (consumedOffer == null) {
       LOGGER.debug("No offer consumed for {}", host);
       return;
     }
 
-    Node node = nodeStore.getNode(host);
-    Set<RMContainer> containersBeforeSched = node.getContainerSnapshot();
-    Set<RMContainer> containersAfterSched = new HashSet<>(node.getNode().getRunningContainers());
-
-    Set<RMContainer> containersAllocatedByMesosOffer = (containersBeforeSched == null) ? containersAfterSched : Sets.difference(
-        containersAfterSched, containersBeforeSched);
-
     if (containersAllocatedByMesosOffer.isEmpty()) {
       LOGGER.debug("No containers allocated using Mesos offers for host: {}", host);
       for (Protos.Offer offer : consumedOffer.getOffers()) {
         offerLifecycleMgr.declineOffer(offer);
       }
-      decrementNodeCapacity(rmNode, OfferUtils.getYarnResourcesFromMesosOffers(consumedOffer.getOffers()));
+      ResourceVector resOffered = consumedOffer.getResources();
+      decrementNodeCapacity(rmNode, Resource.newInstance((int) resOffered.getMem(), (int) resOffered.getCpus()));
     } else {
       LOGGER.debug("Containers allocated using Mesos offers for host: {} count: {}", host, containersAllocatedByMesosOffer.size());
 
-      // Identify the Mesos tasks that need to be launched
-      List<Protos.TaskInfo> tasks = Lists.newArrayList();
-      Resource resUsed = Resource.newInstance(0, 0);
+      // Identify the Mesos tasks that need to be launched, all on the agent of the consumed offers
+      Protos.Offer offer = consumedOffer.getOffers().get(0);
+      Protos.ExecutorInfo executorInfo = getExecutorInfo(node, offer);
+      ResourceVector resRemaining = taskUtils.getResources(consumedOffer.getOffers());
+      List<Protos.TaskInfo> tasks = Lists.newArrayListWithCapacity(containersAllocatedByMesosOffer.size());
 
       for (RMContainer newContainer : containersAllocatedByMesosOffer) {
-        tasks.add(getTaskInfoForContainer(newContainer, consumedOffer, node));
-        resUsed = Resources.add(resUsed, newContainer.getAllocatedResource());
+        tasks.add(getTaskInfoForContainer(newContainer, offer.getSlaveId(), executorInfo, resRemaining));
       }
 
       // Reduce node capacity to account for unused offers
-      Resource resOffered = OfferUtils.getYarnResourcesFromMesosOffers(consumedOffer.getOffers());
-      Resource resUnused = Resources.subtract(resOffered, resUsed);
-      decrementNodeCapacity(rmNode, resUnused);
-      myriadDriver.getDriver().launchTasks(consumedOffer.getOfferIds(), tasks);
+      decrementNodeCapacity(rmNode, Resource.newInstance((int) resRemaining.getMem(), (int) resRemaining.getCpus()));
+      taskLauncher.launch(offer.getSlaveId(), consumedOffer.getOfferIds(), tasks);
     }
-
-    // No need to hold on to the snapshot anymore
-    node.removeContainerSnapshot();
   }
 
   /**
-   * Increments the capacity for the specified RMNode
+   * Increments the capacity for the specified RMNode, the scheduler is told with the next flush
    * 
    * @param rmNode
-   * @param removedCapacity
+   * @param addedCapacity
    */
   public void incrementNodeCapacity(RMNode rmNode, Resource addedCapacity) {
-    setNodeCapacity(rmNode, Resources.add(rmNode.getTotalCapability(), addedCapacity));
+    Lock lock = getNodeLock(rmNode);
+    lock.lock();
+    try {
+      updateNodeCapacity(rmNode, Resources.add(rmNode.getTotalCapability(), addedCapacity), false);
+    } finally {
+      lock.unlock();
+    }
   }
 
   /**
-   * Decrements the capacity for the specified RMNode
+   * Decrements the capacity for the specified RMNode, the scheduler is told with the next flush
    * 
    * @param rmNode
    * @param removedCapacity
    */
   public void decrementNodeCapacity(RMNode rmNode, Resource removedCapacity) {
-    setNodeCapacity(rmNode, Resources.subtract(rmNode.getTotalCapability(), removedCapacity));
+    Lock lock = getNodeLock(rmNode);
+    lock.lock();
+    try {
+      updateNodeCapacity(rmNode, Resources.subtract(rmNode.getTotalCapability(), removedCapacity), false);
+    } finally {
+      lock.unlock();
+    }
   }
 
   /**
    * 1. Updates {@link RMNode#getTotalCapability()} with newCapacity.
    * 2. Sends out a {@link NodeResourceUpdateSchedulerEvent} that's handled by YARN's scheduler.
    * The scheduler updates the corresponding {@link SchedulerNode} with the newCapacity.
+   * Changes made since the last flush go out with the same event.
    *
    * @param rmNode
    * @param newCapacity
    */
-  @SuppressWarnings("unchecked")
   public void setNodeCapacity(RMNode rmNode, Resource newCapacity) {
-    //NOOP prevent YARN warning changing to same size
-    if ((Resources.equals(rmNode.getTotalCapability(), newCapacity))) {
-      return;
+    Lock lock = getNodeLock(rmNode);
+    lock.lock();
+    try {
+      updateNodeCapacity(rmNode, newCapacity, true);
+    } finally {
+      lock.unlock();
     }
-    if (yarnScheduler.getSchedulerNode(rmNode.getNodeID()) == null) {
-      LOGGER.info("Yarn Scheduler doesn't have node {}, probably UNHEALTHY", rmNode.getNodeID());
+  }
+
+  /**
+   * Sends out a single {@link NodeResourceUpdateSchedulerEvent} for the capacity changes made
+   * to the RMNode since the last flush, if any.
+   *
+   * @param rmNode
+   */
+  public void flushNodeCapacity(RMNode rmNode) {
+    if (!pendingCapacityUpdates.contains(rmNode.getNodeID())) {
       return;
     }
-    yarnSchedulerLock.lock();
+    Lock lock = getNodeLock(rmNode);
+    lock.lock();
     try {
-      if (newCapacity.getMemory() < 0 || newCapacity.getVirtualCores() < 0) {
-        Resource zeroed = ResourceUtils.componentwiseMax(ZERO_RESOURCE, newCapacity);
-        rmNode.getTotalCapability().setMemory(zeroed.getMemory());
-        rmNode.getTotalCapability().setVirtualCores(zeroed.getVirtualCores());
-        LOGGER.warn("Asked to set Node {} to a value less than zero!  Had {}, setting to {}.",
-            rmNode.getHttpAddress(), rmNode.getTotalCapability().toString(), zeroed.toString());
-      } else {
-        rmNode.getTotalCapability().setMemory(newCapacity.getMemory());
-        rmNode.getTotalCapability().setVirtualCores(newCapacity.getVirtualCores());
-        if (LOGGER.isInfoEnabled()) {
-          LOGGER.info("Setting capacity for node {} to {}", rmNode.getHostName(), newCapacity);
-        }
+      if (pendingCapacityUpdates.remove(rmNode.getNodeID())) {
+        dispatchNodeCapacity(rmNode);
       }
-      // updates the scheduler with the new capacity for the NM.
-      // the event is handled by the scheduler asynchronously
-      rmContext.getDispatcher().getEventHandler().handle(new NodeResourceUpdateSchedulerEvent(rmNode, ResourceOption.newInstance(
-          rmNode.getTotalCapability(), RMNode.OVER_COMMIT_TIMEOUT_MILLIS_DEFAULT)));
     } finally {
-      yarnSchedulerLock.unlock();
+      lock.unlock();
     }
   }
 
-  private Protos.TaskInfo getTaskInfoForContainer(RMContainer rmContainer, ConsumedOffer consumedOffer, Node node) {
+  @VisibleForTesting
+  boolean hasPendingCapacityUpdate(RMNode rmNode) {
+    return pendingCapacityUpdates.contains(rmNode.getNodeID());
+  }
 
-    Protos.Offer offer = consumedOffer.getOffers().get(0);
-    Container container = rmContainer.getContainer();
-    Protos.TaskID taskId = Protos.TaskID.newBuilder().setValue(
-        ContainerTaskStatusRequest.YARN_CONTAINER_TASK_ID_PREFIX + container.getId().toString()).build();
+  private Lock getNodeLock(RMNode rmNode) {
+    return nodeLocks[(rmNode.getNodeID().hashCode() & Integer.MAX_VALUE) % NODE_LOCK_STRIPES];
+  }
 
+  /**
+   * Must be called with the node's lock held.
+   */
+  private void updateNodeCapacity(RMNode rmNode, Resource newCapacity, boolean flush) {
+    NodeId nodeId = rmNode.getNodeID();
+    //NOOP prevent YARN warning changing to same size
+    if (Resources.equals(rmNode.getTotalCapability(), newCapacity)) {
+      if (flush && pendingCapacityUpdates.remove(nodeId)) {
+        dispatchNodeCapacity(rmNode);
+      }
+      return;
+    }
+    if (yarnScheduler.getSchedulerNode(nodeId) == null) {
+      LOGGER.info("Yarn Scheduler doesn't have node {}, probably UNHEALTHY", nodeId);
+      return;
+    }
+    if (newCapacity.getMemory() < 0 || newCapacity.getVirtualCores() < 0) {
+      Resource zeroed = ResourceUtils.componentwiseMax(ZERO_RESOURCE, newCapacity);
+      rmNode.getTotalCapability().setMemory(zeroed.getMemory());
+      rmNode.getTotalCapability().setVirtualCores(zeroed.getVirtualCores());
+      LOGGER.warn("Asked to set Node {} to a value less than zero!  Had {}, setting to {}.",
+          rmNode.getHttpAddress(), rmNode.getTotalCapability().toString(), zeroed.toString());
+    } else {
+      rmNode.getTotalCapability().setMemory(newCapacity.getMemory());
+      rmNode.getTotalCapability().setVirtualCores(newCapacity.getVirtualCores());
+      if (LOGGER.isInfoEnabled()) {
+        LOGGER.info("Setting capacity for node {} to {}", rmNode.getHostName(), newCapacity);
+      }
+    }
+    if (flush) {
+      pendingCapacityUpdates.remove(nodeId);
+      dispatchNodeCapacity(rmNode);
+    } else {
+      pendingCapacityUpdates.add(nodeId);
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private void dispatchNodeCapacity(RMNode rmNode) {
+    // updates the scheduler with the new capacity for the NM.
+    // the event is handled by the scheduler asynchronously, so it gets a copy of the capacity
+    Resource capacity = Resource.newInstance(rmNode.getTotalCapability().getMemory(),
+        rmNode.getTotalCapability().getVirtualCores());
+    rmContext.getDispatcher().getEventHandler().handle(new NodeResourceUpdateSchedulerEvent(rmNode, ResourceOption.newInstance(
+        capacity, RMNode.OVER_COMMIT_TIMEOUT_MILLIS_DEFAULT)));
+  }
+
+  private Protos.ExecutorInfo getExecutorInfo(Node node, Protos.Offer offer) {
     // TODO (sdaingade) Remove ExecutorInfo from the Node object
     // as this is now cached in the NodeTask object in scheduler state.
     Protos.ExecutorInfo executorInfo = node.getExecInfo();
@@ -322,12 +406,20 @@ public class YarnNodeCapacityManager extends BaseInterceptor {
           .getExecutorInfo()).setFrameworkId(offer.getFrameworkId()).build();
       node.setExecInfo(executorInfo);
     }
+    return executorInfo;
+  }
+
+  private Protos.TaskInfo getTaskInfoForContainer(RMContainer rmContainer, Protos.SlaveID slaveId,
+                                                  Protos.ExecutorInfo executorInfo, ResourceVector resRemaining) {
+    Container container = rmContainer.getContainer();
+    Protos.TaskID taskId = Protos.TaskID.newBuilder().setValue(
+        ContainerTaskStatusRequest.YARN_CONTAINER_TASK_ID_PREFIX + container.getId().toString()).build();
 
     return Protos.TaskInfo.newBuilder()
         .setName("task_" + taskId.getValue()).setTaskId(taskId)
-        .setSlaveId(offer.getSlaveId())
-        .addAllResources(taskUtils.getScalarResource(offer, "cpus", (double) container.getResource().getVirtualCores(), 0.0))
-        .addAllResources(taskUtils.getScalarResource(offer, "mem", (double) container.getResource().getMemory(), 0.0))
+        .setSlaveId(slaveId)
+        .addAllResources(taskUtils.consumeScalarResource(resRemaining, ResourceVector.CPUS, container.getResource().getVirtualCores()))
+        .addAllResources(taskUtils.consumeScalarResource(resRemaining, ResourceVector.MEM, container.getResource().getMemory()))
         .setExecutor(executorInfo)
         .build();
   }
@@ -26,13 +26,23 @@ import java.util.*;
 
 /**
  * Mutable POJO for handling RangeResources, specifically ports.
+ * <p/>
+ * The ranges are kept disjoint and sorted by their first value in primitive arrays, so a value is
+ * looked up and split out of its range with a binary search, and the values of the ranges are
+ * never materialized.
  */
 
 public class RangeResource {
+  private static final int INITIAL_CAPACITY = 4;
+
   private String name;
-  private List<Range> ranges = new ArrayList<>();
-  private Long numValues = 0L;
-  private Long numDefaultValues = 0L;
+  // Range i holds the values begins[i] to ends[i], roles[i] tells whether it is reserved for the role
+  private long[] begins = new long[INITIAL_CAPACITY];
+  private long[] ends = new long[INITIAL_CAPACITY];
+  private boolean[] roles = new boolean[INITIAL_CAPACITY];
+  private int numRanges = 0;
+  private long numValues = 0L;
+  private long numDefaultValues = 0L;
 
   private String role;
   @VisibleForTesting //This way we can set a seed to get deterministic values
@@ -43,43 +53,87 @@ public class RangeResource {
     this.role = role;
   }
 
+  /**
+   * Copies the ranges of another RangeResource.
+   *
+   * @param other
+   */
+  public RangeResource(RangeResource other) {
+    this.name = other.name;
+    this.role = other.role;
+    this.begins = Arrays.copyOf(other.begins, Math.max(other.numRanges + 2, INITIAL_CAPACITY));
+    this.ends = Arrays.copyOf(other.ends, begins.length);
+    this.roles = Arrays.copyOf(other.roles, begins.length);
+    this.numRanges = other.numRanges;
+    this.numValues = other.numValues;
+    this.numDefaultValues = other.numDefaultValues;
+    this.random = other.random;
+  }
+
   public boolean satisfies(Collection<Long> requestedValues) {
     if (requestedValues.size() > numValues) {
       return false;
     }
-    List<Long> tmp = new ArrayList<>();
-    tmp.addAll(requestedValues);
-    tmp.removeAll(Collections.singleton(0L));
-    for (Long val : tmp) {
-      if (!contains(val)) {
+    long randomValues = 0;
+    long defaultValues = 0;
+    for (Long val : requestedValues) {
+      if (val == 0L) {
+        randomValues++;
+        continue;
+      }
+      int index = indexOf(val);
+      if (index < 0) {
         return false;
       }
+      if (!roles[index]) {
+        defaultValues++;
+      }
     }
-    return true;
+    // Random values are only taken from the unreserved ranges
+    return randomValues + defaultValues <= numDefaultValues;
   }
 
   public boolean contains(Long value) {
-    for (Range range: ranges) {
-      if (range.contains(value)) {
-        return true;
-      }
-    }
-    return false;
+    return indexOf(value) >= 0;
   }
 
+  /**
+   * Returns the values of all ranges. The list is a view computed from the ranges when it is
+   * requested, so it does not reflect later changes.
+   *
+   * @return List<Long>
+   */
   public List<Long> getValues() {
-    List<Long> ret = new ArrayList<>();
-    for (Range range: ranges) {
-      ret.addAll(range.allValues());
+    final long[] rangeBegins = Arrays.copyOf(begins, numRanges);
+    // offsets[i] is the number of values in the ranges before range i
+    final long[] offsets = new long[numRanges + 1];
+    for (int i = 0; i < numRanges; i++) {
+      offsets[i + 1] = offsets[i] + ends[i] - begins[i] + 1;
     }
-    return ret;
+    final int size = (int) offsets[numRanges];
+    return new AbstractList<Long>() {
+      @Override
+      public Long get(int index) {
+        if (index < 0 || index >= size) {
+          throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        int range = Arrays.binarySearch(offsets, index);
+        range = range >= 0 ? range : -range - 2;
+        return rangeBegins[range] + index - offsets[range];
+      }
+
+      @Override
+      public int size() {
+        return size;
+      }
+    };
   }
 
   public void addRanges(List <Protos.Value.Range> ranges, Boolean withRole) {
     for (Protos.Value.Range range : ranges) {
       long tb = range.getBegin();
       long te = range.getEnd();
-      this.ranges.add(new Range(tb, te, withRole));
+      insertRange(insertionPoint(tb), tb, te, withRole);
       numValues += (te - tb + 1);
       if (!withRole) {
         numDefaultValues += (te - tb + 1);
@@ -121,98 +175,123 @@ public class RangeResource {
     return builder.build();
   }
 
+  /**
+   * Picks size distinct values of the unreserved ranges at random, in ascending order. Positions
+   * are sampled with Floyd's algorithm and resolved in a single pass over the ranges.
+   */
   private List<Long> getRandomValues(int size) {
-    //can improve this
-    List<Integer> sample = new ArrayList<>(size);
-    while (sample.size() < size) {
-      int rand = random.nextInt(numDefaultValues.intValue());
-      if (!sample.contains(rand)) {
-        sample.add(rand);
+    Preconditions.checkState(size <= numDefaultValues, "%s random values requested: %s, greater than amount held %s",
+        name, size, numDefaultValues);
+    long[] sample = new long[size];
+    Set<Long> sampled = new HashSet<>(size * 2);
+    int count = 0;
+    for (long j = numDefaultValues - size; j < numDefaultValues; j++) {
+      long position = nextLong(j + 1);
+      if (!sampled.add(position)) {
+        position = j;
+        sampled.add(position);
       }
+      sample[count++] = position;
     }
-    Collections.sort(sample);
+    Arrays.sort(sample);
 
+    List<Long> elems = new ArrayList<>(size);
     long location = 0;
-    long lastLocation = 0;
     int j = 0;
-    List<Long> elems = new ArrayList<>();
-    for (Range range : ranges) {
-      if (!range.role) {
-        long tb = range.begin;
-        long te = range.end;
-        location += te - tb + 1;
-        for (int i = j; i < sample.size(); i++) {
-          long val = sample.get(i);
-          if (val < location) {
-            elems.add(tb + val - lastLocation);
-            j++;
-          } else {
-            lastLocation = location;
-            break;
-          }
+    for (int i = 0; i < numRanges && j < size; i++) {
+      if (!roles[i]) {
+        long length = ends[i] - begins[i] + 1;
+        while (j < size && sample[j] < location + length) {
+          elems.add(begins[i] + sample[j] - location);
+          j++;
         }
+        location += length;
       }
     }
     return elems;
   }
 
+  private long nextLong(long bound) {
+    if (bound <= Integer.MAX_VALUE) {
+      return random.nextInt((int) bound);
+    }
+    return (long) (random.nextDouble() * bound);
+  }
+
   private boolean removeValue(Long value) {
-    for (Range range : ranges) {
-      if (range.contains(value)) {
-        ranges.remove(range);
-        long begin = range.begin;
-        long end = range.end;
-        if (value != begin && value != end) {
-          ranges.add(new Range(begin, value - 1, range.role));
-          ranges.add(new Range(value + 1, end, range.role));
-          return true;
-        } else if (value == begin && value != end) {
-          ranges.add(new Range(value + 1, end, range.role));
-          return true;
-        } else if (value == end && value != begin) {
-          ranges.add(new Range(begin, value - 1, range.role));
-          return true;
-        } else {
-          return true;
-        }
-      }
+    int index = indexOf(value);
+    if (index < 0) {
+      return false;
     }
-    return false;
+    long begin = begins[index];
+    long end = ends[index];
+    boolean reserved = roles[index];
+    if (value != begin && value != end) {
+      ends[index] = value - 1;
+      insertRange(index + 1, value + 1, end, reserved);
+    } else if (value == begin && value != end) {
+      begins[index] = value + 1;
+    } else if (value == end && value != begin) {
+      ends[index] = value - 1;
+    } else {
+      removeRange(index);
+    }
+    numValues--;
+    if (!reserved) {
+      numDefaultValues--;
+    }
+    return true;
   }
 
   private boolean hasRole(Long value) {
-    for (Range range : ranges) {
-      if (range.contains(value)) {
-        return range.role;
-      }
-    }
-    return false;
+    int index = indexOf(value);
+    return index >= 0 && roles[index];
   }
 
-  private static class Range {
-    Long begin;
-    Long end;
-    Boolean role;
+  /**
+   * @return the index of the range containing the value, or -1
+   */
+  private int indexOf(long value) {
+    int index = insertionPoint(value + 1) - 1;
+    return index >= 0 && ends[index] >= value ? index : -1;
+  }
 
-    public Range(Long begin, Long end, Boolean role){
-      this.begin = begin;
-      this.end = end;
-      this.role = role;
-    }
-    public Collection<Long> allValues() {
-      List<Long> ret = new ArrayList<>();
-      for (long i = begin; i <= end; i++) {
-        ret.add(i);
+  /**
+   * @return the index of the first range starting after the value
+   */
+  private int insertionPoint(long value) {
+    int low = 0;
+    int high = numRanges;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (begins[mid] < value) {
+        low = mid + 1;
+      } else {
+        high = mid;
       }
-      return ret;
-    }
-    public Boolean contains(Long value) {
-      return (value >= begin && value <= end);
     }
+    return low;
+  }
 
-    public String toString() {
-      return "(" + begin + "," + end + ")";
+  private void insertRange(int index, long begin, long end, boolean withRole) {
+    if (numRanges == begins.length) {
+      begins = Arrays.copyOf(begins, numRanges * 2);
+      ends = Arrays.copyOf(ends, numRanges * 2);
+      roles = Arrays.copyOf(roles, numRanges * 2);
     }
+    System.arraycopy(begins, index, begins, index + 1, numRanges - index);
+    System.arraycopy(ends, index, ends, index + 1, numRanges - index);
+    System.arraycopy(roles, index, roles, index + 1, numRanges - index);
+    begins[index] = begin;
+    ends[index] = end;
+    roles[index] = withRole;
+    numRanges++;
   }
 
+  private void removeRange(int index) {
+    System.arraycopy(begins, index + 1, begins, index, numRanges - index - 1);
+    System.arraycopy(ends, index + 1, ends, index, numRanges - index - 1);
+    System.arraycopy(roles, index + 1, roles, index, numRanges - index - 1);
+    numRanges--;
+  }
 }
@@ -37,8 +37,12 @@ public class ResourceOfferContainer {
   private static final String RESOURCE_MEM = "mem";
   private static final String RESOURCE_PORTS = "ports";
 
-  private HashMap<String, ScalarResource> scalarValues = new HashMap<>();
-  private HashMap<String, RangeResource> rangeValues = new HashMap<>();
+  // Resources as parsed from the offer, shared with forks and never consumed from
+  private final Map<String, ScalarResource> parsedScalarValues;
+  private final Map<String, RangeResource> parsedRangeValues;
+  // Copies of the parsed resources this container consumed from, created on first use
+  private Map<String, ScalarResource> scalarValues = Collections.emptyMap();
+  private Map<String, RangeResource> rangeValues = Collections.emptyMap();
 
   private Protos.Offer offer;
   private String role;
@@ -52,10 +56,42 @@ public class ResourceOfferContainer {
   public ResourceOfferContainer(Protos.Offer offer, ServiceResourceProfile profile, String role) {
     this.offer = offer;
     this.role = role;
+    this.parsedScalarValues = new HashMap<>();
+    this.parsedRangeValues = new HashMap<>();
     setScalarValues();
     //ports = new RangeResource(offer, RESOURCE_PORTS, profile.getPorts().values(), role);
   }
 
+  private ResourceOfferContainer(ResourceOfferContainer parent) {
+    this.offer = parent.offer;
+    this.role = parent.role;
+    this.parsedScalarValues = parent.parsedScalarValues;
+    this.parsedRangeValues = parent.parsedRangeValues;
+    if (!parent.scalarValues.isEmpty()) {
+      this.scalarValues = new HashMap<>();
+      for (Map.Entry<String, ScalarResource> entry : parent.scalarValues.entrySet()) {
+        scalarValues.put(entry.getKey(), new ScalarResource(entry.getValue()));
+      }
+    }
+    if (!parent.rangeValues.isEmpty()) {
+      this.rangeValues = new HashMap<>();
+      for (Map.Entry<String, RangeResource> entry : parent.rangeValues.entrySet()) {
+        rangeValues.put(entry.getKey(), new RangeResource(entry.getValue()));
+      }
+    }
+  }
+
+  /**
+   * Returns a container with the resources this container has left, without parsing the offer
+   * again. Resources are only copied once they are consumed from, so evaluating a task against a
+   * fork is as cheap as against the container itself and consuming from it leaves this one unchanged.
+   *
+   * @return ResourceOfferContainer
+   */
+  public ResourceOfferContainer fork() {
+    return new ResourceOfferContainer(this);
+  }
+
   /**
    * returns the hostname contained in the offer
    *
@@ -65,6 +101,10 @@ public class ResourceOfferContainer {
     return offer.getHostname();
   }
 
+  public Protos.Offer getOffer() {
+    return offer;
+  }
+
   public String getOfferId() {
     return offer.getId().getValue();
   }
@@ -74,7 +114,7 @@ public class ResourceOfferContainer {
   }
 
   public double getScalarValue(String name) {
-    return scalarValues.get(name).getTotalValue();
+    return getScalarResource(name).getTotalValue();
   }
 
   public double getCpus() {
@@ -86,7 +126,7 @@ public class ResourceOfferContainer {
   }
 
   public List<Long> getPorts() {
-    return rangeValues.get(RESOURCE_PORTS).getValues();
+    return getRangeResource(RESOURCE_PORTS).getValues();
   }
 
   /**
@@ -96,9 +136,13 @@ public class ResourceOfferContainer {
    * @return
    */
   public boolean satisfies(ServiceResourceProfile profile) {
-    return scalarValues.containsKey(RESOURCE_CPUS) && scalarValues.get(RESOURCE_CPUS).satisfies(profile.getAggregateCpu()) &&
-        scalarValues.containsKey(RESOURCE_MEM) && scalarValues.get(RESOURCE_MEM).satisfies(profile.getAggregateMemory()) &&
-        rangeValues.containsKey(RESOURCE_PORTS) && rangeValues.get(RESOURCE_PORTS).satisfies(profile.getPorts().values());
+    ScalarResource cpus = getScalarResource(RESOURCE_CPUS);
+    ScalarResource mem = getScalarResource(RESOURCE_MEM);
+    RangeResource ports = getRangeResource(RESOURCE_PORTS);
+    ResourceVector demand = profile.getResourceVector();
+    return cpus != null && cpus.satisfies(demand.getCpus()) &&
+        mem != null && mem.satisfies(demand.getMem()) &&
+        ports != null && ports.satisfies(profile.getPorts().values());
   }
 
   /**
@@ -130,9 +174,27 @@ public class ResourceOfferContainer {
     return true;
   }
 
+  private ScalarResource getScalarResource(String name) {
+    ScalarResource resource = scalarValues.get(name);
+    return resource != null ? resource : parsedScalarValues.get(name);
+  }
+
+  private RangeResource getRangeResource(String name) {
+    RangeResource resource = rangeValues.get(name);
+    return resource != null ? resource : parsedRangeValues.get(name);
+  }
+
   private List<Protos.Resource> consumeScalarResource(String name, Double value) {
-    Preconditions.checkState(scalarValues.containsKey(name));
-    return scalarValues.get(name).consumeResource(value);
+    Preconditions.checkState(parsedScalarValues.containsKey(name));
+    ScalarResource resource = scalarValues.get(name);
+    if (resource == null) {
+      if (scalarValues.isEmpty()) {
+        scalarValues = new HashMap<>();
+      }
+      resource = new ScalarResource(parsedScalarValues.get(name));
+      scalarValues.put(name, resource);
+    }
+    return resource.consumeResource(value);
   }
 
   /**
@@ -168,7 +230,15 @@ public class ResourceOfferContainer {
    * @return List<Protos.Resource>
    */
   public List<Protos.Resource> consumePorts(Collection<Long> requestedValues) {
-    return rangeValues.get(RESOURCE_PORTS).consumeResource(requestedValues);
+    RangeResource resource = rangeValues.get(RESOURCE_PORTS);
+    if (resource == null) {
+      if (rangeValues.isEmpty()) {
+        rangeValues = new HashMap<>();
+      }
+      resource = new RangeResource(parsedRangeValues.get(RESOURCE_PORTS));
+      rangeValues.put(RESOURCE_PORTS, resource);
+    }
+    return resource.consumeResource(requestedValues);
   }
 
   private void setScalarValues() {
@@ -185,21 +255,21 @@ public class ResourceOfferContainer {
     }
   }
 
-  private void addToScalarResource(String name, Double value, Boolean hasRole) {
-    if (scalarValues.containsKey(name)) {
-      scalarValues.get(name).incrementValue(value, hasRole);
+  private void addToScalarResource(String name, double value, boolean hasRole) {
+    if (parsedScalarValues.containsKey(name)) {
+      parsedScalarValues.get(name).incrementValue(value, hasRole);
     } else {
-      scalarValues.put(name, new ScalarResource(name, role));
-      scalarValues.get(name).incrementValue(value, hasRole);
+      parsedScalarValues.put(name, new ScalarResource(name, role));
+      parsedScalarValues.get(name).incrementValue(value, hasRole);
     }
   }
 
   private void addToRangeResource(String name, List<Protos.Value.Range> values , Boolean hasRole) {
-    if (rangeValues.containsKey(name)) {
-      rangeValues.get(name).addRanges(values, hasRole);
+    if (parsedRangeValues.containsKey(name)) {
+      parsedRangeValues.get(name).addRanges(values, hasRole);
     } else {
-      rangeValues.put(name, new RangeResource(name, role));
-      rangeValues.get(name).addRanges(values, hasRole);
+      parsedRangeValues.put(name, new RangeResource(name, role));
+      parsedRangeValues.get(name).addRanges(values, hasRole);
     }
   }
 
@@ -0,0 +1,281 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.myriad.scheduler.resource;
+
+import java.util.Arrays;
+
+import org.apache.mesos.Protos;
+import org.apache.myriad.scheduler.ServiceResourceProfile;
+
+/**
+ * Mutable vector of scalar resources with fixed slots for cpus, mem and disk and named slots for any
+ * other scalar resource. Every slot is split into the amount reserved for the framework role and the
+ * unreserved amount.
+ * <p/>
+ * {@link #add}, {@link #subtract} and {@link #fits} work on the primitive slots in place and don't
+ * allocate, apart from growing the named slots the first time a resource name is seen.
+ */
+public final class ResourceVector {
+  public static final String CPUS = "cpus";
+  public static final String MEM = "mem";
+  public static final String DISK = "disk";
+
+  private static final int CPUS_SLOT = 0;
+  private static final int MEM_SLOT = 1;
+  private static final int DISK_SLOT = 2;
+  private static final int FIXED_SLOTS = 3;
+  private static final String[] NO_EXTRAS = new String[0];
+
+  // Unreserved and reserved amounts, the fixed slots followed by one slot per extra name
+  private double[] values = new double[FIXED_SLOTS];
+  private double[] roleValues = new double[FIXED_SLOTS];
+  private String[] extraNames = NO_EXTRAS;
+
+  public ResourceVector() {
+  }
+
+  public ResourceVector(double cpus, double mem, double disk) {
+    values[CPUS_SLOT] = cpus;
+    values[MEM_SLOT] = mem;
+    values[DISK_SLOT] = disk;
+  }
+
+  public ResourceVector(ResourceVector other) {
+    values = other.values.clone();
+    roleValues = other.roleValues.clone();
+    extraNames = other.extraNames.clone();
+  }
+
+  /**
+   * @param offer
+   * @param role  the framework role, resources reserved for it go to the role split
+   * @return the scalar resources of the offer
+   */
+  public static ResourceVector fromOffer(Protos.Offer offer, String role) {
+    return new ResourceVector().addOffer(offer, role);
+  }
+
+  /**
+   * @param profile
+   * @return the aggregate cpus and memory the profile needs
+   */
+  public static ResourceVector fromProfile(ServiceResourceProfile profile) {
+    return new ResourceVector(profile.getAggregateCpu(), profile.getAggregateMemory(), 0.0);
+  }
+
+  /**
+   * Adds the scalar resources of the offer.
+   *
+   * @param offer
+   * @param role  the framework role, resources reserved for it go to the role split
+   * @return this
+   */
+  public ResourceVector addOffer(Protos.Offer offer, String role) {
+    for (int i = 0, count = offer.getResourcesCount(); i < count; i++) {
+      Protos.Resource resource = offer.getResources(i);
+      if (resource.hasScalar()) {
+        add(resource.getName(), resource.getScalar().getValue(),
+            role != null && resource.hasRole() && role.equals(resource.getRole()));
+      }
+    }
+    return this;
+  }
+
+  /**
+   * Subtracts the scalar resources of the offer from the split they were added to by
+   * {@link #addOffer}, undoing it.
+   *
+   * @param offer
+   * @param role  the framework role, resources reserved for it are taken from the role split
+   * @return this
+   */
+  public ResourceVector subtractOffer(Protos.Offer offer, String role) {
+    for (int i = 0, count = offer.getResourcesCount(); i < count; i++) {
+      Protos.Resource resource = offer.getResources(i);
+      if (resource.hasScalar()) {
+        add(resource.getName(), -resource.getScalar().getValue(),
+            role != null && resource.hasRole() && role.equals(resource.getRole()));
+      }
+    }
+    return this;
+  }
+
+  /**
+   * Adds an amount of the named resource.
+   *
+   * @param name
+   * @param value
+   * @param reserved true if the amount is reserved for the framework role
+   * @return this
+   */
+  public ResourceVector add(String name, double value, boolean reserved) {
+    int slot = slot(name, true);
+    if (reserved) {
+      roleValues[slot] += value;
+    } else {
+      values[slot] += value;
+    }
+    return this;
+  }
+
+  /**
+   * Adds both splits of every resource of the other vector.
+   *
+   * @param other
+   * @return this
+   */
+  public ResourceVector add(ResourceVector other) {
+    for (int i = 0; i < other.values.length; i++) {
+      int slot = i < FIXED_SLOTS ? i : slot(other.extraNames[i - FIXED_SLOTS], true);
+      values[slot] += other.values[i];
+      roleValues[slot] += other.roleValues[i];
+    }
+    return this;
+  }
+
+  /**
+   * Subtracts the total of every resource of the other vector, from the reserved amount first and
+   * from the unreserved amount for the rest, the way resources are taken from an offer.
+   *
+   * @param other
+   * @return this
+   */
+  public ResourceVector subtract(ResourceVector other) {
+    for (int i = 0; i < other.values.length; i++) {
+      int slot = i < FIXED_SLOTS ? i : slot(other.extraNames[i - FIXED_SLOTS], true);
+      double value = other.values[i] + other.roleValues[i];
+      double fromRole = Math.min(Math.max(roleValues[slot], 0.0), value);
+      roleValues[slot] -= fromRole;
+      values[slot] -= value - fromRole;
+    }
+    return this;
+  }
+
+  /**
+   * @param demand
+   * @return true if the total of every resource of the demand is available
+   */
+  public boolean fits(ResourceVector demand) {
+    for (int i = 0; i < demand.values.length; i++) {
+      double needed = demand.values[i] + demand.roleValues[i];
+      if (needed <= 0.0) {
+        continue;
+      }
+      int slot = i < FIXED_SLOTS ? i : slot(demand.extraNames[i - FIXED_SLOTS], false);
+      if (slot < 0 || values[slot] + roleValues[slot] < needed) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @param cpus
+   * @param mem
+   * @return true if the cpus and memory are available
+   */
+  public boolean fits(double cpus, double mem) {
+    return getCpus() >= cpus && getMem() >= mem;
+  }
+
+  /**
+   * Sets every resource to zero, keeping the named slots.
+   *
+   * @return this
+   */
+  public ResourceVector clear() {
+    Arrays.fill(values, 0.0);
+    Arrays.fill(roleValues, 0.0);
+    return this;
+  }
+
+  public double getCpus() {
+    return values[CPUS_SLOT] + roleValues[CPUS_SLOT];
+  }
+
+  public double getMem() {
+    return values[MEM_SLOT] + roleValues[MEM_SLOT];
+  }
+
+  public double getDisk() {
+    return values[DISK_SLOT] + roleValues[DISK_SLOT];
+  }
+
+  /**
+   * @param name
+   * @return the total amount of the named resource
+   */
+  public double get(String name) {
+    int slot = slot(name, false);
+    return slot < 0 ? 0.0 : values[slot] + roleValues[slot];
+  }
+
+  /**
+   * @param name
+   * @return the amount of the named resource reserved for the framework role
+   */
+  public double getReserved(String name) {
+    int slot = slot(name, false);
+    return slot < 0 ? 0.0 : roleValues[slot];
+  }
+
+  /**
+   * @param name
+   * @return the unreserved amount of the named resource
+   */
+  public double getUnreserved(String name) {
+    int slot = slot(name, false);
+    return slot < 0 ? 0.0 : values[slot];
+  }
+
+  private int slot(String name, boolean create) {
+    switch (name) {
+      case CPUS:
+        return CPUS_SLOT;
+      case MEM:
+        return MEM_SLOT;
+      case DISK:
+        return DISK_SLOT;
+      default:
+        for (int i = 0; i < extraNames.length; i++) {
+          if (extraNames[i].equals(name)) {
+            return FIXED_SLOTS + i;
+          }
+        }
+        if (!create) {
+          return -1;
+        }
+        extraNames = Arrays.copyOf(extraNames, extraNames.length + 1);
+        extraNames[extraNames.length - 1] = name;
+        values = Arrays.copyOf(values, values.length + 1);
+        roleValues = Arrays.copyOf(roleValues, roleValues.length + 1);
+        return values.length - 1;
+    }
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder builder = new StringBuilder("<cpus:").append(getCpus()).append(", mem:").append(getMem())
+        .append(", disk:").append(getDisk());
+    for (String name : extraNames) {
+      builder.append(", ").append(name).append(':').append(get(name));
+    }
+    return builder.append('>').toString();
+  }
+}
@@ -40,7 +40,14 @@ class ScalarResource {
     this.role = role;
   }
 
-  public void incrementValue(Double value, Boolean role) {
+  public ScalarResource(ScalarResource other) {
+    this.name = other.name;
+    this.role = other.role;
+    this.defaultValue = other.defaultValue;
+    this.roleValue = other.roleValue;
+  }
+
+  public void incrementValue(double value, boolean role) {
     if (role) {
       roleValue += value;
     } else {
@@ -48,15 +55,15 @@ class ScalarResource {
     }
   }
 
-  public Double getTotalValue() {
+  public double getTotalValue() {
     return defaultValue + roleValue;
   }
 
-  public Boolean satisfies(Double value) {
+  public boolean satisfies(double value) {
     return defaultValue + roleValue >= value;
   }
 
-  public List<Protos.Resource> consumeResource(Double value) {
+  public List<Protos.Resource> consumeResource(double value) {
     Preconditions.checkState(roleValue + defaultValue >= value, String.format("%s value requested: %f, greater " +
         "than amount held %f", name, value, roleValue + defaultValue));
     List<Protos.Resource> resources = new ArrayList<>();
@@ -75,7 +82,7 @@ class ScalarResource {
     return resources;
   }
 
-  private Protos.Resource createResource(String name, Double value, boolean withRole) {
+  private Protos.Resource createResource(String name, double value, boolean withRole) {
     Protos.Resource.Builder builder = Protos.Resource.newBuilder()
         .setName(name)
         .setScalar(Protos.Value.Scalar.newBuilder().setValue(value))
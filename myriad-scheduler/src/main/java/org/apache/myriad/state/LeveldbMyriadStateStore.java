@@ -0,0 +1,260 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.myriad.state;
+
+import static org.fusesource.leveldbjni.JniDBFactory.bytes;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.mesos.Protos;
+import org.apache.myriad.state.utils.ByteBufferSupport;
+import org.apache.myriad.state.utils.JournalEntry;
+import org.apache.myriad.state.utils.StoreContext;
+import org.apache.myriad.state.utils.TaskRecord;
+import org.fusesource.leveldbjni.JniDBFactory;
+import org.iq80.leveldb.DB;
+import org.iq80.leveldb.DBIterator;
+import org.iq80.leveldb.Options;
+import org.iq80.leveldb.WriteBatch;
+import org.iq80.leveldb.WriteOptions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * MyriadStateStore backed by an embedded LevelDB database on local disk, for deployments
+ * where the ResourceManagers share a local volume. The framework id is stored under
+ * {@value #FRAMEWORK_ID_KEY} and every task under {@value #TASK_KEY_PREFIX} followed by its
+ * TaskID, with a {@link TaskRecord} as value. As TaskIDs start with the task prefix, the
+ * tasks of one task prefix are a contiguous key range.
+ * <p/>
+ * Every store call is written as one LevelDB write batch that is synced to disk before the
+ * call returns, so a batch of journal entries costs a single fsync. The database is opened on
+ * first use, as LevelDB allows only one process to open it at a time.
+ */
+public class LeveldbMyriadStateStore implements MyriadStateStore, Closeable {
+  private static final Logger LOGGER = LoggerFactory.getLogger(LeveldbMyriadStateStore.class);
+
+  static final String FRAMEWORK_ID_KEY = "frameworkId";
+  static final String TASK_KEY_PREFIX = "task/";
+
+  private final File path;
+  private final WriteOptions syncWrites = new WriteOptions().sync(true);
+  private DB db;
+
+  public LeveldbMyriadStateStore(File path) {
+    this.path = path;
+  }
+
+  @Override
+  public synchronized StoreContext loadMyriadState() throws Exception {
+    byte[] frameworkId = getDB().get(bytes(FRAMEWORK_ID_KEY));
+    Map<Protos.TaskID, TaskRecord> records = loadTaskRecords("");
+    if (frameworkId == null && records.isEmpty()) {
+      return null;
+    }
+    StoreContext context = new StoreContext();
+    if (frameworkId != null && frameworkId.length > 0) {
+      context.setFrameworkId(Protos.FrameworkID.parseFrom(frameworkId));
+    }
+    for (Map.Entry<Protos.TaskID, TaskRecord> entry : records.entrySet()) {
+      context.putTaskRecord(entry.getKey(), entry.getValue());
+    }
+    LOGGER.info("Loaded {} tasks from {}", records.size(), path);
+    return context;
+  }
+
+  /**
+   * Reads the stored tasks whose TaskID starts with the given prefix.
+   *
+   * @param taskIdPrefix e.g. "nm." for all NodeManager tasks, or "" for all tasks
+   * @return TaskRecords keyed by TaskID
+   * @throws IOException
+   */
+  public synchronized Map<Protos.TaskID, TaskRecord> loadTaskRecords(String taskIdPrefix) throws IOException {
+    Map<Protos.TaskID, TaskRecord> records = new HashMap<>();
+    byte[] prefix = bytes(TASK_KEY_PREFIX + taskIdPrefix);
+    try (DBIterator iterator = getDB().iterator()) {
+      for (iterator.seek(prefix); iterator.hasNext(); iterator.next()) {
+        Map.Entry<byte[], byte[]> entry = iterator.peekNext();
+        if (!startsWith(entry.getKey(), prefix)) {
+          break;
+        }
+        records.put(toTaskId(entry.getKey()), TaskRecord.fromBytes(entry.getValue()));
+      }
+    }
+    return records;
+  }
+
+  @Override
+  public synchronized void storeMyriadState(StoreContext storeContext) throws Exception {
+    DB database = getDB();
+    Map<Protos.TaskID, TaskRecord> records = storeContext.getTaskRecords();
+    Set<String> keys = new HashSet<>(records.size() * 2);
+    int written = 0;
+    try (WriteBatch batch = database.createWriteBatch()) {
+      Protos.FrameworkID frameworkId = storeContext.getFrameworkId();
+      batch.put(bytes(FRAMEWORK_ID_KEY), frameworkId == null ? ByteBufferSupport.ZERO_BYTES : frameworkId.toByteArray());
+      for (Map.Entry<Protos.TaskID, TaskRecord> entry : records.entrySet()) {
+        String key = toKey(entry.getKey());
+        keys.add(key);
+        byte[] value = entry.getValue().toBytes();
+        // Reads are cheap compared to writes, which all end up in the log and are compacted
+        if (!Arrays.equals(value, database.get(bytes(key)))) {
+          batch.put(bytes(key), value);
+          written++;
+        }
+      }
+      byte[] prefix = bytes(TASK_KEY_PREFIX);
+      try (DBIterator iterator = database.iterator()) {
+        for (iterator.seek(prefix); iterator.hasNext(); iterator.next()) {
+          byte[] key = iterator.peekNext().getKey();
+          if (!startsWith(key, prefix)) {
+            break;
+          }
+          if (!keys.contains(new String(key, StandardCharsets.UTF_8))) {
+            batch.delete(key);
+            written++;
+          }
+        }
+      }
+      database.write(batch, syncWrites);
+    }
+    LOGGER.debug("Stored snapshot of {} tasks, {} of them changed", records.size(), written);
+  }
+
+  @Override
+  public synchronized void storeMyriadStateEntries(List<JournalEntry> entries) throws Exception {
+    DB database = getDB();
+    // Latest serialized record of every task changed by the entries, null for removed tasks. A
+    // record is only deserialized to apply a status update to its task.
+    Map<Protos.TaskID, byte[]> changed = new HashMap<>();
+    try (WriteBatch batch = database.createWriteBatch()) {
+      for (JournalEntry entry : entries) {
+        Protos.TaskID taskId = entry.getTaskId();
+        switch (entry.getType()) {
+          case FRAMEWORK_ID:
+            Protos.FrameworkID frameworkId = entry.getFrameworkId();
+            batch.put(bytes(FRAMEWORK_ID_KEY), frameworkId == null ? ByteBufferSupport.ZERO_BYTES :
+                frameworkId.toByteArray());
+            break;
+          case ADD_TASK:
+            byte[] existing = getRecord(database, changed, taskId);
+            changed.put(taskId, TaskRecord.toBytes(existing == null ? null : TaskRecord.getTaskState(existing),
+                entry.getTask()));
+            break;
+          case UPDATE_TASK_STATUS:
+            byte[] value = getRecord(database, changed, taskId);
+            TaskRecord updated = value == null ? null : TaskRecord.fromBytes(value);
+            if (updated != null && updated.getTask() != null) {
+              updated.getTask().setTaskStatus(entry.getTaskStatus());
+              changed.put(taskId, updated.toBytes());
+            }
+            break;
+          case TASK_STATE:
+            byte[] record = getRecord(database, changed, taskId);
+            changed.put(taskId, record == null ? TaskRecord.toBytes(entry.getTaskState(), null) :
+                TaskRecord.withTaskState(record, entry.getTaskState()));
+            break;
+          case REMOVE_TASK:
+            changed.put(taskId, null);
+            break;
+        }
+      }
+      for (Map.Entry<Protos.TaskID, byte[]> entry : changed.entrySet()) {
+        if (entry.getValue() == null) {
+          batch.delete(bytes(toKey(entry.getKey())));
+        } else {
+          batch.put(bytes(toKey(entry.getKey())), entry.getValue());
+        }
+      }
+      database.write(batch, syncWrites);
+    }
+  }
+
+  @Override
+  public synchronized void removeMyriadState() throws Exception {
+    if (db != null) {
+      db.close();
+      db = null;
+    }
+    JniDBFactory.factory.destroy(path, new Options());
+    LOGGER.info("Removed Myriad state store at {}", path);
+  }
+
+  /**
+   * Closes the database, it is opened again on the next call.
+   *
+   * @throws IOException
+   */
+  @Override
+  public synchronized void close() throws IOException {
+    if (db != null) {
+      db.close();
+      db = null;
+    }
+  }
+
+  /**
+   * Returns the serialized record of a task as changed so far by the current batch, or as it is
+   * stored in the database.
+   */
+  private byte[] getRecord(DB database, Map<Protos.TaskID, byte[]> changed, Protos.TaskID taskId) {
+    return changed.containsKey(taskId) ? changed.get(taskId) : database.get(bytes(toKey(taskId)));
+  }
+
+  private DB getDB() throws IOException {
+    if (db == null) {
+      Options options = new Options();
+      options.createIfMissing(true);
+      LOGGER.info("Opening Myriad state store at {}", path);
+      db = JniDBFactory.factory.open(path, options);
+    }
+    return db;
+  }
+
+  private static String toKey(Protos.TaskID taskId) {
+    return TASK_KEY_PREFIX + taskId.getValue();
+  }
+
+  private static Protos.TaskID toTaskId(byte[] key) {
+    String value = new String(key, TASK_KEY_PREFIX.length(), key.length - TASK_KEY_PREFIX.length(), StandardCharsets.UTF_8);
+    return Protos.TaskID.newBuilder().setValue(value).build();
+  }
+
+  private static boolean startsWith(byte[] key, byte[] prefix) {
+    if (key.length < prefix.length) {
+      return false;
+    }
+    for (int i = 0; i < prefix.length; i++) {
+      if (key[i] != prefix[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
@@ -19,16 +19,41 @@
 
 package org.apache.myriad.state;
 
+import java.util.List;
+
+import org.apache.myriad.state.utils.JournalEntry;
 import org.apache.myriad.state.utils.StoreContext;
 
 /**
- * Interface implemented by all Myriad State Store implementations
+ * Interface implemented by all Myriad State Store implementations. The state is persisted as
+ * a snapshot (a full StoreContext) followed by a journal of the mutations made since that
+ * snapshot was stored.
  */
 public interface MyriadStateStore {
 
+  /**
+   * Loads the last snapshot with all journal entries written after it replayed on top.
+   *
+   * @return StoreContext or null if there is no stored state
+   * @throws Exception
+   */
   StoreContext loadMyriadState() throws Exception;
 
+  /**
+   * Stores a full snapshot of the state and discards the journal entries it supersedes.
+   *
+   * @param storeContext
+   * @throws Exception
+   */
   void storeMyriadState(StoreContext storeContext) throws Exception;
 
+  /**
+   * Appends a batch of mutations to the journal. The batch is durable once this returns.
+   *
+   * @param entries in the order the mutations were made
+   * @throws Exception
+   */
+  void storeMyriadStateEntries(List<JournalEntry> entries) throws Exception;
+
   void removeMyriadState() throws Exception;
 }
@@ -25,12 +25,17 @@ import java.util.List;
 import org.apache.commons.lang.StringUtils;
 import org.apache.mesos.Protos;
 import org.apache.mesos.Protos.Attribute;
+import org.apache.mesos.protobuf.ByteString;
+import org.apache.mesos.protobuf.InvalidProtocolBufferException;
 import org.apache.myriad.scheduler.ServiceResourceProfile;
 import org.apache.myriad.scheduler.TaskUtils;
 import org.apache.myriad.scheduler.constraints.Constraint;
 
 /**
  * Represents a Mesos task to be launched by the Mesos executor
+ * <p/>
+ * Tasks recovered from the state store keep their TaskStatus and ExecutorInfo serialized until
+ * they are first accessed, as most of them are never looked at after a failover.
  */
 public class NodeTask {
   @JsonProperty
@@ -38,7 +43,8 @@ public class NodeTask {
   @JsonProperty
   private Protos.SlaveID slaveId;
   @JsonProperty
-  private Protos.TaskStatus taskStatus;
+  private volatile Protos.TaskStatus taskStatus;
+  private volatile ByteString serializedTaskStatus;
   @JsonProperty
   private String taskPrefix;
   @JsonProperty
@@ -50,7 +56,8 @@ public class NodeTask {
   /**
    * Mesos executor for this node.
    */
-  private Protos.ExecutorInfo executorInfo;
+  private volatile Protos.ExecutorInfo executorInfo;
+  private volatile ByteString serializedExecutorInfo;
 
   private Constraint constraint;
   
@@ -61,6 +68,27 @@ public class NodeTask {
     this.constraint = constraint;
   }
 
+  /**
+   * Returns a copy of this task to modify and re-add to the SchedulerState, as the tasks held by
+   * the SchedulerState are shared with its published snapshots. A TaskStatus or ExecutorInfo that
+   * was not parsed yet is copied in its serialized form.
+   *
+   * @return copy of this task
+   */
+  public synchronized NodeTask copy() {
+    NodeTask copy = new NodeTask(profile, constraint);
+    copy.hostname = hostname;
+    copy.slaveId = slaveId;
+    copy.taskStatus = taskStatus;
+    copy.serializedTaskStatus = serializedTaskStatus;
+    copy.taskPrefix = taskPrefix;
+    copy.taskUtils = taskUtils;
+    copy.executorInfo = executorInfo;
+    copy.serializedExecutorInfo = serializedExecutorInfo;
+    copy.slaveAttributes = slaveAttributes;
+    return copy;
+  }
+
   public Protos.SlaveID getSlaveId() {
     return slaveId;
   }
@@ -73,6 +101,10 @@ public class NodeTask {
     return constraint;
   }
 
+  public void setConstraint(Constraint constraint) {
+    this.constraint = constraint;
+  }
+
   public String getHostname() {
     return this.hostname;
   }
@@ -82,19 +114,93 @@ public class NodeTask {
   }
 
   public Protos.TaskStatus getTaskStatus() {
+    if (serializedTaskStatus != null) {
+      parseTaskStatus();
+    }
     return taskStatus;
   }
 
-  public void setTaskStatus(Protos.TaskStatus taskStatus) {
+  public synchronized void setTaskStatus(Protos.TaskStatus taskStatus) {
     this.taskStatus = taskStatus;
+    this.serializedTaskStatus = null;
+  }
+
+  /**
+   * Sets the TaskStatus in its serialized form, it is parsed on first access.
+   *
+   * @param taskStatus serialized TaskStatus or null
+   */
+  public synchronized void setSerializedTaskStatus(ByteString taskStatus) {
+    this.taskStatus = null;
+    this.serializedTaskStatus = taskStatus;
+  }
+
+  /**
+   * @return the serialized TaskStatus, without parsing it if it has not been parsed yet
+   */
+  public ByteString getSerializedTaskStatus() {
+    ByteString serialized = serializedTaskStatus;
+    if (serialized != null) {
+      return serialized;
+    }
+    Protos.TaskStatus parsed = taskStatus;
+    return parsed == null ? null : parsed.toByteString();
+  }
+
+  private synchronized void parseTaskStatus() {
+    if (serializedTaskStatus != null) {
+      try {
+        taskStatus = Protos.TaskStatus.parseFrom(serializedTaskStatus);
+      } catch (InvalidProtocolBufferException e) {
+        throw new RuntimeException("Failed to parse Task Status", e);
+      }
+      serializedTaskStatus = null;
+    }
   }
 
   public Protos.ExecutorInfo getExecutorInfo() {
+    if (serializedExecutorInfo != null) {
+      parseExecutorInfo();
+    }
     return executorInfo;
   }
 
-  public void setExecutorInfo(Protos.ExecutorInfo executorInfo) {
+  public synchronized void setExecutorInfo(Protos.ExecutorInfo executorInfo) {
     this.executorInfo = executorInfo;
+    this.serializedExecutorInfo = null;
+  }
+
+  /**
+   * Sets the ExecutorInfo in its serialized form, it is parsed on first access.
+   *
+   * @param executorInfo serialized ExecutorInfo or null
+   */
+  public synchronized void setSerializedExecutorInfo(ByteString executorInfo) {
+    this.executorInfo = null;
+    this.serializedExecutorInfo = executorInfo;
+  }
+
+  /**
+   * @return the serialized ExecutorInfo, without parsing it if it has not been parsed yet
+   */
+  public ByteString getSerializedExecutorInfo() {
+    ByteString serialized = serializedExecutorInfo;
+    if (serialized != null) {
+      return serialized;
+    }
+    Protos.ExecutorInfo parsed = executorInfo;
+    return parsed == null ? null : parsed.toByteString();
+  }
+
+  private synchronized void parseExecutorInfo() {
+    if (serializedExecutorInfo != null) {
+      try {
+        executorInfo = Protos.ExecutorInfo.parseFrom(serializedExecutorInfo);
+      } catch (InvalidProtocolBufferException e) {
+        throw new RuntimeException("Failed to parse Executor Info", e);
+      }
+      serializedExecutorInfo = null;
+    }
   }
 
   public void setSlaveAttributes(List<Attribute> slaveAttributes) {
@@ -0,0 +1,413 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.myriad.state;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Immutable hash map whose updates share structure with the map they were derived from.
+ * <p/>
+ * Entries are kept in a hash array mapped trie branching on five bits of the key's hash per
+ * level, so {@link #plus(Object, Object)} and {@link #minus(Object)} only copy the nodes on
+ * the path to the key, O(log n), and leave the original map untouched. Keys with the same hash
+ * share a collision node. The map itself is read-only, the {@link Map} mutators throw
+ * UnsupportedOperationException.
+ *
+ * @param <K> key type
+ * @param <V> value type
+ */
+final class PersistentHashMap<K, V> extends AbstractMap<K, V> {
+  private static final int BITS = 5;
+  private static final int MASK = (1 << BITS) - 1;
+
+  private static final PersistentHashMap<Object, Object> EMPTY = new PersistentHashMap<>(null, 0);
+
+  private final Node root;
+  private final int size;
+  private Set<Map.Entry<K, V>> entrySet;
+
+  private PersistentHashMap(Node root, int size) {
+    this.root = root;
+    this.size = size;
+  }
+
+  @SuppressWarnings("unchecked")
+  static <K, V> PersistentHashMap<K, V> empty() {
+    return (PersistentHashMap<K, V>) EMPTY;
+  }
+
+  static <K, V> PersistentHashMap<K, V> copyOf(Map<K, V> map) {
+    PersistentHashMap<K, V> copy = empty();
+    for (Map.Entry<K, V> entry : map.entrySet()) {
+      copy = copy.plus(entry.getKey(), entry.getValue());
+    }
+    return copy;
+  }
+
+  /**
+   * @param key
+   * @param value must not be null
+   * @return map with the value for key replaced, or this map if it already maps key to value
+   */
+  PersistentHashMap<K, V> plus(K key, V value) {
+    Objects.requireNonNull(value, "value");
+    Leaf leaf = new Leaf(hash(key), key, value);
+    boolean[] added = new boolean[1];
+    Node newRoot = root == null ? BitmapNode.of(leaf, 0) : root.put(leaf, 0, added);
+    if (root == null) {
+      added[0] = true;
+    }
+    return newRoot == root ? this : new PersistentHashMap<K, V>(newRoot, added[0] ? size + 1 : size);
+  }
+
+  /**
+   * @param key
+   * @return map without key, or this map if it has no value for key
+   */
+  PersistentHashMap<K, V> minus(Object key) {
+    if (root == null) {
+      return this;
+    }
+    Node newRoot = root.remove(hash(key), key, 0);
+    if (newRoot == root) {
+      return this;
+    }
+    return newRoot == null ? PersistentHashMap.<K, V>empty() : new PersistentHashMap<K, V>(newRoot, size - 1);
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public V get(Object key) {
+    Leaf leaf = find(key);
+    return leaf == null ? null : (V) leaf.value;
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    return find(key) != null;
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public Set<Map.Entry<K, V>> entrySet() {
+    if (entrySet == null) {
+      entrySet = new AbstractSet<Map.Entry<K, V>>() {
+        @Override
+        public Iterator<Map.Entry<K, V>> iterator() {
+          return new EntryIterator<>(root);
+        }
+
+        @Override
+        public int size() {
+          return size;
+        }
+      };
+    }
+    return entrySet;
+  }
+
+  private Leaf find(Object key) {
+    return root == null ? null : root.find(hash(key), key, 0);
+  }
+
+  private static int hash(Object key) {
+    int h = key.hashCode();
+    return h ^ (h >>> 16);
+  }
+
+  private static int bit(int hash, int shift) {
+    return 1 << ((hash >>> shift) & MASK);
+  }
+
+  private static Object[] replace(Object[] slots, int index, Object slot) {
+    Object[] copy = slots.clone();
+    copy[index] = slot;
+    return copy;
+  }
+
+  private static Object[] insert(Object[] slots, int index, Object slot) {
+    Object[] copy = new Object[slots.length + 1];
+    System.arraycopy(slots, 0, copy, 0, index);
+    copy[index] = slot;
+    System.arraycopy(slots, index, copy, index + 1, slots.length - index);
+    return copy;
+  }
+
+  private static Object[] delete(Object[] slots, int index) {
+    Object[] copy = new Object[slots.length - 1];
+    System.arraycopy(slots, 0, copy, 0, index);
+    System.arraycopy(slots, index + 1, copy, index, copy.length - index);
+    return copy;
+  }
+
+  /**
+   * Node of the trie, never mutated once built
+   */
+  private abstract static class Node {
+    final Object[] slots;
+
+    Node(Object[] slots) {
+      this.slots = slots;
+    }
+
+    abstract Leaf find(int hash, Object key, int shift);
+
+    /**
+     * @return node with the leaf added, or this node if nothing changed
+     */
+    abstract Node put(Leaf leaf, int shift, boolean[] added);
+
+    /**
+     * @return node without the key, this node if it has no such key, or null if it became empty
+     */
+    abstract Node remove(int hash, Object key, int shift);
+  }
+
+  /**
+   * Node whose slots hold a Leaf or a child Node for each set bit of the bitmap
+   */
+  private static final class BitmapNode extends Node {
+    private final int bitmap;
+
+    BitmapNode(int bitmap, Object[] slots) {
+      super(slots);
+      this.bitmap = bitmap;
+    }
+
+    static BitmapNode of(Leaf leaf, int shift) {
+      return new BitmapNode(bit(leaf.hash, shift), new Object[] {leaf});
+    }
+
+    private int index(int bit) {
+      return Integer.bitCount(bitmap & (bit - 1));
+    }
+
+    @Override
+    Leaf find(int hash, Object key, int shift) {
+      int bit = bit(hash, shift);
+      if ((bitmap & bit) == 0) {
+        return null;
+      }
+      Object slot = slots[index(bit)];
+      if (slot instanceof Leaf) {
+        Leaf leaf = (Leaf) slot;
+        return leaf.matches(hash, key) ? leaf : null;
+      }
+      return ((Node) slot).find(hash, key, shift + BITS);
+    }
+
+    @Override
+    Node put(Leaf leaf, int shift, boolean[] added) {
+      int bit = bit(leaf.hash, shift);
+      int index = index(bit);
+      if ((bitmap & bit) == 0) {
+        added[0] = true;
+        return new BitmapNode(bitmap | bit, insert(slots, index, leaf));
+      }
+      Object slot = slots[index];
+      if (slot instanceof Leaf) {
+        Leaf current = (Leaf) slot;
+        if (current.matches(leaf.hash, leaf.key)) {
+          return current.value == leaf.value ? this : new BitmapNode(bitmap, replace(slots, index, leaf));
+        }
+        added[0] = true;
+        return new BitmapNode(bitmap, replace(slots, index, merge(current, leaf, shift + BITS)));
+      }
+      Node child = (Node) slot;
+      Node newChild = child.put(leaf, shift + BITS, added);
+      return newChild == child ? this : new BitmapNode(bitmap, replace(slots, index, newChild));
+    }
+
+    @Override
+    Node remove(int hash, Object key, int shift) {
+      int bit = bit(hash, shift);
+      if ((bitmap & bit) == 0) {
+        return this;
+      }
+      int index = index(bit);
+      Object slot = slots[index];
+      Node newChild;
+      if (slot instanceof Leaf) {
+        if (!((Leaf) slot).matches(hash, key)) {
+          return this;
+        }
+        newChild = null;
+      } else {
+        Node child = (Node) slot;
+        newChild = child.remove(hash, key, shift + BITS);
+        if (newChild == child) {
+          return this;
+        }
+      }
+      if (newChild != null) {
+        return new BitmapNode(bitmap, replace(slots, index, newChild));
+      }
+      return slots.length == 1 ? null : new BitmapNode(bitmap & ~bit, delete(slots, index));
+    }
+
+    /**
+     * Builds the subtree holding two leaves that share the hash bits below shift.
+     */
+    private static Node merge(Leaf first, Leaf second, int shift) {
+      if (first.hash == second.hash) {
+        return new CollisionNode(first.hash, new Object[] {first, second});
+      }
+      int firstBit = bit(first.hash, shift);
+      int secondBit = bit(second.hash, shift);
+      if (firstBit == secondBit) {
+        return new BitmapNode(firstBit, new Object[] {merge(first, second, shift + BITS)});
+      }
+      Object[] slots = Integer.compareUnsigned(firstBit, secondBit) < 0 ?
+          new Object[] {first, second} : new Object[] {second, first};
+      return new BitmapNode(firstBit | secondBit, slots);
+    }
+  }
+
+  /**
+   * Node holding the leaves of keys whose hashes are equal
+   */
+  private static final class CollisionNode extends Node {
+    private final int hash;
+
+    CollisionNode(int hash, Object[] slots) {
+      super(slots);
+      this.hash = hash;
+    }
+
+    private int indexOf(Object key) {
+      for (int i = 0; i < slots.length; i++) {
+        if (((Leaf) slots[i]).matches(hash, key)) {
+          return i;
+        }
+      }
+      return -1;
+    }
+
+    @Override
+    Leaf find(int hash, Object key, int shift) {
+      int index = hash == this.hash ? indexOf(key) : -1;
+      return index < 0 ? null : (Leaf) slots[index];
+    }
+
+    @Override
+    Node put(Leaf leaf, int shift, boolean[] added) {
+      if (leaf.hash != hash) {
+        // Push this node down a level so the new key can branch off next to it
+        return new BitmapNode(bit(hash, shift), new Object[] {this}).put(leaf, shift, added);
+      }
+      int index = indexOf(leaf.key);
+      if (index < 0) {
+        added[0] = true;
+        return new CollisionNode(hash, insert(slots, slots.length, leaf));
+      }
+      return ((Leaf) slots[index]).value == leaf.value ? this : new CollisionNode(hash, replace(slots, index, leaf));
+    }
+
+    @Override
+    Node remove(int hash, Object key, int shift) {
+      int index = hash == this.hash ? indexOf(key) : -1;
+      if (index < 0) {
+        return this;
+      }
+      return slots.length == 1 ? null : new CollisionNode(hash, delete(slots, index));
+    }
+  }
+
+  private static final class Leaf {
+    private final int hash;
+    private final Object key;
+    private final Object value;
+
+    Leaf(int hash, Object key, Object value) {
+      this.hash = hash;
+      this.key = key;
+      this.value = value;
+    }
+
+    boolean matches(int hash, Object key) {
+      return this.hash == hash && this.key.equals(key);
+    }
+  }
+
+  /**
+   * Depth first walk of the trie
+   */
+  private static final class EntryIterator<K, V> implements Iterator<Map.Entry<K, V>> {
+    private final Deque<Iterator<Object>> stack = new ArrayDeque<>();
+    private Leaf next;
+
+    EntryIterator(Node root) {
+      if (root != null) {
+        stack.push(Arrays.asList(root.slots).iterator());
+      }
+      advance();
+    }
+
+    private void advance() {
+      next = null;
+      while (!stack.isEmpty()) {
+        Iterator<Object> slots = stack.peek();
+        if (!slots.hasNext()) {
+          stack.pop();
+          continue;
+        }
+        Object slot = slots.next();
+        if (slot instanceof Leaf) {
+          next = (Leaf) slot;
+          return;
+        }
+        stack.push(Arrays.asList(((Node) slot).slots).iterator());
+      }
+    }
+
+    @Override
+    public boolean hasNext() {
+      return next != null;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Map.Entry<K, V> next() {
+      if (next == null) {
+        throw new NoSuchElementException();
+      }
+      Map.Entry<K, V> entry = new AbstractMap.SimpleImmutableEntry<>((K) next.key, (V) next.value);
+      advance();
+      return entry;
+    }
+
+    @Override
+    public void remove() {
+      throw new UnsupportedOperationException();
+    }
+  }
+}
@@ -20,46 +20,105 @@ package org.apache.myriad.state;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
-import java.util.HashSet;
+import java.util.EnumMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.regex.Pattern;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Future;
 
 import org.apache.commons.collections.CollectionUtils;
 import org.apache.mesos.Protos;
+import org.apache.mesos.Protos.Attribute;
 import org.apache.mesos.Protos.SlaveID;
+import org.apache.myriad.configuration.MyriadConfiguration;
+import org.apache.myriad.configuration.NodeManagerConfiguration;
 import org.apache.myriad.scheduler.ServiceResourceProfile;
+import org.apache.myriad.scheduler.constraints.Constraint;
+import org.apache.myriad.state.utils.JournalEntry;
 import org.apache.myriad.state.utils.StoreContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Optional;
+import com.google.common.collect.ConcurrentHashMultiset;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
 import com.google.common.collect.Sets;
 
 /**
  * Encapsulates the state of the all {@link NodeTask} objects managed
  * by a {@link MyriadScheduler} as well as corresponding state update methods.
+ * <p/>
+ * Mutations are serialized on this object's monitor and each of them publishes a new
+ * {@link SchedulerStateSnapshot}. All getters read the latest published snapshot without
+ * locking; callers that need several consistent lookups should use {@link #getSnapshot()}.
  */
 public class SchedulerState {
   private static final Logger LOGGER = LoggerFactory.getLogger(SchedulerState.class);
 
-  private static Pattern taskIdPattern = Pattern.compile("\\.");
-
-  private Map<Protos.TaskID, NodeTask> tasks;
-  private Protos.FrameworkID frameworkId;
+  private volatile SchedulerStateSnapshot snapshot = SchedulerStateSnapshot.EMPTY;
   private MyriadStateStore stateStore;
-  private Map<String, SchedulerStateForType> statesForTaskType;
+  private StateFlusher flusher;
+  private volatile long recoveryTimeMs;
+  private final List<Runnable> pendingTaskListeners = new CopyOnWriteArrayList<>();
+  // Active NM tasks eligible for fine grained scaling and the hosts they run on, counted per task
+  private final Map<Protos.TaskID, String> fineGrainedScalingTasks = new ConcurrentHashMap<>();
+  private final ConcurrentHashMultiset<String> fineGrainedScalingHosts = ConcurrentHashMultiset.create();
+
+  // Tasks share a handful of distinct profiles and constraints, keep one instance of each
+  private final Interner<ServiceResourceProfile> profiles = Interners.newWeakInterner();
+  private final Interner<Constraint> constraints = Interners.newWeakInterner();
 
   public SchedulerState(MyriadStateStore stateStore) {
-    this.tasks = new ConcurrentHashMap<>();
+    this(stateStore, MyriadConfiguration.DEFAULT_STATE_STORE_FLUSH_INTERVAL_MS,
+        MyriadConfiguration.DEFAULT_STATE_STORE_FLUSH_MAX_PENDING, MyriadConfiguration.DEFAULT_STATE_STORE_SNAPSHOT_INTERVAL);
+  }
+
+  /**
+   * @param stateStore
+   * @param flushIntervalMs maximum time a mutation is queued before it is persisted, zero or less
+   *                        persists every mutation synchronously
+   * @param maxPendingEntries number of queued mutations that triggers an early flush
+   * @param snapshotInterval number of journal entries after which a full snapshot is stored
+   */
+  public SchedulerState(MyriadStateStore stateStore, long flushIntervalMs, int maxPendingEntries, int snapshotInterval) {
     this.stateStore = stateStore;
-    this.statesForTaskType = new ConcurrentHashMap<>();
+    if (stateStore != null) {
+      this.flusher = new StateFlusher(this, stateStore, flushIntervalMs, maxPendingEntries, snapshotInterval);
+    }
     loadStateStore();
+    if (flusher != null) {
+      flusher.start();
+    }
+  }
+
+  /**
+   * Returns the latest published state. The returned snapshot never changes, so it can be
+   * queried repeatedly for a consistent view.
+   *
+   * @return SchedulerStateSnapshot
+   */
+  public SchedulerStateSnapshot getSnapshot() {
+    return snapshot;
+  }
+
+  /**
+   * @return time it took to load the state from the state store, zero if nothing was loaded
+   */
+  public long getRecoveryTimeMs() {
+    return recoveryTimeMs;
+  }
+
+  /**
+   * @return the MyriadStateStore the state is persisted in, or null if it is not persisted
+   */
+  public MyriadStateStore getStateStore() {
+    return stateStore;
   }
 
   /**
@@ -77,104 +136,98 @@ public class SchedulerState {
       Protos.TaskID taskId = Protos.TaskID.newBuilder().setValue(String.format("%s.%s.%s", node.getTaskPrefix(),
           node.getProfile().getName(), UUID.randomUUID())).build();
       addTask(taskId, node);
-      SchedulerStateForType taskState = this.statesForTaskType.get(node.getTaskPrefix());
       LOGGER.info("Marked taskId {} pending, size of pending queue for {} is: {}", taskId.getValue(), node.getTaskPrefix(),
-          (taskState == null ? 0 : taskState.getPendingTaskIds().size()));
+          getTaskCount(TaskState.PENDING, node.getTaskPrefix()));
       makeTaskPending(taskId);
     }
 
   }
 
-  // TODO (sdaingade) Clone NodeTask
+  /**
+   * Adds or replaces the task. The SchedulerState takes ownership of the task, it must not be
+   * modified afterwards; modify a {@link NodeTask#copy()} and add that instead.
+   *
+   * @param taskId
+   * @param node
+   */
   public synchronized void addTask(Protos.TaskID taskId, NodeTask node) {
-    this.tasks.put(taskId, node);
-    updateStateStore();
+    intern(node);
+    publish(snapshot.withTask(taskId, node));
+    journal(JournalEntry.addTask(taskId, node));
+    indexFineGrainedScaling(taskId);
   }
 
   public synchronized void updateTask(Protos.TaskStatus taskStatus) {
     Objects.requireNonNull(taskStatus, "TaskStatus object shouldn't be null");
     Protos.TaskID taskId = taskStatus.getTaskId();
-    if (this.tasks.containsKey(taskId)) {
-      this.tasks.get(taskId).setTaskStatus(taskStatus);
+    NodeTask task = snapshot.getTask(taskId);
+    if (task != null) {
+      NodeTask updated = task.copy();
+      updated.setTaskStatus(taskStatus);
+      publish(snapshot.withTask(taskId, updated));
+      journal(JournalEntry.updateTaskStatus(taskStatus));
     }
-    updateStateStore();
   }
 
-  public synchronized void makeTaskPending(Protos.TaskID taskId) {
-    Objects.requireNonNull(taskId, "taskId cannot be empty or null");
-    String taskPrefix = taskIdPattern.split(taskId.getValue())[0];
-    SchedulerStateForType taskTypeState = statesForTaskType.get(taskPrefix);
-    if (taskTypeState == null) {
-      taskTypeState = new SchedulerStateForType(taskPrefix);
-      statesForTaskType.put(taskPrefix, taskTypeState);
-    }
-    taskTypeState.makeTaskPending(taskId);
-    updateStateStore();
+  public void makeTaskPending(Protos.TaskID taskId) {
+    makeTask(taskId, TaskState.PENDING);
   }
 
-  public synchronized void makeTaskStaging(Protos.TaskID taskId) {
-    Objects.requireNonNull(taskId, "taskId cannot be empty or null");
-    String taskPrefix = taskIdPattern.split(taskId.getValue())[0];
-    SchedulerStateForType taskTypeState = statesForTaskType.get(taskPrefix);
-    if (taskTypeState == null) {
-      taskTypeState = new SchedulerStateForType(taskPrefix);
-      statesForTaskType.put(taskPrefix, taskTypeState);
-    }
-    taskTypeState.makeTaskStaging(taskId);
-    updateStateStore();
+  public void makeTaskStaging(Protos.TaskID taskId) {
+    makeTask(taskId, TaskState.STAGING);
   }
 
-  public synchronized void makeTaskActive(Protos.TaskID taskId) {
-    Objects.requireNonNull(taskId, "taskId cannot be empty or null");
-    String taskPrefix = taskIdPattern.split(taskId.getValue())[0];
-    SchedulerStateForType taskTypeState = statesForTaskType.get(taskPrefix);
-    if (taskTypeState == null) {
-      taskTypeState = new SchedulerStateForType(taskPrefix);
-      statesForTaskType.put(taskPrefix, taskTypeState);
-    }
-    taskTypeState.makeTaskActive(taskId);
-    updateStateStore();
+  public void makeTaskActive(Protos.TaskID taskId) {
+    makeTask(taskId, TaskState.ACTIVE);
   }
 
-  public synchronized void makeTaskLost(Protos.TaskID taskId) {
-    Objects.requireNonNull(taskId, "taskId cannot be empty or null");
-    String taskPrefix = taskIdPattern.split(taskId.getValue())[0];
-    SchedulerStateForType taskTypeState = statesForTaskType.get(taskPrefix);
-    if (taskTypeState == null) {
-      taskTypeState = new SchedulerStateForType(taskPrefix);
-      statesForTaskType.put(taskPrefix, taskTypeState);
-    }
-    taskTypeState.makeTaskLost(taskId);
-    updateStateStore();
+  public void makeTaskLost(Protos.TaskID taskId) {
+    makeTask(taskId, TaskState.LOST);
+  }
+
+  public void makeTaskKillable(Protos.TaskID taskId) {
+    makeTask(taskId, TaskState.KILLABLE);
   }
 
-  public synchronized void makeTaskKillable(Protos.TaskID taskId) {
+  private synchronized void makeTask(Protos.TaskID taskId, TaskState taskState) {
     Objects.requireNonNull(taskId, "taskId cannot be empty or null");
-    String taskPrefix = taskIdPattern.split(taskId.getValue())[0];
-    SchedulerStateForType taskTypeState = statesForTaskType.get(taskPrefix);
-    if (taskTypeState == null) {
-      taskTypeState = new SchedulerStateForType(taskPrefix);
-      statesForTaskType.put(taskPrefix, taskTypeState);
+    publish(snapshot.withTaskState(taskId, taskState));
+    journal(JournalEntry.taskState(taskId, taskState));
+    indexFineGrainedScaling(taskId);
+    if (taskState == TaskState.PENDING) {
+      for (Runnable listener : pendingTaskListeners) {
+        listener.run();
+      }
     }
-    taskTypeState.makeTaskKillable(taskId);
-    updateStateStore();
   }
 
-  // TODO (sdaingade) Clone NodeTask
-  public synchronized NodeTask getTask(Protos.TaskID taskId) {
-    return this.tasks.get(taskId);
+  /**
+   * Registers a listener that is run whenever a task becomes pending. Listeners are run while
+   * holding this object's monitor, so they have to be quick and must not wait for other threads.
+   *
+   * @param listener
+   */
+  public void addPendingTaskListener(Runnable listener) {
+    pendingTaskListeners.add(listener);
+  }
+
+  /**
+   * Returns the task as held by the published snapshots, so it must not be modified. Use
+   * {@link NodeTask#copy()} and {@link #addTask} to change a task.
+   *
+   * @param taskId
+   * @return the task or null
+   */
+  public NodeTask getTask(Protos.TaskID taskId) {
+    return snapshot.getTask(taskId);
   }
 
   /**
    * Return a list of TaskIDs corresponding to all killable tasks
    * @return
    */
-  public synchronized Set<Protos.TaskID> getKillableTaskIds() {
-    Set<Protos.TaskID> returnSet = new HashSet<>();
-    for (Map.Entry<String, SchedulerStateForType> entry : statesForTaskType.entrySet()) {
-      returnSet.addAll(entry.getValue().getKillableTaskIds());
-    }
-    return returnSet;
+  public Set<Protos.TaskID> getKillableTaskIds() {
+    return snapshot.getTaskIds(TaskState.KILLABLE);
   }
 
   /**
@@ -183,60 +236,67 @@ public class SchedulerState {
    * @param taskPrefix
    * @return
    */
-  public synchronized Set<Protos.TaskID> getKillableTaskIds(String taskPrefix) {
-    SchedulerStateForType stateTask = statesForTaskType.get(taskPrefix);
-    return (stateTask == null ? new HashSet<Protos.TaskID>() : stateTask.getKillableTaskIds());
+  public Set<Protos.TaskID> getKillableTaskIds(String taskPrefix) {
+    return snapshot.getTaskIds(TaskState.KILLABLE, taskPrefix);
   }
 
   public synchronized void removeTask(Protos.TaskID taskId) {
-    String taskPrefix = taskIdPattern.split(taskId.getValue())[0];
-    SchedulerStateForType taskTypeState = statesForTaskType.get(taskPrefix);
-    if (taskTypeState != null) {
-      taskTypeState.removeTask(taskId);
-    }
-    this.tasks.remove(taskId);
-    updateStateStore();
+    publish(snapshot.withoutTask(taskId));
+    journal(JournalEntry.removeTask(taskId));
+    indexFineGrainedScaling(taskId);
   }
 
-  public synchronized Set<Protos.TaskID> getPendingTaskIds() {
-    Set<Protos.TaskID> returnSet = new HashSet<>();
-    for (Map.Entry<String, SchedulerStateForType> entry : statesForTaskType.entrySet()) {
-      returnSet.addAll(entry.getValue().getPendingTaskIds());
-    }
-    return returnSet;
+  /**
+   * Returns true if an active NM with a zero profile runs on the host, so its capacity is scaled
+   * with the offers of the host. The hosts are indexed as tasks change state, so this is a lookup
+   * rather than a scan of the active NMs.
+   *
+   * @param hostname
+   * @return
+   */
+  public boolean isEligibleForFineGrainedScaling(String hostname) {
+    return hostname != null && fineGrainedScalingHosts.contains(hostname);
   }
 
-  public synchronized Collection<Protos.TaskID> getPendingTaskIDsForProfile(ServiceResourceProfile serviceProfile) {
-    List<Protos.TaskID> pendingTaskIds = new ArrayList<>();
-    Set<Protos.TaskID> pendingTasks = getPendingTaskIds();
-    for (Map.Entry<Protos.TaskID, NodeTask> entry : tasks.entrySet()) {
-      NodeTask nodeTask = entry.getValue();
-      if (pendingTasks.contains(entry.getKey()) && nodeTask.getProfile().getName().equals(serviceProfile.getName())) {
-        pendingTaskIds.add(entry.getKey());
-      }
-    }
-    return Collections.unmodifiableCollection(pendingTaskIds);
+  /**
+   * @return true if any host is eligible for fine grained scaling
+   */
+  public boolean hasFineGrainedScalingHosts() {
+    return !fineGrainedScalingTasks.isEmpty();
   }
 
-  public synchronized Set<Protos.TaskID> getPendingTaskIds(String taskPrefix) {
-    SchedulerStateForType stateTask = statesForTaskType.get(taskPrefix);
-    return (stateTask == null ? new HashSet<Protos.TaskID>() : stateTask.getPendingTaskIds());
+  /**
+   * Returns the number of tasks of a given type in a given state without materializing their TaskIDs
+   *
+   * @param taskState
+   * @param taskPrefix
+   * @return
+   */
+  public int getTaskCount(TaskState taskState, String taskPrefix) {
+    return snapshot.getTaskCount(taskState, taskPrefix);
   }
 
-  public synchronized Set<Protos.TaskID> getActiveTaskIds() {
-    Set<Protos.TaskID> returnSet = new HashSet<>();
-    for (Map.Entry<String, SchedulerStateForType> entry : statesForTaskType.entrySet()) {
-      returnSet.addAll(entry.getValue().getActiveTaskIds());
-    }
-    return returnSet;
+  public Set<Protos.TaskID> getPendingTaskIds() {
+    return snapshot.getTaskIds(TaskState.PENDING);
   }
 
-  public synchronized Set<Protos.TaskID> getActiveTaskIds(String taskPrefix) {
-    SchedulerStateForType stateTask = statesForTaskType.get(taskPrefix);
-    return (stateTask == null ? new HashSet<Protos.TaskID>() : stateTask.getActiveTaskIds());
+  public Collection<Protos.TaskID> getPendingTaskIDsForProfile(ServiceResourceProfile serviceProfile) {
+    return snapshot.getTaskIdsForProfile(TaskState.PENDING, serviceProfile.getName());
   }
 
-  public synchronized Set<NodeTask> getActiveTasks() {
+  public Set<Protos.TaskID> getPendingTaskIds(String taskPrefix) {
+    return snapshot.getTaskIds(TaskState.PENDING, taskPrefix);
+  }
+
+  public Set<Protos.TaskID> getActiveTaskIds() {
+    return snapshot.getTaskIds(TaskState.ACTIVE);
+  }
+
+  public Set<Protos.TaskID> getActiveTaskIds(String taskPrefix) {
+    return snapshot.getTaskIds(TaskState.ACTIVE, taskPrefix);
+  }
+
+  public Set<NodeTask> getActiveTasks() {
     return getTasks(getActiveTaskIds());
   }
 
@@ -256,103 +316,97 @@ public class SchedulerState {
     return getTasks(getPendingTaskIds(taskPrefix));
   }
 
-  public synchronized Set<NodeTask> getTasks(Set<Protos.TaskID> taskIds) {
-    Set<NodeTask> nodeTasks = new HashSet<>();
-    if (CollectionUtils.isNotEmpty(taskIds) && CollectionUtils.isNotEmpty(tasks.values())) {
-      for (Map.Entry<Protos.TaskID, NodeTask> entry : tasks.entrySet()) {
-        if (taskIds.contains(entry.getKey())) {
-          nodeTasks.add(entry.getValue());
-        }
-      }
-    }
-    return Collections.unmodifiableSet(nodeTasks);
+  public Set<NodeTask> getTasks(Set<Protos.TaskID> taskIds) {
+    return snapshot.getTasks(taskIds);
   }
 
-  public synchronized Collection<Protos.TaskID> getActiveTaskIDsForProfile(ServiceResourceProfile serviceProfile) {
-    List<Protos.TaskID> activeTaskIDs = new ArrayList<>();
-    Set<Protos.TaskID> activeTaskIds = getActiveTaskIds();
-    if (CollectionUtils.isNotEmpty(activeTaskIds) && CollectionUtils.isNotEmpty(tasks.values())) {
-      for (Map.Entry<Protos.TaskID, NodeTask> entry : tasks.entrySet()) {
-        NodeTask nodeTask = entry.getValue();
-        if (activeTaskIds.contains(entry.getKey()) && nodeTask.getProfile().getName().equals(serviceProfile.getName())) {
-          activeTaskIDs.add(entry.getKey());
-        }
-      }
-    }
-    return Collections.unmodifiableCollection(activeTaskIDs);
+  public Collection<Protos.TaskID> getActiveTaskIDsForProfile(ServiceResourceProfile serviceProfile) {
+    return snapshot.getTaskIdsForProfile(TaskState.ACTIVE, serviceProfile.getName());
   }
 
   // TODO (sdaingade) Clone NodeTask
-  public synchronized NodeTask getNodeTask(SlaveID slaveId, String taskPrefix) {
+  public NodeTask getNodeTask(SlaveID slaveId, String taskPrefix) {
     if (taskPrefix == null) {
       return null;
     }
-    for (Map.Entry<Protos.TaskID, NodeTask> entry : tasks.entrySet()) {
-      final NodeTask task = entry.getValue();
-      if (task.getSlaveId() != null &&
-          task.getSlaveId().equals(slaveId) &&
-          taskPrefix.equals(task.getTaskPrefix())) {
-        return entry.getValue();
+    for (NodeTask task : snapshot.getNodeTasks(slaveId)) {
+      if (taskPrefix.equals(task.getTaskPrefix())) {
+        return task;
       }
     }
     return null;
   }
 
-  public synchronized Set<NodeTask> getNodeTasks(SlaveID slaveId) {
-    Set<NodeTask> nodeTasks = Sets.newHashSet();
-    for (Map.Entry<Protos.TaskID, NodeTask> entry : tasks.entrySet()) {
-      final NodeTask task = entry.getValue();
-      if (task.getSlaveId() != null && task.getSlaveId().equals(slaveId)) {
-        nodeTasks.add(entry.getValue());
+  public Set<NodeTask> getNodeTasks(SlaveID slaveId) {
+    return Sets.newHashSet(snapshot.getNodeTasks(slaveId));
+  }
+
+  /**
+   * Records the attributes of an agent on the tasks placed on it. Tasks that already have the
+   * attributes are left alone, so usually nothing is published.
+   *
+   * @param slaveId
+   * @param slaveAttributes
+   */
+  public void updateSlaveAttributes(SlaveID slaveId, List<Attribute> slaveAttributes) {
+    for (NodeTask task : snapshot.getNodeTasks(slaveId)) {
+      if (!Objects.equals(task.getSlaveAttributes(), slaveAttributes)) {
+        replaceSlaveAttributes(slaveId, slaveAttributes);
+        return;
       }
     }
-    return nodeTasks;
   }
 
-  public Set<Protos.TaskID> getStagingTaskIds() {
-    Set<Protos.TaskID> returnSet = new HashSet<>();
-    for (Map.Entry<String, SchedulerStateForType> entry : statesForTaskType.entrySet()) {
-      returnSet.addAll(entry.getValue().getStagingTaskIds());
+  private synchronized void replaceSlaveAttributes(SlaveID slaveId, List<Attribute> slaveAttributes) {
+    SchedulerStateSnapshot next = snapshot;
+    for (Protos.TaskID taskId : snapshot.getTaskIds(slaveId)) {
+      NodeTask task = snapshot.getTask(taskId);
+      if (task != null && !Objects.equals(task.getSlaveAttributes(), slaveAttributes)) {
+        NodeTask updated = task.copy();
+        updated.setSlaveAttributes(slaveAttributes);
+        next = next.withTask(taskId, updated);
+      }
+    }
+    if (next != snapshot) {
+      publish(next);
     }
-    return returnSet;
   }
 
-  public synchronized Collection<Protos.TaskID> getStagingTaskIDsForProfile(ServiceResourceProfile serviceProfile) {
-    List<Protos.TaskID> stagingTaskIDs = new ArrayList<>();
+  /**
+   * Returns the tasks placed on the given host
+   *
+   * @param hostname
+   * @return
+   */
+  public Set<NodeTask> getNodeTasksByHostname(String hostname) {
+    return Sets.newHashSet(snapshot.getNodeTasksByHostname(hostname));
+  }
 
-    Set<Protos.TaskID> stagingTasks = getStagingTaskIds();
-    for (Map.Entry<Protos.TaskID, NodeTask> entry : tasks.entrySet()) {
-      NodeTask nodeTask = entry.getValue();
-      if (stagingTasks.contains(entry.getKey()) && nodeTask.getProfile().getName().equals(serviceProfile.getName())) {
-        stagingTaskIDs.add(entry.getKey());
-      }
-    }
-    return Collections.unmodifiableCollection(stagingTaskIDs);
+  public Set<Protos.TaskID> getStagingTaskIds() {
+    return snapshot.getTaskIds(TaskState.STAGING);
+  }
+
+  public Collection<Protos.TaskID> getStagingTaskIDsForProfile(ServiceResourceProfile serviceProfile) {
+    return snapshot.getTaskIdsForProfile(TaskState.STAGING, serviceProfile.getName());
   }
 
   public Set<Protos.TaskID> getStagingTaskIds(String taskPrefix) {
-    SchedulerStateForType stateTask = statesForTaskType.get(taskPrefix);
-    return (stateTask == null ? new HashSet<Protos.TaskID>() : stateTask.getStagingTaskIds());
+    return snapshot.getTaskIds(TaskState.STAGING, taskPrefix);
   }
 
   public Set<Protos.TaskID> getLostTaskIds() {
-    Set<Protos.TaskID> returnSet = new HashSet<>();
-    for (Map.Entry<String, SchedulerStateForType> entry : statesForTaskType.entrySet()) {
-      returnSet.addAll(entry.getValue().getLostTaskIds());
-    }
-    return returnSet;
+    return snapshot.getTaskIds(TaskState.LOST);
   }
 
   public Set<Protos.TaskID> getLostTaskIds(String taskPrefix) {
-    SchedulerStateForType stateTask = statesForTaskType.get(taskPrefix);
-    return (stateTask == null ? new HashSet<Protos.TaskID>() : stateTask.getLostTaskIds());
+    return snapshot.getTaskIds(TaskState.LOST, taskPrefix);
   }
 
   // TODO (sdaingade) Currently cannot return unmodifiableCollection
   // as this will break ReconcileService code
-  public synchronized Collection<Protos.TaskStatus> getTaskStatuses() {
-    Collection<Protos.TaskStatus> taskStatuses = new ArrayList<>(this.tasks.size());
-    Collection<NodeTask> tasks = this.tasks.values();
+  public Collection<Protos.TaskStatus> getTaskStatuses() {
+    Collection<NodeTask> tasks = snapshot.getTasks().values();
+    Collection<Protos.TaskStatus> taskStatuses = new ArrayList<>(tasks.size());
     for (NodeTask task : tasks) {
       Protos.TaskStatus taskStatus = task.getTaskStatus();
       if (taskStatus != null) {
@@ -363,192 +417,145 @@ public class SchedulerState {
     return taskStatuses;
   }
 
-  public synchronized boolean hasTask(Protos.TaskID taskID) {
-    return this.tasks.containsKey(taskID);
+  public boolean hasTask(Protos.TaskID taskID) {
+    return snapshot.hasTask(taskID);
   }
 
-  public synchronized Optional<Protos.FrameworkID> getFrameworkID() {
-    return Optional.fromNullable(frameworkId);
+  public Optional<Protos.FrameworkID> getFrameworkID() {
+    return snapshot.getFrameworkID();
   }
 
   public synchronized void setFrameworkId(Protos.FrameworkID newFrameworkId) {
-    this.frameworkId = newFrameworkId;
-    updateStateStore();
-  }
-
-  private synchronized void updateStateStore() {
-    if (this.stateStore == null) {
-      LOGGER.debug("Could not update state to state store as HA is disabled");
-      return;
-    }
-
-    try {
-      StoreContext sc = new StoreContext(frameworkId, tasks, getPendingTaskIds(), getStagingTaskIds(), getActiveTaskIds(),
-          getLostTaskIds(), getKillableTaskIds());
-      stateStore.storeMyriadState(sc);
-    } catch (Exception e) {
-      LOGGER.error("Failed to update scheduler state to state store", e);
-    }
+    publish(snapshot.withFrameworkId(newFrameworkId));
+    journal(JournalEntry.frameworkId(newFrameworkId));
   }
 
-  private synchronized void loadStateStore() {
-    if (this.stateStore == null) {
-      LOGGER.debug("Could not load state from state store as HA is disabled");
-      return;
-    }
-
-    try {
-      StoreContext sc = stateStore.loadMyriadState();
-      if (sc != null) {
-        this.frameworkId = sc.getFrameworkId();
-        this.tasks.putAll(sc.getTasks());
-        convertToThis(TaskState.PENDING, sc.getPendingTasks());
-        convertToThis(TaskState.STAGING, sc.getStagingTasks());
-        convertToThis(TaskState.ACTIVE, sc.getActiveTasks());
-        convertToThis(TaskState.LOST, sc.getLostTasks());
-        convertToThis(TaskState.KILLABLE, sc.getKillableTasks());
-        LOGGER.info("Loaded Myriad state from state store successfully.");
-        LOGGER.debug("State Store state includes frameworkId: {}, pending tasks count: {}, staging tasks count: {} " +
-                     "active tasks count: {}, lost tasks count: {}, and killable tasks count: {}", frameworkId.getValue(),
-                      this.getPendingTaskIds().size(), this.getStagingTaskIds().size(), this.getActiveTaskIds().size(),
-                      this.getLostTaskIds().size(), this.getKillableTaskIds().size());
-      }
-    } catch (Exception e) {
-      LOGGER.error("Failed to read scheduler state from state store", e);
+  /**
+   * Returns a future that completes once all mutations made so far are durable in the state
+   * store. Callers that cannot tolerate losing a mutation on failover, such as framework
+   * registration, should wait on it.
+   *
+   * @return Future
+   */
+  public Future<Void> commit() {
+    if (flusher == null) {
+      return CompletableFuture.completedFuture(null);
     }
+    return flusher.commit();
   }
 
-  private void convertToThis(TaskState taskType, Set<Protos.TaskID> taskIds) {
-    for (Protos.TaskID taskId : taskIds) {
-      String taskPrefix = taskIdPattern.split(taskId.getValue())[0];
-      SchedulerStateForType taskTypeState = statesForTaskType.get(taskPrefix);
-      if (taskTypeState == null) {
-        taskTypeState = new SchedulerStateForType(taskPrefix);
-        statesForTaskType.put(taskPrefix, taskTypeState);
-      }
-      switch (taskType) {
-        case PENDING:
-          taskTypeState.makeTaskPending(taskId);
-          break;
-        case STAGING:
-          taskTypeState.makeTaskStaging(taskId);
-          break;
-        case ACTIVE:
-          taskTypeState.makeTaskActive(taskId);
-          break;
-        case KILLABLE:
-          taskTypeState.makeTaskKillable(taskId);
-          break;
-        case LOST:
-          taskTypeState.makeTaskLost(taskId);
-          break;
-      }
+  /**
+   * Writes the mutations still queued and stops the background flushing. Later mutations are
+   * persisted synchronously.
+   */
+  public void stop() {
+    if (flusher != null) {
+      flusher.stop();
     }
   }
 
   /**
-   * Class to keep all the tasks states for a particular taskPrefix together
+   * Updates the fine grained scaling index for the task. Must be called while holding this object's
+   * monitor, after the change to the task was published.
+   *
+   * @param taskId
    */
-  private static class SchedulerStateForType {
-
-    private final String taskPrefix;
-    private Set<Protos.TaskID> pendingTasks;
-    private Set<Protos.TaskID> stagingTasks;
-    private Set<Protos.TaskID> activeTasks;
-    private Set<Protos.TaskID> lostTasks;
-    private Set<Protos.TaskID> killableTasks;
-
-    public SchedulerStateForType(String taskPrefix) {
-      this.taskPrefix = taskPrefix;
-      // Since Sets.newConcurrentHashSet is available only starting form Guava version 15
-      // and so far (Hadoop 2.7) uses guava 13 we can not easily use it
-      this.pendingTasks = Collections.newSetFromMap(new ConcurrentHashMap<Protos.TaskID, Boolean>());
-      this.stagingTasks = Collections.newSetFromMap(new ConcurrentHashMap<Protos.TaskID, Boolean>());
-      this.activeTasks = Collections.newSetFromMap(new ConcurrentHashMap<Protos.TaskID, Boolean>());
-      this.lostTasks = Collections.newSetFromMap(new ConcurrentHashMap<Protos.TaskID, Boolean>());
-      this.killableTasks = Collections.newSetFromMap(new ConcurrentHashMap<Protos.TaskID, Boolean>());
-
-    }
-
-    @SuppressWarnings("unused")
-    public String getTaskPrefix() {
-      return taskPrefix;
+  private void indexFineGrainedScaling(Protos.TaskID taskId) {
+    String hostname = fineGrainedScalingTasks.remove(taskId);
+    if (hostname != null) {
+      fineGrainedScalingHosts.remove(hostname);
     }
-
-    public synchronized void makeTaskPending(Protos.TaskID taskId) {
-      Objects.requireNonNull(taskId, "taskId cannot be empty or null");
-
-      pendingTasks.add(taskId);
-      stagingTasks.remove(taskId);
-      activeTasks.remove(taskId);
-      lostTasks.remove(taskId);
-      killableTasks.remove(taskId);
-    }
-
-    public synchronized void makeTaskStaging(Protos.TaskID taskId) {
-      Objects.requireNonNull(taskId, "taskId cannot be empty or null");
-      pendingTasks.remove(taskId);
-      stagingTasks.add(taskId);
-      activeTasks.remove(taskId);
-      lostTasks.remove(taskId);
-      killableTasks.remove(taskId);
-    }
-
-    public synchronized void makeTaskActive(Protos.TaskID taskId) {
-      Objects.requireNonNull(taskId, "taskId cannot be empty or null");
-      pendingTasks.remove(taskId);
-      stagingTasks.remove(taskId);
-      activeTasks.add(taskId);
-      lostTasks.remove(taskId);
-      killableTasks.remove(taskId);
+    NodeTask task = snapshot.getTask(taskId);
+    if (task != null && snapshot.getTaskState(taskId) == TaskState.ACTIVE && isFineGrainedScalingNM(task)) {
+      fineGrainedScalingTasks.put(taskId, task.getHostname());
+      fineGrainedScalingHosts.add(task.getHostname());
     }
+  }
 
-    public synchronized void makeTaskLost(Protos.TaskID taskId) {
-      Objects.requireNonNull(taskId, "taskId cannot be empty or null");
-      pendingTasks.remove(taskId);
-      stagingTasks.remove(taskId);
-      activeTasks.remove(taskId);
-      lostTasks.add(taskId);
-      killableTasks.remove(taskId);
-    }
+  private static boolean isFineGrainedScalingNM(NodeTask task) {
+    return NodeManagerConfiguration.DEFAULT_NM_TASK_PREFIX.equals(task.getTaskPrefix()) && task.getHostname() != null
+        && task.getProfile() != null && task.getProfile().getCpus() == 0 && task.getProfile().getMemory() == 0;
+  }
 
-    public synchronized void makeTaskKillable(Protos.TaskID taskId) {
-      Objects.requireNonNull(taskId, "taskId cannot be empty or null");
-      pendingTasks.remove(taskId);
-      stagingTasks.remove(taskId);
-      activeTasks.remove(taskId);
-      lostTasks.remove(taskId);
-      killableTasks.add(taskId);
+  private void intern(NodeTask node) {
+    if (node.getProfile() != null) {
+      node.setProfile(profiles.intern(node.getProfile()));
     }
-
-    public synchronized void removeTask(Protos.TaskID taskId) {
-      this.pendingTasks.remove(taskId);
-      this.stagingTasks.remove(taskId);
-      this.activeTasks.remove(taskId);
-      this.lostTasks.remove(taskId);
-      this.killableTasks.remove(taskId);
+    if (node.getConstraint() != null) {
+      node.setConstraint(constraints.intern(node.getConstraint()));
     }
+  }
 
-    public synchronized Set<Protos.TaskID> getPendingTaskIds() {
-      return Collections.unmodifiableSet(this.pendingTasks);
-    }
+  /**
+   * Makes a new snapshot visible to readers. Must be called while holding this object's monitor.
+   *
+   * @param next
+   */
+  private void publish(SchedulerStateSnapshot next) {
+    this.snapshot = next;
+  }
 
-    public Set<Protos.TaskID> getActiveTaskIds() {
-      return Collections.unmodifiableSet(this.activeTasks);
+  /**
+   * Queues a single mutation for the state store journal.
+   *
+   * @param entry
+   */
+  private synchronized void journal(JournalEntry entry) {
+    if (this.flusher == null) {
+      LOGGER.debug("Could not update state to state store as HA is disabled");
+      return;
     }
+    flusher.append(entry);
+  }
 
-    public synchronized Set<Protos.TaskID> getStagingTaskIds() {
-      return Collections.unmodifiableSet(this.stagingTasks);
-    }
+  /**
+   * Creates a full snapshot of this state for the state store.
+   *
+   * @return StoreContext
+   */
+  synchronized StoreContext toStoreContext() {
+    SchedulerStateSnapshot current = snapshot;
+    return new StoreContext(current.getFrameworkID().orNull(), current.getTasks(), current.getTaskIds(TaskState.PENDING),
+        current.getTaskIds(TaskState.STAGING), current.getTaskIds(TaskState.ACTIVE), current.getTaskIds(TaskState.LOST),
+        current.getTaskIds(TaskState.KILLABLE));
+  }
 
-    public synchronized Set<Protos.TaskID> getLostTaskIds() {
-      return Collections.unmodifiableSet(this.lostTasks);
+  private synchronized void loadStateStore() {
+    if (this.stateStore == null) {
+      LOGGER.debug("Could not load state from state store as HA is disabled");
+      return;
     }
 
-    public synchronized Set<Protos.TaskID> getKillableTaskIds() {
-      return Collections.unmodifiableSet(this.killableTasks);
+    long start = System.currentTimeMillis();
+    try {
+      StoreContext sc = stateStore.loadMyriadState();
+      if (sc != null) {
+        Map<TaskState, Set<Protos.TaskID>> taskIds = new EnumMap<>(TaskState.class);
+        taskIds.put(TaskState.PENDING, sc.getPendingTasks());
+        taskIds.put(TaskState.STAGING, sc.getStagingTasks());
+        taskIds.put(TaskState.ACTIVE, sc.getActiveTasks());
+        taskIds.put(TaskState.LOST, sc.getLostTasks());
+        taskIds.put(TaskState.KILLABLE, sc.getKillableTasks());
+        Map<Protos.TaskID, NodeTask> tasks = sc.getTasks();
+        for (NodeTask node : tasks.values()) {
+          intern(node);
+        }
+        publish(SchedulerStateSnapshot.of(snapshot.getVersion() + 1, sc.getFrameworkId(), tasks, taskIds));
+        for (Protos.TaskID taskId : sc.getActiveTasks()) {
+          indexFineGrainedScaling(taskId);
+        }
+        recoveryTimeMs = System.currentTimeMillis() - start;
+        LOGGER.info("Loaded Myriad state with {} tasks from state store in {} ms", tasks.size(), recoveryTimeMs);
+        // Start from a fresh snapshot so the replayed journal can be discarded
+        flusher.requestSnapshot();
+        LOGGER.debug("State Store state includes frameworkId: {}, pending tasks count: {}, staging tasks count: {} " +
+                     "active tasks count: {}, lost tasks count: {}, and killable tasks count: {}", sc.getFrameworkId().getValue(),
+                      this.getPendingTaskIds().size(), this.getStagingTaskIds().size(), this.getActiveTaskIds().size(),
+                      this.getLostTaskIds().size(), this.getKillableTaskIds().size());
+      }
+    } catch (Exception e) {
+      LOGGER.error("Failed to read scheduler state from state store", e);
     }
-
   }
 
   /**
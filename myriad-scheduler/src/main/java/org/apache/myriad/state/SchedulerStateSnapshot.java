@@ -0,0 +1,511 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.myriad.state;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.mesos.Protos;
+import org.apache.mesos.Protos.SlaveID;
+import org.apache.myriad.state.SchedulerState.TaskState;
+
+import com.google.common.base.Optional;
+
+/**
+ * An immutable, versioned view of the {@link SchedulerState}. Every SchedulerState mutation
+ * publishes a new snapshot that shares all unchanged maps and sets with its predecessor,
+ * so readers never block on writers and see a consistent state across several lookups.
+ * The maps are {@link PersistentHashMap}s, so a mutation only copies the path to the
+ * entries it touches rather than whole maps.
+ * <p/>
+ * The {@link NodeTask} objects themselves are shared between snapshots and are still updated
+ * in place, e.g. with the latest task status.
+ */
+public final class SchedulerStateSnapshot {
+  private static final Pattern taskIdPattern = Pattern.compile("\\.");
+
+  static final SchedulerStateSnapshot EMPTY = new SchedulerStateSnapshot();
+
+  // Fields are only assigned before a snapshot is published
+  private long version;
+  private Protos.FrameworkID frameworkId;
+  private PersistentHashMap<Protos.TaskID, NodeTask> tasks;
+  private TaskStates taskStates;
+  // Only the TaskIDs per state, the TaskState of a task is looked up in taskStates
+  private PersistentHashMap<String, StateSets> statesForTaskType;
+  private PersistentHashMap<String, StateSets> statesForProfile;
+  private PersistentHashMap<Protos.TaskID, IndexKeys> indexKeys;
+  private PersistentHashMap<SlaveID, Set<Protos.TaskID>> tasksBySlaveId;
+  private PersistentHashMap<String, Set<Protos.TaskID>> tasksByHostname;
+
+  private SchedulerStateSnapshot() {
+    this.tasks = PersistentHashMap.empty();
+    this.taskStates = TaskStates.EMPTY;
+    this.statesForTaskType = PersistentHashMap.empty();
+    this.statesForProfile = PersistentHashMap.empty();
+    this.indexKeys = PersistentHashMap.empty();
+    this.tasksBySlaveId = PersistentHashMap.empty();
+    this.tasksByHostname = PersistentHashMap.empty();
+  }
+
+  private SchedulerStateSnapshot next() {
+    SchedulerStateSnapshot next = new SchedulerStateSnapshot();
+    next.version = version + 1;
+    next.frameworkId = frameworkId;
+    next.tasks = tasks;
+    next.taskStates = taskStates;
+    next.statesForTaskType = statesForTaskType;
+    next.statesForProfile = statesForProfile;
+    next.indexKeys = indexKeys;
+    next.tasksBySlaveId = tasksBySlaveId;
+    next.tasksByHostname = tasksByHostname;
+    return next;
+  }
+
+  /**
+   * Builds a snapshot from scratch, e.g. from the state loaded from the state store.
+   *
+   * @param version
+   * @param frameworkId
+   * @param tasks
+   * @param taskIds TaskIDs keyed by their TaskState
+   * @return SchedulerStateSnapshot
+   */
+  static SchedulerStateSnapshot of(long version, Protos.FrameworkID frameworkId, Map<Protos.TaskID, NodeTask> tasks,
+                                   Map<TaskState, Set<Protos.TaskID>> taskIds) {
+    Map<Protos.TaskID, IndexKeys> keys = new HashMap<>();
+    Map<SlaveID, Set<Protos.TaskID>> bySlaveId = new HashMap<>();
+    Map<String, Set<Protos.TaskID>> byHostname = new HashMap<>();
+    for (Map.Entry<Protos.TaskID, NodeTask> entry : tasks.entrySet()) {
+      IndexKeys taskKeys = new IndexKeys(entry.getValue());
+      keys.put(entry.getKey(), taskKeys);
+      addMember(bySlaveId, taskKeys.slaveId, entry.getKey());
+      addMember(byHostname, taskKeys.hostname, entry.getKey());
+    }
+
+    Map<Protos.TaskID, TaskState> all = new HashMap<>();
+    for (Map.Entry<TaskState, Set<Protos.TaskID>> entry : taskIds.entrySet()) {
+      for (Protos.TaskID taskId : entry.getValue()) {
+        all.put(taskId, entry.getKey());
+      }
+    }
+    PersistentHashMap<String, StateSets> byType = PersistentHashMap.empty();
+    PersistentHashMap<String, StateSets> byProfile = PersistentHashMap.empty();
+    for (Map.Entry<Protos.TaskID, TaskState> entry : all.entrySet()) {
+      Protos.TaskID taskId = entry.getKey();
+      byType = withTaskState(byType, getTaskPrefix(taskId), taskId, null, entry.getValue());
+      IndexKeys taskKeys = keys.get(taskId);
+      if (taskKeys != null && taskKeys.profileName != null) {
+        byProfile = withTaskState(byProfile, taskKeys.profileName, taskId, null, entry.getValue());
+      }
+    }
+
+    SchedulerStateSnapshot snapshot = new SchedulerStateSnapshot();
+    snapshot.version = version;
+    snapshot.frameworkId = frameworkId;
+    snapshot.tasks = PersistentHashMap.copyOf(tasks);
+    snapshot.taskStates = TaskStates.of(all);
+    snapshot.statesForTaskType = byType;
+    snapshot.statesForProfile = byProfile;
+    snapshot.indexKeys = PersistentHashMap.copyOf(keys);
+    snapshot.tasksBySlaveId = freeze(bySlaveId);
+    snapshot.tasksByHostname = freeze(byHostname);
+    return snapshot;
+  }
+
+  SchedulerStateSnapshot withFrameworkId(Protos.FrameworkID frameworkId) {
+    SchedulerStateSnapshot next = next();
+    next.frameworkId = frameworkId;
+    return next;
+  }
+
+  SchedulerStateSnapshot withoutTask(Protos.TaskID taskId) {
+    SchedulerStateSnapshot next = next();
+    next.tasks = copyWith(tasks, taskId, null);
+    TaskState taskState = taskStates.getTaskState(taskId);
+    next.taskStates = taskStates.without(taskId);
+    next.statesForTaskType = withoutTaskState(statesForTaskType, getTaskPrefix(taskId), taskId, taskState);
+    IndexKeys keys = indexKeys.get(taskId);
+    if (keys != null) {
+      next.indexKeys = copyWith(indexKeys, taskId, null);
+      next.unindex(taskId, keys, taskState);
+    }
+    return next;
+  }
+
+  SchedulerStateSnapshot withTask(Protos.TaskID taskId, NodeTask task) {
+    SchedulerStateSnapshot next = next();
+    if (tasks.get(taskId) != task) {
+      next.tasks = copyWith(tasks, taskId, task);
+    }
+    // The keys a task was indexed under are remembered to unindex it correctly, even if the
+    // replaced NodeTask was modified
+    IndexKeys keys = new IndexKeys(task);
+    IndexKeys previous = indexKeys.get(taskId);
+    if (!keys.equals(previous)) {
+      next.indexKeys = copyWith(indexKeys, taskId, keys);
+      TaskState taskState = taskStates.getTaskState(taskId);
+      if (previous != null) {
+        next.unindex(taskId, previous, taskState);
+      }
+      next.tasksBySlaveId = copyWithMember(next.tasksBySlaveId, keys.slaveId, taskId, true);
+      next.tasksByHostname = copyWithMember(next.tasksByHostname, keys.hostname, taskId, true);
+      if (keys.profileName != null && taskState != null) {
+        next.statesForProfile = withTaskState(next.statesForProfile, keys.profileName, taskId, null, taskState);
+      }
+    }
+    return next;
+  }
+
+  SchedulerStateSnapshot withTaskState(Protos.TaskID taskId, TaskState taskState) {
+    SchedulerStateSnapshot next = next();
+    TaskState previous = taskStates.getTaskState(taskId);
+    next.taskStates = taskStates.with(taskId, taskState);
+    next.statesForTaskType = withTaskState(statesForTaskType, getTaskPrefix(taskId), taskId, previous, taskState);
+    IndexKeys keys = indexKeys.get(taskId);
+    if (keys != null && keys.profileName != null) {
+      next.statesForProfile = withTaskState(statesForProfile, keys.profileName, taskId, previous, taskState);
+    }
+    return next;
+  }
+
+  private void unindex(Protos.TaskID taskId, IndexKeys keys, TaskState taskState) {
+    tasksBySlaveId = copyWithMember(tasksBySlaveId, keys.slaveId, taskId, false);
+    tasksByHostname = copyWithMember(tasksByHostname, keys.hostname, taskId, false);
+    if (keys.profileName != null) {
+      statesForProfile = withoutTaskState(statesForProfile, keys.profileName, taskId, taskState);
+    }
+  }
+
+  public long getVersion() {
+    return version;
+  }
+
+  public Optional<Protos.FrameworkID> getFrameworkID() {
+    return Optional.fromNullable(frameworkId);
+  }
+
+  public NodeTask getTask(Protos.TaskID taskId) {
+    return tasks.get(taskId);
+  }
+
+  public boolean hasTask(Protos.TaskID taskId) {
+    return tasks.containsKey(taskId);
+  }
+
+  /**
+   * @return all tasks keyed by their TaskID
+   */
+  public Map<Protos.TaskID, NodeTask> getTasks() {
+    return tasks;
+  }
+
+  public Set<NodeTask> getTasks(Set<Protos.TaskID> taskIds) {
+    if (taskIds == null || taskIds.isEmpty()) {
+      return Collections.emptySet();
+    }
+    Set<NodeTask> nodeTasks = new HashSet<>();
+    for (Protos.TaskID taskId : taskIds) {
+      NodeTask task = tasks.get(taskId);
+      if (task != null) {
+        nodeTasks.add(task);
+      }
+    }
+    return Collections.unmodifiableSet(nodeTasks);
+  }
+
+  /**
+   * @param taskId
+   * @return the TaskState of the task or null if the task has none
+   */
+  public TaskState getTaskState(Protos.TaskID taskId) {
+    return taskStates.getTaskState(taskId);
+  }
+
+  public Set<Protos.TaskID> getTaskIds(TaskState taskState) {
+    return taskStates.get(taskState);
+  }
+
+  public Set<Protos.TaskID> getTaskIds(TaskState taskState, String taskPrefix) {
+    StateSets forType = statesForTaskType.get(taskPrefix);
+    return forType == null ? Collections.<Protos.TaskID>emptySet() : forType.get(taskState);
+  }
+
+  public Set<Protos.TaskID> getTaskIdsForProfile(TaskState taskState, String profileName) {
+    StateSets forProfile = statesForProfile.get(profileName);
+    return forProfile == null ? Collections.<Protos.TaskID>emptySet() : forProfile.get(taskState);
+  }
+
+  /**
+   * @param taskState
+   * @return number of tasks in the given state, without materializing their TaskIDs
+   */
+  public int getTaskCount(TaskState taskState) {
+    return taskStates.count(taskState);
+  }
+
+  public int getTaskCount(TaskState taskState, String taskPrefix) {
+    StateSets forType = statesForTaskType.get(taskPrefix);
+    return forType == null ? 0 : forType.count(taskState);
+  }
+
+  public int getTaskCountForProfile(TaskState taskState, String profileName) {
+    StateSets forProfile = statesForProfile.get(profileName);
+    return forProfile == null ? 0 : forProfile.count(taskState);
+  }
+
+  public Set<NodeTask> getNodeTasks(SlaveID slaveId) {
+    return getTasks(tasksBySlaveId.get(slaveId));
+  }
+
+  Set<Protos.TaskID> getTaskIds(SlaveID slaveId) {
+    Set<Protos.TaskID> taskIds = tasksBySlaveId.get(slaveId);
+    return taskIds == null ? Collections.<Protos.TaskID>emptySet() : taskIds;
+  }
+
+  public Set<NodeTask> getNodeTasksByHostname(String hostname) {
+    return getTasks(tasksByHostname.get(hostname));
+  }
+
+  private static String getTaskPrefix(Protos.TaskID taskId) {
+    return taskIdPattern.split(taskId.getValue())[0];
+  }
+
+  /**
+   * Moves the task from its previous state, if it has one, to taskState in the bucket for key.
+   */
+  private static PersistentHashMap<String, StateSets> withTaskState(PersistentHashMap<String, StateSets> buckets,
+                                                                    String key, Protos.TaskID taskId, TaskState previous,
+                                                                    TaskState taskState) {
+    StateSets current = buckets.get(key);
+    return copyWith(buckets, key, (current == null ? StateSets.EMPTY : current).with(taskId, previous, taskState));
+  }
+
+  private static PersistentHashMap<String, StateSets> withoutTaskState(PersistentHashMap<String, StateSets> buckets,
+                                                                       String key, Protos.TaskID taskId, TaskState previous) {
+    StateSets current = buckets.get(key);
+    if (current == null || previous == null) {
+      return buckets;
+    }
+    StateSets remaining = current.without(taskId, previous);
+    return copyWith(buckets, key, remaining.isEmpty() ? null : remaining);
+  }
+
+  private static <K> void addMember(Map<K, Set<Protos.TaskID>> map, K key, Protos.TaskID taskId) {
+    if (key == null) {
+      return;
+    }
+    Set<Protos.TaskID> ids = map.get(key);
+    if (ids == null) {
+      ids = new HashSet<>();
+      map.put(key, ids);
+    }
+    ids.add(taskId);
+  }
+
+  private static <K> PersistentHashMap<K, Set<Protos.TaskID>> freeze(Map<K, Set<Protos.TaskID>> map) {
+    PersistentHashMap<K, Set<Protos.TaskID>> frozen = PersistentHashMap.empty();
+    for (Map.Entry<K, Set<Protos.TaskID>> entry : map.entrySet()) {
+      frozen = frozen.plus(entry.getKey(), Collections.unmodifiableSet(entry.getValue()));
+    }
+    return frozen;
+  }
+
+  /**
+   * Returns the map with the value for key replaced, or removed if the value is null.
+   */
+  private static <K, V> PersistentHashMap<K, V> copyWith(PersistentHashMap<K, V> map, K key, V value) {
+    return value == null ? map.minus(key) : map.plus(key, value);
+  }
+
+  /**
+   * Returns the map of sets with taskId added to or removed from the set for key. Only the set
+   * for key is copied, the sets hold the tasks of one agent or host.
+   */
+  private static <K> PersistentHashMap<K, Set<Protos.TaskID>> copyWithMember(PersistentHashMap<K, Set<Protos.TaskID>> map,
+                                                                            K key, Protos.TaskID taskId, boolean member) {
+    if (key == null) {
+      return map;
+    }
+    Set<Protos.TaskID> current = map.get(key);
+    if (current == null) {
+      current = Collections.emptySet();
+    }
+    if (current.contains(taskId) == member) {
+      return map;
+    }
+    Set<Protos.TaskID> copy = new HashSet<>(current);
+    if (member) {
+      copy.add(taskId);
+    } else {
+      copy.remove(taskId);
+    }
+    return copyWith(map, key, copy.isEmpty() ? null : Collections.unmodifiableSet(copy));
+  }
+
+  /**
+   * Immutable TaskID to TaskState map with the TaskIDs of every TaskState
+   */
+  private static final class TaskStates {
+    private static final TaskStates EMPTY = new TaskStates(PersistentHashMap.<Protos.TaskID, TaskState>empty(),
+        StateSets.EMPTY);
+
+    private final PersistentHashMap<Protos.TaskID, TaskState> states;
+    private final StateSets sets;
+
+    private TaskStates(PersistentHashMap<Protos.TaskID, TaskState> states, StateSets sets) {
+      this.states = states;
+      this.sets = sets;
+    }
+
+    static TaskStates of(Map<Protos.TaskID, TaskState> states) {
+      StateSets sets = StateSets.EMPTY;
+      for (Map.Entry<Protos.TaskID, TaskState> entry : states.entrySet()) {
+        sets = sets.with(entry.getKey(), null, entry.getValue());
+      }
+      return new TaskStates(PersistentHashMap.copyOf(states), sets);
+    }
+
+    Set<Protos.TaskID> get(TaskState taskState) {
+      return sets.get(taskState);
+    }
+
+    int count(TaskState taskState) {
+      return sets.count(taskState);
+    }
+
+    TaskState getTaskState(Protos.TaskID taskId) {
+      return states.get(taskId);
+    }
+
+    TaskStates with(Protos.TaskID taskId, TaskState taskState) {
+      TaskState current = states.get(taskId);
+      if (current == taskState) {
+        return this;
+      }
+      return new TaskStates(states.plus(taskId, taskState), sets.with(taskId, current, taskState));
+    }
+
+    TaskStates without(Protos.TaskID taskId) {
+      TaskState current = states.get(taskId);
+      if (current == null) {
+        return this;
+      }
+      return new TaskStates(states.minus(taskId), sets.without(taskId, current));
+    }
+  }
+
+  /**
+   * Immutable set of TaskIDs per TaskState, so looking up the tasks in one state costs O(1) and
+   * iterating them O(tasks in that state). Callers pass in the state a task is currently in.
+   */
+  private static final class StateSets {
+    private static final StateSets EMPTY = new StateSets(emptyMembers(), 0);
+
+    // TaskIDs per TaskState ordinal, the values are unused
+    private final List<PersistentHashMap<Protos.TaskID, Boolean>> members;
+    private final int size;
+
+    private StateSets(List<PersistentHashMap<Protos.TaskID, Boolean>> members, int size) {
+      this.members = members;
+      this.size = size;
+    }
+
+    private static List<PersistentHashMap<Protos.TaskID, Boolean>> emptyMembers() {
+      List<PersistentHashMap<Protos.TaskID, Boolean>> members = new ArrayList<>(TaskState.values().length);
+      for (int i = 0; i < TaskState.values().length; i++) {
+        members.add(PersistentHashMap.<Protos.TaskID, Boolean>empty());
+      }
+      return members;
+    }
+
+    /**
+     * @return the TaskIDs in the given state
+     */
+    Set<Protos.TaskID> get(TaskState taskState) {
+      PersistentHashMap<Protos.TaskID, Boolean> ids = members.get(taskState.ordinal());
+      return ids.isEmpty() ? Collections.<Protos.TaskID>emptySet() : Collections.unmodifiableSet(ids.keySet());
+    }
+
+    int count(TaskState taskState) {
+      return members.get(taskState.ordinal()).size();
+    }
+
+    boolean isEmpty() {
+      return size == 0;
+    }
+
+    StateSets with(Protos.TaskID taskId, TaskState previous, TaskState taskState) {
+      if (previous == taskState) {
+        return this;
+      }
+      List<PersistentHashMap<Protos.TaskID, Boolean>> newMembers = new ArrayList<>(members);
+      if (previous != null) {
+        newMembers.set(previous.ordinal(), members.get(previous.ordinal()).minus(taskId));
+      }
+      newMembers.set(taskState.ordinal(), members.get(taskState.ordinal()).plus(taskId, Boolean.TRUE));
+      return new StateSets(newMembers, previous == null ? size + 1 : size);
+    }
+
+    StateSets without(Protos.TaskID taskId, TaskState previous) {
+      List<PersistentHashMap<Protos.TaskID, Boolean>> newMembers = new ArrayList<>(members);
+      PersistentHashMap<Protos.TaskID, Boolean> remaining = members.get(previous.ordinal()).minus(taskId);
+      newMembers.set(previous.ordinal(), remaining);
+      return new StateSets(newMembers, remaining == members.get(previous.ordinal()) ? size : size - 1);
+    }
+  }
+
+  /**
+   * Keys a task was indexed under
+   */
+  private static final class IndexKeys {
+    private final SlaveID slaveId;
+    private final String hostname;
+    private final String profileName;
+
+    IndexKeys(NodeTask node) {
+      this.slaveId = node.getSlaveId();
+      this.hostname = StringUtils.isEmpty(node.getHostname()) ? null : node.getHostname();
+      this.profileName = node.getProfile() == null ? null : node.getProfile().getName();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof IndexKeys)) {
+        return false;
+      }
+      IndexKeys other = (IndexKeys) o;
+      return Objects.equals(slaveId, other.slaveId) && Objects.equals(hostname, other.hostname) &&
+          Objects.equals(profileName, other.profileName);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(slaveId, hostname, profileName);
+    }
+  }
+}
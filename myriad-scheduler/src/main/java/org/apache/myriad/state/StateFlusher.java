@@ -0,0 +1,314 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.myriad.state;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+
+import org.apache.mesos.Protos;
+import org.apache.myriad.state.utils.JournalEntry;
+import org.apache.myriad.state.utils.StoreContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Persists SchedulerState mutations to the {@link MyriadStateStore} in the background.
+ * <p/>
+ * Journal entries are queued by the SchedulerState and written as one coalesced batch once
+ * flushIntervalMs has passed since the oldest queued entry, or as soon as maxPendingEntries
+ * are queued, so a burst of status updates results in a handful of writes. Every
+ * snapshotInterval entries, and after a failed write, a full snapshot is stored instead.
+ * A flushIntervalMs of zero or less, or a stopped flusher, writes every entry synchronously.
+ */
+public class StateFlusher implements Runnable {
+  private static final Logger LOGGER = LoggerFactory.getLogger(StateFlusher.class);
+  private static final long STOP_TIMEOUT_MS = 30000;
+
+  private final SchedulerState state;
+  private final MyriadStateStore stateStore;
+  private final long flushIntervalMs;
+  private final int maxPendingEntries;
+  private final int snapshotInterval;
+
+  private final Object lock = new Object();
+  private List<JournalEntry> pending = new ArrayList<>();
+  private List<CompletableFuture<Void>> waiters = new ArrayList<>();
+  private long oldestPendingTime;
+  private boolean flushRequested;
+  private int flushesInProgress;
+  private boolean snapshotRequested;
+  private int entriesSinceSnapshot;
+  private volatile boolean running = true;
+  private Thread flusher;
+
+  public StateFlusher(SchedulerState state, MyriadStateStore stateStore, long flushIntervalMs, int maxPendingEntries,
+                      int snapshotInterval) {
+    this.state = state;
+    this.stateStore = stateStore;
+    this.flushIntervalMs = flushIntervalMs;
+    this.maxPendingEntries = maxPendingEntries;
+    this.snapshotInterval = snapshotInterval;
+  }
+
+  /**
+   * Starts the background flusher thread unless writes are synchronous.
+   */
+  public synchronized void start() {
+    if (flushIntervalMs > 0 && flusher == null) {
+      flusher = new Thread(this, "myriad-state-flusher");
+      flusher.setDaemon(true);
+      flusher.start();
+    }
+  }
+
+  /**
+   * Stops the flusher thread and writes the entries still queued. Entries queued afterwards
+   * are written synchronously.
+   */
+  public synchronized void stop() {
+    running = false;
+    synchronized (lock) {
+      lock.notifyAll();
+    }
+    if (flusher != null) {
+      try {
+        flusher.join(STOP_TIMEOUT_MS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      flusher = null;
+    }
+    flush();
+  }
+
+  private boolean isSynchronous() {
+    return flushIntervalMs <= 0 || !running;
+  }
+
+  /**
+   * Queues an entry. Must be called while holding the SchedulerState monitor, so that
+   * entries are queued in the order the mutations were applied.
+   *
+   * @param entry
+   */
+  public void append(JournalEntry entry) {
+    synchronized (lock) {
+      if (pending.isEmpty()) {
+        oldestPendingTime = System.currentTimeMillis();
+      }
+      pending.add(entry);
+      if (pending.size() >= maxPendingEntries) {
+        lock.notifyAll();
+      }
+    }
+    if (isSynchronous()) {
+      flush();
+    }
+  }
+
+  /**
+   * Requests a full snapshot with the next flush.
+   */
+  public void requestSnapshot() {
+    synchronized (lock) {
+      snapshotRequested = true;
+      flushRequested = true;
+      lock.notifyAll();
+    }
+    if (isSynchronous()) {
+      flush();
+    }
+  }
+
+  /**
+   * Returns a future that completes once every mutation queued before this call is durable
+   * in the state store, and triggers a flush without waiting for the flush interval.
+   *
+   * @return Future
+   */
+  public Future<Void> commit() {
+    CompletableFuture<Void> committed = new CompletableFuture<>();
+    synchronized (lock) {
+      if (pending.isEmpty() && flushesInProgress == 0 && !snapshotRequested) {
+        committed.complete(null);
+        return committed;
+      }
+      waiters.add(committed);
+      flushRequested = true;
+      lock.notifyAll();
+    }
+    if (isSynchronous()) {
+      flush();
+    }
+    return committed;
+  }
+
+  @Override
+  public void run() {
+    while (running) {
+      try {
+        awaitFlush();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        running = false;
+      }
+      flush();
+    }
+  }
+
+  private void awaitFlush() throws InterruptedException {
+    synchronized (lock) {
+      while (running && !flushRequested) {
+        if (pending.isEmpty()) {
+          lock.wait();
+          continue;
+        }
+        long remaining = oldestPendingTime + flushIntervalMs - System.currentTimeMillis();
+        if (remaining <= 0 || pending.size() >= maxPendingEntries) {
+          return;
+        }
+        lock.wait(remaining);
+      }
+    }
+  }
+
+  /**
+   * Writes all queued entries, or a snapshot if one is due, and completes the waiters. Waiters
+   * with nothing left to write are completed by the last flush that is still in progress.
+   */
+  void flush() {
+    List<JournalEntry> batch;
+    List<CompletableFuture<Void>> committed;
+    StoreContext snapshot = null;
+    // The snapshot has to reflect exactly the entries drained here, so nothing may be
+    // queued while it is taken
+    synchronized (state) {
+      synchronized (lock) {
+        batch = pending;
+        pending = new ArrayList<>();
+        committed = waiters;
+        waiters = new ArrayList<>();
+        flushRequested = false;
+        entriesSinceSnapshot += batch.size();
+        if (snapshotRequested || entriesSinceSnapshot >= snapshotInterval) {
+          snapshot = state.toStoreContext();
+          snapshotRequested = false;
+          entriesSinceSnapshot = 0;
+        }
+        if (batch.isEmpty() && snapshot == null) {
+          if (flushesInProgress > 0) {
+            waiters.addAll(committed);
+            flushRequested = true;
+          } else {
+            completeAll(committed, null);
+          }
+          return;
+        }
+        flushesInProgress++;
+      }
+    }
+
+    Exception failure = null;
+    try {
+      if (snapshot != null) {
+        stateStore.storeMyriadState(snapshot);
+      } else {
+        List<JournalEntry> coalesced = coalesce(batch);
+        LOGGER.debug("Flushing {} journal entries coalesced from {}", coalesced.size(), batch.size());
+        stateStore.storeMyriadStateEntries(coalesced);
+      }
+    } catch (Exception e) {
+      LOGGER.error("Failed to update scheduler state to state store, storing a snapshot with the next flush", e);
+      failure = e;
+    }
+
+    boolean flushAgain;
+    synchronized (lock) {
+      flushesInProgress--;
+      if (failure != null) {
+        snapshotRequested = true;
+      }
+      // Without the flusher thread no one else picks up the waiters that arrived meanwhile
+      flushAgain = flushesInProgress == 0 && !waiters.isEmpty() && isSynchronous();
+    }
+    completeAll(committed, failure);
+    if (flushAgain) {
+      flush();
+    }
+  }
+
+  private void completeAll(List<CompletableFuture<Void>> futures, Exception failure) {
+    for (CompletableFuture<Void> future : futures) {
+      if (failure == null) {
+        future.complete(null);
+      } else {
+        future.completeExceptionally(failure);
+      }
+    }
+  }
+
+  /**
+   * Drops the entries of a batch that are overwritten by a later entry of the same batch,
+   * e.g. all but the last status update of a task.
+   *
+   * @param batch entries in the order they were queued
+   * @return entries that still have an effect, in their original order
+   */
+  static List<JournalEntry> coalesce(List<JournalEntry> batch) {
+    LinkedList<JournalEntry> coalesced = new LinkedList<>();
+    Set<Protos.TaskID> removed = new HashSet<>();
+    Set<Protos.TaskID> added = new HashSet<>();
+    Set<Protos.TaskID> statusUpdated = new HashSet<>();
+    Set<Protos.TaskID> stateChanged = new HashSet<>();
+    boolean frameworkIdSet = false;
+
+    for (int i = batch.size() - 1; i >= 0; i--) {
+      JournalEntry entry = batch.get(i);
+      Protos.TaskID taskId = entry.getTaskId();
+      boolean superseded;
+      switch (entry.getType()) {
+        case FRAMEWORK_ID:
+          superseded = frameworkIdSet;
+          frameworkIdSet = true;
+          break;
+        case ADD_TASK:
+          superseded = removed.contains(taskId) || !added.add(taskId);
+          break;
+        case UPDATE_TASK_STATUS:
+          superseded = removed.contains(taskId) || added.contains(taskId) || !statusUpdated.add(taskId);
+          break;
+        case TASK_STATE:
+          superseded = removed.contains(taskId) || !stateChanged.add(taskId);
+          break;
+        default:
+          superseded = !removed.add(taskId);
+      }
+      if (!superseded) {
+        coalesced.addFirst(entry);
+      }
+    }
+    return coalesced.size() == batch.size() ? batch : Collections.unmodifiableList(coalesced);
+  }
+}
@@ -0,0 +1,379 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.myriad.state;
+
+import java.io.Closeable;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.api.BackgroundCallback;
+import org.apache.curator.framework.api.CuratorEvent;
+import org.apache.curator.framework.api.transaction.CuratorTransaction;
+import org.apache.curator.framework.api.transaction.CuratorTransactionFinal;
+import org.apache.curator.utils.ZKPaths;
+import org.apache.mesos.Protos;
+import org.apache.myriad.state.utils.ByteBufferSupport;
+import org.apache.myriad.state.utils.JournalEntry;
+import org.apache.myriad.state.utils.StoreContext;
+import org.apache.myriad.state.utils.TaskRecord;
+import org.apache.zookeeper.KeeperException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * MyriadStateStore that keeps every task in its own znode:
+ * <pre>
+ * rootPath/frameworkId      FrameworkID, empty if there is none
+ * rootPath/tasks/taskId     {@link TaskRecord} of the task
+ * </pre>
+ * Both snapshots and journal batches are written as the difference to what is already stored,
+ * so only the znodes of tasks that changed are written, in ZooKeeper multi-op transactions.
+ * A batch is committed atomically unless it exceeds maxTransactionBytes, in which case it is
+ * split into several transactions. Every write overwrites the whole task, so a batch that is
+ * applied partially is repaired by storing it, or a later snapshot, again.
+ * <p/>
+ * The store owns the client it is given and closes it in {@link #close()}.
+ */
+public class ZooKeeperMyriadStateStore implements MyriadStateStore, Closeable {
+  private static final Logger LOGGER = LoggerFactory.getLogger(ZooKeeperMyriadStateStore.class);
+
+  /**
+   * Stays well below the default ZooKeeper request limit (jute.maxbuffer) of 1 MB.
+   */
+  public static final int DEFAULT_MAX_TRANSACTION_BYTES = 512 * 1024;
+
+  /**
+   * How long reading the stored tasks may take before the read fails.
+   */
+  public static final long DEFAULT_READ_TIMEOUT_MS = 20000;
+
+  private static final String FRAMEWORK_ID_NODE = "frameworkId";
+  private static final String TASKS_NODE = "tasks";
+  private static final String UTF8 = "UTF-8";
+
+  private final CuratorFramework client;
+  private final String rootPath;
+  private final String frameworkIdPath;
+  private final String tasksPath;
+  private final int maxTransactionBytes;
+  private final long readTimeoutMs;
+
+  // What is known to be stored in ZooKeeper, the serialized TaskRecord of every task
+  private final Map<Protos.TaskID, byte[]> storedRecords = new HashMap<>();
+  private byte[] storedFrameworkId;
+  private boolean initialized;
+  private boolean stale = true;
+
+  public ZooKeeperMyriadStateStore(CuratorFramework client, String rootPath) {
+    this(client, rootPath, DEFAULT_MAX_TRANSACTION_BYTES, DEFAULT_READ_TIMEOUT_MS);
+  }
+
+  public ZooKeeperMyriadStateStore(CuratorFramework client, String rootPath, int maxTransactionBytes, long readTimeoutMs) {
+    this.client = client;
+    this.rootPath = rootPath;
+    this.frameworkIdPath = ZKPaths.makePath(rootPath, FRAMEWORK_ID_NODE);
+    this.tasksPath = ZKPaths.makePath(rootPath, TASKS_NODE);
+    this.maxTransactionBytes = maxTransactionBytes;
+    this.readTimeoutMs = readTimeoutMs;
+  }
+
+  @Override
+  public synchronized StoreContext loadMyriadState() throws Exception {
+    readStoredState();
+    if (storedRecords.isEmpty() && storedFrameworkId.length == 0) {
+      return null;
+    }
+    StoreContext context = new StoreContext();
+    context.setFrameworkId(toFrameworkId(storedFrameworkId));
+    for (Map.Entry<Protos.TaskID, byte[]> entry : storedRecords.entrySet()) {
+      context.putTaskRecord(entry.getKey(), TaskRecord.fromBytes(entry.getValue()));
+    }
+    LOGGER.info("Loaded {} tasks from {}", storedRecords.size(), tasksPath);
+    return context;
+  }
+
+  @Override
+  public synchronized void storeMyriadState(StoreContext storeContext) throws Exception {
+    if (stale) {
+      readStoredState();
+    }
+    Transaction transaction = new Transaction();
+    transaction.setFrameworkId(storeContext.getFrameworkId());
+    Map<Protos.TaskID, TaskRecord> target = storeContext.getTaskRecords();
+    // Committing a full transaction updates the stored records
+    for (Protos.TaskID taskId : new ArrayList<>(storedRecords.keySet())) {
+      if (!target.containsKey(taskId)) {
+        transaction.delete(taskId);
+      }
+    }
+    for (Map.Entry<Protos.TaskID, TaskRecord> entry : target.entrySet()) {
+      transaction.put(entry.getKey(), entry.getValue().toBytes());
+    }
+    transaction.commit();
+  }
+
+  @Override
+  public synchronized void storeMyriadStateEntries(List<JournalEntry> entries) throws Exception {
+    if (stale) {
+      readStoredState();
+    }
+    Transaction transaction = new Transaction();
+    // Serialized record of every task changed by the entries, null for removed tasks. A record
+    // is only deserialized to apply a status update to its task.
+    Map<Protos.TaskID, byte[]> changed = new LinkedHashMap<>();
+    for (JournalEntry entry : entries) {
+      Protos.TaskID taskId = entry.getTaskId();
+      byte[] record = taskId == null ? null : getRecord(changed, taskId);
+      switch (entry.getType()) {
+        case FRAMEWORK_ID:
+          transaction.setFrameworkId(entry.getFrameworkId());
+          break;
+        case ADD_TASK:
+          changed.put(taskId, TaskRecord.toBytes(record == null ? null : TaskRecord.getTaskState(record), entry.getTask()));
+          break;
+        case UPDATE_TASK_STATUS:
+          TaskRecord updated = record == null ? null : TaskRecord.fromBytes(record);
+          if (updated != null && updated.getTask() != null) {
+            updated.getTask().setTaskStatus(entry.getTaskStatus());
+            changed.put(taskId, updated.toBytes());
+          }
+          break;
+        case TASK_STATE:
+          changed.put(taskId, record == null ? TaskRecord.toBytes(entry.getTaskState(), null) :
+              TaskRecord.withTaskState(record, entry.getTaskState()));
+          break;
+        case REMOVE_TASK:
+          changed.put(taskId, null);
+          break;
+      }
+    }
+    for (Map.Entry<Protos.TaskID, byte[]> entry : changed.entrySet()) {
+      if (entry.getValue() == null) {
+        transaction.delete(entry.getKey());
+      } else {
+        transaction.put(entry.getKey(), entry.getValue());
+      }
+    }
+    transaction.commit();
+  }
+
+  /**
+   * Returns the serialized record of a task as changed so far by the current batch, or as stored.
+   */
+  private byte[] getRecord(Map<Protos.TaskID, byte[]> changed, Protos.TaskID taskId) {
+    return changed.containsKey(taskId) ? changed.get(taskId) : storedRecords.get(taskId);
+  }
+
+  @Override
+  public synchronized void removeMyriadState() throws Exception {
+    if (client.checkExists().forPath(rootPath) != null) {
+      ZKPaths.deleteChildren(client.getZookeeperClient().getZooKeeper(), rootPath, true);
+    }
+    storedRecords.clear();
+    initialized = false;
+    stale = true;
+  }
+
+  /**
+   * Closes the ZooKeeper client, the store cannot be used afterwards.
+   */
+  @Override
+  public synchronized void close() {
+    client.close();
+  }
+
+  /**
+   * Reads the complete stored state, replacing what this store believed to be stored. The
+   * task znodes are read with pipelined asynchronous requests rather than one round trip each.
+   */
+  private void readStoredState() throws Exception {
+    ensurePaths();
+    storedRecords.clear();
+    storedFrameworkId = client.getData().forPath(frameworkIdPath);
+    List<String> children = client.getChildren().forPath(tasksPath);
+    final Map<String, byte[]> data = new ConcurrentHashMap<>(children.size() * 2);
+    final AtomicReference<KeeperException> failure = new AtomicReference<>();
+    final CountDownLatch pending = new CountDownLatch(children.size());
+    BackgroundCallback callback = new BackgroundCallback() {
+      @Override
+      public void processResult(CuratorFramework client, CuratorEvent event) {
+        KeeperException.Code code = KeeperException.Code.get(event.getResultCode());
+        if (code == KeeperException.Code.OK) {
+          data.put(ZKPaths.getNodeFromPath(event.getPath()), event.getData());
+        } else if (code != KeeperException.Code.NONODE) {
+          // A task removed in the meantime is simply not part of the state
+          failure.compareAndSet(null, KeeperException.create(code, event.getPath()));
+        }
+        pending.countDown();
+      }
+    };
+    for (String child : children) {
+      client.getData().inBackground(callback).forPath(ZKPaths.makePath(tasksPath, child));
+    }
+    if (!pending.await(readTimeoutMs, TimeUnit.MILLISECONDS)) {
+      stale = true;
+      throw KeeperException.create(KeeperException.Code.OPERATIONTIMEOUT, tasksPath);
+    }
+    if (failure.get() != null) {
+      stale = true;
+      throw failure.get();
+    }
+    for (Map.Entry<String, byte[]> entry : data.entrySet()) {
+      storedRecords.put(toTaskId(entry.getKey()), entry.getValue());
+    }
+    stale = false;
+  }
+
+  private void ensurePaths() throws Exception {
+    if (initialized) {
+      return;
+    }
+    if (client.checkExists().forPath(tasksPath) == null) {
+      try {
+        client.create().creatingParentsIfNeeded().forPath(tasksPath);
+      } catch (KeeperException.NodeExistsException e) {
+        LOGGER.debug("{} was created concurrently", tasksPath);
+      }
+    }
+    if (client.checkExists().forPath(frameworkIdPath) == null) {
+      try {
+        client.create().forPath(frameworkIdPath, ByteBufferSupport.ZERO_BYTES);
+      } catch (KeeperException.NodeExistsException e) {
+        LOGGER.debug("{} was created concurrently", frameworkIdPath);
+      }
+    }
+    initialized = true;
+  }
+
+  private String toPath(Protos.TaskID taskId) {
+    try {
+      return ZKPaths.makePath(tasksPath, URLEncoder.encode(taskId.getValue(), UTF8));
+    } catch (UnsupportedEncodingException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static Protos.TaskID toTaskId(String node) throws UnsupportedEncodingException {
+    return Protos.TaskID.newBuilder().setValue(URLDecoder.decode(node, UTF8)).build();
+  }
+
+  private static Protos.FrameworkID toFrameworkId(byte[] bytes) throws Exception {
+    return bytes == null || bytes.length == 0 ? null : Protos.FrameworkID.parseFrom(bytes);
+  }
+
+  /**
+   * Collects the znode writes of one store call and commits them in as few transactions as
+   * maxTransactionBytes allows. What is known to be stored is only updated once the
+   * transaction containing the write has been committed.
+   */
+  private class Transaction {
+    private CuratorTransactionFinal operations;
+    private int operationBytes;
+    private final Map<Protos.TaskID, byte[]> written = new HashMap<>();
+    private final Set<Protos.TaskID> deleted = new HashSet<>();
+    private byte[] frameworkId;
+
+    void setFrameworkId(Protos.FrameworkID fid) throws Exception {
+      byte[] data = fid == null ? ByteBufferSupport.ZERO_BYTES : fid.toByteArray();
+      if (!Arrays.equals(data, storedFrameworkId)) {
+        add(data.length);
+        operations = begin().setData().forPath(frameworkIdPath, data).and();
+        frameworkId = data;
+      }
+    }
+
+    /**
+     * @return whether the znode is written, i.e. the data differs from what is stored
+     */
+    boolean put(Protos.TaskID taskId, byte[] data) throws Exception {
+      byte[] stored = storedRecords.get(taskId);
+      if (Arrays.equals(data, stored)) {
+        return false;
+      }
+      add(data.length);
+      if (stored == null) {
+        operations = begin().create().forPath(toPath(taskId), data).and();
+      } else {
+        operations = begin().setData().forPath(toPath(taskId), data).and();
+      }
+      written.put(taskId, data);
+      return true;
+    }
+
+    void delete(Protos.TaskID taskId) throws Exception {
+      if (storedRecords.containsKey(taskId)) {
+        add(0);
+        operations = begin().delete().forPath(toPath(taskId)).and();
+        deleted.add(taskId);
+      }
+    }
+
+    void commit() throws Exception {
+      if (operations == null) {
+        return;
+      }
+      try {
+        operations.commit();
+      } catch (Exception e) {
+        // Some of the writes may or may not have been applied, read everything back before the next write
+        stale = true;
+        throw e;
+      }
+      if (frameworkId != null) {
+        storedFrameworkId = frameworkId;
+      }
+      storedRecords.putAll(written);
+      for (Protos.TaskID taskId : deleted) {
+        storedRecords.remove(taskId);
+      }
+      operations = null;
+      operationBytes = 0;
+      written.clear();
+      deleted.clear();
+      frameworkId = null;
+    }
+
+    private void add(int bytes) throws Exception {
+      // Every operation has some overhead on top of its data, mostly the path
+      bytes += 256;
+      if (operations != null && operationBytes + bytes > maxTransactionBytes) {
+        commit();
+      }
+      operationBytes += bytes;
+    }
+
+    private CuratorTransaction begin() {
+      return operations == null ? client.inTransaction() : operations;
+    }
+  }
+}
@@ -286,7 +286,10 @@ public class ByteBufferSupport {
   }
 
   public static ServiceResourceProfile getServiceResourceProfile(ByteBuffer bb) {
-    String p = toString(bb);
+    return toServiceResourceProfile(toString(bb));
+  }
+
+  public static ServiceResourceProfile toServiceResourceProfile(String p) {
     if (StringUtils.isNotEmpty(p)) {
       return gsonCustom.fromJson(p, ServiceResourceProfile.class);
     } else {
@@ -296,7 +299,10 @@ public class ByteBufferSupport {
 
   public static Constraint getConstraint(ByteBuffer bb) {
     Constraint.Type type = Constraint.Type.values()[bb.getInt()];
-    String p = toString(bb);
+    return toConstraint(type, toString(bb));
+  }
+
+  public static Constraint toConstraint(Constraint.Type type, String p) {
     switch (type) {
       case NULL:
         return null;
@@ -364,7 +370,7 @@ public class ByteBufferSupport {
     return list;
   }
 
-  private static ByteBuffer createBuffer(int size) {
+  public static ByteBuffer createBuffer(int size) {
     return ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
   }
 
@@ -0,0 +1,213 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.myriad.state.utils;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import org.apache.mesos.Protos;
+import org.apache.myriad.state.NodeTask;
+import org.apache.myriad.state.SchedulerState.TaskState;
+
+/**
+ * A single SchedulerState mutation as recorded in the state store journal. Replaying the
+ * journal entries written since the last snapshot, in order, on top of that snapshot
+ * reproduces the SchedulerState. Every entry overwrites the value it refers to, so replaying
+ * an entry that is already reflected in the snapshot is harmless.
+ */
+public final class JournalEntry {
+
+  /**
+   * Kind of mutation recorded by a JournalEntry
+   */
+  public enum Type {
+    FRAMEWORK_ID,
+    ADD_TASK,
+    UPDATE_TASK_STATUS,
+    TASK_STATE,
+    REMOVE_TASK
+  }
+
+  private final Type type;
+  private final Protos.TaskID taskId;
+  private final Protos.FrameworkID frameworkId;
+  private final NodeTask task;
+  private final Protos.TaskStatus taskStatus;
+  private final TaskState taskState;
+
+  private JournalEntry(Type type, Protos.TaskID taskId, Protos.FrameworkID frameworkId, NodeTask task,
+                       Protos.TaskStatus taskStatus, TaskState taskState) {
+    this.type = type;
+    this.taskId = taskId;
+    this.frameworkId = frameworkId;
+    this.task = task;
+    this.taskStatus = taskStatus;
+    this.taskState = taskState;
+  }
+
+  public static JournalEntry frameworkId(Protos.FrameworkID frameworkId) {
+    return new JournalEntry(Type.FRAMEWORK_ID, null, frameworkId, null, null, null);
+  }
+
+  public static JournalEntry addTask(Protos.TaskID taskId, NodeTask task) {
+    return new JournalEntry(Type.ADD_TASK, Objects.requireNonNull(taskId), null, task, null, null);
+  }
+
+  public static JournalEntry updateTaskStatus(Protos.TaskStatus taskStatus) {
+    return new JournalEntry(Type.UPDATE_TASK_STATUS, taskStatus.getTaskId(), null, null, taskStatus, null);
+  }
+
+  public static JournalEntry taskState(Protos.TaskID taskId, TaskState taskState) {
+    return new JournalEntry(Type.TASK_STATE, Objects.requireNonNull(taskId), null, null, null, taskState);
+  }
+
+  public static JournalEntry removeTask(Protos.TaskID taskId) {
+    return new JournalEntry(Type.REMOVE_TASK, Objects.requireNonNull(taskId), null, null, null, null);
+  }
+
+  public Type getType() {
+    return type;
+  }
+
+  public Protos.TaskID getTaskId() {
+    return taskId;
+  }
+
+  public Protos.FrameworkID getFrameworkId() {
+    return frameworkId;
+  }
+
+  public NodeTask getTask() {
+    return task;
+  }
+
+  public Protos.TaskStatus getTaskStatus() {
+    return taskStatus;
+  }
+
+  public TaskState getTaskState() {
+    return taskState;
+  }
+
+  /**
+   * Applies this entry to the maps and sets that make up a SchedulerState.
+   *
+   * @param currentFrameworkId
+   * @param tasks
+   * @param taskStates sets of TaskIDs keyed by TaskState
+   * @return the framework id after applying this entry
+   */
+  public Protos.FrameworkID applyTo(Protos.FrameworkID currentFrameworkId, Map<Protos.TaskID, NodeTask> tasks,
+                                    Map<TaskState, Set<Protos.TaskID>> taskStates) {
+    switch (type) {
+      case FRAMEWORK_ID:
+        return frameworkId;
+      case ADD_TASK:
+        tasks.put(taskId, task);
+        break;
+      case UPDATE_TASK_STATUS:
+        NodeTask existing = tasks.get(taskId);
+        if (existing != null) {
+          existing.setTaskStatus(taskStatus);
+        }
+        break;
+      case TASK_STATE:
+        for (Map.Entry<TaskState, Set<Protos.TaskID>> entry : taskStates.entrySet()) {
+          if (entry.getKey() == taskState) {
+            entry.getValue().add(taskId);
+          } else {
+            entry.getValue().remove(taskId);
+          }
+        }
+        break;
+      case REMOVE_TASK:
+        tasks.remove(taskId);
+        for (Set<Protos.TaskID> ids : taskStates.values()) {
+          ids.remove(taskId);
+        }
+        break;
+    }
+    return currentFrameworkId;
+  }
+
+  /**
+   * Serializes this entry. The layout is the entry type followed by a type specific body,
+   * using the same length prefixed encoding as the StoreContext.
+   *
+   * @return serialized entry
+   */
+  public byte[] toBytes() {
+    byte[] body;
+    switch (type) {
+      case FRAMEWORK_ID:
+        body = frameworkId == null ? ByteBufferSupport.ZERO_BYTES : frameworkId.toByteArray();
+        break;
+      case ADD_TASK:
+        body = ByteBufferSupport.toByteBuffer(task).array();
+        break;
+      case UPDATE_TASK_STATUS:
+        body = taskStatus.toByteArray();
+        break;
+      case TASK_STATE:
+        body = ByteBufferSupport.toIntBytes(taskState.ordinal());
+        break;
+      default:
+        body = ByteBufferSupport.ZERO_BYTES;
+    }
+    byte[] id = taskId == null ? ByteBufferSupport.ZERO_BYTES : taskId.toByteArray();
+    ByteBuffer bb = ByteBufferSupport.createBuffer(3 * ByteBufferSupport.INT_SIZE + id.length + body.length);
+    bb.putInt(type.ordinal());
+    ByteBufferSupport.putBytes(bb, id);
+    ByteBufferSupport.putBytes(bb, body);
+    return bb.array();
+  }
+
+  /**
+   * Re-creates an entry serialized with {@link #toBytes()}.
+   *
+   * @param bytes
+   * @return JournalEntry
+   */
+  public static JournalEntry fromBytes(byte[] bytes) {
+    ByteBuffer bb = ByteBufferSupport.fillBuffer(bytes);
+    Type type = Type.values()[bb.getInt()];
+    int idSize = bb.getInt();
+    try {
+      Protos.TaskID taskId = idSize > 0 ? Protos.TaskID.parseFrom(ByteBufferSupport.getBytes(bb, idSize)) : null;
+      byte[] body = ByteBufferSupport.getBytes(bb, bb.getInt());
+      switch (type) {
+        case FRAMEWORK_ID:
+          return frameworkId(body.length > 0 ? Protos.FrameworkID.parseFrom(body) : null);
+        case ADD_TASK:
+          return addTask(taskId, ByteBufferSupport.toNodeTask(ByteBufferSupport.fillBuffer(body)));
+        case UPDATE_TASK_STATUS:
+          return updateTaskStatus(Protos.TaskStatus.parseFrom(body));
+        case TASK_STATE:
+          return taskState(taskId, TaskState.values()[ByteBufferSupport.fillBuffer(body).getInt()]);
+        default:
+          return removeTask(taskId);
+      }
+    } catch (Exception e) {
+      throw new RuntimeException("Failed to parse " + type + " journal entry", e);
+    }
+  }
+}
@@ -21,40 +21,42 @@ package org.apache.myriad.state.utils;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.ByteBuffer;
-import java.util.ArrayList;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Set;
 import java.util.regex.Pattern;
 import org.apache.mesos.Protos;
-import org.apache.mesos.Protos.TaskID;
 import org.apache.myriad.state.NodeTask;
+import org.apache.myriad.state.SchedulerState.TaskState;
 
 /**
  * The purpose of this container/utility is to create a mechanism to serialize the SchedulerState
  * to RMStateStore and back. Json did not seem to handle the Protos fields very well so this was an
  * alternative approach.
+ * <p/>
+ * Contexts are written in the format described in {@link StoreContextFormat}. Contexts written
+ * in the original layout of length prefixed ByteBuffers are still read.
  */
 public final class StoreContext {
   private static Pattern taskIdPattern = Pattern.compile("\\.");
-  private ByteBuffer frameworkId;
-  private List<ByteBuffer> taskIds;
-  private List<ByteBuffer> taskNodes;
-  private List<ByteBuffer> pendingTasks;
-  private List<ByteBuffer> stagingTasks;
-  private List<ByteBuffer> activeTasks;
-  private List<ByteBuffer> lostTasks;
-  private List<ByteBuffer> killableTasks;
+  private Protos.FrameworkID frameworkId;
+  private Map<Protos.TaskID, NodeTask> tasks = new HashMap<>();
+  private Set<Protos.TaskID> pendingTasks = new HashSet<>();
+  private Set<Protos.TaskID> stagingTasks = new HashSet<>();
+  private Set<Protos.TaskID> activeTasks = new HashSet<>();
+  private Set<Protos.TaskID> lostTasks = new HashSet<>();
+  private Set<Protos.TaskID> killableTasks = new HashSet<>();
 
   public StoreContext() {
   }
 
   /**
-   * Accept all the SchedulerState maps and flatten them into lists of ByteBuffers
+   * Accept all the SchedulerState maps
    *
    * @param tasks
    * @param pendingTasks
@@ -76,7 +78,7 @@ public final class StoreContext {
   }
 
   /**
-   * Accept list of ByteBuffers and re-create the SchedulerState maps.
+   * Accept list of ByteBuffers in the original layout and re-create the SchedulerState maps.
    *
    * @param framwrorkId
    * @param taskIds
@@ -90,14 +92,20 @@ public final class StoreContext {
   public StoreContext(ByteBuffer frameworkId, List<ByteBuffer> taskIds, List<ByteBuffer> taskNodes, List<ByteBuffer> pendingTasks,
                       List<ByteBuffer> stagingTasks, List<ByteBuffer> activeTasks, List<ByteBuffer> lostTasks,
                       List<ByteBuffer> killableTasks) {
-    this.frameworkId = frameworkId;
-    this.taskIds = taskIds;
-    this.taskNodes = taskNodes;
-    this.pendingTasks = pendingTasks;
-    this.stagingTasks = stagingTasks;
-    this.activeTasks = activeTasks;
-    this.lostTasks = lostTasks;
-    this.killableTasks = killableTasks;
+    this.frameworkId = frameworkId == null ? null : ByteBufferSupport.toFrameworkID(frameworkId);
+    if (taskIds != null) {
+      int idx = 0;
+      for (ByteBuffer bb : taskIds) {
+        final Protos.TaskID taskId = ByteBufferSupport.toTaskId(bb);
+        final NodeTask task = ByteBufferSupport.toNodeTask(taskNodes.get(idx++));
+        this.tasks.put(taskId, task);
+      }
+    }
+    this.pendingTasks = toTaskSet(pendingTasks);
+    this.stagingTasks = toTaskSet(stagingTasks);
+    this.activeTasks = toTaskSet(activeTasks);
+    this.lostTasks = toTaskSet(lostTasks);
+    this.killableTasks = toTaskSet(killableTasks);
   }
 
   /**
@@ -107,159 +115,238 @@ public final class StoreContext {
    * @throws IOException
    */
   public ByteArrayOutputStream toSerializedContext() throws IOException {
-    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
-    ByteBufferSupport.addByteBuffer(frameworkId, bytes);
-    ByteBufferSupport.addByteBuffers(taskIds, bytes);
-    ByteBufferSupport.addByteBuffers(taskNodes, bytes);
-    ByteBufferSupport.addByteBuffers(pendingTasks, bytes);
-    ByteBufferSupport.addByteBuffers(stagingTasks, bytes);
-    ByteBufferSupport.addByteBuffers(activeTasks, bytes);
-    ByteBufferSupport.addByteBuffers(lostTasks, bytes);
-    ByteBufferSupport.addByteBuffers(killableTasks, bytes);
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(StoreContextFormat.estimateSize(this));
+    writeTo(bytes);
     return bytes;
   }
 
+  /**
+   * Streams the serialized context to out.
+   *
+   * @param out
+   * @throws IOException
+   */
+  public void writeTo(OutputStream out) throws IOException {
+    StoreContextFormat.write(this, out);
+  }
+
   /**
    * When the bytes come back from the store, use this method to create a new context.
    *
    * @param bytes from state store
    * @return initialized StoreContext to use to initialize a SchedulerState
    */
-  @SuppressWarnings("unchecked")
   public static StoreContext fromSerializedBytes(byte bytes[]) {
     StoreContext ctx;
     if (bytes != null && bytes.length > 0) {
-      ByteBuffer bb = ByteBufferSupport.fillBuffer(bytes);
-      ByteBuffer frameworkId = ByteBufferSupport.createBuffer(bb);
-      List<ByteBuffer> taskIds = ByteBufferSupport.createBufferList(bb, bb.getInt());
-      List<ByteBuffer> taskNodes = ByteBufferSupport.createBufferList(bb, bb.getInt());
-      List<ByteBuffer> pendingTasks = ByteBufferSupport.createBufferList(bb, bb.getInt());
-      List<ByteBuffer> stagingTasks = ByteBufferSupport.createBufferList(bb, bb.getInt());
-      List<ByteBuffer> activeTasks = ByteBufferSupport.createBufferList(bb, bb.getInt());
-      List<ByteBuffer> lostTasks = ByteBufferSupport.createBufferList(bb, bb.getInt());
-      List<ByteBuffer> killableTasks = ByteBufferSupport.createBufferList(bb, bb.getInt());
-      ctx = new StoreContext(frameworkId, taskIds, taskNodes, pendingTasks, stagingTasks, activeTasks, lostTasks, killableTasks);
+      if (StoreContextFormat.isFormatted(bytes)) {
+        ctx = StoreContextFormat.read(bytes);
+      } else {
+        ctx = fromOriginalLayout(bytes);
+      }
     } else {
       ctx = new StoreContext();
     }
     return ctx;
   }
 
+  private static StoreContext fromOriginalLayout(byte bytes[]) {
+    ByteBuffer bb = ByteBufferSupport.fillBuffer(bytes);
+    ByteBuffer frameworkId = ByteBufferSupport.createBuffer(bb);
+    List<ByteBuffer> taskIds = ByteBufferSupport.createBufferList(bb, bb.getInt());
+    List<ByteBuffer> taskNodes = ByteBufferSupport.createBufferList(bb, bb.getInt());
+    List<ByteBuffer> pendingTasks = ByteBufferSupport.createBufferList(bb, bb.getInt());
+    List<ByteBuffer> stagingTasks = ByteBufferSupport.createBufferList(bb, bb.getInt());
+    List<ByteBuffer> activeTasks = ByteBufferSupport.createBufferList(bb, bb.getInt());
+    List<ByteBuffer> lostTasks = ByteBufferSupport.createBufferList(bb, bb.getInt());
+    List<ByteBuffer> killableTasks = ByteBufferSupport.createBufferList(bb, bb.getInt());
+    return new StoreContext(frameworkId, taskIds, taskNodes, pendingTasks, stagingTasks, activeTasks, lostTasks, killableTasks);
+  }
+
   /**
-   * Serialize tasks into internal ByteBuffers, removing the map.
+   * Replays journal entries recorded after this context was stored and returns a context
+   * holding the resulting state.
    *
-   * @param tasks
+   * @param entries journal entries in the order they were written
+   * @return StoreContext reflecting this context plus the entries
    */
+  public StoreContext applyJournal(List<JournalEntry> entries) {
+    if (entries == null || entries.isEmpty()) {
+      return this;
+    }
+    Protos.FrameworkID fid = getFrameworkId();
+    Map<Protos.TaskID, NodeTask> tasks = getTasks();
+    Map<TaskState, Set<Protos.TaskID>> taskStates = new EnumMap<>(TaskState.class);
+    taskStates.put(TaskState.PENDING, getPendingTasks());
+    taskStates.put(TaskState.STAGING, getStagingTasks());
+    taskStates.put(TaskState.ACTIVE, getActiveTasks());
+    taskStates.put(TaskState.LOST, getLostTasks());
+    taskStates.put(TaskState.KILLABLE, getKillableTasks());
+    for (JournalEntry entry : entries) {
+      fid = entry.applyTo(fid, tasks, taskStates);
+    }
+    return new StoreContext(fid, tasks, taskStates.get(TaskState.PENDING), taskStates.get(TaskState.STAGING),
+        taskStates.get(TaskState.ACTIVE), taskStates.get(TaskState.LOST), taskStates.get(TaskState.KILLABLE));
+  }
+
   public void setTasks(Map<Protos.TaskID, NodeTask> tasks) {
-    taskIds = new ArrayList<ByteBuffer>(tasks.size());
-    taskNodes = new ArrayList<ByteBuffer>(tasks.size());
-    for (Entry<TaskID, NodeTask> entry : tasks.entrySet()) {
-      taskIds.add(ByteBufferSupport.toByteBuffer(entry.getKey()));
-      taskNodes.add(ByteBufferSupport.toByteBuffer(entry.getValue()));
+    this.tasks = new HashMap<>(tasks);
+  }
+
+  public Protos.FrameworkID getFrameworkId() {
+    return frameworkId;
+  }
+
+  public void setFrameworkId(Protos.FrameworkID frameworkId) {
+    if (frameworkId != null) {
+      this.frameworkId = frameworkId;
     }
   }
 
   /**
-   * De-serialize the internal ByteBuffer back into a Protos.FrameworkID.
+   * Returns a copy of the task map, with task prefixes derived from the TaskIDs where missing.
    *
    * @return
    */
-  public Protos.FrameworkID getFrameworkId() {
-    return ByteBufferSupport.toFrameworkID(frameworkId);
+  public Map<Protos.TaskID, NodeTask> getTasks() {
+    Map<Protos.TaskID, NodeTask> map = new HashMap<Protos.TaskID, NodeTask>(tasks.size());
+    for (Map.Entry<Protos.TaskID, NodeTask> entry : tasks.entrySet()) {
+      final Protos.TaskID taskId = entry.getKey();
+      final NodeTask task = entry.getValue();
+      if (task.getTaskPrefix() == null && taskId != null) {
+        String taskPrefix = taskIdPattern.split(taskId.getValue())[0];
+        task.setTaskPrefix(taskPrefix);
+      }
+      map.put(taskId, task);
+    }
+    return map;
   }
 
   /**
-   * Serialize the Protos.FrameworkID into a ByteBuffer.
+   * @return the task map without copying it, for serialization
    */
-  public void setFrameworkId(Protos.FrameworkID frameworkId) {
-    if (frameworkId != null) {
-      this.frameworkId = ByteBufferSupport.toByteBuffer(frameworkId);
-    }
+  Map<Protos.TaskID, NodeTask> getTaskMap() {
+    return tasks;
   }
 
   /**
-   * De-serialize the internal ByteBuffers back into a Task map.
+   * Returns every TaskID that has a task or a TaskState, with both combined into a TaskRecord.
    *
-   * @return
+   * @return TaskRecords keyed by TaskID
    */
-  public Map<Protos.TaskID, NodeTask> getTasks() {
-    Map<Protos.TaskID, NodeTask> map = null;
-    if (taskIds != null) {
-      map = new HashMap<Protos.TaskID, NodeTask>(taskIds.size());
-      int idx = 0;
-      for (ByteBuffer bb : taskIds) {
-        final Protos.TaskID taskId = ByteBufferSupport.toTaskId(bb);
-        final NodeTask task = ByteBufferSupport.toNodeTask(taskNodes.get(idx++));
-        if (task.getTaskPrefix() == null && taskId != null) {
-          String taskPrefix = taskIdPattern.split(taskId.getValue())[0];
-          task.setTaskPrefix(taskPrefix);
+  public Map<Protos.TaskID, TaskRecord> getTaskRecords() {
+    Map<Protos.TaskID, TaskRecord> records = new HashMap<>(tasks.size() * 2);
+    for (Map.Entry<Protos.TaskID, NodeTask> entry : tasks.entrySet()) {
+      records.put(entry.getKey(), new TaskRecord(getTaskState(entry.getKey()), entry.getValue()));
+    }
+    for (TaskState taskState : TaskState.values()) {
+      for (Protos.TaskID taskId : getTaskIds(taskState)) {
+        if (!records.containsKey(taskId)) {
+          records.put(taskId, new TaskRecord(taskState, null));
         }
-        map.put(taskId, task);
       }
-    } else {
-      map = new HashMap<Protos.TaskID, NodeTask>(0);
     }
-    return map;
+    return records;
+  }
+
+  /**
+   * Adds the task and TaskState of a TaskRecord, replacing any task stored under the TaskID.
+   *
+   * @param taskId
+   * @param record
+   */
+  public void putTaskRecord(Protos.TaskID taskId, TaskRecord record) {
+    if (record.getTask() != null) {
+      tasks.put(taskId, record.getTask());
+    }
+    if (record.getTaskState() != null) {
+      getTaskIds(record.getTaskState()).add(taskId);
+    }
   }
 
   public void setPendingTasks(Set<Protos.TaskID> tasks) {
     if (tasks != null) {
-      pendingTasks = new ArrayList<ByteBuffer>(tasks.size());
-      toTaskBuffer(tasks, pendingTasks);
+      pendingTasks = new HashSet<>(tasks);
     }
   }
 
   public Set<Protos.TaskID> getPendingTasks() {
-    return toTaskSet(pendingTasks);
+    return new HashSet<>(pendingTasks);
   }
 
   public void setStagingTasks(Set<Protos.TaskID> tasks) {
     if (tasks != null) {
-      stagingTasks = new ArrayList<ByteBuffer>(tasks.size());
-      toTaskBuffer(tasks, stagingTasks);
+      stagingTasks = new HashSet<>(tasks);
     }
   }
 
   public Set<Protos.TaskID> getStagingTasks() {
-    return toTaskSet(stagingTasks);
+    return new HashSet<>(stagingTasks);
   }
 
   public void setActiveTasks(Set<Protos.TaskID> tasks) {
     if (tasks != null) {
-      activeTasks = new ArrayList<ByteBuffer>(tasks.size());
-      toTaskBuffer(tasks, activeTasks);
+      activeTasks = new HashSet<>(tasks);
     }
   }
 
   public Set<Protos.TaskID> getActiveTasks() {
-    return toTaskSet(activeTasks);
+    return new HashSet<>(activeTasks);
   }
 
   public void setLostTasks(Set<Protos.TaskID> tasks) {
     if (tasks != null) {
-      lostTasks = new ArrayList<ByteBuffer>(tasks.size());
-      toTaskBuffer(tasks, lostTasks);
+      lostTasks = new HashSet<>(tasks);
     }
   }
 
   public Set<Protos.TaskID> getLostTasks() {
-    return toTaskSet(lostTasks);
+    return new HashSet<>(lostTasks);
   }
 
   public void setKillableTasks(Set<Protos.TaskID> tasks) {
     if (tasks != null) {
-      killableTasks = new ArrayList<ByteBuffer>(tasks.size());
-      toTaskBuffer(tasks, killableTasks);
+      killableTasks = new HashSet<>(tasks);
     }
   }
 
   public Set<Protos.TaskID> getKillableTasks() {
-    return toTaskSet(killableTasks);
+    return new HashSet<>(killableTasks);
   }
 
-  private void toTaskBuffer(Set<Protos.TaskID> src, List<ByteBuffer> tgt) {
-    for (Protos.TaskID id : src) {
-      tgt.add(ByteBufferSupport.toByteBuffer(id));
+  /**
+   * @return the TaskState of the task, or null if it has none
+   */
+  TaskState getTaskState(Protos.TaskID taskId) {
+    if (pendingTasks.contains(taskId)) {
+      return TaskState.PENDING;
+    } else if (stagingTasks.contains(taskId)) {
+      return TaskState.STAGING;
+    } else if (activeTasks.contains(taskId)) {
+      return TaskState.ACTIVE;
+    } else if (lostTasks.contains(taskId)) {
+      return TaskState.LOST;
+    } else if (killableTasks.contains(taskId)) {
+      return TaskState.KILLABLE;
+    }
+    return null;
+  }
+
+  /**
+   * @return the TaskIDs of the given state without copying them, for serialization
+   */
+  Set<Protos.TaskID> getTaskIds(TaskState taskState) {
+    switch (taskState) {
+      case PENDING:
+        return pendingTasks;
+      case STAGING:
+        return stagingTasks;
+      case ACTIVE:
+        return activeTasks;
+      case LOST:
+        return lostTasks;
+      default:
+        return killableTasks;
     }
   }
 
@@ -0,0 +1,381 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.myriad.state.utils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+import org.apache.mesos.Protos;
+import org.apache.mesos.protobuf.ByteString;
+import org.apache.mesos.protobuf.CodedInputStream;
+import org.apache.mesos.protobuf.CodedOutputStream;
+import org.apache.mesos.protobuf.MessageLite;
+import org.apache.mesos.protobuf.Parser;
+import org.apache.myriad.scheduler.ServiceResourceProfile;
+import org.apache.myriad.scheduler.constraints.Constraint;
+import org.apache.myriad.state.NodeTask;
+import org.apache.myriad.state.SchedulerState.TaskState;
+
+/**
+ * Versioned binary layout of a {@link StoreContext}:
+ * <pre>
+ * magic      "MYRS"
+ * version    1 byte
+ * body       varint encoded, see below
+ * checksum   CRC32 of everything before it, 4 bytes big endian
+ * </pre>
+ * The body holds the framework id, a dictionary of the distinct profiles and constraints,
+ * the tasks, each with its TaskState inline and its profile and constraint as dictionary
+ * indexes, and finally the TaskIDs that have a TaskState but no task. Lengths and counts are
+ * varints, protobuf messages are written and parsed directly from the stream instead of
+ * through intermediate buffers. The TaskStatus and ExecutorInfo of the tasks are not parsed
+ * while reading, the tasks keep them serialized until they are accessed.
+ * <p/>
+ * Version 2 stored each task's profile and constraint inline and is still read.
+ * <p/>
+ * Stores that keep every task under its own key write a {@link TaskRecord} per task instead:
+ * the version byte, the TaskState and the task with its profile and constraint inline.
+ */
+final class StoreContextFormat {
+  static final int VERSION = 3;
+  private static final int VERSION_INLINE_PROFILES = 2;
+
+  private static final byte[] MAGIC = {'M', 'Y', 'R', 'S'};
+  private static final int HEADER_SIZE = MAGIC.length + 1;
+  private static final int CHECKSUM_SIZE = 4;
+  private static final int BUFFER_SIZE = 8192;
+  private static final TaskState[] TASK_STATES = TaskState.values();
+
+  private StoreContextFormat() {
+  }
+
+  /**
+   * @return whether the bytes start with the header of this format rather than the
+   * original layout, which starts with a little endian length
+   */
+  static boolean isFormatted(byte[] bytes) {
+    if (bytes.length < HEADER_SIZE + CHECKSUM_SIZE) {
+      return false;
+    }
+    for (int i = 0; i < MAGIC.length; i++) {
+      if (bytes[i] != MAGIC[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  static int estimateSize(StoreContext context) {
+    return HEADER_SIZE + CHECKSUM_SIZE + 64 + context.getTaskMap().size() * 512;
+  }
+
+  static void write(StoreContext context, OutputStream out) throws IOException {
+    CRC32 crc = new CRC32();
+    CodedOutputStream coded = CodedOutputStream.newInstance(new CheckedOutputStream(out, crc), BUFFER_SIZE);
+    coded.writeRawBytes(MAGIC);
+    coded.writeRawByte(VERSION);
+    writeMessage(coded, context.getFrameworkId());
+
+    Map<Protos.TaskID, NodeTask> tasks = context.getTaskMap();
+    Map<ServiceResourceProfile, Integer> profiles = new LinkedHashMap<>();
+    Map<Constraint, Integer> constraints = new LinkedHashMap<>();
+    for (NodeTask task : tasks.values()) {
+      addToDictionary(profiles, task.getProfile());
+      addToDictionary(constraints, task.getConstraint());
+    }
+    coded.writeUInt32NoTag(profiles.size());
+    for (ServiceResourceProfile profile : profiles.keySet()) {
+      // The ServiceResourceProfile toString() returns Json, same as the original layout
+      writeString(coded, profile.toString());
+    }
+    coded.writeUInt32NoTag(constraints.size());
+    for (Constraint constraint : constraints.keySet()) {
+      coded.writeRawByte(constraint.getType().ordinal());
+      writeString(coded, constraint.toString());
+    }
+
+    coded.writeUInt32NoTag(tasks.size());
+    for (Map.Entry<Protos.TaskID, NodeTask> entry : tasks.entrySet()) {
+      NodeTask task = entry.getValue();
+      writeMessage(coded, entry.getKey());
+      writeTaskState(coded, context.getTaskState(entry.getKey()));
+      coded.writeUInt32NoTag(task.getProfile() == null ? 0 : profiles.get(task.getProfile()));
+      coded.writeUInt32NoTag(task.getConstraint() == null ? 0 : constraints.get(task.getConstraint()));
+      writeTask(coded, task);
+    }
+
+    int untracked = 0;
+    for (TaskState taskState : TASK_STATES) {
+      for (Protos.TaskID taskId : context.getTaskIds(taskState)) {
+        if (!tasks.containsKey(taskId)) {
+          untracked++;
+        }
+      }
+    }
+    coded.writeUInt32NoTag(untracked);
+    for (TaskState taskState : TASK_STATES) {
+      for (Protos.TaskID taskId : context.getTaskIds(taskState)) {
+        if (!tasks.containsKey(taskId)) {
+          writeTaskState(coded, taskState);
+          writeMessage(coded, taskId);
+        }
+      }
+    }
+    coded.flush();
+
+    int checksum = (int) crc.getValue();
+    out.write(checksum >>> 24);
+    out.write(checksum >>> 16);
+    out.write(checksum >>> 8);
+    out.write(checksum);
+  }
+
+  static StoreContext read(byte[] bytes) {
+    int bodyEnd = bytes.length - CHECKSUM_SIZE;
+    CRC32 crc = new CRC32();
+    crc.update(bytes, 0, bodyEnd);
+    int checksum = (bytes[bodyEnd] & 0xff) << 24 | (bytes[bodyEnd + 1] & 0xff) << 16 | (bytes[bodyEnd + 2] & 0xff) << 8 |
+        (bytes[bodyEnd + 3] & 0xff);
+    if (checksum != (int) crc.getValue()) {
+      throw new RuntimeException("Stored Myriad state is corrupt, checksum mismatch");
+    }
+    int version = bytes[MAGIC.length];
+    if (version != VERSION && version != VERSION_INLINE_PROFILES) {
+      throw new RuntimeException("Unsupported Myriad state format version " + version);
+    }
+
+    try {
+      CodedInputStream in = newInput(bytes, HEADER_SIZE, bodyEnd - HEADER_SIZE);
+      StoreContext context = new StoreContext();
+      context.setFrameworkId(readMessage(in, Protos.FrameworkID.parser()));
+
+      // Index 0 stands for no profile or constraint
+      List<ServiceResourceProfile> profiles = new ArrayList<>();
+      List<Constraint> constraints = new ArrayList<>();
+      profiles.add(null);
+      constraints.add(null);
+      if (version != VERSION_INLINE_PROFILES) {
+        int profileCount = in.readRawVarint32();
+        for (int i = 0; i < profileCount; i++) {
+          profiles.add(ByteBufferSupport.toServiceResourceProfile(in.readString()));
+        }
+        int constraintCount = in.readRawVarint32();
+        for (int i = 0; i < constraintCount; i++) {
+          Constraint.Type constraintType = Constraint.Type.values()[in.readRawByte()];
+          constraints.add(ByteBufferSupport.toConstraint(constraintType, in.readString()));
+        }
+      }
+
+      int taskCount = in.readRawVarint32();
+      for (int i = 0; i < taskCount; i++) {
+        Protos.TaskID taskId = readMessage(in, Protos.TaskID.parser());
+        TaskState taskState = readTaskState(in);
+        NodeTask task;
+        if (version == VERSION_INLINE_PROFILES) {
+          task = readInlineTask(in);
+        } else {
+          ServiceResourceProfile profile = profiles.get(in.readRawVarint32());
+          task = new NodeTask(profile, constraints.get(in.readRawVarint32()));
+          readTask(in, task);
+        }
+        context.getTaskMap().put(taskId, task);
+        if (taskState != null) {
+          context.getTaskIds(taskState).add(taskId);
+        }
+      }
+
+      int untracked = in.readRawVarint32();
+      for (int i = 0; i < untracked; i++) {
+        TaskState taskState = readTaskState(in);
+        context.getTaskIds(taskState).add(readMessage(in, Protos.TaskID.parser()));
+      }
+      return context;
+    } catch (IOException e) {
+      throw new RuntimeException("Stored Myriad state is not in the expected format", e);
+    }
+  }
+
+  /**
+   * Writes a single task with its TaskState, profile and constraint inline, the value of a
+   * {@link TaskRecord}. The task may be missing if only the TaskState is known.
+   */
+  static void writeTaskRecord(TaskRecord record, OutputStream out) throws IOException {
+    CodedOutputStream coded = CodedOutputStream.newInstance(out, BUFFER_SIZE);
+    coded.writeRawByte(VERSION);
+    writeTaskState(coded, record.getTaskState());
+    NodeTask task = record.getTask();
+    coded.writeBoolNoTag(task != null);
+    if (task != null) {
+      writeInlineTask(coded, task);
+    }
+    coded.flush();
+  }
+
+  static TaskRecord readTaskRecord(byte[] bytes) {
+    try {
+      CodedInputStream in = newInput(bytes, 0, bytes.length);
+      int version = in.readRawByte();
+      if (version != VERSION) {
+        throw new RuntimeException("Unsupported Myriad task record version " + version);
+      }
+      TaskState taskState = readTaskState(in);
+      NodeTask task = in.readBool() ? readInlineTask(in) : null;
+      return new TaskRecord(taskState, task);
+    } catch (IOException e) {
+      throw new RuntimeException("Stored Myriad task is not in the expected format", e);
+    }
+  }
+
+  /**
+   * @return the TaskState of a serialized {@link TaskRecord}, without reading its task
+   */
+  static TaskState readTaskRecordState(byte[] bytes) {
+    checkTaskRecordVersion(bytes);
+    return bytes[1] == 0 ? null : TASK_STATES[bytes[1] - 1];
+  }
+
+  /**
+   * @return a copy of the serialized {@link TaskRecord} with its TaskState replaced, the task is
+   * copied as it is
+   */
+  static byte[] withTaskRecordState(byte[] bytes, TaskState taskState) {
+    checkTaskRecordVersion(bytes);
+    byte[] copy = bytes.clone();
+    copy[1] = (byte) (taskState == null ? 0 : taskState.ordinal() + 1);
+    return copy;
+  }
+
+  private static void checkTaskRecordVersion(byte[] bytes) {
+    if (bytes.length < 2 || bytes[0] != VERSION) {
+      throw new RuntimeException("Unsupported Myriad task record version " + (bytes.length == 0 ? -1 : bytes[0]));
+    }
+  }
+
+  private static <T> void addToDictionary(Map<T, Integer> dictionary, T value) {
+    if (value != null && !dictionary.containsKey(value)) {
+      dictionary.put(value, dictionary.size() + 1);
+    }
+  }
+
+  private static void writeInlineTask(CodedOutputStream out, NodeTask task) throws IOException {
+    // The ServiceResourceProfile toString() returns Json, same as the original layout
+    writeString(out, task.getProfile() == null ? null : task.getProfile().toString());
+    Constraint constraint = task.getConstraint();
+    out.writeRawByte((constraint == null ? Constraint.Type.NULL : constraint.getType()).ordinal());
+    writeString(out, constraint == null ? null : constraint.toString());
+    writeTask(out, task);
+  }
+
+  private static NodeTask readInlineTask(CodedInputStream in) throws IOException {
+    String profile = in.readString();
+    Constraint.Type constraintType = Constraint.Type.values()[in.readRawByte()];
+    NodeTask task = new NodeTask(profile.isEmpty() ? null : ByteBufferSupport.toServiceResourceProfile(profile),
+        ByteBufferSupport.toConstraint(constraintType, in.readString()));
+    readTask(in, task);
+    return task;
+  }
+
+  /**
+   * Writes everything but the task's profile and constraint
+   */
+  private static void writeTask(CodedOutputStream out, NodeTask task) throws IOException {
+    writeString(out, task.getHostname());
+    writeMessage(out, task.getSlaveId());
+    // Tasks that were loaded and never accessed are written without parsing them
+    writeBytes(out, task.getSerializedTaskStatus());
+    writeBytes(out, task.getSerializedExecutorInfo());
+    writeString(out, task.getTaskPrefix());
+  }
+
+  private static void readTask(CodedInputStream in, NodeTask task) throws IOException {
+    task.setHostname(in.readString());
+    task.setSlaveId(readMessage(in, Protos.SlaveID.parser()));
+    // The bulky TaskStatus and ExecutorInfo are only parsed when they are accessed
+    task.setSerializedTaskStatus(readBytes(in));
+    task.setSerializedExecutorInfo(readBytes(in));
+    String taskPrefix = in.readString();
+    task.setTaskPrefix(taskPrefix.isEmpty() ? null : taskPrefix);
+  }
+
+  private static void writeTaskState(CodedOutputStream out, TaskState taskState) throws IOException {
+    out.writeRawByte(taskState == null ? 0 : taskState.ordinal() + 1);
+  }
+
+  private static TaskState readTaskState(CodedInputStream in) throws IOException {
+    int value = in.readRawByte();
+    return value == 0 ? null : TASK_STATES[value - 1];
+  }
+
+  private static void writeString(CodedOutputStream out, String value) throws IOException {
+    out.writeStringNoTag(value == null ? "" : value);
+  }
+
+  /**
+   * Writes the message length prefixed, a missing message is written as zero length.
+   */
+  private static void writeMessage(CodedOutputStream out, MessageLite message) throws IOException {
+    if (message == null) {
+      out.writeUInt32NoTag(0);
+    } else {
+      out.writeMessageNoTag(message);
+    }
+  }
+
+  private static void writeBytes(CodedOutputStream out, ByteString message) throws IOException {
+    out.writeBytesNoTag(message == null ? ByteString.EMPTY : message);
+  }
+
+  /**
+   * Reads a message written by {@link #writeMessage} without parsing it. The returned bytes
+   * share the input's array, see {@link #newInput}.
+   */
+  private static ByteString readBytes(CodedInputStream in) throws IOException {
+    ByteString bytes = in.readBytes();
+    return bytes.isEmpty() ? null : bytes;
+  }
+
+  /**
+   * Input over the bytes that returns the ByteStrings it reads as views of the bytes rather
+   * than copies, so deferring the parsing of messages costs no copying. The bytes must not be
+   * modified afterwards.
+   */
+  private static CodedInputStream newInput(byte[] bytes, int offset, int length) {
+    CodedInputStream in = CodedInputStream.newInstance(bytes, offset, length);
+    in.enableAliasing(true);
+    in.setSizeLimit(Integer.MAX_VALUE);
+    return in;
+  }
+
+  private static <T extends MessageLite> T readMessage(CodedInputStream in, Parser<T> parser) throws IOException {
+    int size = in.readRawVarint32();
+    if (size == 0) {
+      return null;
+    }
+    int limit = in.pushLimit(size);
+    T message = parser.parseFrom(in);
+    in.popLimit(limit);
+    return message;
+  }
+}
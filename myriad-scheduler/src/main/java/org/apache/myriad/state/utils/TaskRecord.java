@@ -0,0 +1,88 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.myriad.state.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import org.apache.myriad.state.NodeTask;
+import org.apache.myriad.state.SchedulerState.TaskState;
+
+/**
+ * A task together with its TaskState, as stored by state stores that keep every task under
+ * its own key so that a change to one task only rewrites that task. Either part may be
+ * missing, a task that has not been assigned a TaskState yet has no TaskState and a TaskID
+ * that is tracked without a task has no task.
+ */
+public final class TaskRecord {
+  private final TaskState taskState;
+  private final NodeTask task;
+
+  public TaskRecord(TaskState taskState, NodeTask task) {
+    this.taskState = taskState;
+    this.task = task;
+  }
+
+  public TaskState getTaskState() {
+    return taskState;
+  }
+
+  public NodeTask getTask() {
+    return task;
+  }
+
+  public byte[] toBytes() {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(task == null ? 8 : 512);
+    try {
+      StoreContextFormat.writeTaskRecord(this, bytes);
+    } catch (IOException e) {
+      throw new RuntimeException("Failed to serialize task record", e);
+    }
+    return bytes.toByteArray();
+  }
+
+  public static TaskRecord fromBytes(byte[] bytes) {
+    return StoreContextFormat.readTaskRecord(bytes);
+  }
+
+  public static byte[] toBytes(TaskState taskState, NodeTask task) {
+    return new TaskRecord(taskState, task).toBytes();
+  }
+
+  /**
+   * Reads the TaskState of a serialized record without deserializing its task.
+   *
+   * @param bytes
+   * @return TaskState or null
+   */
+  public static TaskState getTaskState(byte[] bytes) {
+    return StoreContextFormat.readTaskRecordState(bytes);
+  }
+
+  /**
+   * Changes the TaskState of a serialized record without deserializing its task.
+   *
+   * @param bytes
+   * @param taskState
+   * @return the serialized record with the new TaskState
+   */
+  public static byte[] withTaskState(byte[] bytes, TaskState taskState) {
+    return StoreContextFormat.withTaskRecordState(bytes, taskState);
+  }
+}
@@ -20,14 +20,27 @@ package org.apache.hadoop.yarn.server.resourcemanager.recovery;
  */
 
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.service.Service.STATE;
 import org.apache.hadoop.yarn.server.resourcemanager.rmapp.RMApp;
 import org.apache.hadoop.yarn.server.resourcemanager.rmapp.RMAppState;
+import org.apache.mesos.Protos.FrameworkID;
+import org.apache.mesos.Protos.TaskID;
 import org.apache.myriad.TestObjectFactory;
 import org.apache.myriad.state.MockRMApp;
+import org.apache.myriad.state.NodeTask;
+import org.apache.myriad.state.SchedulerState.TaskState;
+import org.apache.myriad.state.utils.JournalEntry;
+import org.apache.myriad.state.utils.StoreContext;
 import org.junit.Test;
 
 /**
@@ -73,9 +86,46 @@ public class MyriadFileSystemRMStateStoreTest {
     store.close();
   }
 
+  @Test
+  public void testLoadMyriadStateReplaysJournal() throws Exception {
+    MyriadFileSystemRMStateStore store = getInitializedStore();
+    FrameworkID frameworkId = FrameworkID.newBuilder().setValue("framework-1").build();
+    TaskID idOne = TaskID.newBuilder().setValue("nm.small.1").build();
+    TaskID idTwo = TaskID.newBuilder().setValue("nm.small.2").build();
+    NodeTask task = TestObjectFactory.getNodeTask("small", "host-1", 1.0, 1024.0, 1L, 1024L);
+
+    store.storeMyriadState(new StoreContext(frameworkId, new HashMap<TaskID, NodeTask>(), new HashSet<TaskID>(),
+        new HashSet<TaskID>(), new HashSet<TaskID>(), new HashSet<TaskID>(), new HashSet<TaskID>()));
+    store.storeMyriadStateEntries(Arrays.asList(JournalEntry.addTask(idOne, task),
+        JournalEntry.taskState(idOne, TaskState.PENDING)));
+    store.storeMyriadStateEntries(Arrays.asList(JournalEntry.taskState(idOne, TaskState.ACTIVE),
+        JournalEntry.addTask(idTwo, task), JournalEntry.removeTask(idTwo)));
+    store.close();
+
+    MyriadFileSystemRMStateStore recovered = getInitializedStore(false);
+    StoreContext sc = recovered.loadMyriadState();
+    assertEquals(frameworkId, sc.getFrameworkId());
+    assertEquals(Collections.singleton(idOne), sc.getTasks().keySet());
+    assertEquals(Collections.singleton(idOne), sc.getActiveTasks());
+    assertTrue(sc.getPendingTasks().isEmpty());
+
+    // A new snapshot supersedes the journal
+    recovered.storeMyriadState(new StoreContext(frameworkId, new HashMap<TaskID, NodeTask>(), new HashSet<TaskID>(),
+        new HashSet<TaskID>(), new HashSet<TaskID>(), new HashSet<TaskID>(), new HashSet<TaskID>()));
+    recovered.close();
+    sc = getInitializedStore(false).loadMyriadState();
+    assertFalse(sc.getTasks().containsKey(idOne));
+  }
+
   private MyriadFileSystemRMStateStore getInitializedStore() throws Exception {
+    return getInitializedStore(true);
+  }
+
+  private MyriadFileSystemRMStateStore getInitializedStore(boolean discardMyriadState) throws Exception {
     MyriadFileSystemRMStateStore store = TestObjectFactory.getStateStore(new Configuration(), "/tmp/myriad-file-system-rm-state-store-test");
-    store.loadMyriadState();
+    if (discardMyriadState) {
+      store.loadMyriadState();
+    }
     return store;
   }
 }
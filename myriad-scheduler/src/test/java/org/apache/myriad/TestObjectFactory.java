@@ -209,7 +209,8 @@ public class TestObjectFactory {
   
   public static SchedulerState getSchedulerState(MyriadConfiguration cfg, String baseDir) throws Exception {
     MyriadStateStore store = TestObjectFactory.getStateStore(new Configuration(), baseDir);
-    SchedulerState state = new SchedulerState(store);
+    // Persist synchronously so no flush is still writing when a test deletes the store directory
+    SchedulerState state = new SchedulerState(store, 0, cfg.getStateStoreFlushMaxPending(), cfg.getStateStoreSnapshotInterval());
     state.setFrameworkId(FrameworkID.newBuilder().setValue("mock-framework").build());
     return state;  
   }
@@ -79,7 +79,7 @@ public class MockSchedulerDriver implements SchedulerDriver {
 
   @Override 
   public Status launchTasks(Collection<OfferID> offerIds, Collection<TaskInfo> tasks) {
-    return null;
+    return Status.DRIVER_RUNNING;
   }
 
   @Override
@@ -31,12 +31,15 @@ import org.apache.hadoop.yarn.server.resourcemanager.scheduler.common.fica.FiCaS
 import org.apache.hadoop.yarn.server.resourcemanager.scheduler.common.fica.FiCaSchedulerNode;
 import org.apache.hadoop.yarn.server.resourcemanager.security.RMDelegationTokenSecretManager;
 import org.apache.mesos.Protos.FrameworkID;
+import com.codahale.metrics.MetricRegistry;
 import org.apache.myriad.BaseConfigurableTest;
+import org.apache.myriad.DisruptorManager;
 import org.apache.myriad.TestObjectFactory;
 import org.apache.myriad.configuration.MyriadBadConfigurationException;
 import org.apache.myriad.policy.LeastAMNodesFirstPolicy;
 import org.apache.myriad.scheduler.constraints.Constraint;
 import org.apache.myriad.scheduler.constraints.LikeConstraint;
+import org.apache.myriad.scheduler.fgs.ContainerTaskLauncher;
 import org.apache.myriad.scheduler.yarn.interceptor.CompositeInterceptor;
 import org.apache.myriad.state.MockDispatcher;
 import org.apache.myriad.state.MockRMContext;
@@ -71,7 +74,9 @@ public class MyriadOperationsTest extends BaseConfigurableTest {
 
     manager.startDriver();
 
-    return new MyriadOperations(cfg, sState, policy, manager, webServer, generateRMContext(scheduler));
+    return new MyriadOperations(cfg, sState, policy, manager, webServer, generateRMContext(scheduler),
+        new OfferPool(cfg, new DisruptorManager(), new OfferDemandController(sState, cfg, new MetricRegistry())),
+        new ContainerTaskLauncher(new MyriadDriver(new MockSchedulerDriver()), 0), new ReconcileService(sState, cfg));
   }
   private void generateProfiles() {
     small = new ServiceResourceProfile("small", new Double(0.1), new Double(512.0), new HashMap<String, Long>());
@@ -0,0 +1,121 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.myriad.scheduler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+
+import org.apache.mesos.Protos.Status;
+import org.apache.mesos.Protos.TaskID;
+import org.apache.myriad.BaseConfigurableTest;
+import org.apache.myriad.scheduler.offer.OfferBuilder;
+import org.apache.myriad.state.NodeTask;
+import org.apache.myriad.state.SchedulerState;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.codahale.metrics.MetricRegistry;
+
+/**
+ * Unit tests for OfferDemandController
+ */
+public class OfferDemandControllerTest extends BaseConfigurableTest {
+  private SchedulerState state;
+  private OfferDemandController controller;
+  private MockSchedulerDriver driver;
+  private int suppressCalls;
+  private int reviveCalls;
+
+  @Override
+  @Before
+  public void setUp() throws Exception {
+    super.setUp();
+    state = new SchedulerState(null);
+    controller = new OfferDemandController(state, cfg, new MetricRegistry());
+    driver = new MockSchedulerDriver() {
+      @Override
+      public Status suppressOffers() {
+        suppressCalls++;
+        return Status.DRIVER_RUNNING;
+      }
+
+      @Override
+      public Status reviveOffers() {
+        reviveCalls++;
+        return Status.DRIVER_RUNNING;
+      }
+    };
+  }
+
+  private void addPendingTask(String id) {
+    TaskID taskId = TaskID.newBuilder().setValue(id).build();
+    NodeTask task = new NodeTask(new ServiceResourceProfile("small", 1.0, 1024.0, new HashMap<String, Long>()), null);
+    task.setTaskPrefix("nm");
+    state.addTask(taskId, task);
+    state.makeTaskPending(taskId);
+  }
+
+  @Test
+  public void testSuppressWithoutDemand() throws Exception {
+    controller.offersReceived(driver, 1);
+    controller.offersHandled();
+    assertTrue(controller.isSuppressed());
+    controller.offersHandled();
+    assertEquals(1, suppressCalls);
+  }
+
+  @Test
+  public void testNoSuppressWithPendingTasks() throws Exception {
+    addPendingTask("nm.one");
+    controller.offersReceived(driver, 1);
+    controller.offersHandled();
+    assertFalse(controller.isSuppressed());
+    assertEquals(0, suppressCalls);
+  }
+
+  @Test
+  public void testReviveWhenTaskBecomesPending() throws Exception {
+    controller.offersReceived(driver, 1);
+    controller.offersHandled();
+    addPendingTask("nm.one");
+    assertFalse(controller.isSuppressed());
+    assertEquals(1, reviveCalls);
+    addPendingTask("nm.two");
+    assertEquals(1, reviveCalls);
+  }
+
+  @Test
+  public void testDeclineBackoff() throws Exception {
+    double refuseSeconds = cfg.getDeclineRefuseSeconds();
+    double maxRefuseSeconds = cfg.getMaxDeclineRefuseSeconds();
+    assertEquals(refuseSeconds, controller.getDeclineFilters("host-1").getRefuseSeconds(), 0.0);
+    assertEquals(refuseSeconds * 2, controller.getDeclineFilters("host-1").getRefuseSeconds(), 0.0);
+    assertEquals(refuseSeconds, controller.getDeclineFilters("host-2").getRefuseSeconds(), 0.0);
+    for (int i = 0; i < 64; i++) {
+      controller.getDeclineFilters("host-1");
+    }
+    assertEquals(maxRefuseSeconds, controller.getDeclineFilters("host-1").getRefuseSeconds(), 0.0);
+
+    controller.offerUsed(new OfferBuilder("host-1").build());
+    assertEquals(refuseSeconds, controller.getDeclineFilters("host-1").getRefuseSeconds(), 0.0);
+  }
+}
@@ -0,0 +1,126 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.myriad.scheduler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.List;
+
+import org.apache.mesos.Protos.TaskID;
+import org.apache.myriad.scheduler.constraints.LikeConstraint;
+import org.apache.myriad.scheduler.offer.OfferBuilder;
+import org.apache.myriad.scheduler.resource.ResourceOfferContainer;
+import org.apache.myriad.state.NodeTask;
+import org.apache.myriad.state.SchedulerState;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests for OfferMatcher
+ */
+public class OfferMatcherTest {
+  private SchedulerState state;
+  private ServiceResourceProfile small;
+  private ServiceResourceProfile large;
+
+  @Before
+  public void setUp() throws Exception {
+    state = new SchedulerState(null);
+    small = new ServiceResourceProfile("small", 1.0, 1024.0, new HashMap<String, Long>());
+    large = new ServiceResourceProfile("large", 4.0, 8192.0, new HashMap<String, Long>());
+  }
+
+  private TaskID addPendingTask(String id, ServiceResourceProfile profile, LikeConstraint constraint) {
+    TaskID taskId = TaskID.newBuilder().setValue("nm." + id).build();
+    NodeTask task = new NodeTask(profile, constraint);
+    task.setTaskPrefix("nm");
+    state.addTask(taskId, task);
+    state.makeTaskPending(taskId);
+    return taskId;
+  }
+
+  private ResourceOfferContainer getOffer(String hostname, double cpus, double mem) {
+    return new ResourceOfferContainer(new OfferBuilder(hostname)
+        .addScalarResource("cpus", cpus)
+        .addScalarResource("mem", mem)
+        .addRangeResource("ports", 1000, 2000)
+        .build(), null, "*");
+  }
+
+  private NodeTask placeTask(OfferMatcher.Bucket bucket, String hostname) {
+    NodeTask task = state.getTask(bucket.peek());
+    task.setHostname(hostname);
+    return task;
+  }
+
+  @Test
+  public void testTasksWithSameDemandShareBucket() throws Exception {
+    for (int i = 0; i < 100; i++) {
+      addPendingTask("small-" + i, small, null);
+    }
+    addPendingTask("large", large, null);
+
+    List<OfferMatcher.Bucket> matches = new OfferMatcher(state.getSnapshot()).match(getOffer("host-1", 2.0, 2048.0));
+    assertEquals(1, matches.size());
+    assertEquals(small, matches.get(0).getProfile());
+    assertEquals(100, matches.get(0).size());
+  }
+
+  @Test
+  public void testConstraintSplitsBucket() throws Exception {
+    addPendingTask("any", small, null);
+    addPendingTask("constrained", small, new LikeConstraint("hostname", "host-[0-9]*"));
+
+    OfferMatcher matcher = new OfferMatcher(state.getSnapshot());
+    assertEquals(2, matcher.match(getOffer("host-1", 2.0, 2048.0)).size());
+    assertEquals(1, matcher.match(getOffer("other", 2.0, 2048.0)).size());
+  }
+
+  @Test
+  public void testLaunchedHostnameIsOccupied() throws Exception {
+    addPendingTask("one", small, null);
+    addPendingTask("two", small, null);
+
+    OfferMatcher matcher = new OfferMatcher(state.getSnapshot());
+    OfferMatcher.Bucket bucket = matcher.match(getOffer("host-1", 2.0, 2048.0)).get(0);
+    matcher.launched(bucket, placeTask(bucket, "HOST-1"));
+    assertEquals(1, bucket.size());
+    assertTrue(matcher.match(getOffer("host-1", 2.0, 2048.0)).isEmpty());
+    assertEquals(1, matcher.match(getOffer("host-2", 2.0, 2048.0)).size());
+
+    matcher.launched(bucket, placeTask(bucket, "host-2"));
+    assertFalse(matcher.hasPendingTasks());
+    assertEquals(2, matcher.getTasks("nm").size());
+  }
+
+  @Test
+  public void testActiveTaskOccupiesHostname() throws Exception {
+    TaskID active = addPendingTask("active", small, null);
+    state.getTask(active).setHostname("host-1");
+    state.makeTaskActive(active);
+    addPendingTask("pending", small, null);
+
+    OfferMatcher matcher = new OfferMatcher(state.getSnapshot());
+    assertTrue(matcher.match(getOffer("host-1", 2.0, 2048.0)).isEmpty());
+    assertEquals(1, matcher.match(getOffer("host-2", 2.0, 2048.0)).size());
+  }
+}
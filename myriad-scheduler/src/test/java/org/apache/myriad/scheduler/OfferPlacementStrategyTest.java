@@ -0,0 +1,96 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.myriad.scheduler;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+import org.apache.mesos.Protos;
+import org.apache.myriad.scheduler.offer.OfferBuilder;
+import org.apache.myriad.scheduler.resource.ResourceOfferContainer;
+import org.apache.myriad.state.NodeTask;
+import org.junit.Test;
+
+/**
+ * Unit tests for the OfferPlacementStrategy implementations
+ */
+public class OfferPlacementStrategyTest {
+  private final ServiceResourceProfile profile = new ServiceResourceProfile("small", 1.0, 1024.0,
+      new HashMap<String, Long>());
+
+  private ResourceOfferContainer getOffer(String hostname, double cpus, double mem, String rack) {
+    Protos.Offer.Builder offer = new OfferBuilder(hostname)
+        .addScalarResource("cpus", cpus)
+        .addScalarResource("mem", mem)
+        .addRangeResource("ports", 1000, 2000)
+        .build().toBuilder();
+    if (rack != null) {
+      offer.addAttributes(getRack(rack));
+    }
+    return new ResourceOfferContainer(offer.build(), null, "*");
+  }
+
+  private Protos.Attribute getRack(String rack) {
+    return Protos.Attribute.newBuilder().setName("rack").setType(Protos.Value.Type.TEXT)
+        .setText(Protos.Value.Text.newBuilder().setValue(rack)).build();
+  }
+
+  private NodeTask getTask(String hostname, String rack) {
+    NodeTask task = new NodeTask(profile, null);
+    task.setHostname(hostname);
+    task.setSlaveAttributes(Collections.singletonList(getRack(rack)));
+    return task;
+  }
+
+  @Test
+  public void testFirstFit() throws Exception {
+    List<ResourceOfferContainer> offers = Arrays.asList(getOffer("host-1", 8.0, 16384.0, null),
+        getOffer("host-2", 1.0, 1024.0, null));
+    assertEquals("host-1", new FirstFitPlacementStrategy().select(profile, offers,
+        Collections.<NodeTask>emptyList()).getHostName());
+  }
+
+  @Test
+  public void testBestFitLeavesLeastBehind() throws Exception {
+    List<ResourceOfferContainer> offers = Arrays.asList(getOffer("host-1", 8.0, 16384.0, null),
+        getOffer("host-2", 2.0, 1024.0, null), getOffer("host-3", 1.0, 4096.0, null));
+    assertEquals("host-2", new BestFitPlacementStrategy().select(profile, offers,
+        Collections.<NodeTask>emptyList()).getHostName());
+  }
+
+  @Test
+  public void testSpreadPrefersEmptyRack() throws Exception {
+    List<ResourceOfferContainer> offers = Arrays.asList(getOffer("host-1", 2.0, 2048.0, "a"),
+        getOffer("host-2", 2.0, 2048.0, "a"), getOffer("host-3", 2.0, 2048.0, "b"));
+    Collection<NodeTask> tasks = new ArrayList<>();
+    tasks.add(getTask("host-4", "a"));
+    SpreadPlacementStrategy spread = new SpreadPlacementStrategy("rack");
+    assertEquals("host-3", spread.select(profile, offers, tasks).getHostName());
+
+    tasks.add(getTask("host-3", "b"));
+    tasks.add(getTask("host-5", "b"));
+    assertEquals("host-1", spread.select(profile, offers, tasks).getHostName());
+  }
+}
@@ -0,0 +1,133 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.myriad.scheduler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.codahale.metrics.MetricRegistry;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.mesos.Protos.Filters;
+import org.apache.mesos.Protos.Offer;
+import org.apache.mesos.Protos.OfferID;
+import org.apache.mesos.Protos.Status;
+import org.apache.myriad.BaseConfigurableTest;
+import org.apache.myriad.DisruptorManager;
+import org.apache.myriad.TestObjectFactory;
+import org.apache.myriad.state.SchedulerState;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests for OfferPool
+ */
+public class OfferPoolTest extends BaseConfigurableTest {
+  private OfferPool pool;
+  private MockSchedulerDriver driver;
+  private List<OfferID> declined;
+
+  @Override
+  @Before
+  public void setUp() throws Exception {
+    super.setUp();
+    pool = new OfferPool(cfg, new DisruptorManager(),
+        new OfferDemandController(new SchedulerState(null), cfg, new MetricRegistry()));
+    declined = new ArrayList<>();
+    driver = new MockSchedulerDriver() {
+      @Override
+      public Status declineOffer(OfferID offerId, Filters filters) {
+        declined.add(offerId);
+        return Status.DRIVER_RUNNING;
+      }
+    };
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    pool.stop();
+  }
+
+  private Offer getOffer(String offerId) {
+    return TestObjectFactory.getOffer("host-" + offerId, "slave-" + offerId, "mock-framework", offerId, 1.0, 1024.0);
+  }
+
+  private boolean hold(Offer offer, long now) {
+    return pool.holdUntil(driver, offer, now + cfg.getOfferHoldTimeMs(), now);
+  }
+
+  @Test
+  public void testDeclinesExpiredOffers() throws Exception {
+    long holdTimeMs = cfg.getOfferHoldTimeMs();
+    assertTrue(hold(getOffer("offer-1"), 0));
+    assertTrue(hold(getOffer("offer-2"), 10));
+
+    assertEquals(0, pool.declineExpired(holdTimeMs - 1));
+    assertEquals(1, pool.declineExpired(holdTimeMs));
+    assertEquals("offer-1", declined.get(0).getValue());
+    assertEquals(1, pool.getHeldCount());
+  }
+
+  @Test
+  public void testRescindedOfferIsDropped() throws Exception {
+    hold(getOffer("offer-1"), 0);
+    assertTrue(pool.rescind(getOffer("offer-1").getId()));
+    assertFalse(pool.rescind(getOffer("offer-1").getId()));
+    assertEquals(0, pool.declineExpired(Long.MAX_VALUE));
+    assertTrue(declined.isEmpty());
+  }
+
+  @Test
+  public void testPoolIsBounded() throws Exception {
+    for (int i = 0; i < cfg.getOfferPoolSize(); i++) {
+      assertTrue(hold(getOffer("offer-" + i), 0));
+    }
+    assertFalse(hold(getOffer("overflow"), 0));
+    assertEquals(cfg.getOfferPoolSize().intValue(), pool.drain().size());
+    assertEquals(0, pool.getHeldCount());
+  }
+
+  @Test
+  public void testHeldAgainOfferKeepsExpiry() throws Exception {
+    long holdTimeMs = cfg.getOfferHoldTimeMs();
+    assertTrue(hold(getOffer("offer-1"), 0));
+    OfferPool.HeldOffer held = pool.drain().get(0);
+    assertEquals(holdTimeMs, held.getExpiry());
+
+    // Matched again with a later batch and still unused
+    assertTrue(pool.holdUntil(driver, held.getOffer(), held.getExpiry(), holdTimeMs - 1));
+    assertEquals(1, pool.declineExpired(holdTimeMs));
+    assertFalse(pool.holdUntil(driver, held.getOffer(), held.getExpiry(), holdTimeMs));
+  }
+
+  @Test
+  public void testStopDeclinesHeldOffers() throws Exception {
+    assertTrue(hold(getOffer("offer-1"), 0));
+    assertTrue(hold(getOffer("offer-2"), 0));
+    pool.stop();
+
+    assertEquals(2, declined.size());
+    assertEquals(0, pool.getHeldCount());
+    assertFalse(hold(getOffer("offer-3"), 0));
+  }
+}
@@ -0,0 +1,146 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.myriad.scheduler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.apache.mesos.Protos;
+import org.apache.mesos.Protos.Status;
+import org.apache.mesos.Protos.TaskStatus;
+import org.apache.myriad.BaseConfigurableTest;
+import org.apache.myriad.TestObjectFactory;
+import org.apache.myriad.state.NodeTask;
+import org.apache.myriad.state.SchedulerState;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
+
+/**
+ * Unit tests for ReconcileService
+ */
+public class ReconcileServiceTest extends BaseConfigurableTest {
+  private static final long NOW = 1000000L;
+
+  private SchedulerState state;
+  private ReconcileService service;
+  private List<Collection<TaskStatus>> requests;
+  private MockSchedulerDriver driver;
+
+  @Before
+  public void setUp() throws Exception {
+    super.setUp();
+    this.baseStateStoreDirectory = "/tmp/myriad-reconcile-service-test";
+    state = new SchedulerState(null);
+    for (int i = 0; i < 5; i++) {
+      Protos.TaskID taskId = Protos.TaskID.newBuilder().setValue("nm.small." + i).build();
+      NodeTask task = TestObjectFactory.getNodeTask("small", "host-" + i, 1.0, 1024.0, 1L, 512L);
+      task.setTaskStatus(TaskStatus.newBuilder().setTaskId(taskId).setState(Protos.TaskState.TASK_RUNNING).build());
+      state.addTask(taskId, task);
+    }
+    service = new ReconcileService(state, cfg);
+    requests = new ArrayList<>();
+    driver = new MockSchedulerDriver() {
+      @Override
+      public Status reconcileTasks(Collection<TaskStatus> statuses) {
+        requests.add(statuses);
+        return null;
+      }
+    };
+  }
+
+  private Protos.TaskID taskId(int i) {
+    return Protos.TaskID.newBuilder().setValue("nm.small." + i).build();
+  }
+
+  @Test
+  public void testReconcileInChunks() throws Exception {
+    new ObjectMapper(new YAMLFactory()).readerForUpdating(cfg).readValue("reconcileChunkSize: 2");
+    service = new ReconcileService(state, cfg);
+    assertEquals(5, service.queueAll(driver, NOW));
+    int chunkSize = cfg.getReconcileChunkSize();
+    assertEquals(2, chunkSize);
+    int requested = 0;
+    while (service.reconcileDueTasks(NOW) > 0) {
+      requested += requests.get(requests.size() - 1).size();
+      assertTrue(requests.get(requests.size() - 1).size() <= chunkSize);
+    }
+    assertEquals(5, requested);
+    assertEquals((5 + chunkSize - 1) / chunkSize, requests.size());
+    assertEquals(5, service.getPendingCount());
+  }
+
+  @Test
+  public void testReconciledTasksAreNotRequestedAgain() throws Exception {
+    service.queueAll(driver, NOW);
+    service.reconcileDueTasks(NOW);
+    service.statusReceived(taskId(0));
+    service.statusReceived(taskId(1));
+    state.removeTask(taskId(2));
+
+    long delay = cfg.getReconcileDelayMs();
+    assertEquals(0, service.reconcileDueTasks(NOW + delay - 1));
+    assertEquals(2, service.reconcileDueTasks(NOW + delay));
+    assertEquals(2, service.getPendingCount());
+    // The next attempt waits twice as long
+    assertEquals(0, service.reconcileDueTasks(NOW + 3 * delay - 1));
+    assertEquals(2, service.reconcileDueTasks(NOW + 3 * delay));
+  }
+
+  @Test
+  public void testReconciliationGivesUp() throws Exception {
+    service.queueAll(driver, NOW);
+    long now = NOW;
+    for (int attempt = 0; attempt <= ReconcileService.MAX_RECONCILE_ATTEMPTS; attempt++) {
+      now += cfg.getReconcileDelayMs() * attempt;
+      assertEquals(5, service.reconcileDueTasks(now));
+    }
+    now += cfg.getReconcileDelayMs() * (ReconcileService.MAX_RECONCILE_ATTEMPTS + 1);
+    assertEquals(0, service.reconcileDueTasks(now));
+    assertEquals(0, service.getPendingCount());
+  }
+
+  @Test(timeout = 10000)
+  public void testImplicitReconciliationSurvivesDriverFailures() throws Exception {
+    new ObjectMapper(new YAMLFactory()).readerForUpdating(cfg).readValue("implicitReconcileIntervalMs: 10");
+    service = new ReconcileService(state, cfg);
+    final CountDownLatch implicitRequests = new CountDownLatch(3);
+    service.reconcile(new MockSchedulerDriver() {
+      @Override
+      public Status reconcileTasks(Collection<TaskStatus> statuses) {
+        if (statuses.isEmpty()) {
+          implicitRequests.countDown();
+          throw new IllegalStateException("driver failure");
+        }
+        return null;
+      }
+    });
+    try {
+      implicitRequests.await();
+    } finally {
+      service.stop();
+    }
+  }
+}
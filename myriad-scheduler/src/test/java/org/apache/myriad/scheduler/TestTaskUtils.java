@@ -17,9 +17,11 @@
  */
 package org.apache.myriad.scheduler;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import org.apache.mesos.Protos;
 import org.apache.myriad.BaseConfigurableTest;
+import org.apache.myriad.scheduler.resource.ResourceVector;
 import org.junit.Test;
 
 import com.google.common.collect.Range;
@@ -127,4 +129,15 @@ public class TestTaskUtils extends BaseConfigurableTest {
     checkResourceList(taskUtils.getScalarResource(createScalarOffer("cpus", 0.0, 2.0), "cpus", 1.0, 1.0), "cpus", 0.0, 1.0);
     checkResourceList(taskUtils.getScalarResource(createScalarOffer("cpus", 0.0, 2.0), "cpus", 0.5, 1.5), "cpus", 0.0, 0.5);
   }
-}
\ No newline at end of file
+
+  @Test
+  public void testConsumeScalarResourcesWithRole() {
+    TaskUtils taskUtils = new TaskUtils(cfgWithRole);
+    ResourceVector remaining = taskUtils.getResources(createScalarOffer("cpus", 1.5, 2.0));
+    checkResourceList(taskUtils.consumeScalarResource(remaining, "cpus", 1.0), "cpus", 1.0, 0.0);
+    // The reserved cpus handed out already are not handed out again
+    checkResourceList(taskUtils.consumeScalarResource(remaining, "cpus", 1.0), "cpus", 0.5, 0.5);
+    assertEquals(1.5, remaining.getCpus(), epsilon);
+    assertEquals(0.0, remaining.getReserved("cpus"), epsilon);
+  }
+}
@@ -0,0 +1,289 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.myriad.scheduler.event.handlers;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.codahale.metrics.MetricRegistry;
+
+import org.apache.mesos.Protos;
+import org.apache.mesos.Protos.Filters;
+import org.apache.mesos.Protos.FrameworkID;
+import org.apache.mesos.Protos.Offer;
+import org.apache.mesos.Protos.OfferID;
+import org.apache.mesos.Protos.Status;
+import org.apache.mesos.Protos.TaskID;
+import org.apache.mesos.Protos.TaskInfo;
+import org.apache.myriad.BaseConfigurableTest;
+import org.apache.myriad.DisruptorManager;
+import org.apache.myriad.scheduler.MockSchedulerDriver;
+import org.apache.myriad.scheduler.MyriadDriver;
+import org.apache.myriad.scheduler.OfferDemandController;
+import org.apache.myriad.scheduler.OfferPool;
+import org.apache.myriad.scheduler.ServiceResourceProfile;
+import org.apache.myriad.scheduler.TaskFactory;
+import org.apache.myriad.scheduler.event.ResourceOffersEvent;
+import org.apache.myriad.scheduler.fgs.NodeStore;
+import org.apache.myriad.scheduler.fgs.OfferLifecycleManager;
+import org.apache.myriad.scheduler.offer.OfferBuilder;
+import org.apache.myriad.scheduler.resource.ResourceOfferContainer;
+import org.apache.myriad.state.NodeTask;
+import org.apache.myriad.state.SchedulerState;
+import org.apache.myriad.state.SchedulerState.TaskState;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests for ResourceOffersEventHandler
+ */
+public class ResourceOffersEventHandlerTest extends BaseConfigurableTest {
+  private SchedulerState state;
+  private ResourceOffersEventHandler handler;
+  private List<Collection<TaskInfo>> launches;
+  private List<OfferID> declined;
+  private MockSchedulerDriver driver;
+  private ServiceResourceProfile profile;
+  private OfferPool offerPool;
+  private OfferDemandController demandController;
+  private MetricRegistry metricRegistry;
+  private Status launchStatus;
+
+  @Override
+  @Before
+  public void setUp() throws Exception {
+    super.setUp();
+    state = new SchedulerState(null);
+    state.setFrameworkId(FrameworkID.newBuilder().setValue("mock-framework").build());
+    profile = new ServiceResourceProfile("small", 1.0, 1024.0, new HashMap<String, Long>());
+    launches = new ArrayList<>();
+    declined = new ArrayList<>();
+    launchStatus = Status.DRIVER_RUNNING;
+    driver = new MockSchedulerDriver() {
+      @Override
+      public Status launchTasks(Collection<OfferID> offerIds, Collection<TaskInfo> tasks) {
+        if (launchStatus == null) {
+          throw new IllegalStateException("launch failed");
+        }
+        if (launchStatus == Status.DRIVER_RUNNING) {
+          launches.add(new ArrayList<>(tasks));
+        }
+        return launchStatus;
+      }
+
+      @Override
+      public Status declineOffer(OfferID offerId, Filters filters) {
+        declined.add(offerId);
+        return Status.DRIVER_RUNNING;
+      }
+
+      @Override
+      public Status declineOffer(OfferID offerId) {
+        declined.add(offerId);
+        return Status.DRIVER_RUNNING;
+      }
+    };
+    TaskFactory taskFactory = new TaskFactory() {
+      @Override
+      public TaskInfo createTask(ResourceOfferContainer offer, FrameworkID frameworkId, TaskID taskId, NodeTask nodeTask) {
+        return TaskInfo.newBuilder().setName(taskId.getValue()).setTaskId(taskId).setSlaveId(offer.getSlaveId())
+            .addAllResources(offer.consumeCpus(nodeTask.getProfile().getCpus()))
+            .addAllResources(offer.consumeMem(nodeTask.getProfile().getMemory()))
+            .build();
+      }
+
+      @Override
+      public Protos.ExecutorInfo getExecutorInfoForSlave(ResourceOfferContainer offer, FrameworkID frameworkId,
+                                                         Protos.CommandInfo commandInfo) {
+        return null;
+      }
+    };
+    Map<String, TaskFactory> taskFactories = new HashMap<>();
+    taskFactories.put("nm", taskFactory);
+    taskFactories.put("jobhistory", taskFactory);
+    metricRegistry = new MetricRegistry();
+    demandController = new OfferDemandController(state, cfg, metricRegistry);
+    offerPool = new OfferPool(cfg, new DisruptorManager(), demandController);
+    handler = new ResourceOffersEventHandler(state, cfg, taskFactories,
+        new OfferLifecycleManager(new NodeStore(), new MyriadDriver(driver)), offerPool, demandController);
+  }
+
+  private TaskID addPendingTask(String id) {
+    return addPendingTask(id, profile);
+  }
+
+  private TaskID addPendingTask(String id, ServiceResourceProfile profile) {
+    TaskID taskId = TaskID.newBuilder().setValue(id).build();
+    NodeTask task = new NodeTask(profile, null);
+    task.setTaskPrefix(id.split("\\.")[0]);
+    state.addTask(taskId, task);
+    state.makeTaskPending(taskId);
+    return taskId;
+  }
+
+  private void offer(Offer... offers) throws Exception {
+    ResourceOffersEvent event = new ResourceOffersEvent();
+    event.setDriver(driver);
+    List<Offer> offerList = new ArrayList<>();
+    for (Offer offer : offers) {
+      offerList.add(offer);
+    }
+    event.setOffers(offerList);
+    handler.onEvent(event, 0, true);
+  }
+
+  private Offer getOffer(String offerId, String hostname, double cpus, double mem) {
+    return new OfferBuilder(offerId, hostname, hostname)
+        .addScalarResource("cpus", cpus)
+        .addScalarResource("mem", mem)
+        .addRangeResource("ports", 1000, 2000)
+        .build();
+  }
+
+  @Test
+  public void testPacksTasksOfDifferentPrefixesIntoOneLaunch() throws Exception {
+    addPendingTask("nm.one");
+    addPendingTask("jobhistory.one");
+    addPendingTask("nm.two");
+
+    offer(getOffer("offer-1", "host-1", 4.0, 8192.0));
+
+    assertEquals(1, launches.size());
+    assertEquals(2, launches.get(0).size());
+    assertEquals(2, state.getStagingTaskIds().size());
+    // A second NM on the same host would break host uniqueness
+    assertEquals(1, state.getPendingTaskIds().size());
+    assertEquals(0, declined.size());
+  }
+
+  @Test
+  public void testPacksOnlyWhatTheOfferHolds() throws Exception {
+    addPendingTask("nm.one");
+    addPendingTask("jobhistory.one");
+
+    offer(getOffer("offer-1", "host-1", 1.5, 8192.0), getOffer("offer-2", "host-2", 1.0, 1024.0));
+
+    assertEquals(2, launches.size());
+    assertEquals(1, launches.get(0).size());
+    assertEquals(1, launches.get(1).size());
+    assertEquals(0, state.getPendingTaskIds().size());
+  }
+
+  @Test
+  public void testUsesPlacementStrategyOfProfile() throws Exception {
+    TaskID small = addPendingTask("nm.small");
+    TaskID packed = addPendingTask("jobhistory.packed",
+        new ServiceResourceProfile("packed", 1.0, 1024.0, new HashMap<String, Long>()));
+
+    offer(getOffer("offer-1", "host-1", 8.0, 16384.0), getOffer("offer-2", "host-2", 1.0, 1024.0));
+
+    // First fit for the small profile, best fit for the packed one
+    assertEquals("host-1", state.getTask(small).getHostname());
+    assertEquals("host-2", state.getTask(packed).getHostname());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testUnknownPlacementStrategy() throws Exception {
+    cfg.getPlacementStrategies().put("small", "worst-fit");
+    new ResourceOffersEventHandler(state, cfg, new HashMap<String, TaskFactory>(),
+        new OfferLifecycleManager(new NodeStore(), new MyriadDriver(driver)), offerPool, demandController);
+  }
+
+  @Test
+  public void testHeldOfferIsUsedForNewTask() throws Exception {
+    offer(getOffer("offer-1", "host-1", 4.0, 8192.0));
+    assertEquals(0, launches.size());
+    assertEquals(0, declined.size());
+    assertEquals(1, offerPool.getHeldCount());
+
+    TaskID taskId = addPendingTask("nm.one");
+    offer();
+
+    assertEquals(1, launches.size());
+    assertEquals("host-1", state.getTask(taskId).getHostname());
+    assertEquals(0, offerPool.getHeldCount());
+  }
+
+  @Test
+  public void testNextBatchMatchedBeforeDispatchDoesNotRelaunch() throws Exception {
+    TaskID taskId = addPendingTask("nm.one");
+    ResourceOffersEvent first = new ResourceOffersEvent();
+    first.setDriver(driver);
+    first.setOffers(Collections.singletonList(getOffer("offer-1", "host-1", 4.0, 8192.0)));
+    handler.getClassificationStage().onEvent(first, 0, true);
+    handler.getMatchingStage().onEvent(first, 0, true);
+    assertEquals(0, launches.size());
+    assertEquals(TaskState.STAGING, state.getSnapshot().getTaskState(taskId));
+
+    // The second batch overtakes the dispatch of the first one
+    addPendingTask("nm.two");
+    offer(getOffer("offer-2", "host-1", 4.0, 8192.0));
+    assertEquals(0, launches.size());
+
+    handler.getDispatchStage().onEvent(first, 0, true);
+    assertEquals(1, launches.size());
+    assertEquals(taskId, launches.get(0).iterator().next().getTaskId());
+    assertEquals(1, state.getPendingTaskIds().size());
+  }
+
+  @Test
+  public void testHeldOfferIsNotReceivedAgain() throws Exception {
+    offer(getOffer("offer-1", "host-1", 4.0, 8192.0));
+    offer();
+    offer();
+
+    assertEquals(1, offerPool.getHeldCount());
+    assertEquals(1, metricRegistry.meter(MetricRegistry.name(OfferDemandController.class, "offersReceived")).getCount());
+    assertEquals(0, declined.size());
+  }
+
+  @Test
+  public void testFailedLaunchMakesTasksPendingAgain() throws Exception {
+    TaskID taskId = addPendingTask("nm.one");
+    launchStatus = null;
+    offer(getOffer("offer-1", "host-1", 4.0, 8192.0), getOffer("offer-2", "host-2", 0.5, 256.0));
+
+    assertEquals(0, launches.size());
+    assertEquals(TaskState.PENDING, state.getSnapshot().getTaskState(taskId));
+    assertEquals(Collections.singletonList(OfferID.newBuilder().setValue("offer-1").build()), declined);
+    // The offer after the failed one is still dispatched
+    assertEquals(1, offerPool.getHeldCount());
+
+    launchStatus = Status.DRIVER_RUNNING;
+    offer(getOffer("offer-3", "host-3", 4.0, 8192.0));
+    assertEquals(1, launches.size());
+    assertEquals(TaskState.STAGING, state.getSnapshot().getTaskState(taskId));
+  }
+
+  @Test
+  public void testLaunchWithStoppedDriverMakesTasksPendingAgain() throws Exception {
+    TaskID taskId = addPendingTask("nm.one");
+    launchStatus = Status.DRIVER_ABORTED;
+    offer(getOffer("offer-1", "host-1", 4.0, 8192.0));
+
+    assertEquals(TaskState.PENDING, state.getSnapshot().getTaskState(taskId));
+    assertEquals(1, declined.size());
+  }
+}
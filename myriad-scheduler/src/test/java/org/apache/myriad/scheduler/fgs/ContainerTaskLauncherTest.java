@@ -0,0 +1,156 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.myriad.scheduler.fgs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.mesos.Protos;
+import org.apache.mesos.Protos.OfferID;
+import org.apache.mesos.Protos.Status;
+import org.apache.mesos.Protos.TaskInfo;
+import org.apache.myriad.scheduler.MockSchedulerDriver;
+import org.apache.myriad.scheduler.MyriadDriver;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests for ContainerTaskLauncher
+ */
+public class ContainerTaskLauncherTest {
+  private List<Collection<OfferID>> launchedOffers;
+  private List<Collection<TaskInfo>> launchedTasks;
+  private MyriadDriver driver;
+  private ContainerTaskLauncher launcher;
+
+  @Before
+  public void setUp() throws Exception {
+    launchedOffers = Collections.synchronizedList(new ArrayList<Collection<OfferID>>());
+    launchedTasks = Collections.synchronizedList(new ArrayList<Collection<TaskInfo>>());
+    driver = new MyriadDriver(new MockSchedulerDriver() {
+      @Override
+      public Status launchTasks(Collection<OfferID> offerIds, Collection<TaskInfo> tasks) {
+        if (offerIds.contains(OfferID.newBuilder().setValue("offer-bad").build())) {
+          throw new IllegalStateException("launch failed");
+        }
+        launchedOffers.add(new ArrayList<>(offerIds));
+        launchedTasks.add(new ArrayList<>(tasks));
+        return Status.DRIVER_RUNNING;
+      }
+    });
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    if (launcher != null) {
+      launcher.stop();
+    }
+  }
+
+  private Protos.SlaveID getSlaveId(String id) {
+    return Protos.SlaveID.newBuilder().setValue(id).build();
+  }
+
+  private Collection<OfferID> getOfferIds(String id) {
+    return Collections.singletonList(OfferID.newBuilder().setValue(id).build());
+  }
+
+  private Collection<TaskInfo> getTasks(String id, Protos.SlaveID slaveId) {
+    return Collections.singletonList(TaskInfo.newBuilder().setName(id)
+        .setTaskId(Protos.TaskID.newBuilder().setValue(id)).setSlaveId(slaveId).build());
+  }
+
+  @Test
+  public void testLaunchesSynchronouslyWithoutWindow() throws Exception {
+    launcher = new ContainerTaskLauncher(driver, 0);
+    launcher.launch(getSlaveId("slave-1"), getOfferIds("offer-1"), getTasks("task-1", getSlaveId("slave-1")));
+    assertEquals(1, launchedTasks.size());
+  }
+
+  @Test
+  public void testMergesLaunchesPerAgent() throws Exception {
+    launcher = new ContainerTaskLauncher(driver, 60000);
+    launcher.start();
+    Protos.SlaveID slaveOne = getSlaveId("slave-1");
+    Protos.SlaveID slaveTwo = getSlaveId("slave-2");
+    launcher.launch(slaveOne, getOfferIds("offer-1"), getTasks("task-1", slaveOne));
+    launcher.launch(slaveTwo, getOfferIds("offer-2"), getTasks("task-2", slaveTwo));
+    launcher.launch(slaveOne, getOfferIds("offer-3"), getTasks("task-3", slaveOne));
+    assertEquals(0, launchedTasks.size());
+
+    launcher.flush();
+    assertEquals(2, launchedTasks.size());
+    assertEquals(2, launchedOffers.get(0).size());
+    assertEquals(2, launchedTasks.get(0).size());
+    assertEquals(1, launchedTasks.get(1).size());
+
+    launcher.flush();
+    assertEquals(2, launchedTasks.size());
+  }
+
+  @Test
+  public void testFlushesInBackgroundAfterWindow() throws Exception {
+    launcher = new ContainerTaskLauncher(driver, 50);
+    launcher.start();
+    Protos.SlaveID slaveOne = getSlaveId("slave-1");
+    launcher.launch(slaveOne, getOfferIds("offer-1"), getTasks("task-1", slaveOne));
+    launcher.launch(slaveOne, getOfferIds("offer-2"), getTasks("task-2", slaveOne));
+
+    long deadline = System.currentTimeMillis() + 5000;
+    while (launchedTasks.isEmpty() && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertEquals(1, launchedTasks.size());
+    assertEquals(2, launchedTasks.get(0).size());
+  }
+
+  @Test
+  public void testFailedLaunchDoesNotStopOtherAgents() throws Exception {
+    launcher = new ContainerTaskLauncher(driver, 60000);
+    launcher.start();
+    Protos.SlaveID slaveOne = getSlaveId("slave-1");
+    Protos.SlaveID slaveTwo = getSlaveId("slave-2");
+    launcher.launch(slaveOne, getOfferIds("offer-bad"), getTasks("task-1", slaveOne));
+    launcher.launch(slaveTwo, getOfferIds("offer-2"), getTasks("task-2", slaveTwo));
+
+    launcher.flush();
+    assertEquals(1, launchedTasks.size());
+    assertEquals("task-2", launchedTasks.get(0).iterator().next().getName());
+  }
+
+  @Test
+  public void testStopIssuesQueuedLaunches() throws Exception {
+    launcher = new ContainerTaskLauncher(driver, 60000);
+    launcher.start();
+    Protos.SlaveID slaveOne = getSlaveId("slave-1");
+    launcher.launch(slaveOne, getOfferIds("offer-1"), getTasks("task-1", slaveOne));
+    assertTrue(launchedTasks.isEmpty());
+
+    launcher.stop();
+    assertEquals(1, launchedTasks.size());
+    launcher.launch(slaveOne, getOfferIds("offer-2"), getTasks("task-2", slaveOne));
+    assertEquals(2, launchedTasks.size());
+  }
+}
@@ -116,7 +116,7 @@ public class NMHeartBeatHandlerTest extends BaseConfigurableTest {
     scheduler.addNode(sNodeTwo);
     
     manager = new YarnNodeCapacityManager(new CompositeInterceptor(), scheduler, 
-            context, driver, olManager, store, state, new TaskUtils(this.cfg));
+            context, new ContainerTaskLauncher(driver, 0), olManager, store, state, new TaskUtils(this.cfg));
     handler = new NMHeartBeatHandler(new CompositeInterceptor(), scheduler, 
             driver, manager, olManager, store, state, cfg.getNodeManagerConfiguration());
   }
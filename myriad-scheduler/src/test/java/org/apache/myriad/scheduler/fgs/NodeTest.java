@@ -19,7 +19,9 @@
 package org.apache.myriad.scheduler.fgs;
 
 import static org.junit.Assert.assertEquals;
-import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
 
 import org.apache.hadoop.yarn.api.records.Resource;
 import org.apache.hadoop.yarn.server.resourcemanager.metrics.SystemMetricsPublisher;
@@ -79,11 +81,68 @@ public class NodeTest extends BaseConfigurableTest {
   }
   
   @Test
-  public void testGetAndRemoveContainerSnapshot() throws Exception {
+  public void testPollAllocatedContainers() throws Exception {
+    Node node = store.getNode("localhost-one");
+    assertTrue(node.pollAllocatedContainers().isEmpty());
     sNodeOne.allocateContainer(containerOne);
-    store.getNode("localhost-one").snapshotRunningContainers();
-    assertEquals(1, store.getNode("localhost-one").getContainerSnapshot().size());
-    store.getNode("localhost-one").removeContainerSnapshot();
-    assertNull(store.getNode("localhost-one").getContainerSnapshot());
+    assertEquals(containerOne, node.pollAllocatedContainers().get(0));
+    assertTrue(node.pollAllocatedContainers().isEmpty());
+
+    // A completed container is forgotten, so one allocated in its place is new again
+    node.containerCompleted(containerOne.getContainerId());
+    sNodeOne.releaseContainer(containerOne.getContainer());
+    RMContainer containerTwo = TestObjectFactory.getRMContainer(nodeOne, context, 2, 2, 1024);
+    sNodeOne.allocateContainer(containerTwo);
+    assertEquals(containerTwo, node.pollAllocatedContainers().get(0));
+  }
+
+  @Test
+  public void testPollAllocatedContainersAfterUnnoticedCompletion() throws Exception {
+    Node node = store.getNode("localhost-one");
+    sNodeOne.allocateContainer(containerOne);
+    node.pollAllocatedContainers();
+    sNodeOne.releaseContainer(containerOne.getContainer());
+    RMContainer containerTwo = TestObjectFactory.getRMContainer(nodeOne, context, 2, 2, 1024);
+    RMContainer containerThree = TestObjectFactory.getRMContainer(nodeOne, context, 3, 2, 1024);
+    sNodeOne.allocateContainer(containerTwo);
+    sNodeOne.allocateContainer(containerThree);
+    assertEquals(2, node.pollAllocatedContainers().size());
+    assertTrue(node.pollAllocatedContainers().isEmpty());
+  }
+
+  @Test
+  public void testPollAllocatedContainersWithCompletionInSameUpdate() throws Exception {
+    Node node = store.getNode("localhost-one");
+    sNodeOne.allocateContainer(containerOne);
+    node.pollAllocatedContainers();
+    // The container count stays the same, the scheduler reports the completion
+    node.containerCompleted(containerOne.getContainerId());
+    sNodeOne.releaseContainer(containerOne.getContainer());
+    RMContainer containerTwo = TestObjectFactory.getRMContainer(nodeOne, context, 2, 2, 1024);
+    sNodeOne.allocateContainer(containerTwo);
+    assertEquals(1, node.pollAllocatedContainers().size());
+    assertTrue(node.pollAllocatedContainers().isEmpty());
+  }
+
+  @Test
+  public void testPollWithoutAllocationDoesNotCopyRunningContainers() throws Exception {
+    final int[] copies = new int[1];
+    FSSchedulerNode counting = new FSSchedulerNode(nodeOne, false) {
+      @Override
+      public synchronized List<RMContainer> getRunningContainers() {
+        copies[0]++;
+        return super.getRunningContainers();
+      }
+    };
+    Node node = new Node(counting);
+    counting.allocateContainer(containerOne);
+    copies[0] = 0;
+    assertEquals(1, node.pollAllocatedContainers().size());
+    assertEquals(1, copies[0]);
+
+    for (int i = 0; i < 10; i++) {
+      assertTrue(node.pollAllocatedContainers().isEmpty());
+    }
+    assertEquals(1, copies[0]);
   }
-}
\ No newline at end of file
+}
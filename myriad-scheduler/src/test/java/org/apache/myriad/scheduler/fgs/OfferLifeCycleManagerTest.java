@@ -20,6 +20,7 @@ package org.apache.myriad.scheduler.fgs;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 
 import org.apache.hadoop.net.NodeBase;
 import org.apache.hadoop.yarn.api.records.impl.pb.NodeIdPBImpl;
@@ -33,6 +34,7 @@ import org.apache.mesos.Protos.Offer;
 import org.apache.myriad.TestObjectFactory;
 import org.apache.myriad.scheduler.MockSchedulerDriver;
 import org.apache.myriad.scheduler.MyriadDriver;
+import org.apache.myriad.scheduler.resource.ResourceVector;
 import org.apache.myriad.state.MockRMContext;
 import org.junit.Before;
 import org.junit.Test;
@@ -69,4 +71,26 @@ public class OfferLifeCycleManagerTest {
     Offer cOffer = cOffers.getOffers().get(0);
     assertEquals(offer, cOffer);
   }
-}
\ No newline at end of file
+
+  @Test
+  public void testLedgerTotals() throws Exception {
+    manager.addOffers(TestObjectFactory.getOffer("localhost", "slave-1", "mock-framework", "offer-1", 2.0, 2048.0),
+        TestObjectFactory.getOffer("localhost", "slave-1", "mock-framework", "offer-2", 1.0, 1024.0));
+    OfferLedger ledger = manager.getLedger("localhost");
+    assertEquals(3.0, ledger.getOutstanding().getCpus(), 0.0);
+    assertEquals(3072.0, manager.getOutstandingResources().getMem(), 0.0);
+
+    ResourceVector consumed = manager.consumeOffers("localhost");
+    assertEquals(3.0, consumed.getCpus(), 0.0);
+    assertEquals(0.0, ledger.getOutstanding().getCpus(), 0.0);
+    assertEquals(3072.0, ledger.getConsumed().getMem(), 0.0);
+
+    ConsumedOffer drained = manager.drainConsumedOffer("localhost");
+    assertEquals(2, drained.getOffers().size());
+    assertEquals(0.0, ledger.getConsumed().getMem(), 0.0);
+    assertNull(manager.drainConsumedOffer("localhost"));
+
+    manager.declineOffer(drained.getOffers().get(0));
+    assertEquals(2.0, ledger.getReturned().getCpus(), 0.0);
+  }
+}
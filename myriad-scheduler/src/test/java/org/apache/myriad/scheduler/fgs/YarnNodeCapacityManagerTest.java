@@ -19,11 +19,19 @@
 package org.apache.myriad.scheduler.fgs;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
 
 import org.apache.hadoop.yarn.api.records.Resource;
+import org.apache.hadoop.yarn.event.Event;
+import org.apache.hadoop.yarn.event.EventHandler;
 import org.apache.hadoop.yarn.server.resourcemanager.metrics.SystemMetricsPublisher;
 import org.apache.hadoop.yarn.server.resourcemanager.rmcontainer.RMContainer;
 import org.apache.hadoop.yarn.server.resourcemanager.rmnode.RMNode;
+import org.apache.hadoop.yarn.server.resourcemanager.scheduler.event.NodeResourceUpdateSchedulerEvent;
 import org.apache.hadoop.yarn.server.resourcemanager.scheduler.fair.FSSchedulerNode;
 import org.apache.mesos.Protos.Offer;
 import org.apache.myriad.BaseConfigurableTest;
@@ -34,6 +42,7 @@ import org.apache.myriad.scheduler.MyriadDriver;
 import org.apache.myriad.scheduler.TaskUtils;
 import org.apache.myriad.scheduler.yarn.MyriadFairScheduler;
 import org.apache.myriad.scheduler.yarn.interceptor.CompositeInterceptor;
+import org.apache.myriad.state.MockDispatcher;
 import org.apache.myriad.state.MockRMContext;
 import org.apache.myriad.state.NodeTask;
 import org.apache.myriad.state.SchedulerState;
@@ -54,6 +63,7 @@ public class YarnNodeCapacityManagerTest extends BaseConfigurableTest {
   private MockRMContext context;
   private RMContainer containerOne;
   private OfferLifecycleManager olManager;
+  private List<NodeResourceUpdateSchedulerEvent> capacityUpdates;
 
   @Override
   @Before
@@ -61,7 +71,20 @@ public class YarnNodeCapacityManagerTest extends BaseConfigurableTest {
     super.setUp();
     this.baseStateStoreDirectory = "/tmp/yarn-node-capacity-manager-test";
     context = new MockRMContext();
-    context.setDispatcher(TestObjectFactory.getMockDispatcher());
+    capacityUpdates = new ArrayList<>();
+    context.setDispatcher(new MockDispatcher() {
+      @Override
+      public EventHandler<Event> getEventHandler() {
+        return new EventHandler<Event>() {
+          @Override
+          public void handle(Event event) {
+            if (event instanceof NodeResourceUpdateSchedulerEvent) {
+              capacityUpdates.add((NodeResourceUpdateSchedulerEvent) event);
+            }
+          }
+        };
+      }
+    });
     context.setSystemMetricsPublisher(new SystemMetricsPublisher());
     
     nodeOne = TestObjectFactory.getRMNode("localhost-one", 8800, Resource.newInstance(2048, 4));
@@ -82,7 +105,7 @@ public class YarnNodeCapacityManagerTest extends BaseConfigurableTest {
     scheduler.addNode(sNodeOne);
     scheduler.addNode(sNodeTwo);
     manager = new YarnNodeCapacityManager(new CompositeInterceptor(), scheduler, 
-              context, driver, olManager, store, state, new TaskUtils(this.cfg));
+              context, new ContainerTaskLauncher(driver, 0), olManager, store, state, new TaskUtils(this.cfg));
   }
     
   @Test
@@ -109,8 +132,28 @@ public class YarnNodeCapacityManagerTest extends BaseConfigurableTest {
     olManager.addOffers(offer); 
     olManager.markAsConsumed(offer);
     manager.handleContainerAllocation(nodeOne);
-    store.getNode("localhost-one").snapshotRunningContainers();
     assertEquals(1, store.getNode("localhost-one").getNode().getRunningContainers().size());
-    assertEquals(1, store.getNode("localhost-one").getContainerSnapshot().size());
+    assertTrue(store.getNode("localhost-one").pollAllocatedContainers().isEmpty());
+  }
+
+  @Test
+  public void testCapacityUpdatesAreCoalesced() throws Exception {
+    manager.decrementNodeCapacity(nodeOne, Resource.newInstance(512, 1));
+    manager.decrementNodeCapacity(nodeOne, Resource.newInstance(512, 1));
+    assertEquals(0, capacityUpdates.size());
+    assertTrue(manager.hasPendingCapacityUpdate(nodeOne));
+
+    manager.flushNodeCapacity(nodeOne);
+    manager.flushNodeCapacity(nodeOne);
+    assertEquals(1, capacityUpdates.size());
+    assertEquals(Resource.newInstance(1024, 2), capacityUpdates.get(0).getResourceOption().getResource());
+    assertFalse(manager.hasPendingCapacityUpdate(nodeOne));
+
+    // A heartbeat setting the capacity sends the pending changes along, even if it doesn't change it
+    manager.incrementNodeCapacity(nodeTwo, Resource.newInstance(1024, 2));
+    manager.setNodeCapacity(nodeTwo, Resource.newInstance(2048, 4));
+    assertEquals(2, capacityUpdates.size());
+    assertEquals(Resource.newInstance(2048, 4), capacityUpdates.get(1).getResourceOption().getResource());
+    assertFalse(manager.hasPendingCapacityUpdate(nodeTwo));
   }
-}
\ No newline at end of file
+}
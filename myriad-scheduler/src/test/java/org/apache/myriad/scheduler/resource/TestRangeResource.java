@@ -0,0 +1,102 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.myriad.scheduler.resource;
+
+import org.apache.mesos.Protos;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for RangeResource
+ */
+public class TestRangeResource {
+  private RangeResource ports;
+
+  private static List<Protos.Value.Range> range(long begin, long end) {
+    return Collections.singletonList(Protos.Value.Range.newBuilder().setBegin(begin).setEnd(end).build());
+  }
+
+  @Before
+  public void setUp() {
+    ports = new RangeResource("ports", "test");
+    ports.addRanges(range(31000, 32000), false);
+    ports.addRanges(range(1500, 1509), true);
+    ports.addRanges(range(3500, 3504), false);
+  }
+
+  @Test
+  public void testValuesInOrder() {
+    List<Long> values = ports.getValues();
+    assertEquals(1016, values.size());
+    assertEquals(Long.valueOf(1500), values.get(0));
+    assertEquals(Long.valueOf(1509), values.get(9));
+    assertEquals(Long.valueOf(3500), values.get(10));
+    assertEquals(Long.valueOf(31000), values.get(15));
+    assertEquals(Long.valueOf(32000), values.get(1015));
+  }
+
+  @Test
+  public void testConsumeSplitsRange() {
+    List<Protos.Resource> resources = ports.consumeResource(Arrays.asList(3502L, 1500L));
+    assertEquals(2, resources.size());
+    assertFalse(resources.get(0).hasRole());
+    assertEquals("test", resources.get(1).getRole());
+    assertFalse(ports.contains(3502L));
+    assertFalse(ports.contains(1500L));
+    assertTrue(ports.contains(3501L));
+    assertTrue(ports.contains(3503L));
+    assertEquals(1014, ports.getValues().size());
+    assertFalse(ports.satisfies(Collections.singletonList(3502L)));
+  }
+
+  @Test
+  public void testRandomValuesAreDistinctAndUnreserved() {
+    List<Protos.Resource> resources = ports.consumeResource(Collections.nCopies(1006, 0L));
+    Set<Long> values = new HashSet<>();
+    for (Protos.Resource resource : resources) {
+      long value = resource.getRanges().getRange(0).getBegin();
+      assertFalse(resource.hasRole());
+      assertTrue(value >= 3500);
+      values.add(value);
+    }
+    assertEquals(1006, values.size());
+    // Only the reserved values are left, which are not handed out at random
+    assertEquals(10, ports.getValues().size());
+    assertTrue(ports.satisfies(Collections.singletonList(1505L)));
+    assertFalse(ports.satisfies(Collections.singletonList(0L)));
+  }
+
+  @Test
+  public void testCopyIsIndependent() {
+    RangeResource copy = new RangeResource(ports);
+    copy.consumeResource(Collections.singletonList(31500L));
+    assertFalse(copy.contains(31500L));
+    assertTrue(ports.contains(31500L));
+  }
+}
@@ -29,10 +29,12 @@ import org.apache.myriad.scheduler.offer.OfferBuilder;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
@@ -163,4 +165,31 @@ public class TestResourceOfferContainer {
     assertTrue(roc.getHostName().equals("test.com"));
     assertTrue("Should be satisfied if offer contains request", roc.satisfies(profile));
   }
+
+  @Test
+  public void testForkConsumesIndependently() {
+    Protos.Offer offer = new OfferBuilder("test.com")
+        .addScalarResource("cpus", 4.0)
+        .addScalarResource("mem", 8000)
+        .addRangeResource("ports", 3500, 3600)
+        .build();
+    ServiceResourceProfile profile = new ServiceResourceProfile("jobhistory", 2.0, 4000.0, new HashMap<String, Long>());
+    ResourceOfferContainer roc = new ResourceOfferContainer(offer, profile, null);
+    ResourceOfferContainer fork = roc.fork();
+    fork.consumeCpus(3.0);
+    fork.consumeMem(5000.0);
+    fork.consumePorts(Collections.singletonList(3500L));
+    assertFalse(fork.satisfies(profile));
+    assertEquals(1.0, fork.getCpus(), epsilon);
+    assertEquals(100, fork.getPorts().size());
+    assertTrue(roc.satisfies(profile));
+    assertEquals(4.0, roc.getCpus(), epsilon);
+    assertEquals(101, roc.getPorts().size());
+
+    ResourceOfferContainer forkOfFork = fork.fork();
+    forkOfFork.consumeCpus(1.0);
+    assertEquals(0.0, forkOfFork.getCpus(), epsilon);
+    assertEquals(3000.0, forkOfFork.getMem(), epsilon);
+    assertEquals(1.0, fork.getCpus(), epsilon);
+  }
 }
@@ -0,0 +1,83 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.myriad.scheduler.resource;
+
+import org.apache.mesos.Protos;
+import org.apache.myriad.scheduler.ServiceResourceProfile;
+import org.apache.myriad.scheduler.offer.OfferBuilder;
+import org.junit.Test;
+
+import java.util.HashMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for ResourceVector
+ */
+public class TestResourceVector {
+  static double epsilon = .0001;
+
+  @Test
+  public void testFromOfferSplitsRole() {
+    Protos.Offer offer = new OfferBuilder("test.com")
+        .addScalarResource("cpus", 2.0)
+        .addScalarResource("mem", 8000)
+        .addScalarResource("cpus", "test", 4.0)
+        .addScalarResource("gpus", "test", 1.0)
+        .addRangeResource("ports", 3500, 3600)
+        .build();
+    ResourceVector resources = ResourceVector.fromOffer(offer, "test");
+    assertEquals(6.0, resources.getCpus(), epsilon);
+    assertEquals(4.0, resources.getReserved("cpus"), epsilon);
+    assertEquals(2.0, resources.getUnreserved("cpus"), epsilon);
+    assertEquals(8000.0, resources.getMem(), epsilon);
+    assertEquals(1.0, resources.get("gpus"), epsilon);
+    assertEquals(0.0, resources.get("ports"), epsilon);
+
+    ResourceVector unreserved = ResourceVector.fromOffer(offer, null);
+    assertEquals(6.0, unreserved.getUnreserved("cpus"), epsilon);
+  }
+
+  @Test
+  public void testSubtractTakesReservedFirst() {
+    ResourceVector resources = new ResourceVector().add("cpus", 1.0, true).add("cpus", 3.0, false);
+    resources.subtract(new ResourceVector(1.5, 0.0, 0.0));
+    assertEquals(0.0, resources.getReserved("cpus"), epsilon);
+    assertEquals(2.5, resources.getUnreserved("cpus"), epsilon);
+  }
+
+  @Test
+  public void testFits() {
+    ResourceVector resources = new ResourceVector(4.0, 8192.0, 0.0);
+    ServiceResourceProfile profile = new ServiceResourceProfile("small", 1.0, 1024.0, new HashMap<String, Long>());
+    assertTrue(resources.fits(profile.getResourceVector()));
+    assertTrue(resources.fits(4.0, 8192.0));
+    assertFalse(resources.fits(4.5, 1024.0));
+
+    ResourceVector gpus = new ResourceVector().add("gpus", 1.0, false);
+    assertFalse(resources.fits(gpus));
+    resources.add(gpus);
+    assertTrue(resources.fits(gpus));
+    resources.clear();
+    assertEquals(0.0, resources.getCpus(), epsilon);
+    assertFalse(resources.fits(gpus));
+  }
+}
@@ -0,0 +1,138 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.myriad.state;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+import org.apache.mesos.Protos;
+import org.apache.myriad.TestObjectFactory;
+import org.apache.myriad.state.utils.JournalEntry;
+import org.apache.myriad.state.utils.StoreContext;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Unit tests for LeveldbMyriadStateStore
+ */
+public class LeveldbMyriadStateStoreTest {
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private LeveldbMyriadStateStore store;
+  private Protos.FrameworkID frameworkId;
+  private Protos.TaskID activeId;
+  private Protos.TaskID pendingId;
+  private Map<Protos.TaskID, NodeTask> tasks;
+
+  @Before
+  public void setUp() throws Exception {
+    store = new LeveldbMyriadStateStore(folder.newFolder("state"));
+    frameworkId = Protos.FrameworkID.newBuilder().setValue("framework-1").build();
+    activeId = Protos.TaskID.newBuilder().setValue("nm.small.1").build();
+    pendingId = Protos.TaskID.newBuilder().setValue("jobhistory.2").build();
+    tasks = new HashMap<>();
+    tasks.put(activeId, TestObjectFactory.getNodeTask("small", "host-1.example.com", 1.0, 1024.0, 1L, 512L));
+    tasks.put(pendingId, TestObjectFactory.getNodeTask("medium", "host-2.example.com", 2.0, 2048.0, 1L, 512L));
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    store.close();
+  }
+
+  private StoreContext getStoreContext() {
+    return new StoreContext(frameworkId, tasks, Collections.singleton(pendingId), new HashSet<Protos.TaskID>(),
+        Collections.singleton(activeId), new HashSet<Protos.TaskID>(), new HashSet<Protos.TaskID>());
+  }
+
+  private StoreContext reload() throws Exception {
+    store.close();
+    return store.loadMyriadState();
+  }
+
+  @Test
+  public void testStoreAndLoad() throws Exception {
+    assertNull(store.loadMyriadState());
+    store.storeMyriadState(getStoreContext());
+
+    StoreContext loaded = reload();
+    assertEquals(frameworkId, loaded.getFrameworkId());
+    assertEquals(Collections.singleton(activeId), loaded.getActiveTasks());
+    assertEquals(Collections.singleton(pendingId), loaded.getPendingTasks());
+    assertEquals(2, loaded.getTasks().size());
+    assertEquals("host-1.example.com", loaded.getTasks().get(activeId).getHostname());
+  }
+
+  @Test
+  public void testStoreEntries() throws Exception {
+    store.storeMyriadState(getStoreContext());
+    Protos.TaskID addedId = Protos.TaskID.newBuilder().setValue("nm.small.3").build();
+    NodeTask added = TestObjectFactory.getNodeTask("small", "host-3.example.com", 1.0, 1024.0, 1L, 512L);
+    Protos.TaskStatus status = Protos.TaskStatus.newBuilder().setTaskId(addedId).setState(Protos.TaskState.TASK_RUNNING)
+        .build();
+    store.storeMyriadStateEntries(Arrays.asList(JournalEntry.addTask(addedId, added),
+        JournalEntry.taskState(addedId, SchedulerState.TaskState.STAGING), JournalEntry.updateTaskStatus(status),
+        JournalEntry.taskState(pendingId, SchedulerState.TaskState.KILLABLE), JournalEntry.removeTask(activeId)));
+
+    // The task added to the batch is not modified by the later entries
+    assertNull(added.getTaskStatus());
+    StoreContext loaded = reload();
+    assertEquals(2, loaded.getTasks().size());
+    assertEquals(status, loaded.getTasks().get(addedId).getTaskStatus());
+    assertEquals(Collections.singleton(addedId), loaded.getStagingTasks());
+    assertEquals(Collections.singleton(pendingId), loaded.getKillableTasks());
+    assertEquals(0, loaded.getActiveTasks().size());
+  }
+
+  @Test
+  public void testSnapshotRemovesTasks() throws Exception {
+    store.storeMyriadState(getStoreContext());
+    tasks.remove(activeId);
+    store.storeMyriadState(getStoreContext());
+
+    assertEquals(Collections.singleton(pendingId), reload().getTasks().keySet());
+  }
+
+  @Test
+  public void testLoadTaskRecordsByPrefix() throws Exception {
+    store.storeMyriadState(getStoreContext());
+
+    assertEquals(Collections.singleton(activeId), store.loadTaskRecords("nm.").keySet());
+    assertEquals(Collections.singleton(pendingId), store.loadTaskRecords("jobhistory.").keySet());
+    assertEquals(2, store.loadTaskRecords("").size());
+  }
+
+  @Test
+  public void testRemoveMyriadState() throws Exception {
+    store.storeMyriadState(getStoreContext());
+    store.removeMyriadState();
+
+    assertNull(store.loadMyriadState());
+  }
+}
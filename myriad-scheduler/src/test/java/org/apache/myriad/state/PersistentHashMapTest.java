@@ -0,0 +1,141 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.myriad.state;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for PersistentHashMap
+ */
+public class PersistentHashMapTest {
+
+  /**
+   * Key whose hash is chosen by the test, to force collisions
+   */
+  private static final class Key {
+    private final String name;
+    private final int hash;
+
+    Key(String name, int hash) {
+      this.name = name;
+      this.hash = hash;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return o instanceof Key && ((Key) o).name.equals(name);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+  }
+
+  @Test
+  public void testUpdatesLeaveOriginalUntouched() throws Exception {
+    PersistentHashMap<String, Integer> empty = PersistentHashMap.empty();
+    PersistentHashMap<String, Integer> one = empty.plus("a", 1);
+    PersistentHashMap<String, Integer> two = one.plus("b", 2);
+    PersistentHashMap<String, Integer> replaced = two.plus("a", 3);
+    PersistentHashMap<String, Integer> removed = replaced.minus("b");
+
+    assertEquals(0, empty.size());
+    assertEquals(1, one.size());
+    assertEquals(Integer.valueOf(1), one.get("a"));
+    assertFalse(one.containsKey("b"));
+    assertEquals(2, two.size());
+    assertEquals(Integer.valueOf(1), two.get("a"));
+    assertEquals(Integer.valueOf(3), replaced.get("a"));
+    assertEquals(2, replaced.size());
+    assertEquals(1, removed.size());
+    assertNull(removed.get("b"));
+    assertEquals(Integer.valueOf(2), replaced.get("b"));
+  }
+
+  @Test
+  public void testNoOpUpdatesReturnSameMap() throws Exception {
+    Integer value = 1;
+    PersistentHashMap<String, Integer> map = PersistentHashMap.<String, Integer>empty().plus("a", value);
+    assertSame(map, map.plus("a", value));
+    assertSame(map, map.minus("b"));
+    assertSame(PersistentHashMap.empty(), map.minus("a"));
+  }
+
+  @Test
+  public void testCollidingKeys() throws Exception {
+    Key first = new Key("first", 42);
+    Key second = new Key("second", 42);
+    Key other = new Key("other", 42 | (1 << 20));
+    PersistentHashMap<Key, String> map = PersistentHashMap.<Key, String>empty().plus(first, "1").plus(second, "2")
+        .plus(other, "3");
+
+    assertEquals(3, map.size());
+    assertEquals("1", map.get(first));
+    assertEquals("2", map.get(second));
+    assertEquals("3", map.get(other));
+    assertNull(map.get(new Key("missing", 42)));
+
+    PersistentHashMap<Key, String> removed = map.minus(first);
+    assertEquals(2, removed.size());
+    assertNull(removed.get(first));
+    assertEquals("2", removed.get(second));
+    assertEquals("1", map.get(first));
+  }
+
+  @Test
+  public void testMatchesHashMap() throws Exception {
+    Random random = new Random(7);
+    Map<Integer, Integer> expected = new HashMap<>();
+    PersistentHashMap<Integer, Integer> map = PersistentHashMap.empty();
+    for (int i = 0; i < 20000; i++) {
+      // Few distinct keys so that removals hit and the trie shrinks again
+      Integer key = random.nextInt(2000) * (random.nextBoolean() ? 1 : -65536);
+      if (random.nextInt(3) == 0) {
+        expected.remove(key);
+        map = map.minus(key);
+      } else {
+        expected.put(key, i);
+        map = map.plus(key, i);
+      }
+      assertEquals(expected.size(), map.size());
+    }
+    assertEquals(expected, map);
+    assertEquals(expected.hashCode(), map.hashCode());
+    for (Map.Entry<Integer, Integer> entry : expected.entrySet()) {
+      assertTrue(map.containsKey(entry.getKey()));
+      assertEquals(entry.getValue(), map.get(entry.getKey()));
+    }
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void testIsReadOnly() throws Exception {
+    PersistentHashMap.<String, Integer>empty().plus("a", 1).put("b", 2);
+  }
+}
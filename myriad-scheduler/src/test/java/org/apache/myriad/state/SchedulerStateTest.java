@@ -19,9 +19,18 @@
 package org.apache.myriad.state;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.mesos.Protos;
+import org.apache.mesos.Protos.SlaveID;
 import org.apache.mesos.Protos.TaskID;
 import org.apache.myriad.BaseConfigurableTest;
 import org.apache.myriad.TestObjectFactory;
@@ -138,4 +147,193 @@ public class SchedulerStateTest extends BaseConfigurableTest {
     sState.removeTask(idTwo);
     assertNull(sState.getTask(idTwo));
   }
-}
\ No newline at end of file
+
+  @Test
+  public void testIndexesFollowMutations() throws Exception {
+    SchedulerState sState = initialize();
+    TaskID idOne = TaskID.newBuilder().setValue("nm.zero.1").build();
+    TaskID idTwo = TaskID.newBuilder().setValue("nm.low.2").build();
+    sState.makeTaskPending(idOne);
+    sState.addTask(idOne, taskOne);
+    sState.addTask(idTwo, taskTwo);
+    sState.makeTaskStaging(idTwo);
+
+    assertTrue(sState.getPendingTaskIDsForProfile(taskOne.getProfile()).contains(idOne));
+    assertTrue(sState.getStagingTaskIDsForProfile(taskTwo.getProfile()).contains(idTwo));
+    assertEquals(2, sState.getNodeTasksByHostname("localhost").size());
+    assertEquals(taskOne, sState.getNodeTask(taskOne.getSlaveId(), "nm"));
+
+    // Tasks are mutated in place and re-added once placed on an offer
+    SlaveID newSlaveId = SlaveID.newBuilder().setValue("slave-1").build();
+    taskOne.setSlaveId(newSlaveId);
+    taskOne.setHostname("host-1");
+    sState.addTask(idOne, taskOne);
+    sState.makeTaskActive(idOne);
+    assertTrue(sState.getNodeTasks(newSlaveId).contains(taskOne));
+    assertEquals(1, sState.getNodeTasksByHostname("localhost").size());
+    assertEquals(1, sState.getNodeTasksByHostname("host-1").size());
+    assertTrue(sState.getPendingTaskIDsForProfile(taskOne.getProfile()).isEmpty());
+    assertTrue(sState.getActiveTaskIDsForProfile(taskOne.getProfile()).contains(idOne));
+
+    sState.removeTask(idOne);
+    assertTrue(sState.getNodeTasks(newSlaveId).isEmpty());
+    assertTrue(sState.getActiveTaskIDsForProfile(taskOne.getProfile()).isEmpty());
+  }
+
+  @Test
+  public void testSnapshotIsImmutable() throws Exception {
+    SchedulerState sState = initialize();
+    TaskID idOne = TaskID.newBuilder().setValue("nm.zero.1").build();
+    sState.addTask(idOne, taskOne);
+    sState.makeTaskPending(idOne);
+    SchedulerStateSnapshot before = sState.getSnapshot();
+
+    sState.makeTaskActive(idOne);
+    SchedulerStateSnapshot after = sState.getSnapshot();
+    assertTrue(after.getVersion() > before.getVersion());
+    assertEquals(SchedulerState.TaskState.PENDING, before.getTaskState(idOne));
+    assertEquals(SchedulerState.TaskState.ACTIVE, after.getTaskState(idOne));
+    assertTrue(before.getTaskIds(SchedulerState.TaskState.ACTIVE, "nm").isEmpty());
+
+    sState.removeTask(idOne);
+    assertTrue(before.hasTask(idOne));
+    assertNull(sState.getSnapshot().getTask(idOne));
+  }
+
+  @Test
+  public void testTaskCounts() throws Exception {
+    SchedulerState sState = initialize();
+    TaskID idOne = TaskID.newBuilder().setValue("nm.zero.1").build();
+    TaskID idTwo = TaskID.newBuilder().setValue("nm.low.2").build();
+    sState.addTask(idOne, taskOne);
+    sState.addTask(idTwo, taskTwo);
+    sState.makeTaskPending(idOne);
+    sState.makeTaskPending(idTwo);
+    sState.makeTaskActive(idTwo);
+    assertEquals(1, sState.getTaskCount(SchedulerState.TaskState.PENDING, "nm"));
+    assertEquals(1, sState.getTaskCount(SchedulerState.TaskState.ACTIVE, "nm"));
+    assertEquals(1, sState.getSnapshot().getTaskCountForProfile(SchedulerState.TaskState.ACTIVE, "low"));
+
+    // Repeating a transition doesn't change the counts
+    sState.makeTaskActive(idTwo);
+    sState.makeTaskKillable(idOne);
+    assertEquals(0, sState.getTaskCount(SchedulerState.TaskState.PENDING, "nm"));
+    assertEquals(1, sState.getTaskCount(SchedulerState.TaskState.ACTIVE, "nm"));
+    assertEquals(1, sState.getKillableTaskIds("nm").size());
+
+    sState.removeTask(idTwo);
+    assertEquals(0, sState.getTaskCount(SchedulerState.TaskState.ACTIVE, "nm"));
+    assertEquals(0, sState.getSnapshot().getTaskCount(SchedulerState.TaskState.ACTIVE));
+  }
+
+  @Test
+  public void testFineGrainedScalingIndex() throws Exception {
+    SchedulerState sState = initialize();
+    TaskID idOne = TaskID.newBuilder().setValue("nm.zero.1").build();
+    TaskID idTwo = TaskID.newBuilder().setValue("nm.low.2").build();
+    sState.addTask(idOne, TestObjectFactory.getNodeTask("zero", "localhost", 0.0, 0.0, Long.valueOf(0), Long.valueOf(0)));
+    sState.addTask(idTwo, taskTwo);
+    sState.makeTaskStaging(idOne);
+    sState.makeTaskActive(idTwo);
+    assertFalse(sState.isEligibleForFineGrainedScaling("localhost"));
+    assertFalse(sState.hasFineGrainedScalingHosts());
+
+    sState.makeTaskActive(idOne);
+    assertTrue(sState.isEligibleForFineGrainedScaling("localhost"));
+    assertFalse(sState.isEligibleForFineGrainedScaling("otherhost"));
+
+    sState.makeTaskKillable(idOne);
+    assertFalse(sState.isEligibleForFineGrainedScaling("localhost"));
+    sState.makeTaskActive(idOne);
+    sState.removeTask(idOne);
+    assertFalse(sState.isEligibleForFineGrainedScaling("localhost"));
+    assertFalse(sState.hasFineGrainedScalingHosts());
+  }
+
+  @Test
+  public void testTaskIdsPerState() throws Exception {
+    SchedulerState sState = initialize();
+    Set<TaskID> pending = new HashSet<>();
+    for (int i = 0; i < 100; i++) {
+      TaskID taskId = TaskID.newBuilder().setValue("nm.low." + i).build();
+      sState.addTask(taskId, TestObjectFactory.getNodeTask("low", "host-" + i, 0.1, 1024.0, 1L, 2L));
+      if (i % 25 == 0) {
+        sState.makeTaskPending(taskId);
+        pending.add(taskId);
+      } else {
+        sState.makeTaskActive(taskId);
+      }
+    }
+    SchedulerStateSnapshot before = sState.getSnapshot();
+    assertEquals(pending, new HashSet<>(before.getTaskIds(SchedulerState.TaskState.PENDING)));
+    assertEquals(96, before.getTaskIds(SchedulerState.TaskState.ACTIVE).size());
+
+    TaskID launched = pending.iterator().next();
+    sState.makeTaskStaging(launched);
+    SchedulerStateSnapshot after = sState.getSnapshot();
+    assertEquals(3, after.getTaskIds(SchedulerState.TaskState.PENDING).size());
+    assertFalse(after.getTaskIds(SchedulerState.TaskState.PENDING).contains(launched));
+    assertEquals(Collections.singleton(launched), new HashSet<>(after.getTaskIds(SchedulerState.TaskState.STAGING)));
+    // The earlier snapshot keeps its sets
+    assertEquals(pending, new HashSet<>(before.getTaskIds(SchedulerState.TaskState.PENDING)));
+    assertTrue(before.getTaskIds(SchedulerState.TaskState.STAGING).isEmpty());
+  }
+
+  @Test
+  public void testTaskIdsPerStateForPrefixAndProfile() throws Exception {
+    SchedulerState sState = initialize();
+    TaskID low = TaskID.newBuilder().setValue("nm.low.1").build();
+    TaskID zero = TaskID.newBuilder().setValue("nm.zero.1").build();
+    TaskID other = TaskID.newBuilder().setValue("other.low.1").build();
+    sState.addTask(low, TestObjectFactory.getNodeTask("low", "host-1", 0.1, 1024.0, 1L, 2L));
+    sState.addTask(zero, TestObjectFactory.getNodeTask("zero", "host-2", 0.0, 0.0, 0L, 0L));
+    sState.addTask(other, TestObjectFactory.getNodeTask("low", "host-3", 0.1, 1024.0, 1L, 2L));
+    sState.makeTaskPending(low);
+    sState.makeTaskPending(zero);
+    sState.makeTaskActive(other);
+
+    SchedulerStateSnapshot snapshot = sState.getSnapshot();
+    assertEquals(new HashSet<>(Arrays.asList(low, zero)),
+        new HashSet<>(snapshot.getTaskIds(SchedulerState.TaskState.PENDING, "nm")));
+    assertEquals(Collections.singleton(other), new HashSet<>(snapshot.getTaskIds(SchedulerState.TaskState.ACTIVE, "other")));
+    assertEquals(Collections.singleton(low), new HashSet<>(snapshot.getTaskIdsForProfile(SchedulerState.TaskState.PENDING, "low")));
+    assertEquals(Collections.singleton(other), new HashSet<>(snapshot.getTaskIdsForProfile(SchedulerState.TaskState.ACTIVE, "low")));
+
+    sState.makeTaskActive(low);
+    sState.removeTask(zero);
+    snapshot = sState.getSnapshot();
+    assertTrue(snapshot.getTaskIds(SchedulerState.TaskState.PENDING, "nm").isEmpty());
+    assertEquals(Collections.singleton(low), new HashSet<>(snapshot.getTaskIds(SchedulerState.TaskState.ACTIVE, "nm")));
+    assertEquals(new HashSet<>(Arrays.asList(low, other)),
+        new HashSet<>(snapshot.getTaskIdsForProfile(SchedulerState.TaskState.ACTIVE, "low")));
+    assertTrue(snapshot.getTaskIdsForProfile(SchedulerState.TaskState.PENDING, "zero").isEmpty());
+    assertEquals(0, snapshot.getTaskCountForProfile(SchedulerState.TaskState.PENDING, "low"));
+    assertEquals(2, snapshot.getTaskCountForProfile(SchedulerState.TaskState.ACTIVE, "low"));
+  }
+
+  @Test
+  public void testUpdatesDoNotModifyPublishedTasks() throws Exception {
+    SchedulerState sState = initialize();
+    TaskID taskId = TaskID.newBuilder().setValue("nm.low.1").build();
+    NodeTask task = TestObjectFactory.getNodeTask("low", "host-1", 0.1, 1024.0, 1L, 2L);
+    task.setSlaveId(SlaveID.newBuilder().setValue("slave-1").build());
+    sState.addTask(taskId, task);
+    SchedulerStateSnapshot before = sState.getSnapshot();
+
+    sState.updateTask(Protos.TaskStatus.newBuilder().setTaskId(taskId).setState(Protos.TaskState.TASK_RUNNING).build());
+    List<Protos.Attribute> attributes = Collections.singletonList(Protos.Attribute.newBuilder().setName("rack")
+        .setType(Protos.Value.Type.TEXT).setText(Protos.Value.Text.newBuilder().setValue("r1")).build());
+    sState.updateSlaveAttributes(task.getSlaveId(), attributes);
+
+    assertNull(before.getTask(taskId).getTaskStatus());
+    assertNull(before.getTask(taskId).getSlaveAttributes());
+    NodeTask updated = sState.getTask(taskId);
+    assertEquals(Protos.TaskState.TASK_RUNNING, updated.getTaskStatus().getState());
+    assertEquals(attributes, updated.getSlaveAttributes());
+    assertEquals(Collections.singleton(updated), sState.getNodeTasks(task.getSlaveId()));
+
+    long version = sState.getSnapshot().getVersion();
+    sState.updateSlaveAttributes(task.getSlaveId(), attributes);
+    assertEquals(version, sState.getSnapshot().getVersion());
+  }
+}
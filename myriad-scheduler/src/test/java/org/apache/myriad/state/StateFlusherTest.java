@@ -0,0 +1,194 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.myriad.state;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.mesos.Protos.FrameworkID;
+import org.apache.mesos.Protos.TaskID;
+import org.apache.mesos.Protos.TaskState;
+import org.apache.mesos.Protos.TaskStatus;
+import org.apache.myriad.TestObjectFactory;
+import org.apache.myriad.state.utils.JournalEntry;
+import org.apache.myriad.state.utils.StoreContext;
+import org.junit.Test;
+
+/**
+ * Unit tests for StateFlusher
+ */
+public class StateFlusherTest {
+
+  /**
+   * Records what would have been written to a real state store
+   */
+  private static class RecordingStateStore implements MyriadStateStore {
+    private final List<List<JournalEntry>> batches = new ArrayList<>();
+    private int snapshots;
+
+    @Override
+    public StoreContext loadMyriadState() throws Exception {
+      return null;
+    }
+
+    @Override
+    public synchronized void storeMyriadState(StoreContext storeContext) throws Exception {
+      snapshots++;
+    }
+
+    @Override
+    public synchronized void storeMyriadStateEntries(List<JournalEntry> entries) throws Exception {
+      batches.add(new ArrayList<>(entries));
+    }
+
+    @Override
+    public void removeMyriadState() throws Exception {
+    }
+  }
+
+  private TaskStatus getTaskStatus(TaskID taskId, TaskState state) {
+    return TaskStatus.newBuilder().setTaskId(taskId).setState(state).build();
+  }
+
+  @Test
+  public void testBurstIsGroupCommitted() throws Exception {
+    RecordingStateStore store = new RecordingStateStore();
+    SchedulerState state = new SchedulerState(store, 60000, 100000, 100000);
+    TaskID taskId = TaskID.newBuilder().setValue("nm.small.1").build();
+    state.addTask(taskId, TestObjectFactory.getNodeTask("small", "host-1", 1.0, 1024.0, 1L, 1024L));
+    for (int i = 0; i < 10000; i++) {
+      state.updateTask(getTaskStatus(taskId, i % 2 == 0 ? TaskState.TASK_RUNNING : TaskState.TASK_STAGING));
+    }
+    state.setFrameworkId(FrameworkID.newBuilder().setValue("framework-1").build());
+    state.commit().get(10, TimeUnit.SECONDS);
+
+    assertEquals(1, store.batches.size());
+    // The 10000 status updates are coalesced into the last one
+    assertEquals(3, store.batches.get(0).size());
+    assertEquals(TaskState.TASK_STAGING, store.batches.get(0).get(1).getTaskStatus().getState());
+  }
+
+  @Test
+  public void testMaxPendingTriggersFlush() throws Exception {
+    RecordingStateStore store = new RecordingStateStore();
+    SchedulerState state = new SchedulerState(store, 60000, 10, 100000);
+    for (int i = 0; i < 10; i++) {
+      state.makeTaskPending(TaskID.newBuilder().setValue("nm.small." + i).build());
+    }
+    for (int i = 0; i < 100 && store.batches.isEmpty(); i++) {
+      Thread.sleep(50);
+    }
+    assertEquals(1, store.batches.size());
+    assertEquals(10, store.batches.get(0).size());
+  }
+
+  @Test
+  public void testSynchronousFlushAndSnapshot() throws Exception {
+    RecordingStateStore store = new RecordingStateStore();
+    SchedulerState state = new SchedulerState(store, 0, 1, 3);
+    TaskID taskId = TaskID.newBuilder().setValue("nm.small.1").build();
+    state.makeTaskPending(taskId);
+    state.makeTaskStaging(taskId);
+    assertEquals(2, store.batches.size());
+    state.makeTaskActive(taskId);
+    assertEquals(2, store.batches.size());
+    assertEquals(1, store.snapshots);
+  }
+
+  @Test
+  public void testStopFlushesQueuedEntries() throws Exception {
+    RecordingStateStore store = new RecordingStateStore();
+    SchedulerState state = new SchedulerState(store, 60000, 100000, 100000);
+    state.makeTaskPending(TaskID.newBuilder().setValue("nm.small.1").build());
+    assertTrue(store.batches.isEmpty());
+
+    state.stop();
+    assertEquals(1, store.batches.size());
+    // Once stopped, mutations are written synchronously
+    state.makeTaskPending(TaskID.newBuilder().setValue("nm.small.2").build());
+    assertEquals(2, store.batches.size());
+  }
+
+  @Test
+  public void testSynchronousCommitDuringFlushCompletes() throws Exception {
+    final CountDownLatch writing = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    RecordingStateStore store = new RecordingStateStore() {
+      @Override
+      public void storeMyriadStateEntries(List<JournalEntry> entries) throws Exception {
+        writing.countDown();
+        release.await(10, TimeUnit.SECONDS);
+        super.storeMyriadStateEntries(entries);
+      }
+    };
+    final SchedulerState state = new SchedulerState(store, 0, 1, 100000);
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      executor.submit(new Runnable() {
+        @Override
+        public void run() {
+          state.makeTaskPending(TaskID.newBuilder().setValue("nm.small.1").build());
+        }
+      });
+      assertTrue(writing.await(10, TimeUnit.SECONDS));
+      Future<Future<Void>> committed = executor.submit(new Callable<Future<Void>>() {
+        @Override
+        public Future<Void> call() throws Exception {
+          return state.commit();
+        }
+      });
+      release.countDown();
+      committed.get(10, TimeUnit.SECONDS).get(10, TimeUnit.SECONDS);
+      assertEquals(1, store.batches.size());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testCoalesce() throws Exception {
+    TaskID taskOne = TaskID.newBuilder().setValue("nm.small.1").build();
+    TaskID taskTwo = TaskID.newBuilder().setValue("nm.small.2").build();
+    NodeTask task = TestObjectFactory.getNodeTask("small", "host-1", 1.0, 1024.0, 1L, 1024L);
+    JournalEntry addOne = JournalEntry.addTask(taskOne, task);
+    JournalEntry statusOne = JournalEntry.updateTaskStatus(getTaskStatus(taskOne, TaskState.TASK_RUNNING));
+    JournalEntry activeOne = JournalEntry.taskState(taskOne, SchedulerState.TaskState.ACTIVE);
+    JournalEntry pendingTwo = JournalEntry.taskState(taskTwo, SchedulerState.TaskState.PENDING);
+    JournalEntry removeTwo = JournalEntry.removeTask(taskTwo);
+    JournalEntry readdTwo = JournalEntry.addTask(taskTwo, task);
+
+    List<JournalEntry> coalesced = StateFlusher.coalesce(Arrays.asList(
+        JournalEntry.updateTaskStatus(getTaskStatus(taskOne, TaskState.TASK_STAGING)), addOne, statusOne,
+        JournalEntry.taskState(taskOne, SchedulerState.TaskState.STAGING), activeOne,
+        JournalEntry.addTask(taskTwo, task), pendingTwo, removeTwo, readdTwo));
+
+    assertEquals(Arrays.asList(addOne, statusOne, activeOne, removeTwo, readdTwo), coalesced);
+    assertTrue(StateFlusher.coalesce(new ArrayList<JournalEntry>()).isEmpty());
+  }
+}
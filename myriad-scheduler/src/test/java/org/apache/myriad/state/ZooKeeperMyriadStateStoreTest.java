@@ -0,0 +1,196 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.myriad.state;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.CuratorFrameworkFactory;
+import org.apache.curator.framework.imps.CuratorFrameworkState;
+import org.apache.curator.retry.RetryOneTime;
+import org.apache.curator.test.TestingServer;
+import org.apache.mesos.Protos;
+import org.apache.myriad.TestObjectFactory;
+import org.apache.myriad.state.utils.JournalEntry;
+import org.apache.myriad.state.utils.StoreContext;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests for ZooKeeperMyriadStateStore against an in-process ZooKeeper
+ */
+public class ZooKeeperMyriadStateStoreTest {
+  private static final String ROOT = "/myriad/test/schedulerState";
+
+  private TestingServer server;
+  private CuratorFramework client;
+  private Protos.FrameworkID frameworkId;
+  private Protos.TaskID activeId;
+  private Protos.TaskID pendingId;
+  private Map<Protos.TaskID, NodeTask> tasks;
+
+  @Before
+  public void setUp() throws Exception {
+    server = new TestingServer();
+    client = CuratorFrameworkFactory.newClient(server.getConnectString(), new RetryOneTime(100));
+    client.start();
+    frameworkId = Protos.FrameworkID.newBuilder().setValue("framework-1").build();
+    activeId = Protos.TaskID.newBuilder().setValue("nm.small.1").build();
+    pendingId = Protos.TaskID.newBuilder().setValue("nm.medium.2").build();
+    tasks = new HashMap<>();
+    tasks.put(activeId, TestObjectFactory.getNodeTask("small", "host-1.example.com", 1.0, 1024.0, 1L, 512L));
+    tasks.put(pendingId, TestObjectFactory.getNodeTask("medium", "host-2.example.com", 2.0, 2048.0, 1L, 512L));
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    client.close();
+    server.close();
+  }
+
+  private StoreContext getStoreContext() {
+    return new StoreContext(frameworkId, tasks, Collections.singleton(pendingId), new HashSet<Protos.TaskID>(),
+        Collections.singleton(activeId), new HashSet<Protos.TaskID>(), new HashSet<Protos.TaskID>());
+  }
+
+  private int getVersion(Protos.TaskID taskId) throws Exception {
+    return client.checkExists().forPath(ROOT + "/tasks/" + taskId.getValue()).getVersion();
+  }
+
+  @Test
+  public void testStoreAndLoad() throws Exception {
+    new ZooKeeperMyriadStateStore(client, ROOT).storeMyriadState(getStoreContext());
+
+    StoreContext loaded = new ZooKeeperMyriadStateStore(client, ROOT).loadMyriadState();
+    assertEquals(frameworkId, loaded.getFrameworkId());
+    assertEquals(Collections.singleton(activeId), loaded.getActiveTasks());
+    assertEquals(Collections.singleton(pendingId), loaded.getPendingTasks());
+    assertEquals(2, loaded.getTasks().size());
+    assertEquals("host-1.example.com", loaded.getTasks().get(activeId).getHostname());
+    assertEquals("small", loaded.getTasks().get(activeId).getProfile().getName());
+  }
+
+  @Test
+  public void testLoadWithoutState() throws Exception {
+    assertNull(new ZooKeeperMyriadStateStore(client, ROOT).loadMyriadState());
+  }
+
+  @Test
+  public void testOnlyChangedTasksAreWritten() throws Exception {
+    ZooKeeperMyriadStateStore store = new ZooKeeperMyriadStateStore(client, ROOT);
+    store.storeMyriadState(getStoreContext());
+    int pendingVersion = getVersion(pendingId);
+    int activeVersion = getVersion(activeId);
+
+    Protos.TaskStatus status = Protos.TaskStatus.newBuilder().setTaskId(activeId).setState(Protos.TaskState.TASK_RUNNING)
+        .build();
+    store.storeMyriadStateEntries(Arrays.asList(JournalEntry.updateTaskStatus(status)));
+    assertEquals(pendingVersion, getVersion(pendingId));
+    assertEquals(activeVersion + 1, getVersion(activeId));
+
+    // A snapshot of unchanged state writes nothing
+    tasks.get(activeId).setTaskStatus(status);
+    store.storeMyriadState(getStoreContext());
+    assertEquals(pendingVersion, getVersion(pendingId));
+    assertEquals(activeVersion + 1, getVersion(activeId));
+
+    StoreContext loaded = new ZooKeeperMyriadStateStore(client, ROOT).loadMyriadState();
+    assertEquals(status, loaded.getTasks().get(activeId).getTaskStatus());
+  }
+
+  @Test
+  public void testStoreEntries() throws Exception {
+    ZooKeeperMyriadStateStore store = new ZooKeeperMyriadStateStore(client, ROOT);
+    store.storeMyriadState(getStoreContext());
+    Protos.TaskID addedId = Protos.TaskID.newBuilder().setValue("nm.small.3").build();
+    NodeTask added = TestObjectFactory.getNodeTask("small", "host-3.example.com", 1.0, 1024.0, 1L, 512L);
+    store.storeMyriadStateEntries(Arrays.asList(JournalEntry.addTask(addedId, added),
+        JournalEntry.taskState(addedId, SchedulerState.TaskState.STAGING),
+        JournalEntry.taskState(pendingId, SchedulerState.TaskState.KILLABLE),
+        JournalEntry.removeTask(activeId)));
+
+    StoreContext loaded = new ZooKeeperMyriadStateStore(client, ROOT).loadMyriadState();
+    assertEquals(frameworkId, loaded.getFrameworkId());
+    assertEquals(2, loaded.getTasks().size());
+    assertEquals("host-3.example.com", loaded.getTasks().get(addedId).getHostname());
+    assertEquals(Collections.singleton(addedId), loaded.getStagingTasks());
+    assertEquals(Collections.singleton(pendingId), loaded.getKillableTasks());
+    assertEquals(0, loaded.getActiveTasks().size());
+    assertEquals(0, loaded.getPendingTasks().size());
+  }
+
+  @Test
+  public void testStoreEntriesOfTaskAddedInSameBatch() throws Exception {
+    ZooKeeperMyriadStateStore store = new ZooKeeperMyriadStateStore(client, ROOT);
+    store.storeMyriadState(getStoreContext());
+    Protos.TaskID addedId = Protos.TaskID.newBuilder().setValue("nm.small.3").build();
+    NodeTask added = TestObjectFactory.getNodeTask("small", "host-3.example.com", 1.0, 1024.0, 1L, 512L);
+    Protos.TaskStatus status = Protos.TaskStatus.newBuilder().setTaskId(addedId).setState(Protos.TaskState.TASK_RUNNING)
+        .build();
+    store.storeMyriadStateEntries(Arrays.asList(JournalEntry.addTask(addedId, added),
+        JournalEntry.taskState(addedId, SchedulerState.TaskState.STAGING),
+        JournalEntry.updateTaskStatus(status),
+        JournalEntry.taskState(addedId, SchedulerState.TaskState.ACTIVE)));
+
+    // The task added to the batch is not modified by the later entries
+    assertNull(added.getTaskStatus());
+    StoreContext loaded = new ZooKeeperMyriadStateStore(client, ROOT).loadMyriadState();
+    assertEquals(status, loaded.getTasks().get(addedId).getTaskStatus());
+    assertEquals(new HashSet<>(Arrays.asList(activeId, addedId)), loaded.getActiveTasks());
+  }
+
+  @Test
+  public void testLargeBatchesAreSplit() throws Exception {
+    for (int i = 0; i < 20; i++) {
+      Protos.TaskID taskId = Protos.TaskID.newBuilder().setValue("nm.small.task-" + i).build();
+      tasks.put(taskId, TestObjectFactory.getNodeTask("small", "host-" + i, 1.0, 1024.0, 1L, 512L));
+    }
+    new ZooKeeperMyriadStateStore(client, ROOT, 2048, ZooKeeperMyriadStateStore.DEFAULT_READ_TIMEOUT_MS)
+        .storeMyriadState(getStoreContext());
+
+    assertEquals(22, new ZooKeeperMyriadStateStore(client, ROOT).loadMyriadState().getTasks().size());
+  }
+
+  @Test
+  public void testRemoveMyriadState() throws Exception {
+    ZooKeeperMyriadStateStore store = new ZooKeeperMyriadStateStore(client, ROOT);
+    store.storeMyriadState(getStoreContext());
+    store.removeMyriadState();
+
+    assertNull(new ZooKeeperMyriadStateStore(client, ROOT).loadMyriadState());
+    store.storeMyriadState(getStoreContext());
+    assertEquals(2, store.loadMyriadState().getTasks().size());
+  }
+
+  @Test
+  public void testCloseClosesClient() throws Exception {
+    ZooKeeperMyriadStateStore store = new ZooKeeperMyriadStateStore(client, ROOT);
+    store.storeMyriadState(getStoreContext());
+    store.close();
+    assertEquals(CuratorFrameworkState.STOPPED, client.getState());
+  }
+}
@@ -0,0 +1,181 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.myriad.state.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.mesos.Protos.FrameworkID;
+import org.apache.mesos.Protos.TaskID;
+import org.apache.mesos.Protos.TaskState;
+import org.apache.mesos.Protos.TaskStatus;
+import org.apache.myriad.TestObjectFactory;
+import org.apache.myriad.scheduler.constraints.LikeConstraint;
+import org.apache.myriad.state.NodeTask;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests for StoreContext serialization
+ */
+public class StoreContextTest {
+  private FrameworkID frameworkId;
+  private Map<TaskID, NodeTask> tasks;
+  private TaskID activeId;
+  private TaskID pendingId;
+  private TaskID killableId;
+
+  @Before
+  public void setUp() throws Exception {
+    frameworkId = FrameworkID.newBuilder().setValue("framework-1").build();
+    activeId = TaskID.newBuilder().setValue("nm.small.1").build();
+    pendingId = TaskID.newBuilder().setValue("nm.medium.2").build();
+    killableId = TaskID.newBuilder().setValue("nm.small.3").build();
+    NodeTask active = TestObjectFactory.getNodeTask("small", "host-1.example.com", 1.0, 1024.0, 1L, 512L);
+    active.setTaskStatus(TaskStatus.newBuilder().setTaskId(activeId).setState(TaskState.TASK_RUNNING).build());
+    NodeTask pending = TestObjectFactory.getNodeTask("medium", "host-2.example.com", 2.0, 2048.0, 1L, 512L);
+    pending.setSlaveId(null);
+    pending.setExecutorInfo(null);
+    tasks = new HashMap<>();
+    tasks.put(activeId, active);
+    tasks.put(pendingId, pending);
+  }
+
+  private StoreContext getStoreContext() {
+    return new StoreContext(frameworkId, tasks, Collections.singleton(pendingId), new HashSet<TaskID>(),
+        Collections.singleton(activeId), new HashSet<TaskID>(), Collections.singleton(killableId));
+  }
+
+  private void assertContext(StoreContext sc) {
+    assertEquals(frameworkId, sc.getFrameworkId());
+    assertEquals(Collections.singleton(pendingId), sc.getPendingTasks());
+    assertEquals(Collections.singleton(activeId), sc.getActiveTasks());
+    assertEquals(Collections.singleton(killableId), sc.getKillableTasks());
+    assertTrue(sc.getStagingTasks().isEmpty());
+    assertTrue(sc.getLostTasks().isEmpty());
+
+    Map<TaskID, NodeTask> recovered = sc.getTasks();
+    assertEquals(2, recovered.size());
+    NodeTask active = recovered.get(activeId);
+    NodeTask expected = tasks.get(activeId);
+    assertEquals("small", active.getProfile().getName());
+    assertEquals(expected.getProfile().getMemory(), active.getProfile().getMemory());
+    assertEquals("host-1.example.com", active.getHostname());
+    assertEquals(expected.getSlaveId(), active.getSlaveId());
+    assertEquals(expected.getTaskStatus(), active.getTaskStatus());
+    assertEquals(expected.getExecutorInfo(), active.getExecutorInfo());
+    assertEquals("nm", active.getTaskPrefix());
+    assertTrue(active.getConstraint() instanceof LikeConstraint);
+    assertEquals(expected.getConstraint().toString(), active.getConstraint().toString());
+    NodeTask pending = recovered.get(pendingId);
+    assertNull(pending.getSlaveId());
+    assertNull(pending.getTaskStatus());
+    assertNull(pending.getExecutorInfo());
+  }
+
+  @Test
+  public void testRoundTrip() throws Exception {
+    byte[] bytes = getStoreContext().toSerializedContext().toByteArray();
+    assertEquals('M', bytes[0]);
+    assertEquals(StoreContextFormat.VERSION, bytes[4]);
+    assertContext(StoreContext.fromSerializedBytes(bytes));
+  }
+
+  @Test
+  public void testReadsOriginalLayout() throws Exception {
+    List<ByteBuffer> taskIds = new ArrayList<>();
+    List<ByteBuffer> taskNodes = new ArrayList<>();
+    for (Map.Entry<TaskID, NodeTask> entry : tasks.entrySet()) {
+      taskIds.add(ByteBufferSupport.toByteBuffer(entry.getKey()));
+      taskNodes.add(ByteBufferSupport.toByteBuffer(entry.getValue()));
+    }
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    ByteBufferSupport.addByteBuffer(ByteBufferSupport.toByteBuffer(frameworkId), bytes);
+    ByteBufferSupport.addByteBuffers(taskIds, bytes);
+    ByteBufferSupport.addByteBuffers(taskNodes, bytes);
+    ByteBufferSupport.addByteBuffers(toBuffers(Collections.singleton(pendingId)), bytes);
+    ByteBufferSupport.addByteBuffers(toBuffers(new HashSet<TaskID>()), bytes);
+    ByteBufferSupport.addByteBuffers(toBuffers(Collections.singleton(activeId)), bytes);
+    ByteBufferSupport.addByteBuffers(toBuffers(new HashSet<TaskID>()), bytes);
+    ByteBufferSupport.addByteBuffers(toBuffers(Collections.singleton(killableId)), bytes);
+
+    byte[] original = bytes.toByteArray();
+    StoreContext sc = StoreContext.fromSerializedBytes(original);
+    assertContext(sc);
+    assertTrue(sc.toSerializedContext().size() < original.length);
+  }
+
+  private List<ByteBuffer> toBuffers(Set<TaskID> taskIds) {
+    List<ByteBuffer> buffers = new ArrayList<>();
+    for (TaskID taskId : taskIds) {
+      buffers.add(ByteBufferSupport.toByteBuffer(taskId));
+    }
+    return buffers;
+  }
+
+  @Test
+  public void testProfilesAreStoredOnce() throws Exception {
+    TaskID otherId = TaskID.newBuilder().setValue("nm.small.4").build();
+    NodeTask other = TestObjectFactory.getNodeTask("small", "host-1.example.com", 1.0, 1024.0, 1L, 512L);
+    tasks.put(otherId, other);
+    byte[] bytes = getStoreContext().toSerializedContext().toByteArray();
+    String serialized = new String(bytes, "ISO-8859-1");
+    String profileJson = other.getProfile().toString();
+    assertEquals(serialized.indexOf(profileJson), serialized.lastIndexOf(profileJson));
+
+    Map<TaskID, NodeTask> recovered = StoreContext.fromSerializedBytes(bytes).getTasks();
+    assertSame(recovered.get(activeId).getProfile(), recovered.get(otherId).getProfile());
+    assertSame(recovered.get(activeId).getConstraint(), recovered.get(otherId).getConstraint());
+  }
+
+  @Test
+  public void testTaskStatusIsParsedOnAccess() throws Exception {
+    NodeTask active = tasks.get(activeId);
+    byte[] bytes = getStoreContext().toSerializedContext().toByteArray();
+    NodeTask recovered = StoreContext.fromSerializedBytes(bytes).getTasks().get(activeId);
+    assertEquals(active.getTaskStatus().toByteString(), recovered.getSerializedTaskStatus());
+    assertEquals(active.getExecutorInfo().toByteString(), recovered.getSerializedExecutorInfo());
+
+    // A task that was never accessed is written back without parsing it
+    byte[] rewritten = StoreContext.fromSerializedBytes(bytes).toSerializedContext().toByteArray();
+    assertEquals(active.getTaskStatus(), StoreContext.fromSerializedBytes(rewritten).getTasks().get(activeId).getTaskStatus());
+    assertEquals(active.getTaskStatus(), recovered.getTaskStatus());
+    assertEquals(active.getExecutorInfo(), recovered.getExecutorInfo());
+    assertNull(StoreContext.fromSerializedBytes(bytes).getTasks().get(pendingId).getExecutorInfo());
+  }
+
+  @Test(expected = RuntimeException.class)
+  public void testCorruptContextIsRejected() throws Exception {
+    byte[] bytes = getStoreContext().toSerializedContext().toByteArray();
+    bytes[bytes.length / 2] ^= 0x1;
+    StoreContext.fromSerializedBytes(bytes);
+  }
+}